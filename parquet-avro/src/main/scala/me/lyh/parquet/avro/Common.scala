@@ -12,6 +12,37 @@ object Common {
   def treeToField[T <: SR: c.WeakTypeTag](
     c: blackbox.Context
   )(schema: Schema, getter: c.Expr[T => Any]): (String, Schema.Type) = {
+    val fields = treeToFields(c)(schema, getter)
+    val fieldType = fields.lastOption.map(f => nonNull(f.schema()).getType)
+    (fields.map(_.name()).mkString("."), fieldType.getOrElse(Schema.Type.NULL))
+  }
+
+  /**
+   * Parquet column of a getter, as a path in parquet-avro's default list layout, e.g.
+   * `accounts.array.amount`, the leaf type and whether the column is repeated.
+   */
+  def treeToColumn[T <: SR: c.WeakTypeTag](
+    c: blackbox.Context
+  )(schema: Schema, getter: c.Expr[T => Any]): (String, Schema.Type, Boolean) = {
+    val fields = treeToFields(c)(schema, getter)
+    if (fields.isEmpty) {
+      ("", Schema.Type.NULL, false)
+    } else {
+      val path = fields.flatMap { f =>
+        if (nonNull(f.schema()).getType == Schema.Type.ARRAY) Seq(f.name(), "array")
+        else Seq(f.name())
+      }
+      val leaf = nonNull(fields.last.schema()) match {
+        case s if s.getType == Schema.Type.ARRAY => nonNull(s.getElementType)
+        case s                                   => s
+      }
+      (path.mkString("."), leaf.getType, path.size > fields.size)
+    }
+  }
+
+  private def treeToFields[T <: SR: c.WeakTypeTag](
+    c: blackbox.Context
+  )(schema: Schema, getter: c.Expr[T => Any]): Seq[Schema.Field] = {
     import c.universe._
 
     def extractGetters(t: Tree): Seq[String] = {
@@ -23,42 +54,37 @@ object Common {
       extract(t, Seq())._2
     }
 
-    def gettersToField(getters: Seq[String]): (String, Schema.Type) = {
+    def gettersToFields(getters: Seq[String]): Seq[Schema.Field] = {
       var node = schema
-      var fieldType: Schema.Type = Schema.Type.NULL
 
       val gt = getters.filter(s => s != "get" && s != "toString")
 
-      def fromNullable(s: Schema): Schema =
-        s.getTypes.asScala.find(_.getType != Schema.Type.NULL).get
-
-      val fields = gt.zipWithIndex.map { case (g, i) =>
+      gt.zipWithIndex.map { case (g, i) =>
         val field = node.getFields.asScala.find(f => generateGetMethod(schema, f) == g).get
-        val next = field.schema()
-        fieldType =
-          if (next.getType == Schema.Type.UNION) fromNullable(next).getType else next.getType
-
         if (i < gt.size - 1) {
+          val next = nonNull(field.schema())
           node = next.getType match {
             case Schema.Type.RECORD => next
-            case Schema.Type.UNION  => fromNullable(next)
-            case Schema.Type.ARRAY  => next.getElementType
+            case Schema.Type.ARRAY  => nonNull(next.getElementType)
             case t                  => throw new RuntimeException(s"Unsupported type: $t")
           }
         }
-        field.name()
+        field
       }
-      (fields.mkString("."), fieldType)
     }
 
     try {
       val Function(_, body) = getter.tree
-      gettersToField(extractGetters(body))
+      gettersToFields(extractGetters(body))
     } catch {
       case e: Exception =>
         throw new IllegalArgumentException("Invalid getter expression: " + getter.tree + " " + e)
     }
   }
 
+  private def nonNull(s: Schema): Schema =
+    if (s.getType == Schema.Type.UNION) s.getTypes.asScala.find(_.getType != Schema.Type.NULL).get
+    else s
+
   def isNull[@specialized(Boolean, Int, Long, Float, Double) T](x: T): Boolean = x == null
 }
@@ -0,0 +1,222 @@
+package me.lyh.parquet.avro
+
+import org.apache.parquet.filter2.predicate.{FilterApi, FilterPredicate}
+import org.apache.parquet.filter2.predicate.Operators._
+import org.apache.parquet.hadoop.metadata.ColumnPath
+import org.apache.parquet.io.api.Binary
+
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+/** Logical operators that merge [[FilterPredicate]]s on the same column. */
+object FilterPredicates {
+
+  /**
+   * Conjunction of predicates. Range predicates on the same column are merged into at most one
+   * lower and one upper bound next to each other, and `x >= a && x <= a` into `x == a`.
+   */
+  def and(predicates: FilterPredicate*): FilterPredicate = {
+    require(predicates.nonEmpty, "No predicates")
+    val ranges = mutable.Map.empty[ColumnPath, Range]
+    val merged = predicates.flatMap { p =>
+      bound(p) match {
+        case Some(b) =>
+          ranges.get(b.path) match {
+            case Some(r) =>
+              r.add(b)
+              None
+            case None =>
+              val r = new Range
+              r.add(b)
+              ranges(b.path) = r
+              Some(Right(r))
+          }
+        case None => Some(Left(p))
+      }
+    }
+    merged
+      .flatMap {
+        case Left(p)  => Seq(p)
+        case Right(r) => r.predicates
+      }
+      .reduceLeft(FilterApi.and(_, _): FilterPredicate)
+  }
+
+  /** Disjunction of predicates. Equalities and `in` on the same column are merged into `in`. */
+  def or(predicates: FilterPredicate*): FilterPredicate = {
+    require(predicates.nonEmpty, "No predicates")
+    val sets = mutable.Map.empty[ColumnPath, ValueSet]
+    val merged = predicates.flatMap { p =>
+      values(p) match {
+        case Some((column, vs)) =>
+          sets.get(column.getColumnPath) match {
+            case Some(s) =>
+              s.add(vs)
+              None
+            case None =>
+              val s = new ValueSet(column, p)
+              s.add(vs)
+              sets(column.getColumnPath) = s
+              Some(Right(s))
+          }
+        case None => Some(Left(p))
+      }
+    }
+    merged
+      .map {
+        case Left(p)  => p
+        case Right(s) => s.predicate
+      }
+      .reduceLeft(FilterApi.or(_, _): FilterPredicate)
+  }
+
+  /** Predicate on a repeated column, matching records where any element matches `predicate`. */
+  def contains(predicate: FilterPredicate): FilterPredicate = predicate match {
+    case p: Eq[t]    => FilterApi.contains[t, Eq[t]](p)
+    case p: NotEq[t] => FilterApi.contains[t, NotEq[t]](p)
+    case p: Gt[t]    => FilterApi.contains[t, Gt[t]](p)
+    case p: GtEq[t]  => FilterApi.contains[t, GtEq[t]](p)
+    case p: Lt[t]    => FilterApi.contains[t, Lt[t]](p)
+    case p: LtEq[t]  => FilterApi.contains[t, LtEq[t]](p)
+    case p: In[t]    => FilterApi.contains[t, In[t]](p)
+    case p: NotIn[t] => FilterApi.contains[t, NotIn[t]](p)
+    case p           => throw new IllegalArgumentException("Unsupported predicate: " + p)
+  }
+
+  /**
+   * Membership of `column` in `values`, matching nothing if `values` is empty. On repeated columns,
+   * matches records where any element is in `values`.
+   */
+  def in[T <: Comparable[T]](
+    column: Column[T] with SupportsEqNotEq,
+    values: java.util.Set[T],
+    repeated: Boolean = false
+  ): FilterPredicate =
+    if (!values.isEmpty) {
+      val p = FilterApi.in(column, values)
+      if (repeated) contains(p) else p
+    } else if (repeated) {
+      // contains does not support null values
+      val p = contains(FilterApi.eq(column, anyValue(column)))
+      FilterApi.and(p, FilterApi.not(p))
+    } else {
+      val n = null.asInstanceOf[T]
+      FilterApi.and(FilterApi.eq(column, n), FilterApi.notEq(column, n))
+    }
+
+  /**
+   * Negated membership of `column` in `values`, matching everything if `values` is empty. On
+   * repeated columns, matches records where any element is not in `values`.
+   */
+  def notIn[T <: Comparable[T]](
+    column: Column[T] with SupportsEqNotEq,
+    values: java.util.Set[T],
+    repeated: Boolean = false
+  ): FilterPredicate =
+    if (!values.isEmpty) {
+      val p = FilterApi.notIn(column, values)
+      if (repeated) contains(p) else p
+    } else if (repeated) {
+      val v = anyValue(column)
+      FilterApi.or(contains(FilterApi.eq(column, v)), contains(FilterApi.notEq(column, v)))
+    } else {
+      val n = null.asInstanceOf[T]
+      FilterApi.or(FilterApi.eq(column, n), FilterApi.notEq(column, n))
+    }
+
+  // an arbitrary value, for predicates that match all or no elements of a repeated column
+  private def anyValue[T <: Comparable[T]](column: Column[T]): T = {
+    val c = column.getColumnType
+    val v =
+      if (c == classOf[java.lang.Integer]) java.lang.Integer.valueOf(0)
+      else if (c == classOf[java.lang.Long]) java.lang.Long.valueOf(0)
+      else if (c == classOf[java.lang.Float]) java.lang.Float.valueOf(0)
+      else if (c == classOf[java.lang.Double]) java.lang.Double.valueOf(0)
+      else if (c == classOf[java.lang.Boolean]) java.lang.Boolean.TRUE
+      else Binary.EMPTY
+    c.cast(v)
+  }
+
+  private case class Bound(
+    predicate: FilterPredicate,
+    path: ColumnPath,
+    value: Comparable[Any],
+    lower: Boolean,
+    inclusive: Boolean
+  ) {
+    // whether this bound excludes everything the other bound excludes
+    def tighterThan(that: Bound): Boolean = {
+      val c = value.compareTo(that.value)
+      (if (lower) c > 0 else c < 0) || (c == 0 && !inclusive)
+    }
+  }
+
+  private class Range {
+    private var lower: Bound = _
+    private var upper: Bound = _
+
+    def add(b: Bound): Unit =
+      if (b.lower) {
+        if (lower == null || b.tighterThan(lower)) lower = b
+      } else {
+        if (upper == null || b.tighterThan(upper)) upper = b
+      }
+
+    def predicates: Seq[FilterPredicate] =
+      if (
+        lower != null && upper != null && lower.inclusive && upper.inclusive &&
+        lower.value.compareTo(upper.value) == 0
+      ) {
+        lower.predicate match {
+          case p: GtEq[t] => Seq(toEq(p))
+        }
+      } else {
+        Seq(lower, upper).filter(_ != null).map(_.predicate)
+      }
+  }
+
+  private class ValueSet(column: Column[_], first: FilterPredicate) {
+    private val values = new java.util.LinkedHashSet[Any]()
+    private var count = 0
+
+    def add(vs: Iterable[Any]): Unit = {
+      vs.foreach(values.add)
+      count += 1
+    }
+
+    def predicate: FilterPredicate = if (count == 1) first else toIn(column, values)
+  }
+
+  private def bound(p: FilterPredicate): Option[Bound] = {
+    def mk(column: Column[_], value: Any, lower: Boolean, inclusive: Boolean) =
+      // null values are null checks and not ranges
+      if (value == null) None
+      else {
+        val v = value.asInstanceOf[Comparable[Any]]
+        Some(Bound(p, column.getColumnPath, v, lower, inclusive))
+      }
+    p match {
+      case p: Gt[_]   => mk(p.getColumn, p.getValue, lower = true, inclusive = false)
+      case p: GtEq[_] => mk(p.getColumn, p.getValue, lower = true, inclusive = true)
+      case p: Lt[_]   => mk(p.getColumn, p.getValue, lower = false, inclusive = false)
+      case p: LtEq[_] => mk(p.getColumn, p.getValue, lower = false, inclusive = true)
+      case _          => None
+    }
+  }
+
+  private def values(p: FilterPredicate): Option[(Column[_], Iterable[Any])] = p match {
+    case p: Eq[_] if p.getValue != null => Some((p.getColumn, Seq(p.getValue)))
+    case p: In[_]                       => Some((p.getColumn, p.getValues.asScala))
+    case _                              => None
+  }
+
+  private def toEq[T <: Comparable[T]](p: GtEq[T]): FilterPredicate =
+    FilterApi.eq(p.getColumn.asInstanceOf[Column[T] with SupportsEqNotEq], p.getValue)
+
+  // element types are erased, values were taken from predicates on the same column
+  private def toIn(column: Column[_], values: java.util.Set[Any]): FilterPredicate =
+    in(
+      column.asInstanceOf[Column[Integer] with SupportsEqNotEq],
+      values.asInstanceOf[java.util.Set[Integer]]
+    )
+}
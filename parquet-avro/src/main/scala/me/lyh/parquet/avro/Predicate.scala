@@ -10,6 +10,12 @@ import scala.reflect.macros._
 case class Predicates[T](native: T => Boolean, parquet: FilterPredicate)
 
 object Predicate {
+
+  /**
+   * Build a [[FilterPredicate]] from a lambda. Array columns follow parquet-avro's default list
+   * layout, and predicates on array elements, e.g. `_.getTags.get(0) == "a"`, match records where
+   * any element matches.
+   */
   def apply[T <: SR](p: T => Boolean): FilterPredicate = macro applyImpl[T]
 
   def applyImpl[T <: SR: c.WeakTypeTag](c: blackbox.Context)(
@@ -37,6 +43,15 @@ object Predicate {
     "$bang$eq" -> "notEq"
   )
 
+  private val inverseOps = Map(
+    "gt" -> "ltEq",
+    "lt" -> "gtEq",
+    "gtEq" -> "lt",
+    "ltEq" -> "gt",
+    "eq" -> "notEq",
+    "notEq" -> "eq"
+  )
+
   private val numericTypes = Map(
     Schema.Type.INT -> ("Integer", "intColumn", "toInt"),
     Schema.Type.LONG -> ("Long", "longColumn", "toLong"),
@@ -71,31 +86,129 @@ object Predicate {
       }
     }
 
-    def applyToPredicate(tree: Tree): c.Expr[FilterPredicate] = {
-      val Apply(Select(lExpr, operator), List(rExpr)) = tree
-
-      def extractGetter(expr: Tree): Option[(String, Schema.Type)] =
-        try {
-          val getter = expr match {
-            case Apply(_, List(g)) => g
-            case t                 => t
-          }
-          val (fieldName, fieldType) =
-            Common.treeToField(c)(schema, c.Expr[T => Any](q"(x: Any) => $getter"))
-          if (fieldName != "" && fieldType != Schema.Type.NULL) Some((fieldName, fieldType))
-          else None
-        } catch {
-          case _: Exception => None
+    // column path, leaf type and whether the column is repeated
+    def extractGetter(expr: Tree): Option[(String, Schema.Type, Boolean)] =
+      try {
+        // unwrap implicit conversions, e.g. Integer2int
+        val getter = expr match {
+          case Apply(f, List(g)) if f.symbol != null && f.symbol.isImplicit => g
+          case t                                                            => t
         }
+        val (columnPath, fieldType, repeated) =
+          Common.treeToColumn(c)(schema, c.Expr[T => Any](q"(x: Any) => $getter"))
+        if (columnPath != "" && fieldType != Schema.Type.NULL) {
+          Some((columnPath, fieldType, repeated))
+        } else {
+          None
+        }
+      } catch {
+        case _: Exception => None
+      }
+
+    def hasRepeated(tree: Tree): Boolean = tree.exists(t => extractGetter(t).exists(_._3))
+
+    // column type, column function and conversion of a value to the column type
+    def toColumn(fieldType: Schema.Type, isNullLiteral: Boolean): (Tree, String, Tree => Tree) = {
+      val nsIo = q"_root_.org.apache.parquet.io.api"
+      val binary = (f: Tree => Tree) =>
+        (v: Tree) => if (isNullLiteral) q"null" else q"(if ($v == null) null else ${f(v)})"
+      fieldType match {
+        case t if numericTypes.contains(t) =>
+          val (cType, cFn, vFn) = numericTypes(t)
+          val cTypeName = tq"java.lang.${TypeName(cType)}"
+          val vFnName = TermName(vFn)
+          val nullCase = cq"_: NullPointerException => null"
+          val value = (v: Tree) =>
+            if (isNullLiteral) {
+              q"null"
+            } else {
+              q"(if (_root_.me.lyh.parquet.avro.Common.isNull($v)) null else try { $v.$vFnName } catch { case $nullCase })"
+            }
+          (cTypeName, cFn, value)
+
+        case Schema.Type.BOOLEAN =>
+          (tq"java.lang.Boolean", "booleanColumn", v => if (isNullLiteral) q"null" else v)
+
+        case Schema.Type.STRING =>
+          val value = (v: Tree) => if (isNullLiteral) q"null" else q"$nsIo.Binary.fromString($v)"
+          (tq"$nsIo.Binary", "binaryColumn", value)
+
+        // enums are stored as their symbols
+        case Schema.Type.ENUM =>
+          (tq"$nsIo.Binary", "binaryColumn", binary(v => q"$nsIo.Binary.fromString($v.toString)"))
+
+        case Schema.Type.BYTES =>
+          val value = binary(v => q"$nsIo.Binary.fromConstantByteBuffer($v)")
+          (tq"$nsIo.Binary", "binaryColumn", value)
+
+        case Schema.Type.FIXED =>
+          val value = binary(v => q"$nsIo.Binary.fromConstantByteArray($v.bytes())")
+          (tq"$nsIo.Binary", "binaryColumn", value)
+
+        case _ => throw new RuntimeException("Unsupported value type: " + fieldType)
+      }
+    }
+
+    // predicates on elements of repeated columns match records where any element matches
+    def wrapRepeated(p: Tree, repeated: Boolean): c.Expr[FilterPredicate] = {
+      val wrapped = if (repeated) q"_root_.me.lyh.parquet.avro.FilterPredicates.contains($p)" else p
+      c.Expr(wrapped).asInstanceOf[c.Expr[FilterPredicate]]
+    }
+
+    // coll.contains(getter) with a Scala collection of values
+    def extractMembership(tree: Tree): Option[(Tree, (String, Schema.Type, Boolean))] = {
+      val (coll, elem) = tree match {
+        case Apply(Select(coll, TermName("contains")), List(elem))               => (coll, elem)
+        case Apply(TypeApply(Select(coll, TermName("contains")), _), List(elem)) => (coll, elem)
+        case _                                                                   => return None
+      }
+      (extractGetter(coll), extractGetter(elem)) match {
+        case (None, Some(g)) => Some((coll, g))
+        case _               => None
+      }
+    }
+
+    def membershipToPredicate(tree: Tree, negated: Boolean): c.Expr[FilterPredicate] = {
+      val Some((coll, (columnPath, fieldType, repeated))) = extractMembership(tree)
+      val (cType, cFn, toValue) = toColumn(fieldType, isNullLiteral = false)
+      val (s, v) = (TermName(c.freshName("values")), TermName(c.freshName("v")))
+      val param = ValDef(Modifiers(Flag.PARAM), v, TypeTree(), EmptyTree)
+      val add = Function(List(param), q"$s.add(${toValue(q"$v")}.asInstanceOf[$cType])")
+      val values = q"{ val $s = new _root_.java.util.HashSet[$cType](); $coll.foreach($add); $s }"
+      val ct = tq"$nsOp.Column[$cType] with $nsOp.SupportsEqNotEq"
+      val (opFn, cFnName) = (TermName(if (negated) "notIn" else "in"), TermName(cFn))
+      // values are only known at runtime and may be empty, which FilterApi rejects
+      val column = q"$nsApi.$cFnName($columnPath).asInstanceOf[$ct]"
+      c.Expr(q"_root_.me.lyh.parquet.avro.FilterPredicates.$opFn($column, $values, $repeated)")
+        .asInstanceOf[c.Expr[FilterPredicate]]
+    }
+
+    // flatten chains of the same logical operator, e.g. a && b && c
+    def flatten(tree: Tree, operator: String): Seq[Tree] = tree match {
+      case Apply(Select(l, op), List(r)) if op.toString == operator =>
+        flatten(l, operator) ++ flatten(r, operator)
+      case t => Seq(t)
+    }
+
+    // negations of predicates on repeated columns are pushed down to the leaves, since
+    // not(contains(p)) would drop records where only some elements match p
+    def applyToPredicate(tree: Tree, negated: Boolean): c.Expr[FilterPredicate] = {
+      val Apply(Select(lExpr, operator), List(rExpr)) = tree
 
       val logicalOp = logicalOps.get(operator.toString)
       if (logicalOp.isDefined) {
-        // expr1 AND|OR expr2
-        val (op, l, r) = (TermName(logicalOp.get), parse(lExpr), parse(rExpr))
-        c.Expr(q"$ns.FilterApi.$op($l, $r)").asInstanceOf[c.Expr[FilterPredicate]]
+        // expr1 AND|OR expr2 AND|OR ..., merging predicates on the same column
+        val op = (logicalOp.get, negated) match {
+          case ("and", true) => TermName("or")
+          case ("or", true)  => TermName("and")
+          case (o, _)        => TermName(o)
+        }
+        val ps = flatten(tree, operator.toString).map(parse(_, negated))
+        c.Expr(q"_root_.me.lyh.parquet.avro.FilterPredicates.$op(..$ps)")
+          .asInstanceOf[c.Expr[FilterPredicate]]
       } else {
         // expr1 COMP expr2
-        val (flipped, (fieldName, fieldType), valueExpr) =
+        val (flipped, (columnPath, fieldType, repeated), valueExpr) =
           (extractGetter(lExpr), extractGetter(rExpr)) match {
             case (Some(g), None) => (false, g, rExpr) // getter COMP value
             case (None, Some(g)) => (true, g, lExpr) // value COMP getter
@@ -114,7 +227,7 @@ object Predicate {
         if (operator.toString == "Boolean2boolean") {
           // implicit boolean predicate, e.g. (_.isValid)
           val predicateFn = mkPredicateFn(tq"java.lang.Boolean", "booleanColumn", q"true")
-          c.Expr(predicateFn(fieldName, "eq")).asInstanceOf[c.Expr[FilterPredicate]]
+          wrapRepeated(predicateFn(columnPath, if (negated) "notEq" else "eq"), repeated)
         } else {
           // value can be a null literal with no {toInt, toLong, ...} methods
           val isNullLiteral =
@@ -125,58 +238,45 @@ object Predicate {
               case _: Exception => false
             }
 
-          val predicateFn = fieldType match {
-            case t if numericTypes.contains(t) =>
-              val (cType, cFn, vFn) = numericTypes(t)
-              val cTypeName = tq"java.lang.${TypeName(cType)}"
-              val vFnName = TermName(vFn)
-              val nullCase = cq"_: NullPointerException => null"
-              val value = if (isNullLiteral) {
-                q"null"
-              } else {
-                q"(if (_root_.me.lyh.parquet.avro.Common.isNull($valueExpr)) null else try { $valueExpr.$vFnName } catch { case $nullCase })"
-              }
-              mkPredicateFn(cTypeName, cFn, value)
-
-            case Schema.Type.BOOLEAN =>
-              val value = if (isNullLiteral) q"null" else valueExpr
-              mkPredicateFn(tq"java.lang.Boolean", "booleanColumn", value)
-
-            case Schema.Type.STRING =>
-              val ns = q"_root_.org.apache.parquet.io.api"
-              val value = if (isNullLiteral) q"null" else q"$ns.Binary.fromString($valueExpr)"
-              mkPredicateFn(tq"$ns.Binary", "binaryColumn", value)
-
-            case _ => throw new RuntimeException("Unsupported value type: " + fieldType)
-          }
+          val (cType, cFn, toValue) = toColumn(fieldType, isNullLiteral)
+          val predicateFn = mkPredicateFn(cType, cFn, toValue(valueExpr))
 
           if (!compareOps.contains(operator.toString)) {
             throw new RuntimeException("Unsupported operator type: " + operator)
           }
           val op = compareOps(operator.toString)
           val realOp = if (flipped) flip(op) else op
-          c.Expr(predicateFn(fieldName, realOp)).asInstanceOf[c.Expr[FilterPredicate]]
+          val finalOp = if (negated) inverseOps(realOp) else realOp
+          wrapRepeated(predicateFn(columnPath, finalOp), repeated)
         }
       }
     }
 
-    def selectToPredicate(tree: Tree): c.Expr[FilterPredicate] = {
+    def selectToPredicate(tree: Tree, negated: Boolean): c.Expr[FilterPredicate] = {
       val Select(expr, operator) = tree
       if (operator.toString == "unary_$bang") {
-        val p = parse(expr)
-        c.Expr(q"$nsApi.not($p)").asInstanceOf[c.Expr[FilterPredicate]]
+        if (extractMembership(expr).isDefined) {
+          membershipToPredicate(expr, !negated)
+        } else {
+          parse(expr, !negated)
+        }
       } else {
         throw new RuntimeException("Unknown unary operator: " + operator)
       }
     }
 
-    def parse(tree: Tree): c.Expr[FilterPredicate] = {
-      tree match {
-        case Apply(_, _)  => applyToPredicate(tree)
-        case Select(_, _) => selectToPredicate(tree)
-        case _            => throw new RuntimeException("Invalid expression: " + tree)
+    def parse(tree: Tree, negated: Boolean = false): c.Expr[FilterPredicate] =
+      if (negated && !hasRepeated(tree)) {
+        val p = parse(tree)
+        c.Expr(q"$nsApi.not($p)").asInstanceOf[c.Expr[FilterPredicate]]
+      } else {
+        tree match {
+          case t if extractMembership(t).isDefined => membershipToPredicate(t, negated)
+          case Apply(_, _)                         => applyToPredicate(tree, negated)
+          case Select(_, _)                        => selectToPredicate(tree, negated)
+          case _ => throw new RuntimeException("Invalid expression: " + tree)
+        }
       }
-    }
 
     val Function(_, body) = p.tree
     parse(body)
@@ -0,0 +1,179 @@
+package me.lyh.parquet.avro
+
+import org.apache.avro.generic.GenericData
+import org.apache.parquet.avro.AvroReadSupport
+import org.apache.parquet.column.Dictionary
+import org.apache.parquet.conf.ParquetConfiguration
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.filter2.predicate.{FilterPredicate, LogicalInverseRewriter}
+import org.apache.parquet.filter2.recordlevel.{
+  FilteringGroupConverter,
+  IncrementallyUpdatedFilterPredicate,
+  IncrementallyUpdatedFilterPredicateBuilder,
+  IncrementallyUpdatedFilterPredicateEvaluator,
+  IncrementallyUpdatedFilterPredicateResetter
+}
+import org.apache.parquet.hadoop.ParquetReader
+import org.apache.parquet.hadoop.api.ReadSupport
+import org.apache.parquet.hadoop.api.ReadSupport.ReadContext
+import org.apache.parquet.hadoop.metadata.ColumnPath
+import org.apache.parquet.io.{ColumnIOFactory, InputFile, PrimitiveColumnIO}
+import org.apache.parquet.io.api._
+import org.apache.parquet.schema.MessageType
+
+import java.{util => ju}
+import scala.collection.JavaConverters._
+
+/**
+ * [[AvroReadSupport]] that evaluates `predicate` on decoded column values while records are
+ * assembled. Columns are decoded in file order, and once the predicate columns are decoded, values
+ * of the remaining top-level fields of non-matching records are dropped instead of being built into
+ * Avro objects.
+ */
+class PredicateReadSupport[T](model: GenericData, predicate: FilterPredicate)
+    extends AvroReadSupport[T](model) {
+  private val rewritten = LogicalInverseRewriter.rewrite(predicate)
+
+  override def prepareForRead(
+    configuration: ParquetConfiguration,
+    keyValueMetaData: ju.Map[String, String],
+    fileSchema: MessageType,
+    readContext: ReadContext
+  ): RecordMaterializer[T] = {
+    val materializer =
+      super.prepareForRead(configuration, keyValueMetaData, fileSchema, readContext)
+    val schema = readContext.getRequestedSchema
+    // leaves are in file order, the order in which values are decoded
+    val leaves = new ColumnIOFactory().getColumnIO(schema, fileSchema, false).getLeaves
+    val builder = new IncrementallyUpdatedFilterPredicateBuilder(leaves)
+    val filter = builder.build(rewritten)
+    val columns = builder.getValueInspectorsByColumn.keySet
+    val lastColumn = leaves.asScala.lastIndexWhere { l =>
+      columns.contains(ColumnPath.get(l.getColumnDescriptor.getPath: _*))
+    }
+    // top-level fields decoded after the last predicate column can be dropped
+    val skippable = leaves.asScala.drop(lastColumn + 1).map(_.getIndexFieldPath.head).toSet --
+      leaves.asScala.take(lastColumn + 1).map(_.getIndexFieldPath.head)
+    new PredicateRecordMaterializer(materializer, leaves, builder, filter, skippable)
+  }
+}
+
+object PredicateReadSupport {
+
+  /**
+   * Builder of [[ParquetReader]]s with [[PredicateReadSupport]]. `predicate` is also used to drop
+   * row groups and pages, but not records, which are filtered by the read support.
+   */
+  def builder[T](file: InputFile, predicate: FilterPredicate): Builder[T] =
+    new Builder[T](file, predicate)
+
+  class Builder[T] private[avro] (file: InputFile, predicate: FilterPredicate)
+      extends ParquetReader.Builder[T](file) {
+    private var model: GenericData = _
+
+    withFilter(FilterCompat.get(predicate))
+
+    def withDataModel(model: GenericData): Builder[T] = {
+      this.model = model
+      this
+    }
+
+    override protected def getReadSupport: ReadSupport[T] =
+      new PredicateReadSupport[T](model, predicate)
+
+    // records are filtered by the read support, `withConf` may have reset this
+    override def build(): ParquetReader[T] = {
+      useRecordFilter(false)
+      super.build()
+    }
+  }
+}
+
+private class PredicateRecordMaterializer[T](
+  delegate: RecordMaterializer[T],
+  leaves: ju.List[PrimitiveColumnIO],
+  builder: IncrementallyUpdatedFilterPredicateBuilder,
+  filter: IncrementallyUpdatedFilterPredicate,
+  skippable: Set[Int]
+) extends RecordMaterializer[T] {
+  // whether the predicate is evaluated for the current record, and its result
+  private var evaluated = false
+  private var matches = false
+
+  private val rootConverter = {
+    val leavesByPath = leaves.asScala
+      .map(l => (l.getIndexFieldPath.toSeq.map(Int.box).asJava: ju.List[Integer]) -> l)
+      .toMap
+      .asJava
+    new FilteringGroupConverter(
+      new RootConverter(delegate.getRootConverter),
+      ju.Collections.emptyList(),
+      builder.getValueInspectorsByColumn,
+      leavesByPath
+    )
+  }
+
+  private def skip: Boolean = {
+    if (!evaluated) {
+      matches = IncrementallyUpdatedFilterPredicateEvaluator.evaluate(filter)
+      evaluated = true
+    }
+    !matches
+  }
+
+  // null skips the record
+  override def getCurrentRecord: T = if (skip) null.asInstanceOf[T] else delegate.getCurrentRecord
+
+  override def skipCurrentRecord(): Unit = delegate.skipCurrentRecord()
+
+  override def getRootConverter: GroupConverter = rootConverter
+
+  private def gate(converter: Converter): Converter =
+    if (converter.isPrimitive) {
+      new SkippingPrimitiveConverter(converter.asPrimitiveConverter())
+    } else {
+      new SkippingGroupConverter(converter.asGroupConverter())
+    }
+
+  private class RootConverter(delegate: GroupConverter) extends GroupConverter {
+    // converters are requested once per leaf and must be the same for the same field
+    private val converters = new ju.HashMap[Int, Converter]()
+
+    override def getConverter(fieldIndex: Int): Converter =
+      converters.computeIfAbsent(
+        fieldIndex,
+        i => if (skippable(i)) gate(delegate.getConverter(i)) else delegate.getConverter(i)
+      )
+
+    override def start(): Unit = {
+      IncrementallyUpdatedFilterPredicateResetter.reset(filter)
+      evaluated = false
+      delegate.start()
+    }
+    override def end(): Unit = delegate.end()
+  }
+
+  private class SkippingGroupConverter(delegate: GroupConverter) extends GroupConverter {
+    private val converters = new ju.HashMap[Int, Converter]()
+
+    override def getConverter(fieldIndex: Int): Converter =
+      converters.computeIfAbsent(fieldIndex, i => gate(delegate.getConverter(i)))
+
+    override def start(): Unit = if (!skip) delegate.start()
+    override def end(): Unit = if (!skip) delegate.end()
+  }
+
+  private class SkippingPrimitiveConverter(delegate: PrimitiveConverter)
+      extends PrimitiveConverter {
+    override def hasDictionarySupport: Boolean = delegate.hasDictionarySupport
+    override def setDictionary(dictionary: Dictionary): Unit = delegate.setDictionary(dictionary)
+    override def addValueFromDictionary(dictionaryId: Int): Unit =
+      if (!skip) delegate.addValueFromDictionary(dictionaryId)
+    override def addBinary(value: Binary): Unit = if (!skip) delegate.addBinary(value)
+    override def addBoolean(value: Boolean): Unit = if (!skip) delegate.addBoolean(value)
+    override def addDouble(value: Double): Unit = if (!skip) delegate.addDouble(value)
+    override def addFloat(value: Float): Unit = if (!skip) delegate.addFloat(value)
+    override def addInt(value: Int): Unit = if (!skip) delegate.addInt(value)
+    override def addLong(value: Long): Unit = if (!skip) delegate.addLong(value)
+  }
+}
@@ -1,8 +1,9 @@
 package me.lyh.parquet.avro
 
-import org.apache.avro.Schema
+import org.apache.avro.{Schema, SchemaNormalization}
 import org.apache.avro.specific.{SpecificRecord => SR}
 
+import java.util.concurrent.ConcurrentHashMap
 import scala.collection.JavaConverters._
 import scala.language.experimental.macros
 import scala.reflect.macros._
@@ -20,18 +21,38 @@ object Projection {
       .getMethod("getClassSchema")
       .invoke(null)
       .asInstanceOf[Schema]
-    val schemaString = schema.toString(false)
     val columnPaths = g.map(Common.treeToField(c)(schema, _)._1)
 
-    c.Expr[Schema](q"_root_.me.lyh.parquet.avro.Projection.project($schemaString, ..$columnPaths)")
+    // Project at compile time, so that only the projection is parsed at runtime
+    val projection =
+      try createProjection(schema, columnPaths.toSet)
+      catch {
+        case e: RuntimeException => c.abort(c.enclosingPosition, e.getMessage)
+      }
+    val projectionString = projection.toString(false)
+
+    c.Expr[Schema](q"_root_.me.lyh.parquet.avro.Projection.parse($projectionString)")
   }
 
+  // Projections are deterministic, so they are shared, keyed by schema and field paths
+  private val projections = new ConcurrentHashMap[(String, Set[String]), Schema]()
+  private val parsed = new ConcurrentHashMap[String, Schema]()
+
+  /**
+   * Project `schema` to `fields`, e.g. `"address.zip"` for nested fields. Results are cached and
+   * shared by all callers with the same arguments, and must not be modified.
+   */
   def project(schema: String, fields: String*): Schema =
-    createProjection(new Schema.Parser().parse(schema), fields.toSet)
+    projections.computeIfAbsent(
+      (schema, fields.toSet),
+      k => createProjection(new Schema.Parser().parse(k._1), k._2)
+    )
 
-  private val rand = new java.util.Random()
+  /** Parse a projection generated by [[Projection.apply]]. Results are cached and shared. */
+  def parse(projection: String): Schema =
+    parsed.computeIfAbsent(projection, s => new Schema.Parser().parse(s))
 
-  private def createProjection(
+  private[avro] def createProjection(
     schema: Schema,
     fields: Set[String],
     parentFieldName: Option[String] = None
@@ -75,8 +96,12 @@ object Projection {
     }
 
     // Avro gets confused when the same class is projected differently in multiple fields.
-    // Appending a random suffix circumvent this problem.
-    val r = rand.nextInt(Int.MaxValue).toString
+    // Appending a suffix derived from the projected fields circumvents this problem, while
+    // keeping names stable across calls and JVMs.
+    val fingerprint =
+      Schema.createRecord(schema.getName, schema.getDoc, schema.getNamespace, false)
+    fingerprint.setFields(pFields.map(copyField(_)).asJava)
+    val r = java.lang.Long.toUnsignedString(SchemaNormalization.parsingFingerprint64(fingerprint))
     val projection =
       Schema.createRecord(schema.getName + r, schema.getDoc, schema.getNamespace, false)
     projection.setFields(pFields.asJava)
@@ -109,6 +134,9 @@ object Projection {
   private def copyField(schema: Schema, field: Schema.Field): Schema.Field =
     new Schema.Field(field.name(), schema, field.doc(), field.defaultVal())
 
+  // fields can only be added to one record
+  private def copyField(field: Schema.Field): Schema.Field = copyField(field.schema(), field)
+
   private def fullFieldName(parentFieldName: Option[String], fieldName: String): Some[String] =
     parentFieldName match {
       case Some(parent) => Some(parent + "." + fieldName)
@@ -0,0 +1,306 @@
+package me.lyh.parquet.avro
+
+import org.apache.avro.Schema
+import org.apache.avro.compiler.specific.SpecificCompiler._
+import org.apache.avro.specific.{SpecificRecord => SR}
+import org.apache.hadoop.conf.Configuration
+import org.apache.parquet.conf.ParquetConfiguration
+import org.apache.parquet.hadoop.api.{InitContext, ReadSupport}
+import org.apache.parquet.hadoop.api.ReadSupport.ReadContext
+import org.apache.parquet.io.api.{Converter, GroupConverter, RecordMaterializer}
+import org.apache.parquet.schema.{GroupType, MessageType, Type}
+
+import java.{util => ju}
+import scala.collection.JavaConverters._
+import scala.language.experimental.macros
+import scala.reflect.macros._
+
+/**
+ * [[ReadSupport]] for specific records, with converters generated by [[SpecificReadSupport.apply]]
+ * that set fields with the record's setters.
+ */
+abstract class SpecificReadSupport[T](schema: Schema) extends ReadSupport[T] {
+  override def init(context: InitContext): ReadContext = {
+    val fileSchema = context.getFileSchema
+    new ReadContext(
+      new MessageType(fileSchema.getName, SpecificReadSupport.project(fileSchema, schema))
+    )
+  }
+
+  override def prepareForRead(
+    configuration: Configuration,
+    keyValueMetaData: ju.Map[String, String],
+    fileSchema: MessageType,
+    readContext: ReadContext
+  ): RecordMaterializer[T] = materializer(readContext)
+
+  override def prepareForRead(
+    configuration: ParquetConfiguration,
+    keyValueMetaData: ju.Map[String, String],
+    fileSchema: MessageType,
+    readContext: ReadContext
+  ): RecordMaterializer[T] = materializer(readContext)
+
+  private def materializer(readContext: ReadContext): RecordMaterializer[T] = {
+    val root = newConverter(readContext.getRequestedSchema)
+    new RecordMaterializer[T] {
+      override def getCurrentRecord: T = root.get
+      override def getRootConverter: GroupConverter = root
+    }
+  }
+
+  protected def newConverter(schema: GroupType): SpecificReadSupport.RecordConverter[T]
+}
+
+object SpecificReadSupport {
+
+  /**
+   * [[ReadSupport]] for `T`, optionally projected to the fields of getters `g`, e.g.
+   * `SpecificReadSupport[User](_.getEmail, _.getAddress.getZip)`. Fields that are not projected or
+   * not in the file are left unset. Map and non-null union fields are not supported.
+   */
+  def apply[T <: SR](g: (T => Any)*): SpecificReadSupport[T] = macro applyImpl[T]
+
+  def applyImpl[T <: SR: c.WeakTypeTag](
+    c: blackbox.Context
+  )(g: c.Expr[(T => Any)]*): c.Expr[SpecificReadSupport[T]] = {
+    import c.universe._
+
+    val tpe = implicitly[WeakTypeTag[T]].tpe
+    val schema = Class
+      .forName(tpe.typeSymbol.fullName)
+      .getMethod("getClassSchema")
+      .invoke(null)
+      .asInstanceOf[Schema]
+    val projection =
+      if (g.isEmpty) schema
+      else {
+        val columnPaths = g.map(Common.treeToField(c)(schema, _)._1)
+        try Projection.createProjection(schema, columnPaths.toSet)
+        catch {
+          case e: RuntimeException => c.abort(c.enclosingPosition, e.getMessage)
+        }
+      }
+    val projectionString = projection.toString(false)
+
+    val pkg = q"_root_.me.lyh.parquet.avro.SpecificReadSupport"
+    val parquet = q"_root_.org.apache.parquet"
+
+    def unsupported(field: String, s: Schema): Nothing =
+      c.abort(c.enclosingPosition, s"Unsupported schema for field $field: $s")
+
+    def classType(s: Schema): Tree = tq"${c.mirror.staticClass(s.getFullName)}"
+
+    // Java type of a value in a list, i.e. boxed
+    def elementType(field: String, s: Schema): Tree = s.getType match {
+      case Schema.Type.INT                   => tq"_root_.java.lang.Integer"
+      case Schema.Type.LONG                  => tq"_root_.java.lang.Long"
+      case Schema.Type.FLOAT                 => tq"_root_.java.lang.Float"
+      case Schema.Type.DOUBLE                => tq"_root_.java.lang.Double"
+      case Schema.Type.BOOLEAN               => tq"_root_.java.lang.Boolean"
+      case Schema.Type.STRING if isString(s) => tq"_root_.java.lang.String"
+      case Schema.Type.STRING                => tq"_root_.java.lang.CharSequence"
+      case Schema.Type.BYTES                 => tq"_root_.java.nio.ByteBuffer"
+      case Schema.Type.ENUM | Schema.Type.FIXED | Schema.Type.RECORD => classType(s)
+      case Schema.Type.ARRAY =>
+        tq"_root_.java.util.List[${elementType(field, nonNull(field, s.getElementType))}]"
+      case _ => unsupported(field, s)
+    }
+
+    // Converter of a value of schema `s` in the original schema and `p` in the projection,
+    // passing the value to `set`
+    def converter(field: String, s: Schema, p: Schema, boxed: Boolean, set: Tree => Tree): Tree = {
+      def primitive(method: String, tpe: Tree, value: Tree => Tree): Tree = {
+        val v = TermName(c.freshName("v"))
+        q"""
+          new $parquet.io.api.PrimitiveConverter {
+            override def ${TermName(method)}($v: $tpe): Unit = ${set(value(q"$v"))}
+          }
+        """
+      }
+      def box(module: Tree)(v: Tree): Tree = if (boxed) q"$module.box($v)" else v
+      if (s.getLogicalType != null) unsupported(field, s)
+      s.getType match {
+        case Schema.Type.INT => primitive("addInt", tq"_root_.scala.Int", box(q"_root_.scala.Int"))
+        case Schema.Type.LONG =>
+          primitive("addLong", tq"_root_.scala.Long", box(q"_root_.scala.Long"))
+        case Schema.Type.FLOAT =>
+          primitive("addFloat", tq"_root_.scala.Float", box(q"_root_.scala.Float"))
+        case Schema.Type.DOUBLE =>
+          primitive("addDouble", tq"_root_.scala.Double", box(q"_root_.scala.Double"))
+        case Schema.Type.BOOLEAN =>
+          primitive("addBoolean", tq"_root_.scala.Boolean", box(q"_root_.scala.Boolean"))
+        case Schema.Type.STRING if isString(s) =>
+          primitive("addBinary", tq"$parquet.io.api.Binary", v => q"$v.toStringUsingUTF8")
+        case Schema.Type.STRING =>
+          primitive(
+            "addBinary",
+            tq"$parquet.io.api.Binary",
+            v => q"new _root_.org.apache.avro.util.Utf8($v.getBytes)"
+          )
+        case Schema.Type.BYTES =>
+          primitive(
+            "addBinary",
+            tq"$parquet.io.api.Binary",
+            v => q"_root_.java.nio.ByteBuffer.wrap($v.getBytes)"
+          )
+        case Schema.Type.ENUM =>
+          val cls = c.mirror.staticModule(s.getFullName)
+          primitive(
+            "addBinary",
+            tq"$parquet.io.api.Binary",
+            v => q"$cls.valueOf($v.toStringUsingUTF8)"
+          )
+        case Schema.Type.FIXED =>
+          primitive(
+            "addBinary",
+            tq"$parquet.io.api.Binary",
+            v => q"new ${classType(s)}($v.getBytes)"
+          )
+        case Schema.Type.RECORD =>
+          val r = TermName(c.freshName("r"))
+          record(s, p, q"($r: ${classType(s)}) => ${set(q"$r")}")
+        case Schema.Type.ARRAY =>
+          val es = nonNull(field, s.getElementType)
+          val ep = nonNull(field, p.getElementType)
+          val tpe = elementType(field, es)
+          val l = TermName(c.freshName("l"))
+          val setList = q"($l: _root_.java.util.List[$tpe]) => ${set(q"$l")}"
+          val element = converter(field, es, ep, boxed = true, v => q"current.add($v)")
+          q"""
+            new $pkg.ListConverter[$tpe](t.asGroupType, $setList) {
+              override protected def newElementConverter(t: $parquet.schema.Type) = $element
+            }
+          """
+        case _ => unsupported(field, s)
+      }
+    }
+
+    // converter of record `s`, projected to `p`, with its parquet type in scope as `t`, like all
+    // converters of nested types
+    def record(s: Schema, p: Schema, set: Tree): Tree = {
+      val cls = classType(s)
+      val cases = p.getFields.asScala.map { pf =>
+        val f = s.getField(pf.name())
+        val setter = TermName(generateSetMethod(s, f))
+        val nullable = f.schema().getType == Schema.Type.UNION
+        val conv = converter(
+          f.name(),
+          nonNull(f.name(), f.schema()),
+          nonNull(f.name(), pf.schema()),
+          nullable,
+          v => q"current.$setter($v)"
+        )
+        cq"${Literal(Constant(pf.name()))} => $conv"
+      }
+      q"""
+        new $pkg.RecordConverter[$cls](t.asGroupType, $set) {
+          override protected def newRecord(): $cls = new $cls()
+          override protected def newConverter(t: $parquet.schema.Type): $parquet.io.api.Converter =
+            t.getName match {
+              case ..$cases
+              case n => throw new _root_.java.lang.IllegalArgumentException("Unknown field: " + n)
+            }
+        }
+      """
+    }
+
+    def isString(s: Schema): Boolean = s.getProp("avro.java.string") == "String"
+
+    def nonNull(field: String, s: Schema): Schema =
+      if (s.getType != Schema.Type.UNION) {
+        s
+      } else {
+        s.getTypes.asScala.filter(_.getType != Schema.Type.NULL).toList match {
+          case x :: Nil if s.getTypes.size() == 2 => x
+          case _                                  => unsupported(field, s)
+        }
+      }
+
+    val root = record(schema, projection, q"(_: $tpe) => ()")
+    c.Expr[SpecificReadSupport[T]](q"""
+      new _root_.me.lyh.parquet.avro.SpecificReadSupport[$tpe](
+        _root_.me.lyh.parquet.avro.Projection.parse($projectionString)
+      ) {
+        override protected def newConverter(t: $parquet.schema.GroupType): $pkg.RecordConverter[$tpe] =
+          $root
+      }
+    """)
+  }
+
+  /** Converter of a record, passed to `set` when complete. Used by generated code. */
+  abstract class RecordConverter[T](schema: GroupType, set: T => Unit) extends GroupConverter {
+    protected var current: T = _
+    // created lazily, since subclasses are not initialized yet in this constructor
+    private lazy val converters = schema.getFields.asScala.map(newConverter).toArray
+
+    protected def newRecord(): T
+    protected def newConverter(field: Type): Converter
+
+    def get: T = current
+
+    override def getConverter(fieldIndex: Int): Converter = converters(fieldIndex)
+    override def start(): Unit = current = newRecord()
+    override def end(): Unit = set(current)
+  }
+
+  /**
+   * Converter of a list in the 2-level layout of parquet-avro, or the 3-level layout of the parquet
+   * specification, passed to `set` when complete. Used by generated code.
+   */
+  abstract class ListConverter[E](schema: GroupType, set: ju.List[E] => Unit)
+      extends GroupConverter {
+    protected var current: ju.List[E] = _
+    private lazy val converter = {
+      val repeated = schema.getType(0)
+      if (isElement(repeated)) {
+        newElementConverter(repeated)
+      } else {
+        val element = newElementConverter(repeated.asGroupType().getType(0))
+        new GroupConverter {
+          private var size = 0
+          override def getConverter(fieldIndex: Int): Converter = element
+          override def start(): Unit = size = current.size()
+          // an element that is not set is null
+          override def end(): Unit = if (current.size() == size) current.add(null.asInstanceOf[E])
+        }
+      }
+    }
+
+    protected def newElementConverter(element: Type): Converter
+
+    override def getConverter(fieldIndex: Int): Converter = converter
+    override def start(): Unit = current = new ju.ArrayList[E]()
+    override def end(): Unit = set(current)
+  }
+
+  // same rules as parquet-avro for lists without an Avro schema to compare with
+  private def isElement(repeated: Type): Boolean =
+    repeated.isPrimitive || repeated.asGroupType().getFieldCount > 1 ||
+      repeated.getName == "array" || repeated.getName.endsWith("_tuple")
+
+  // fields of `group` in the order of `schema`, and only those in both
+  private def project(group: GroupType, schema: Schema): ju.List[Type] =
+    schema.getFields.asScala
+      .filter(f => group.containsField(f.name()))
+      .map(f => project(group.getType(f.name()), f.schema()))
+      .asJava
+
+  private def project(tpe: Type, schema: Schema): Type = schema.getType match {
+    case Schema.Type.UNION =>
+      project(tpe, schema.getTypes.asScala.find(_.getType != Schema.Type.NULL).get)
+    case Schema.Type.RECORD =>
+      tpe.asGroupType().withNewFields(project(tpe.asGroupType(), schema))
+    case Schema.Type.ARRAY =>
+      val repeated = tpe.asGroupType().getType(0)
+      val projected =
+        if (isElement(repeated)) {
+          project(repeated, schema.getElementType)
+        } else {
+          val element = repeated.asGroupType().getType(0)
+          repeated.asGroupType().withNewFields(project(element, schema.getElementType))
+        }
+      tpe.asGroupType().withNewFields(projected)
+    case _ => tpe
+  }
+}
@@ -0,0 +1,211 @@
+package me.lyh.parquet.avro
+
+import me.lyh.parquet.avro.schema.{Color, ColumnTestRecord, Id, TestRecord}
+import org.apache.avro.Schema
+import org.apache.avro.generic.GenericData
+import org.apache.avro.specific.SpecificData
+import org.apache.avro.util.ClassSecurityValidator
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.apache.parquet.avro.{AvroParquetReader, AvroParquetWriter, AvroReadSupport}
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.filter2.predicate.FilterPredicate
+import org.apache.parquet.hadoop.util.HadoopInputFile
+import org.scalatest.BeforeAndAfterAll
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.nio.ByteBuffer
+import java.util.UUID
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+class PredicateReaderTest extends AnyFlatSpec with Matchers with BeforeAndAfterAll {
+  private val tmpDir = sys.props("java.io.tmpdir")
+  private val parquetPath: Path = new Path(tmpDir, "test-parquet-" + UUID.randomUUID())
+  private val originalClassSecurityValidator = ClassSecurityValidator.getGlobal()
+
+  private def testRecord(i: Int): TestRecord =
+    new TestRecord(i, i.toLong, i.toFloat, i.toDouble, i % 2 == 0, "s" + i)
+
+  private val records = (0 until 100).map { i =>
+    ColumnTestRecord
+      .newBuilder()
+      .setEnumField(Color.values()(i % 3))
+      .setBytesField(ByteBuffer.wrap(Array[Byte](0, i.toByte)))
+      .setFixedField(new Id(Array[Byte](0, 0, 0, i.toByte)))
+      .setNestedField(if (i % 5 == 0) null else testRecord(i))
+      .setRepeatedField((0 until i % 4).map(j => Int.box(i * 10 + j)).asJava)
+      .setRepeatedRecordField((0 until i % 3).map(j => testRecord(i * 10 + j)).asJava)
+      .build()
+  }
+
+  private val id = new Id(Array[Byte](0, 0, 0, 42))
+
+  override def beforeAll(): Unit = {
+    ClassSecurityValidator.setGlobal(
+      ClassSecurityValidator.composite(
+        originalClassSecurityValidator,
+        ClassSecurityValidator
+          .builder()
+          .add(classOf[ColumnTestRecord])
+          .add(classOf[TestRecord])
+          .add(classOf[Color])
+          .add(classOf[Id])
+          .build()
+      )
+    )
+
+    val writer = AvroParquetWriter
+      .builder[ColumnTestRecord](parquetPath)
+      .withSchema(ColumnTestRecord.getClassSchema)
+      .build()
+    records.foreach(writer.write)
+    writer.close()
+  }
+
+  override def afterAll(): Unit =
+    try {
+      FileSystem.get(new Configuration()).delete(parquetPath, false)
+    } finally {
+      ClassSecurityValidator.setGlobal(originalClassSecurityValidator)
+    }
+
+  private def read(predicates: Predicates[ColumnTestRecord]): Seq[ColumnTestRecord] = {
+    val reader = AvroParquetReader
+      .builder[ColumnTestRecord](parquetPath)
+      .withFilter(FilterCompat.get(predicates.parquet))
+      .build()
+    val b = Seq.newBuilder[ColumnTestRecord]
+    var r = reader.read()
+    while (r != null) {
+      b += r
+      r = reader.read()
+    }
+    reader.close()
+    b.result()
+  }
+
+  // missing columns read as nulls, so an empty result may hide a wrong column path
+  private def check(predicates: Predicates[ColumnTestRecord], expected: Seq[ColumnTestRecord]) = {
+    expected should not be empty
+    read(predicates) shouldBe expected
+  }
+
+  "Parquet reader" should "filter enum, bytes and fixed columns" in {
+    val ps = Seq(
+      Predicate.build[ColumnTestRecord](_.getEnumField == Color.GREEN),
+      Predicate.build[ColumnTestRecord] { r =>
+        Set(Color.RED, Color.BLUE).contains(r.getEnumField)
+      },
+      Predicate.build[ColumnTestRecord](_.getBytesField == ByteBuffer.wrap(Array[Byte](0, 7))),
+      Predicate.build[ColumnTestRecord](_.getFixedField == id)
+    )
+    ps.foreach(p => check(p, records.filter(p.native)))
+  }
+
+  it should "filter nested columns" in {
+    val p = Predicate.build[ColumnTestRecord] { r =>
+      r.getNestedField.getIntField >= 10 && r.getNestedField.getIntField < 20
+    }
+    check(p, records.filter(r => r.getNestedField != null && p.native(r)))
+  }
+
+  it should "filter repeated columns by any element" in {
+    check(
+      Predicate.build[ColumnTestRecord](_.getRepeatedField.get(0) == 501),
+      records.filter(_.getRepeatedField.contains(501))
+    )
+    check(
+      Predicate.build[ColumnTestRecord] { r =>
+        r.getRepeatedRecordField.get(0).getStringField.toString == "s411"
+      },
+      records.filter(_.getRepeatedRecordField.asScala.exists(_.getIntField == 411))
+    )
+
+    // negations apply to elements, i.e. records with any element that does not match
+    check(
+      Predicate.build[ColumnTestRecord](r => !(r.getRepeatedField.get(0) < 970)),
+      records.filter(_.getRepeatedField.asScala.exists(_ >= 970))
+    )
+  }
+
+  it should "filter empty sets" in {
+    val colors = Set.empty[Color]
+    val ints = Set.empty[Int]
+    read(Predicate.build[ColumnTestRecord](r => colors.contains(r.getEnumField))) shouldBe empty
+    read(Predicate.build[ColumnTestRecord](r => !colors.contains(r.getEnumField))) shouldBe records
+    // matches null nested records too
+    read(Predicate.build[ColumnTestRecord] { r =>
+      !ints.contains(r.getNestedField.getIntField)
+    }) shouldBe records
+    read(Predicate.build[ColumnTestRecord] { r =>
+      ints.contains(r.getRepeatedField.get(0))
+    }) shouldBe empty
+    check(
+      Predicate.build[ColumnTestRecord](r => !ints.contains(r.getRepeatedField.get(0))),
+      records.filter(!_.getRepeatedField.isEmpty)
+    )
+  }
+
+  "PredicateReadSupport" should "filter records" in {
+    val ps = Seq(
+      Predicate.build[ColumnTestRecord](_.getEnumField == Color.GREEN),
+      Predicate.build[ColumnTestRecord] { r =>
+        r.getFixedField == id || r.getEnumField == Color.RED
+      },
+      Predicate.build[ColumnTestRecord] { r =>
+        r.getNestedField.getIntField >= 10 && r.getNestedField.getIntField < 20
+      }
+    )
+    ps.init.foreach(p => readFiltered(p.parquet) shouldBe records.filter(p.native))
+    readFiltered(ps.last.parquet) shouldBe
+      records.filter(r => r.getNestedField != null && ps.last.native(r))
+
+    readFiltered(Predicate[ColumnTestRecord](r => !(r.getRepeatedField.get(0) < 970))) shouldBe
+      records.filter(_.getRepeatedField.asScala.exists(_ >= 970))
+  }
+
+  it should "not build fields of non-matching records" in {
+    val built = mutable.Buffer.empty[Int]
+    val model = new SpecificData() {
+      override def newRecord(old: AnyRef, schema: Schema): AnyRef = {
+        val r = super.newRecord(old, schema)
+        if (schema.getName == "ColumnTestRecord") built += 0
+        if (schema.getName == "TestRecord") built += 1
+        r
+      }
+    }
+    val p = Predicate.build[ColumnTestRecord](_.getEnumField == Color.GREEN)
+    val expected = records.filter(p.native)
+    // the compatibility converter does not use the data model to create records
+    val conf = new Configuration()
+    conf.setBoolean(AvroReadSupport.AVRO_COMPATIBILITY, false)
+    readFiltered(p.parquet, model, conf) shouldBe expected
+
+    // every record is started, but nested records are only built for matching ones
+    built.count(_ == 0) shouldBe records.size
+    built.count(_ == 1) shouldBe expected
+      .map(r => (if (r.getNestedField == null) 0 else 1) + r.getRepeatedRecordField.size())
+      .sum
+  }
+
+  private def readFiltered(
+    predicate: FilterPredicate,
+    model: GenericData = null,
+    conf: Configuration = new Configuration()
+  ): Seq[ColumnTestRecord] = {
+    val reader = PredicateReadSupport
+      .builder[ColumnTestRecord](HadoopInputFile.fromPath(parquetPath, conf), predicate)
+      .withDataModel(model)
+      .build()
+    val b = Seq.newBuilder[ColumnTestRecord]
+    var r = reader.read()
+    while (r != null) {
+      b += r
+      r = reader.read()
+    }
+    reader.close()
+    b.result()
+  }
+}
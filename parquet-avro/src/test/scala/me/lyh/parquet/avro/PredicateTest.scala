@@ -1,13 +1,16 @@
 package me.lyh.parquet.avro
 
 import java.{lang => jl}
-import me.lyh.parquet.avro.schema.{TestRecord => TR}
+import me.lyh.parquet.avro.schema.{Color, ColumnTestRecord => CTR, Id, TestRecord => TR}
 import org.apache.parquet.filter2.predicate.{FilterApi => F}
 import org.apache.parquet.io.api.Binary
 import org.scalatest._
 import org.scalatest.flatspec.AnyFlatSpec
 import org.scalatest.matchers.should.Matchers
 
+import java.nio.ByteBuffer
+import scala.collection.JavaConverters._
+
 class PredicateTest extends AnyFlatSpec with Matchers {
   val intCol = F.intColumn("int_field")
   val longCol = F.longColumn("long_field")
@@ -203,6 +206,121 @@ class PredicateTest extends AnyFlatSpec with Matchers {
     } shouldEqual F.and(F.not(F.eq(boolCol, trueVal)), intGt)
   }
 
+  it should "support set membership" in {
+    def ints(xs: Int*) = xs.map(jl.Integer.valueOf).toSet.asJava
+    def strs(xs: String*) = xs.map(Binary.fromString).toSet.asJava
+
+    Predicate[TR](r => Set(1, 2, 3).contains(r.getIntField)) shouldEqual F.in(intCol, ints(1, 2, 3))
+    Predicate[TR](r => !Set(1, 2).contains(r.getIntField)) shouldEqual F.notIn(intCol, ints(1, 2))
+    val values = Seq("a", "b")
+    Predicate[TR](r => values.contains(r.getStringField.toString)) shouldEqual
+      F.in(strCol, strs("a", "b"))
+    Predicate[TR] { r =>
+      Set(10L, 20L).contains(r.getLongField) && r.getIntField > 10
+    } shouldEqual F.and(
+      F.in(longCol, Set(10L, 20L).map(jl.Long.valueOf).asJava),
+      F.gt(intCol, jl.Integer.valueOf(10))
+    )
+  }
+
+  it should "merge equalities on the same column" in {
+    Predicate[TR] { r =>
+      r.getIntField == 1 || r.getIntField == 2 || r.getIntField == 3
+    } shouldEqual F.in(intCol, Set(1, 2, 3).map(jl.Integer.valueOf).asJava)
+
+    Predicate[TR] { r =>
+      r.getIntField == 1 || r.getLongField < 20L || Set(2, 3).contains(r.getIntField)
+    } shouldEqual F.or(
+      F.in(intCol, Set(1, 2, 3).map(jl.Integer.valueOf).asJava),
+      F.lt(longCol, jl.Long.valueOf(20))
+    )
+
+    // null checks are not merged
+    Predicate[TR](r => r.getIntField == 1 || r.getIntField == null) shouldEqual F.or(
+      F.eq(intCol, jl.Integer.valueOf(1)),
+      F.eq(intCol, null.asInstanceOf[jl.Integer])
+    )
+  }
+
+  it should "merge ranges on the same column" in {
+    def int(x: Int) = jl.Integer.valueOf(x)
+    val longLt = F.lt(longCol, jl.Long.valueOf(20))
+
+    Predicate[TR] { r =>
+      r.getIntField >= 10 && r.getLongField < 20L && r.getIntField < 100
+    } shouldEqual F.and(F.and(F.gtEq(intCol, int(10)), F.lt(intCol, int(100))), longLt)
+
+    Predicate[TR] { r =>
+      r.getIntField > 10 && r.getIntField >= 10 && r.getIntField >= 5 && 100 > r.getIntField &&
+      r.getIntField <= 200
+    } shouldEqual F.and(F.gt(intCol, int(10)), F.lt(intCol, int(100)))
+
+    Predicate[TR] { r =>
+      r.getIntField >= 10 && r.getIntField > 10 && r.getIntField < 100 && r.getIntField <= 100
+    } shouldEqual F.and(F.gt(intCol, int(10)), F.lt(intCol, int(100)))
+
+    Predicate[TR](r => r.getIntField >= 10 && r.getIntField <= 10) shouldEqual F.eq(intCol, int(10))
+
+    Predicate[TR] { r =>
+      r.getStringField.toString >= "a" && r.getStringField.toString < "b" &&
+      r.getStringField.toString >= "aa"
+    } shouldEqual F.and(
+      F.gtEq(strCol, Binary.fromString("aa")),
+      F.lt(strCol, Binary.fromString("b"))
+    )
+  }
+
+  it should "support enum, bytes and fixed columns" in {
+    val enumCol = F.binaryColumn("enum_field")
+    Predicate[CTR](_.getEnumField == Color.RED) shouldEqual F.eq(enumCol, Binary.fromString("RED"))
+    Predicate[CTR](r => Set(Color.RED, Color.BLUE).contains(r.getEnumField)) shouldEqual
+      F.in(enumCol, Set("RED", "BLUE").map(Binary.fromString).asJava)
+
+    val bytes = Array[Byte](1, 2, 3)
+    Predicate[CTR](_.getBytesField == ByteBuffer.wrap(bytes)) shouldEqual
+      F.eq(F.binaryColumn("bytes_field"), Binary.fromConstantByteArray(bytes))
+
+    val id = new Id(Array[Byte](1, 2, 3, 4))
+    Predicate[CTR](_.getFixedField == id) shouldEqual
+      F.eq(F.binaryColumn("fixed_field"), Binary.fromConstantByteArray(id.bytes()))
+    Predicate[CTR](_.getFixedField != null) shouldEqual
+      F.notEq(F.binaryColumn("fixed_field"), null.asInstanceOf[Binary])
+  }
+
+  it should "support nested and repeated columns" in {
+    val int10 = jl.Integer.valueOf(10)
+    val nestedCol = F.intColumn("nested_field.int_field")
+    val repeatedCol = F.intColumn("repeated_field.array")
+
+    Predicate[CTR](_.getNestedField.getIntField > 10) shouldEqual F.gt(nestedCol, int10)
+    Predicate[CTR](_.getRepeatedField.get(0) > 10) shouldEqual FilterPredicates.contains(
+      F.gt(repeatedCol, int10)
+    )
+    Predicate[CTR](_.getRepeatedRecordField.get(0).getStringField.toString == "a") shouldEqual
+      FilterPredicates.contains(
+        F.eq(F.binaryColumn("repeated_record_field.array.string_field"), Binary.fromString("a"))
+      )
+    Predicate[CTR](r => Set(1, 2).contains(r.getRepeatedField.get(0))) shouldEqual
+      FilterPredicates.contains(F.in(repeatedCol, Set(1, 2).map(jl.Integer.valueOf).asJava))
+  }
+
+  it should "push negations down to repeated columns" in {
+    val int10 = jl.Integer.valueOf(10)
+    val nestedCol = F.intColumn("nested_field.int_field")
+    val repeatedCol = F.intColumn("repeated_field.array")
+
+    Predicate[CTR](r => !(r.getRepeatedField.get(0) > 10)) shouldEqual
+      FilterPredicates.contains(F.ltEq(repeatedCol, int10))
+    Predicate[CTR](r => !Set(1, 2).contains(r.getRepeatedField.get(0))) shouldEqual
+      FilterPredicates.contains(F.notIn(repeatedCol, Set(1, 2).map(jl.Integer.valueOf).asJava))
+    Predicate[CTR] { r =>
+      !(r.getRepeatedField.get(0) == 10 && r.getNestedField.getIntField > 10)
+    } shouldEqual F.or(
+      FilterPredicates.contains(F.notEq(repeatedCol, int10)),
+      F.not(F.gt(nestedCol, int10))
+    )
+  }
+
   "Predicate.build(p: T => Boolean)" should "build Scala lambda and FilterPredicate" in {
     val record = new TR(10, 20L, 30.0f, 40.0, true, "test")
 
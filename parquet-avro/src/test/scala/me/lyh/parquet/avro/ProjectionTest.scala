@@ -42,4 +42,19 @@ class ProjectionTest extends AnyFlatSpec with Matchers {
       .getElementType
       .getField("amount")
   }
+
+  it should "be deterministic and cached" in {
+    val s1 = Projection[User](_.getEmail, _.getAddress.getZip)
+    val s2 = Projection[User](_.getAddress.getZip, _.getEmail)
+    s1 should be theSameInstanceAs s2
+
+    val s3 = Projection.project(schema.toString, "email", "address.zip")
+    s3 shouldEqual s1
+    s3.getName shouldBe s1.getName
+    s3 should be theSameInstanceAs Projection.project(schema.toString, "address.zip", "email")
+
+    // different projections of the same record have different names
+    val s4 = Projection[User](_.getEmail, _.getAddress.getCity)
+    s4.getName should not be s1.getName
+  }
 }
@@ -0,0 +1,124 @@
+package me.lyh.parquet.avro
+
+import me.lyh.parquet.avro.schema._
+import org.apache.avro.specific.{SpecificRecord => SR}
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.apache.parquet.avro.{AvroParquetWriter, AvroWriteSupport}
+import org.apache.parquet.hadoop.ParquetReader
+import org.apache.parquet.hadoop.api.ReadSupport
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.nio.ByteBuffer
+import java.util.UUID
+import scala.collection.JavaConverters._
+
+class SpecificReadSupportTest extends AnyFlatSpec with Matchers {
+  private val tmpDir = sys.props("java.io.tmpdir")
+
+  private def account(i: Int): Account = new Account(i, "checking", "a" + i, i * 100)
+
+  private val users = (0 until 20).map { i =>
+    User
+      .newBuilder()
+      .setId(i)
+      .setLastName("last" + i)
+      .setFirstName("first" + i)
+      .setEmail(s"user$i@example.com")
+      .setAccounts((0 until i % 3).map(j => account(i * 10 + j)).asJava)
+      .setAddress(new Address("street1", "street2", "city", "state", "zip" + i, "country"))
+      .build()
+  }
+
+  private val testRecords = (0 until 20).map { i =>
+    if (i % 4 == 0) new TestRecord()
+    else new TestRecord(i, i.toLong, i.toFloat, i.toDouble, i % 2 == 0, "s" + i)
+  }
+
+  private val columnTestRecords = (0 until 20).map { i =>
+    ColumnTestRecord
+      .newBuilder()
+      .setEnumField(Color.values()(i % 3))
+      .setBytesField(ByteBuffer.wrap(Array[Byte](0, i.toByte)))
+      .setFixedField(new Id(Array[Byte](0, 0, 0, i.toByte)))
+      .setNestedField(if (i % 5 == 0) null else testRecords(i))
+      .setRepeatedField((0 until i % 4).map(j => Int.box(i * 10 + j)).asJava)
+      .setRepeatedRecordField((0 until i % 3).map(j => testRecords((i + j) % 20)).asJava)
+      .build()
+  }
+
+  private def roundTrip[T <: SR](
+    records: Seq[T],
+    readSupport: ReadSupport[T],
+    conf: Configuration = new Configuration()
+  ): Seq[T] = {
+    val path = new Path(tmpDir, "test-parquet-" + UUID.randomUUID())
+    try {
+      val writer = AvroParquetWriter
+        .builder[T](path)
+        .withSchema(records.head.getSchema)
+        .withConf(conf)
+        .build()
+      records.foreach(writer.write)
+      writer.close()
+
+      val reader = ParquetReader.builder(readSupport, path).build()
+      val b = Seq.newBuilder[T]
+      var r = reader.read()
+      while (r != null) {
+        b += r
+        r = reader.read()
+      }
+      reader.close()
+      b.result()
+    } finally {
+      FileSystem.get(conf).delete(path, false)
+    }
+  }
+
+  "SpecificReadSupport" should "read records" in {
+    roundTrip(users, SpecificReadSupport[User]()) shouldBe users
+    roundTrip(testRecords, SpecificReadSupport[TestRecord]()) shouldBe testRecords
+    roundTrip(columnTestRecords, SpecificReadSupport[ColumnTestRecord]()) shouldBe
+      columnTestRecords
+  }
+
+  it should "read lists in the 3-level layout" in {
+    val conf = new Configuration()
+    conf.setBoolean(AvroWriteSupport.WRITE_OLD_LIST_STRUCTURE, false)
+    roundTrip(users, SpecificReadSupport[User](), conf) shouldBe users
+    roundTrip(columnTestRecords, SpecificReadSupport[ColumnTestRecord](), conf) shouldBe
+      columnTestRecords
+  }
+
+  it should "read lists of nullable elements in the 3-level layout" in {
+    val records = (0 until 20).map { i =>
+      NullableListTestRecord
+        .newBuilder()
+        .setIntList((0 until i % 4).map(j => if (j % 2 == 1) null else Int.box(i * 10 + j)).asJava)
+        .setRecordList((0 until i % 3).map(j => if (j == 1) null else testRecords(i)).asJava)
+        .build()
+    }
+    val conf = new Configuration()
+    conf.setBoolean(AvroWriteSupport.WRITE_OLD_LIST_STRUCTURE, false)
+    roundTrip(records, SpecificReadSupport[NullableListTestRecord](), conf) shouldBe records
+  }
+
+  it should "read projections" in {
+    val actual = roundTrip(
+      users,
+      SpecificReadSupport[User](_.getEmail, _.getAddress.getZip, _.getAccounts.get(0).getAmount)
+    )
+    actual.size shouldBe users.size
+    actual.zip(users).foreach { case (a, u) =>
+      a.getId shouldBe 0
+      a.getLastName shouldBe null
+      a.getEmail.toString shouldBe u.getEmail
+      a.getAddress.getZip.toString shouldBe u.getAddress.getZip
+      a.getAddress.getCity shouldBe null
+      a.getAccounts.asScala.map(_.getAmount) shouldBe u.getAccounts.asScala.map(_.getAmount)
+      a.getAccounts.asScala.foreach(_.getName shouldBe null)
+    }
+  }
+}
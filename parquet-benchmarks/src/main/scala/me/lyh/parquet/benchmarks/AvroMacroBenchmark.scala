@@ -0,0 +1,38 @@
+package me.lyh.parquet.benchmarks
+
+import me.lyh.parquet.avro.{Predicate, Predicates, Projection}
+import me.lyh.parquet.avro.schema.{TestRecord, User}
+import org.apache.avro.Schema
+import org.apache.parquet.filter2.predicate.FilterPredicate
+import org.openjdk.jmh.annotations._
+
+import java.util.concurrent.TimeUnit
+
+/** Runtime cost of the code expanded by the `Projection` and `Predicate` macros. */
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class AvroMacroBenchmark {
+  private val predicates: Predicates[TestRecord] =
+    Predicate.build[TestRecord](r => r.getIntField > 10 && r.getLongField < 100L)
+  private val record: TestRecord = {
+    val r = new TestRecord()
+    r.setIntField(42)
+    r.setLongField(42L)
+    r
+  }
+
+  @Benchmark
+  def projection(): Schema =
+    Projection[User](_.getEmail, _.getAddress.getZip, _.getAccounts.get(0).getAmount)
+
+  @Benchmark
+  def predicate(): FilterPredicate =
+    Predicate[User](x => x.getId > 10 && x.getId < 100 && x.getEmail == "neville@spotify.com")
+
+  @Benchmark
+  def predicateNative(): Boolean = predicates.native(record)
+}
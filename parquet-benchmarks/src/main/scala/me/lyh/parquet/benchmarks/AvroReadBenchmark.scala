@@ -0,0 +1,88 @@
+package me.lyh.parquet.benchmarks
+
+import me.lyh.parquet.avro.SpecificReadSupport
+import me.lyh.parquet.avro.schema.{Account, Address, User}
+import org.apache.avro.util.ClassSecurityValidator
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.avro.{AvroParquetReader, AvroParquetWriter}
+import org.apache.parquet.hadoop.{ParquetFileWriter, ParquetReader}
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+import java.util.concurrent.TimeUnit
+import scala.collection.JavaConverters._
+
+/** Specific records read with parquet-avro and with converters generated by the macro. */
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class AvroReadBenchmark {
+  private var path: Path = _
+  private val originalClassSecurityValidator = ClassSecurityValidator.getGlobal()
+
+  @Setup
+  def setup(): Unit = {
+    // parquet-avro instantiates specific classes by name
+    ClassSecurityValidator.setGlobal(
+      ClassSecurityValidator.composite(
+        originalClassSecurityValidator,
+        ClassSecurityValidator
+          .builder()
+          .add(classOf[User])
+          .add(classOf[Account])
+          .add(classOf[Address])
+          .build()
+      )
+    )
+
+    path = ExampleData.tempPath()
+    val writer = AvroParquetWriter
+      .builder[User](path)
+      .withSchema(User.getClassSchema)
+      .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+      .build()
+    (0 until ExampleState.Rows).foreach(i => writer.write(user(i)))
+    writer.close()
+  }
+
+  @TearDown
+  def tearDown(): Unit = {
+    ExampleData.delete(path)
+    ClassSecurityValidator.setGlobal(originalClassSecurityValidator)
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readAvro(bh: Blackhole): Unit =
+    consume(AvroParquetReader.builder[User](path).build(), bh)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readSpecific(bh: Blackhole): Unit =
+    consume(ParquetReader.builder(SpecificReadSupport[User](), path).build(), bh)
+
+  private def user(i: Int): User = {
+    val accounts = (0 until i % 4).map(j => new Account(j, "checking", s"account$j", i * j))
+    User
+      .newBuilder()
+      .setId(i)
+      .setLastName(s"last$i")
+      .setFirstName(s"first$i")
+      .setEmail(s"user$i@example.com")
+      .setAccounts(accounts.asJava)
+      .setAddress(new Address("street1", "street2", "city", "state", s"${i % 100000}", "US"))
+      .build()
+  }
+
+  private def consume[T](reader: ParquetReader[T], bh: Blackhole): Unit = {
+    var r = reader.read()
+    while (r != null) {
+      bh.consume(r)
+      r = reader.read()
+    }
+    reader.close()
+  }
+}
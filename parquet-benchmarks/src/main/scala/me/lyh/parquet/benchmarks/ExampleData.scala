@@ -0,0 +1,91 @@
+package me.lyh.parquet.benchmarks
+
+import com.google.protobuf.ByteString
+import me.lyh.parquet.tensorflow.{ExampleParquetWriter, Schema}
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.hadoop.ParquetFileWriter
+import org.tensorflow.example._
+
+import java.io.File
+import java.util.{Random, UUID}
+import scala.collection.JavaConverters._
+
+/** Synthetic Example datasets with a mix of INT64, FLOAT and BYTES features. */
+object ExampleData {
+  private val types = Array(Schema.Type.INT64, Schema.Type.FLOAT, Schema.Type.BYTES)
+
+  // average number of values of REPEATED features
+  private val repeatedValues = 4
+
+  def schema(features: Int, repetition: Schema.Repetition): Schema =
+    (0 until features)
+      .foldLeft(Schema.newBuilder()) { (b, i) =>
+        val name = featureName(i)
+        val tpe = types(i % types.length)
+        repetition match {
+          case Schema.Repetition.REQUIRED => b.required(name, tpe)
+          case Schema.Repetition.OPTIONAL => b.optional(name, tpe)
+          case Schema.Repetition.REPEATED => b.repeated(name, tpe)
+        }
+      }
+      .named("Benchmark")
+
+  def featureName(i: Int): String = s"${types(i % types.length).name().toLowerCase}_$i"
+
+  def examples(schema: Schema, n: Int, bytesSize: Int, seed: Long = 0L): IndexedSeq[Example] = {
+    val random = new Random(seed)
+    // a small pool of BYTES values, so that low cardinality features are dictionary encoded
+    val pool = Array.fill(64) {
+      val b = new Array[Byte](bytesSize)
+      random.nextBytes(b)
+      ByteString.copyFrom(b)
+    }
+    (0 until n).map { _ =>
+      val features = Features.newBuilder()
+      schema.getFields.asScala.foreach { field =>
+        val count = field.getRepetition match {
+          case Schema.Repetition.REQUIRED => 1
+          case Schema.Repetition.OPTIONAL => if (random.nextInt(4) == 0) 0 else 1
+          case Schema.Repetition.REPEATED => random.nextInt(2 * repeatedValues + 1)
+        }
+        if (count > 0) {
+          val feature = Feature.newBuilder()
+          field.getType match {
+            case Schema.Type.INT64 =>
+              val b = Int64List.newBuilder()
+              (0 until count).foreach(_ => b.addValue(random.nextLong()))
+              feature.setInt64List(b)
+            case Schema.Type.FLOAT =>
+              val b = FloatList.newBuilder()
+              (0 until count).foreach(_ => b.addValue(random.nextFloat()))
+              feature.setFloatList(b)
+            case Schema.Type.BYTES =>
+              val b = BytesList.newBuilder()
+              (0 until count).foreach(_ => b.addValue(pool(random.nextInt(pool.length))))
+              feature.setBytesList(b)
+          }
+          features.putFeature(field.getName, feature.build())
+        }
+      }
+      Example.newBuilder().setFeatures(features).build()
+    }
+  }
+
+  def tempPath(): Path = {
+    val file = new File(sys.props("java.io.tmpdir"), s"parquet-benchmarks-${UUID.randomUUID()}")
+    file.deleteOnExit()
+    new Path(file.toURI)
+  }
+
+  def write(path: Path, schema: Schema, examples: Seq[Example]): Unit = {
+    val writer = ExampleParquetWriter
+      .builder(path)
+      .withSchema(schema)
+      .withWriteMode(ParquetFileWriter.Mode.OVERWRITE)
+      .build()
+    examples.foreach(writer.write)
+    writer.close()
+  }
+
+  def delete(path: Path): Unit = new File(path.toUri).delete()
+}
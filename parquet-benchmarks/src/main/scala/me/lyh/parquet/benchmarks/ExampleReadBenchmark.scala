@@ -0,0 +1,124 @@
+package me.lyh.parquet.benchmarks
+
+import me.lyh.parquet.tensorflow._
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.hadoop.ParquetReader
+import org.openjdk.jmh.annotations._
+import org.openjdk.jmh.infra.Blackhole
+
+import java.io.OutputStream
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+import scala.collection.JavaConverters._
+
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ExampleReadBenchmark extends ExampleState {
+  private var path: Path = _
+  private var projection: java.util.List[String] = _
+
+  @Setup
+  def setup(): Unit = {
+    setupData()
+    path = ExampleData.tempPath()
+    ExampleData.write(path, schema, examples)
+    // a quarter of the features, of all types
+    projection = (0 until math.max(features / 4, 1)).map(ExampleData.featureName).asJava
+  }
+
+  @TearDown
+  def tearDown(): Unit = ExampleData.delete(path)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def read(bh: Blackhole): Unit =
+    consume(ExampleParquetReader.builder(path).build(), bh)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readProjection(bh: Blackhole): Unit =
+    consume(ExampleParquetReader.builder(path).withFields(projection).build(), bh)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readBytes(bh: Blackhole): Unit =
+    consume(ExampleParquetReader.bytesBuilder(path).build(), bh)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readBatch(bh: Blackhole): Unit = {
+    val reader = ExampleBatchReader.builder(path).build()
+    var batch = reader.read()
+    while (batch != null) {
+      bh.consume(batch.size())
+      batch = reader.read()
+    }
+    reader.close()
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readRecord(bh: Blackhole): Unit = {
+    val reader = ExampleRecordReader.builder(path).build()
+    var record = reader.read()
+    while (record != null) {
+      bh.consume(record)
+      record = reader.read()
+    }
+    reader.close()
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def readVisitor(bh: Blackhole): Unit = {
+    val visitor = new BlackholeVisitor(bh)
+    val reader = ExampleRecordReader.builder(path).build()
+    while (reader.read(visitor)) {}
+    reader.close()
+  }
+
+  // Parquet to TFRecord through serialized Example bytes
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def exportTFRecord(): Long =
+    TFRecordExporter.export(ExampleParquetReader.bytesBuilder(path).build(), NullOutputStream)
+
+  // Parquet to TFRecord through Example protos and toByteArray
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def exportTFRecordNaive(): Unit = {
+    val reader = ExampleParquetReader.builder(path).build()
+    val writer = new TFRecordWriter(NullOutputStream)
+    var example = reader.read()
+    while (example != null) {
+      writer.write(example.toByteArray)
+      example = reader.read()
+    }
+    writer.close()
+    reader.close()
+  }
+
+  private def consume[T](reader: ParquetReader[T], bh: Blackhole): Unit = {
+    var r = reader.read()
+    while (r != null) {
+      bh.consume(r)
+      r = reader.read()
+    }
+    reader.close()
+  }
+}
+
+private class BlackholeVisitor(bh: Blackhole) extends ExampleVisitor {
+  override def onInt64(fieldId: Int, value: Long): Unit = bh.consume(value)
+  override def onFloat(fieldId: Int, value: Float): Unit = bh.consume(value)
+  override def onBytes(fieldId: Int, value: ByteBuffer): Unit = bh.consume(value.remaining())
+}
+
+private object NullOutputStream extends OutputStream {
+  override def write(b: Int): Unit = ()
+  override def write(b: Array[Byte], off: Int, len: Int): Unit = ()
+}
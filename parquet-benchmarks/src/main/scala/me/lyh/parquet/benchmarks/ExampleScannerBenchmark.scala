@@ -0,0 +1,25 @@
+package me.lyh.parquet.benchmarks
+
+import me.lyh.parquet.tensorflow.ExampleScanner
+import org.openjdk.jmh.annotations._
+
+import java.util.concurrent.TimeUnit
+
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ExampleScannerBenchmark extends ExampleState {
+  @Setup
+  def setup(): Unit = setupData()
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def scan(): ExampleScanner = {
+    val scanner = new ExampleScanner("Benchmark")
+    examples.foreach(scanner.scan)
+    scanner
+  }
+}
@@ -0,0 +1,31 @@
+package me.lyh.parquet.benchmarks
+
+import me.lyh.parquet.tensorflow.Schema
+import org.openjdk.jmh.annotations._
+import org.tensorflow.example.Example
+
+/** Dataset parameters shared by Example benchmarks. */
+@State(Scope.Benchmark)
+abstract class ExampleState {
+  @Param(Array("8", "64"))
+  var features: Int = _
+
+  @Param(Array("REQUIRED", "REPEATED"))
+  var repetition: Schema.Repetition = _
+
+  @Param(Array("16", "1024"))
+  var bytesSize: Int = _
+
+  var schema: Schema = _
+  var examples: IndexedSeq[Example] = _
+
+  def setupData(): Unit = {
+    schema = ExampleData.schema(features, repetition)
+    examples = ExampleData.examples(schema, ExampleState.Rows, bytesSize)
+  }
+}
+
+object ExampleState {
+  // benchmarks report per record throughput and allocation with @OperationsPerInvocation(Rows)
+  final val Rows = 10000
+}
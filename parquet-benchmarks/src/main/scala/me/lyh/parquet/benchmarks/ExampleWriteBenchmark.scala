@@ -0,0 +1,29 @@
+package me.lyh.parquet.benchmarks
+
+import org.apache.hadoop.fs.Path
+import org.openjdk.jmh.annotations._
+
+import java.util.concurrent.TimeUnit
+
+@BenchmarkMode(Array(Mode.Throughput))
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+class ExampleWriteBenchmark extends ExampleState {
+  private var path: Path = _
+
+  @Setup
+  def setup(): Unit = {
+    setupData()
+    path = ExampleData.tempPath()
+  }
+
+  @TearDown
+  def tearDown(): Unit = ExampleData.delete(path)
+
+  @Benchmark
+  @OperationsPerInvocation(ExampleState.Rows)
+  def write(): Unit = ExampleData.write(path, schema, examples)
+}
@@ -25,4 +25,7 @@ object ExampleApp extends App {
   println(Predicate[User](x => x.getId > 10 && x.getId < 100))
   println(Predicate[User](x => !(x.getAccounts.get(0).getAmount > 10) && !(x.getId > 100)))
   println(Predicate[User](x => !(x.getAccounts.get(0).getAmount > 10 || x.getId > 100)))
+
+  println(Predicate[User](x => Set("SE", "US").contains(x.getAddress.getCountry.toString)))
+  println(Predicate[User](x => x.getId >= 10 && x.getId > 20 && x.getId < 100))
 }
@@ -0,0 +1,64 @@
+package me.lyh.parquet.tensorflow.examples
+
+import me.lyh.parquet.tensorflow.{ExampleParquetWriter, Schema, TFRecordConverter}
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.hadoop.metadata.CompressionCodecName
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.{Files, Paths}
+import scala.collection.JavaConverters._
+
+object TFRecordToParquet {
+  private val usage =
+    """Usage: TFRecordToParquet [options] <output> <input>...
+      |  --schema <file>       JSON schema, inferred from inputs if not set
+      |  --codec <codec>       compression codec, default SNAPPY
+      |  --parallelism <n>     checksum and inference threads, default available cores
+      |  --no-crc              skip record data checksums""".stripMargin
+
+  private case class Args(
+    schema: Option[String] = None,
+    codec: CompressionCodecName = CompressionCodecName.SNAPPY,
+    parallelism: Int = Runtime.getRuntime.availableProcessors(),
+    crc: Boolean = true,
+    paths: List[String] = Nil
+  )
+
+  private def parse(args: List[String], result: Args): Args = args match {
+    case "--schema" :: v :: tail => parse(tail, result.copy(schema = Some(v)))
+    case "--codec" :: v :: tail => parse(tail, result.copy(codec = CompressionCodecName.valueOf(v)))
+    case "--parallelism" :: v :: tail     => parse(tail, result.copy(parallelism = v.toInt))
+    case "--no-crc" :: tail               => parse(tail, result.copy(crc = false))
+    case opt :: _ if opt.startsWith("--") => sys.error(s"Unknown option $opt\n$usage")
+    case paths                            => result.copy(paths = paths)
+  }
+
+  def main(cmdArgs: Array[String]): Unit = {
+    val args = parse(cmdArgs.toList, Args())
+    if (args.paths.size < 2) {
+      System.err.println(usage)
+      sys.exit(1)
+    }
+    val output = new Path(args.paths.head)
+    val inputs = args.paths.tail.map(Paths.get(_))
+
+    val builder = TFRecordConverter
+      .builder(inputs.asJava)
+      .withParallelism(args.parallelism)
+      .withCrcCheck(args.crc)
+    args.schema.foreach { file =>
+      val json = new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8)
+      builder.withSchema(Schema.fromJson(json))
+    }
+
+    val start = System.nanoTime()
+    val converter = builder.build()
+    println(converter.getSchema.toJson)
+    val count = converter.convert(
+      ExampleParquetWriter.bytesBuilder(output).withCompressionCodec(args.codec)
+    )
+    val seconds = (System.nanoTime() - start) / 1e9
+    val bytes = inputs.map(Files.size).sum
+    println(f"Converted $count%d records in $seconds%.1fs, ${bytes / seconds / 1e6}%.1f MB/s")
+  }
+}
@@ -0,0 +1,126 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An {@link OutputFile} for local files that does not depend on Hadoop. Small writes, e.g. page
+ * headers, are buffered and large ones, e.g. compressed pages, go straight to the
+ * {@link FileChannel}.
+ */
+public class ChannelOutputFile implements OutputFile {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final Path path;
+
+  public ChannelOutputFile(Path path) {
+    this.path = path;
+  }
+
+  @Override
+  public PositionOutputStream create(long blockSizeHint) throws IOException {
+    return new ChannelOutputStream(FileChannel.open(
+        path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE));
+  }
+
+  @Override
+  public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+    return new ChannelOutputStream(FileChannel.open(
+        path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE));
+  }
+
+  @Override
+  public boolean supportsBlockSize() {
+    return false;
+  }
+
+  @Override
+  public long defaultBlockSize() {
+    return 0;
+  }
+
+  @Override
+  public String getPath() {
+    return path.toString();
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  private static class ChannelOutputStream extends PositionOutputStream {
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    // bytes written to the channel
+    private long written;
+    private boolean closed;
+
+    private ChannelOutputStream(FileChannel channel) {
+      this.channel = channel;
+    }
+
+    @Override
+    public long getPos() {
+      return written + buffer.position();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len <= buffer.remaining()) {
+        buffer.put(b, off, len);
+        return;
+      }
+      drain();
+      if (len < buffer.capacity()) {
+        buffer.put(b, off, len);
+      } else {
+        writeFully(ByteBuffer.wrap(b, off, len));
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!closed) {
+        closed = true;
+        try {
+          drain();
+        } finally {
+          channel.close();
+        }
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      writeFully(buffer);
+      buffer.clear();
+    }
+
+    private void writeFully(ByteBuffer b) throws IOException {
+      while (b.hasRemaining()) {
+        written += channel.write(b);
+      }
+    }
+  }
+}
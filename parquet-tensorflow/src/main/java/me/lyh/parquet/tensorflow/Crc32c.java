@@ -0,0 +1,77 @@
+package me.lyh.parquet.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.Checksum;
+
+/** CRC-32C (Castagnoli) checksum, which {@code java.util.zip} only provides since Java 9. */
+class Crc32c implements Checksum {
+  private static final int POLYNOMIAL = 0x82F63B78;
+  private static final int MASK_DELTA = 0xa282ead8;
+  // slicing-by-8 tables, T[0] is the classic byte-wise table
+  private static final int[][] T = new int[8][256];
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      int crc = i;
+      for (int j = 0; j < 8; j++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+      }
+      T[0][i] = crc;
+    }
+    for (int k = 1; k < 8; k++) {
+      for (int i = 0; i < 256; i++) {
+        int crc = T[k - 1][i];
+        T[k][i] = (crc >>> 8) ^ T[0][crc & 0xff];
+      }
+    }
+  }
+
+  private int crc = 0xffffffff;
+
+  @Override
+  public void update(int b) {
+    crc = (crc >>> 8) ^ T[0][(crc ^ b) & 0xff];
+  }
+
+  @Override
+  public void update(byte[] b, int off, int len) {
+    update(ByteBuffer.wrap(b, off, len));
+  }
+
+  /** Update with the remaining bytes of {@code buffer} without changing its position. */
+  public void update(ByteBuffer buffer) {
+    ByteBuffer b = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int[] t0 = T[0], t1 = T[1], t2 = T[2], t3 = T[3];
+    int[] t4 = T[4], t5 = T[5], t6 = T[6], t7 = T[7];
+    int c = crc;
+    int i = b.position();
+    int end = b.limit();
+    for (; i + 8 <= end; i += 8) {
+      int lo = b.getInt(i) ^ c;
+      int hi = b.getInt(i + 4);
+      c = t7[lo & 0xff] ^ t6[(lo >>> 8) & 0xff] ^ t5[(lo >>> 16) & 0xff] ^ t4[lo >>> 24]
+          ^ t3[hi & 0xff] ^ t2[(hi >>> 8) & 0xff] ^ t1[(hi >>> 16) & 0xff] ^ t0[hi >>> 24];
+    }
+    for (; i < end; i++) {
+      c = (c >>> 8) ^ t0[(c ^ b.get(i)) & 0xff];
+    }
+    crc = c;
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xffffffffL;
+  }
+
+  @Override
+  public void reset() {
+    crc = 0xffffffff;
+  }
+
+  /** Masked CRC-32C as stored in TFRecord files. */
+  static int mask(long crc) {
+    int c = (int) crc;
+    return ((c >>> 15) | (c << 17)) + MASK_DELTA;
+  }
+}
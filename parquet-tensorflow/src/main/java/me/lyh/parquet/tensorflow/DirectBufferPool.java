@@ -0,0 +1,35 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A thread-safe pool of direct {@link ByteBuffer}s in native byte order, keyed by capacity.
+ * Buffers of a reader are all sized by its batch size, so exact capacity matches are the norm.
+ */
+public class DirectBufferPool {
+  private final ConcurrentHashMap<Integer, Queue<ByteBuffer>> buffers = new ConcurrentHashMap<>();
+
+  /** Get a cleared direct buffer in native byte order with exactly {@code capacity} bytes. */
+  public ByteBuffer acquire(int capacity) {
+    Preconditions.checkArgument(capacity >= 0, "Invalid capacity: %s", capacity);
+    Queue<ByteBuffer> queue = buffers.get(capacity);
+    ByteBuffer buffer = queue == null ? null : queue.poll();
+    if (buffer == null) {
+      buffer = ByteBuffer.allocateDirect(capacity);
+    }
+    buffer.clear();
+    return buffer.order(ByteOrder.nativeOrder());
+  }
+
+  /** Return a buffer to the pool. The caller must not use it afterwards. */
+  public void release(ByteBuffer buffer) {
+    Preconditions.checkArgument(buffer.isDirect(), "Not a direct buffer");
+    buffers.computeIfAbsent(buffer.capacity(), k -> new ConcurrentLinkedQueue<>()).offer(buffer);
+  }
+}
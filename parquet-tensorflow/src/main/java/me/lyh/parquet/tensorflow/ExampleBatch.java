@@ -0,0 +1,219 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.io.api.Binary;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of rows decoded into primitive column buffers, one {@link Column} per
+ * {@link Schema.Field}. Values of row {@code i} are stored in {@code [offsets[i], offsets[i + 1])}
+ * of each column. Buffers are reused across batches and only valid until the next read.
+ */
+public class ExampleBatch {
+  private static final int INITIAL_CAPACITY = 1024;
+
+  private final Schema schema;
+  private final Column[] columns;
+  private final Map<String, Integer> indices = new HashMap<>();
+  private int size = 0;
+
+  ExampleBatch(Schema schema) {
+    this.schema = schema;
+    List<Schema.Field> fields = schema.getFields();
+    columns = new Column[fields.size()];
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      indices.put(field.getName(), i);
+      switch (field.getType()) {
+        case INT64:
+          columns[i] = new Int64Column(field);
+          break;
+        case FLOAT:
+          columns[i] = new FloatColumn(field);
+          break;
+        case BYTES:
+          columns[i] = new BytesColumn(field);
+          break;
+      }
+    }
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getColumnCount() {
+    return columns.length;
+  }
+
+  public Column getColumn(int index) {
+    return columns[index];
+  }
+
+  public Column getColumn(String name) {
+    Integer index = indices.get(name);
+    Preconditions.checkArgument(index != null, "Invalid field: %s", name);
+    return columns[index];
+  }
+
+  void clear() {
+    size = 0;
+    for (Column column : columns) {
+      column.rollback(0);
+    }
+  }
+
+  // Discard values of a row that was started but never committed, e.g. filtered out
+  void rollback() {
+    for (Column column : columns) {
+      column.rollback(size);
+    }
+  }
+
+  void commit() {
+    size++;
+    for (Column column : columns) {
+      column.commit(size);
+    }
+  }
+
+  ////////////////////////////////////////
+
+  public abstract static class Column {
+    private final Schema.Field field;
+    private int[] offsets = new int[INITIAL_CAPACITY + 1];
+    // rows committed to the batch
+    private int size = 0;
+    // values of committed rows and the pending one
+    int count = 0;
+
+    Column(Schema.Field field) {
+      this.field = field;
+    }
+
+    public Schema.Field getField() {
+      return field;
+    }
+
+    /** Row offsets into the values of this column, valid in {@code [0, size]}. */
+    public int[] getOffsets() {
+      return offsets;
+    }
+
+    /** Number of values of all rows in the batch. */
+    public int getValueCount() {
+      return offsets[size];
+    }
+
+    public int getValueCount(int row) {
+      return offsets[row + 1] - offsets[row];
+    }
+
+    int getPendingCount(int size) {
+      return count - offsets[size];
+    }
+
+    void rollback(int size) {
+      this.size = size;
+      count = offsets[size];
+    }
+
+    void commit(int size) {
+      if (size >= offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+      offsets[size] = count;
+      this.size = size;
+    }
+
+    static int grow(int capacity, int required) {
+      return Math.max(capacity * 2, required);
+    }
+  }
+
+  public static class Int64Column extends Column {
+    private long[] values = new long[INITIAL_CAPACITY];
+
+    Int64Column(Schema.Field field) {
+      super(field);
+    }
+
+    public long[] getValues() {
+      return values;
+    }
+
+    void add(long value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, grow(values.length, count + 1));
+      }
+      values[count++] = value;
+    }
+  }
+
+  public static class FloatColumn extends Column {
+    private float[] values = new float[INITIAL_CAPACITY];
+
+    FloatColumn(Schema.Field field) {
+      super(field);
+    }
+
+    public float[] getValues() {
+      return values;
+    }
+
+    void add(float value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, grow(values.length, count + 1));
+      }
+      values[count++] = value;
+    }
+  }
+
+  /**
+   * {@code BYTES} values packed into a single byte slab. Value {@code j} is stored in
+   * {@code [valueOffsets[j], valueOffsets[j + 1])} of {@link #getData()}.
+   */
+  public static class BytesColumn extends Column {
+    private byte[] data = new byte[INITIAL_CAPACITY * 16];
+    private int[] valueOffsets = new int[INITIAL_CAPACITY + 1];
+
+    BytesColumn(Schema.Field field) {
+      super(field);
+    }
+
+    public byte[] getData() {
+      return data;
+    }
+
+    public int[] getValueOffsets() {
+      return valueOffsets;
+    }
+
+    public ByteBuffer getValue(int index) {
+      int start = valueOffsets[index];
+      return ByteBuffer.wrap(data, start, valueOffsets[index + 1] - start);
+    }
+
+    void add(Binary value) {
+      int length = value.length();
+      int start = valueOffsets[count];
+      if (start + length > data.length) {
+        data = Arrays.copyOf(data, grow(data.length, start + length));
+      }
+      value.toByteBuffer().get(data, start, length);
+      if (count + 1 == valueOffsets.length) {
+        valueOffsets = Arrays.copyOf(valueOffsets, valueOffsets.length * 2);
+      }
+      valueOffsets[++count] = start + length;
+    }
+  }
+}
@@ -0,0 +1,102 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.io.ParquetDecodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+
+class ExampleBatchConverter extends GroupConverter {
+  private final ExampleBatch batch;
+  private final Converter[] converters;
+
+  public ExampleBatchConverter(ExampleBatch batch) {
+    this.batch = batch;
+    converters = new Converter[batch.getColumnCount()];
+    for (int i = 0; i < converters.length; i++) {
+      ExampleBatch.Column column = batch.getColumn(i);
+      switch (column.getField().getType()) {
+        case INT64:
+          converters[i] = new Int64Converter((ExampleBatch.Int64Column) column);
+          break;
+        case FLOAT:
+          converters[i] = new FloatConverter((ExampleBatch.FloatColumn) column);
+          break;
+        case BYTES:
+          converters[i] = new BytesConverter((ExampleBatch.BytesColumn) column);
+          break;
+      }
+    }
+  }
+
+  @Override
+  public Converter getConverter(int fieldIndex) {
+    return converters[fieldIndex];
+  }
+
+  @Override
+  public void start() {
+    batch.rollback();
+  }
+
+  @Override
+  public void end() {
+    int size = batch.size();
+    for (int i = 0; i < converters.length; i++) {
+      ExampleBatch.Column column = batch.getColumn(i);
+      Schema.Field field = column.getField();
+      try {
+        field.getRepetition().checkSize(column.getPendingCount(size));
+      } catch (IllegalStateException e) {
+        String msg = String.format(
+            "Failed to decode %s#%s: %s", batch.getSchema().getName(), field.getName(),
+            e.getMessage());
+        throw new ParquetDecodingException(msg, e);
+      }
+    }
+  }
+
+  public ExampleBatch get() {
+    batch.commit();
+    return batch;
+  }
+
+  static class Int64Converter extends PrimitiveConverter {
+    private final ExampleBatch.Int64Column column;
+
+    Int64Converter(ExampleBatch.Int64Column column) {
+      this.column = column;
+    }
+
+    @Override
+    public void addLong(long value) {
+      column.add(value);
+    }
+  }
+
+  static class FloatConverter extends PrimitiveConverter {
+    private final ExampleBatch.FloatColumn column;
+
+    FloatConverter(ExampleBatch.FloatColumn column) {
+      this.column = column;
+    }
+
+    @Override
+    public void addFloat(float value) {
+      column.add(value);
+    }
+  }
+
+  static class BytesConverter extends PrimitiveConverter {
+    private final ExampleBatch.BytesColumn column;
+
+    BytesConverter(ExampleBatch.BytesColumn column) {
+      this.column = column;
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      column.add(value);
+    }
+  }
+}
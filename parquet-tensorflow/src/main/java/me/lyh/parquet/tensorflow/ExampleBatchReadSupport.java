@@ -0,0 +1,55 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.Map;
+
+class ExampleBatchReadSupport extends ReadSupport<ExampleBatch> {
+  private final ExampleReadSupport readSupport;
+
+  ExampleBatchReadSupport(ExampleReadSupport readSupport) {
+    this.readSupport = readSupport;
+  }
+
+  @Override
+  public ReadContext init(InitContext context) {
+    return readSupport.init(context);
+  }
+
+  @Override
+  public RecordMaterializer<ExampleBatch> prepareForRead(Configuration configuration,
+                                                         Map<String, String> keyValueMetaData,
+                                                         MessageType fileSchema,
+                                                         ReadContext readContext) {
+    return prepareForRead(
+        new HadoopParquetConfiguration(configuration), keyValueMetaData, fileSchema, readContext);
+  }
+
+  @Override
+  public RecordMaterializer<ExampleBatch> prepareForRead(ParquetConfiguration configuration,
+                                                         Map<String, String> keyValueMetaData,
+                                                         MessageType fileSchema,
+                                                         ReadContext readContext) {
+    return new RecordMaterializer<ExampleBatch>() {
+      private ExampleBatchConverter batchConverter = new ExampleBatchConverter(
+          new ExampleBatch(Schema.fromParquet(readContext.getRequestedSchema())));
+
+      @Override
+      public ExampleBatch getCurrentRecord() {
+        return batchConverter.get();
+      }
+
+      @Override
+      public GroupConverter getRootConverter() {
+        return batchConverter;
+      }
+    };
+  }
+}
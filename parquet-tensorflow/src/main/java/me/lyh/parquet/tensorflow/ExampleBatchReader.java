@@ -0,0 +1,128 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.InputFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Reads Example files as {@link ExampleBatch}es of primitive columns, without materializing
+ * {@link org.tensorflow.example.Example} protos.
+ */
+public class ExampleBatchReader implements Closeable {
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final ParquetReader<ExampleBatch> reader;
+  private final int batchSize;
+  private ExampleBatch batch;
+  // first row of the next file, read while completing the previous batch
+  private ExampleBatch pending;
+
+  private ExampleBatchReader(ParquetReader<ExampleBatch> reader, int batchSize) {
+    this.reader = reader;
+    this.batchSize = batchSize;
+  }
+
+  public static Builder builder(Path path) {
+    return new Builder(new ReaderBuilder(path));
+  }
+
+  public static Builder builder(InputFile file) {
+    return new Builder(new ReaderBuilder(file));
+  }
+
+  /**
+   * Read the next batch of up to {@code batchSize} rows, or {@code null} at the end of input.
+   * The returned batch is reused and only valid until the next call.
+   */
+  public ExampleBatch read() throws IOException {
+    if (pending != null) {
+      batch = pending;
+      pending = null;
+    } else if (batch != null) {
+      batch.clear();
+    }
+    while (batch == null || batch.size() < batchSize) {
+      ExampleBatch b = reader.read();
+      if (b == null) {
+        break;
+      }
+      if (batch != null && b != batch && batch.size() > 0) {
+        // every file has its own converter and therefore its own batch
+        pending = b;
+        break;
+      }
+      batch = b;
+    }
+    return batch == null || batch.size() == 0 ? null : batch;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  public static class Builder {
+    private final ReaderBuilder builder;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    private Builder(ReaderBuilder builder) {
+      this.builder = builder;
+    }
+
+    public Builder withSchema(Schema schema) {
+      builder.projection.setSchema(schema);
+      return this;
+    }
+
+    public Builder withFields(Collection<String> fields) {
+      builder.projection.setFields(fields);
+      return this;
+    }
+
+    public Builder withBatchSize(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "Invalid batch size: %s", batchSize);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    public Builder withConf(Configuration conf) {
+      builder.withConf(conf);
+      return this;
+    }
+
+    public Builder withFilter(FilterCompat.Filter filter) {
+      builder.withFilter(filter);
+      return this;
+    }
+
+    public ExampleBatchReader build() throws IOException {
+      return new ExampleBatchReader(builder.build(), batchSize);
+    }
+  }
+
+  // also used by ExampleRecordReader
+  static class ReaderBuilder extends ParquetReader.Builder<ExampleBatch> {
+    final ExampleProjection projection = new ExampleProjection();
+
+    ReaderBuilder(Path path) {
+      super(path);
+    }
+
+    ReaderBuilder(InputFile file) {
+      super(file);
+    }
+
+    @Override
+    protected ReadSupport<ExampleBatch> getReadSupport() {
+      return new ExampleBatchReadSupport(projection.newReadSupport());
+    }
+  }
+}
@@ -0,0 +1,294 @@
+package me.lyh.parquet.tensorflow;
+
+import com.google.protobuf.CodedOutputStream;
+import org.apache.parquet.io.ParquetDecodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serializes records straight into {@link org.tensorflow.example.Example} wire format in a
+ * reused buffer, byte for byte identical to {@code ExampleConverter} output.
+ */
+class ExampleBytesConverter extends GroupConverter {
+  // field 1 length-delimited, Example.features, Features.feature, map key and list values
+  private static final byte TAG_1 = 0x0a;
+  // field 2 length-delimited, map value
+  private static final byte TAG_2 = 0x12;
+
+  private final String name;
+  private final String[] names;
+  private final byte[][] keys;
+  private final Schema.Repetition[] repetitions;
+  private final ValueConverter[] converters;
+  private final int[] listSizes;
+  private final int[] entrySizes;
+  private byte[] buffer = new byte[1024];
+  private ByteBuffer output = ByteBuffer.wrap(buffer);
+
+  public ExampleBytesConverter(Schema schema) {
+    name = schema.getName();
+    List<Schema.Field> fields = schema.getFields();
+    int n = fields.size();
+    names = new String[n];
+    keys = new byte[n][];
+    repetitions = new Schema.Repetition[n];
+    converters = new ValueConverter[n];
+    listSizes = new int[n];
+    entrySizes = new int[n];
+    for (int i = 0; i < n; i++) {
+      Schema.Field field = fields.get(i);
+      names[i] = field.getName();
+      keys[i] = field.getName().getBytes(StandardCharsets.UTF_8);
+      repetitions[i] = field.getRepetition();
+      switch (field.getType()) {
+        case INT64:
+          converters[i] = new Int64Converter();
+          break;
+        case FLOAT:
+          converters[i] = new FloatConverter();
+          break;
+        case BYTES:
+          converters[i] = new BytesConverter();
+          break;
+      }
+    }
+  }
+
+  @Override
+  public Converter getConverter(int fieldIndex) {
+    return converters[fieldIndex];
+  }
+
+  @Override
+  public void start() {
+    for (ValueConverter converter : converters) {
+      converter.clear();
+    }
+  }
+
+  @Override
+  public void end() {
+    for (int i = 0; i < converters.length; i++) {
+      try {
+        repetitions[i].checkSize(converters[i].count);
+      } catch (IllegalStateException e) {
+        String msg = String.format("Failed to decode %s#%s: %s", name, names[i], e.getMessage());
+        throw new ParquetDecodingException(msg, e);
+      }
+    }
+
+    // compute message sizes bottom-up, then write top-down
+    int featuresSize = 0;
+    for (int i = 0; i < converters.length; i++) {
+      ValueConverter c = converters[i];
+      if (c.count == 0) {
+        continue;
+      }
+      int list = c.listSize();
+      int feature = 1 + varintSize(list) + list;
+      int key = keys[i].length;
+      int entry = 1 + varintSize(key) + key + 1 + varintSize(feature) + feature;
+      listSizes[i] = list;
+      entrySizes[i] = entry;
+      featuresSize += 1 + varintSize(entry) + entry;
+    }
+    int size = 1 + varintSize(featuresSize) + featuresSize;
+    if (buffer.length < size) {
+      buffer = new byte[Math.max(size, buffer.length * 2)];
+      output = ByteBuffer.wrap(buffer);
+    }
+
+    int pos = 0;
+    buffer[pos++] = TAG_1;
+    pos = writeVarint(buffer, pos, featuresSize);
+    for (int i = 0; i < converters.length; i++) {
+      ValueConverter c = converters[i];
+      if (c.count == 0) {
+        continue;
+      }
+      int list = listSizes[i];
+      buffer[pos++] = TAG_1;
+      pos = writeVarint(buffer, pos, entrySizes[i]);
+      buffer[pos++] = TAG_1;
+      pos = writeVarint(buffer, pos, keys[i].length);
+      System.arraycopy(keys[i], 0, buffer, pos, keys[i].length);
+      pos += keys[i].length;
+      buffer[pos++] = TAG_2;
+      pos = writeVarint(buffer, pos, 1 + varintSize(list) + list);
+      buffer[pos++] = c.kindTag;
+      pos = writeVarint(buffer, pos, list);
+      pos = c.writeList(buffer, pos);
+    }
+    output.clear();
+    output.limit(pos);
+  }
+
+  /** Serialized Example of the current record, valid until the next record. */
+  public ByteBuffer get() {
+    return output;
+  }
+
+  private static int varintSize(int value) {
+    return CodedOutputStream.computeUInt32SizeNoTag(value);
+  }
+
+  private static int writeVarint(byte[] b, int pos, long value) {
+    while ((value & ~0x7FL) != 0) {
+      b[pos++] = (byte) ((value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    b[pos++] = (byte) value;
+    return pos;
+  }
+
+  abstract static class ValueConverter extends PrimitiveConverter {
+    // Feature.kind field tag
+    private final byte kindTag;
+    int count;
+
+    ValueConverter(int kind) {
+      this.kindTag = (byte) (kind << 3 | 2);
+    }
+
+    void clear() {
+      count = 0;
+    }
+
+    // size of the BytesList, FloatList or Int64List message
+    abstract int listSize();
+
+    abstract int writeList(byte[] b, int pos);
+  }
+
+  static class Int64Converter extends ValueConverter {
+    private long[] values = new long[16];
+    private int payload;
+
+    Int64Converter() {
+      super(3);
+    }
+
+    @Override
+    public void addLong(long value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = value;
+      payload += CodedOutputStream.computeUInt64SizeNoTag(value);
+    }
+
+    @Override
+    void clear() {
+      super.clear();
+      payload = 0;
+    }
+
+    @Override
+    int listSize() {
+      return 1 + varintSize(payload) + payload;
+    }
+
+    @Override
+    int writeList(byte[] b, int pos) {
+      b[pos++] = TAG_1;
+      pos = writeVarint(b, pos, payload);
+      for (int i = 0; i < count; i++) {
+        pos = writeVarint(b, pos, values[i]);
+      }
+      return pos;
+    }
+  }
+
+  static class FloatConverter extends ValueConverter {
+    private float[] values = new float[16];
+
+    FloatConverter() {
+      super(2);
+    }
+
+    @Override
+    public void addFloat(float value) {
+      if (count == values.length) {
+        values = Arrays.copyOf(values, count * 2);
+      }
+      values[count++] = value;
+    }
+
+    @Override
+    int listSize() {
+      int payload = 4 * count;
+      return 1 + varintSize(payload) + payload;
+    }
+
+    @Override
+    int writeList(byte[] b, int pos) {
+      b[pos++] = TAG_1;
+      pos = writeVarint(b, pos, 4 * count);
+      for (int i = 0; i < count; i++) {
+        int bits = Float.floatToRawIntBits(values[i]);
+        b[pos++] = (byte) bits;
+        b[pos++] = (byte) (bits >>> 8);
+        b[pos++] = (byte) (bits >>> 16);
+        b[pos++] = (byte) (bits >>> 24);
+      }
+      return pos;
+    }
+  }
+
+  static class BytesConverter extends ValueConverter {
+    // values are copied since their backing buffers may be reused within a record
+    private byte[] data = new byte[1024];
+    private int[] ends = new int[16];
+
+    BytesConverter() {
+      super(1);
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      int start = count == 0 ? 0 : ends[count - 1];
+      int length = value.length();
+      if (start + length > data.length) {
+        data = Arrays.copyOf(data, Math.max(start + length, data.length * 2));
+      }
+      value.toByteBuffer().get(data, start, length);
+      if (count == ends.length) {
+        ends = Arrays.copyOf(ends, count * 2);
+      }
+      ends[count++] = start + length;
+    }
+
+    @Override
+    int listSize() {
+      int size = 0;
+      int start = 0;
+      for (int i = 0; i < count; i++) {
+        int length = ends[i] - start;
+        size += 1 + varintSize(length) + length;
+        start = ends[i];
+      }
+      return size;
+    }
+
+    @Override
+    int writeList(byte[] b, int pos) {
+      int start = 0;
+      for (int i = 0; i < count; i++) {
+        int length = ends[i] - start;
+        b[pos++] = TAG_1;
+        pos = writeVarint(b, pos, length);
+        System.arraycopy(data, start, b, pos, length);
+        pos += length;
+        start = ends[i];
+      }
+      return pos;
+    }
+  }
+}
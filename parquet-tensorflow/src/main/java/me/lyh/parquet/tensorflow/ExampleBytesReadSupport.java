@@ -0,0 +1,56 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+class ExampleBytesReadSupport extends ReadSupport<ByteBuffer> {
+  private final ExampleReadSupport readSupport;
+
+  ExampleBytesReadSupport(ExampleReadSupport readSupport) {
+    this.readSupport = readSupport;
+  }
+
+  @Override
+  public ReadContext init(InitContext context) {
+    return readSupport.init(context);
+  }
+
+  @Override
+  public RecordMaterializer<ByteBuffer> prepareForRead(Configuration configuration,
+                                                       Map<String, String> keyValueMetaData,
+                                                       MessageType fileSchema,
+                                                       ReadContext readContext) {
+    return prepareForRead(
+        new HadoopParquetConfiguration(configuration), keyValueMetaData, fileSchema, readContext);
+  }
+
+  @Override
+  public RecordMaterializer<ByteBuffer> prepareForRead(ParquetConfiguration configuration,
+                                                       Map<String, String> keyValueMetaData,
+                                                       MessageType fileSchema,
+                                                       ReadContext readContext) {
+    return new RecordMaterializer<ByteBuffer>() {
+      private ExampleBytesConverter bytesConverter = new ExampleBytesConverter(
+          Schema.fromParquet(readContext.getRequestedSchema()));
+
+      @Override
+      public ByteBuffer getCurrentRecord() {
+        return bytesConverter.get();
+      }
+
+      @Override
+      public GroupConverter getRootConverter() {
+        return bytesConverter;
+      }
+    };
+  }
+}
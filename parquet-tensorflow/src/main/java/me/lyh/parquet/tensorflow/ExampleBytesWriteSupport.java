@@ -0,0 +1,275 @@
+package me.lyh.parquet.tensorflow;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.ParquetEncodingException;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes serialized {@link org.tensorflow.example.Example} protos, e.g. TFRecord payloads,
+ * straight from the protobuf wire format without parsing them.
+ *
+ * <p>{@code BYTES} values are passed to Parquet as slices of the input buffer, which may be
+ * reused once {@link #write(ByteBuffer)} returns.
+ */
+public class ExampleBytesWriteSupport extends WriteSupport<ByteBuffer> {
+  private static final int LENGTH_DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+
+  // Example.features, Features.feature, map entry key and value are all length-delimited
+  private static final int FEATURES_TAG = makeTag(1, LENGTH_DELIMITED);
+  private static final int FEATURE_TAG = makeTag(1, LENGTH_DELIMITED);
+  private static final int KEY_TAG = makeTag(1, LENGTH_DELIMITED);
+  private static final int VALUE_TAG = makeTag(2, LENGTH_DELIMITED);
+
+  // Feature.kind field numbers
+  private static final int BYTES_LIST = 1;
+  private static final int FLOAT_LIST = 2;
+  private static final int INT64_LIST = 3;
+
+  private Schema schema;
+  private RecordConsumer recordConsumer;
+  private final Map<ByteBuffer, Integer> indices = new HashMap<>();
+  private String[] names;
+  private Schema.Type[] types;
+  private Schema.Repetition[] repetitions;
+  private int[] starts;
+  private int[] ends;
+  private ByteBuffer scratch;
+
+  public ExampleBytesWriteSupport() {}
+
+  public ExampleBytesWriteSupport(Schema schema) {
+    this.schema = schema;
+  }
+
+  @Override
+  public WriteContext init(Configuration configuration) {
+    return init(new HadoopParquetConfiguration(configuration));
+  }
+
+  @Override
+  public WriteContext init(ParquetConfiguration configuration) {
+    MessageType messageType;
+    if (schema == null) {
+      String schemaString = configuration.get(ExampleParquetOutputFormat.SCHEMA_KEY);
+      messageType = MessageTypeParser.parseMessageType(schemaString);
+      schema = Schema.fromParquet(messageType);
+    } else {
+      messageType = schema.toParquet();
+    }
+
+    List<Schema.Field> fields = schema.getFields();
+    int n = fields.size();
+    names = new String[n];
+    types = new Schema.Type[n];
+    repetitions = new Schema.Repetition[n];
+    starts = new int[n];
+    ends = new int[n];
+    for (int i = 0; i < n; i++) {
+      Schema.Field field = fields.get(i);
+      names[i] = field.getName();
+      types[i] = field.getType();
+      repetitions[i] = field.getRepetition();
+      indices.put(ByteBuffer.wrap(field.getName().getBytes(StandardCharsets.UTF_8)), i);
+    }
+    return new WriteContext(messageType, Collections.emptyMap());
+  }
+
+  @Override
+  public String getName() {
+    return "example";
+  }
+
+  @Override
+  public void prepareForWrite(RecordConsumer recordConsumer) {
+    this.recordConsumer = recordConsumer;
+  }
+
+  @Override
+  public void write(ByteBuffer record) {
+    ByteBuffer buffer = record.hasArray() ? record.duplicate() : copy(record);
+    try {
+      index(buffer);
+      recordConsumer.startMessage();
+      for (int i = 0; i < names.length; i++) {
+        writeField(i, buffer);
+      }
+      recordConsumer.endMessage();
+    } catch (IOException e) {
+      throw new ParquetEncodingException("Failed to parse Example", e);
+    }
+  }
+
+  // CodedInputStream decodes direct buffers through Unsafe, which is not safe on all JVMs
+  private ByteBuffer copy(ByteBuffer record) {
+    if (scratch == null || scratch.capacity() < record.remaining()) {
+      scratch = ByteBuffer.allocate(record.remaining());
+    }
+    scratch.clear();
+    scratch.put(record.duplicate()).flip();
+    return scratch;
+  }
+
+  // Locate the Feature message of each schema field, last one wins like protobuf maps
+  private void index(ByteBuffer buffer) throws IOException {
+    Arrays.fill(starts, -1);
+    ByteBuffer keys = buffer.duplicate();
+    int base = buffer.position();
+    CodedInputStream in = CodedInputStream.newInstance(buffer);
+    while (!in.isAtEnd()) {
+      int tag = in.readTag();
+      if (tag != FEATURES_TAG) {
+        in.skipField(tag);
+        continue;
+      }
+      int featuresLimit = in.pushLimit(in.readRawVarint32());
+      while (!in.isAtEnd()) {
+        tag = in.readTag();
+        if (tag != FEATURE_TAG) {
+          in.skipField(tag);
+          continue;
+        }
+        int entryLimit = in.pushLimit(in.readRawVarint32());
+        Integer index = null;
+        int start = 0;
+        int end = 0;
+        while (!in.isAtEnd()) {
+          tag = in.readTag();
+          if (tag == KEY_TAG) {
+            int length = in.readRawVarint32();
+            int position = base + in.getTotalBytesRead();
+            keys.limit(position + length).position(position);
+            index = indices.get(keys);
+            in.skipRawBytes(length);
+          } else if (tag == VALUE_TAG) {
+            int length = in.readRawVarint32();
+            start = base + in.getTotalBytesRead();
+            end = start + length;
+            in.skipRawBytes(length);
+          } else {
+            in.skipField(tag);
+          }
+        }
+        in.popLimit(entryLimit);
+        if (index != null) {
+          starts[index] = start;
+          ends[index] = end;
+        }
+      }
+      in.popLimit(featuresLimit);
+    }
+  }
+
+  private void writeField(int index, ByteBuffer buffer) throws IOException {
+    int count = 0;
+    if (starts[index] >= 0) {
+      ByteBuffer feature = buffer.duplicate();
+      feature.limit(ends[index]).position(starts[index]);
+      CodedInputStream in = CodedInputStream.newInstance(feature);
+      int listTag = makeTag(kindOf(types[index]), LENGTH_DELIMITED);
+      while (!in.isAtEnd()) {
+        int tag = in.readTag();
+        if (tag != listTag) {
+          in.skipField(tag);
+          continue;
+        }
+        int listLimit = in.pushLimit(in.readRawVarint32());
+        while (!in.isAtEnd()) {
+          tag = in.readTag();
+          if (WireFormat.getTagFieldNumber(tag) != 1) {
+            in.skipField(tag);
+            continue;
+          }
+          count = writeValues(index, tag, in, buffer, count);
+        }
+        in.popLimit(listLimit);
+      }
+    }
+    repetitions[index].checkSize(count);
+    if (count > 0) {
+      recordConsumer.endField(names[index], index);
+    }
+  }
+
+  // Write one occurrence of the list value field, packed or not
+  private int writeValues(int index, int tag, CodedInputStream in, ByteBuffer buffer, int count)
+      throws IOException {
+    int wireType = WireFormat.getTagWireType(tag);
+    switch (types[index]) {
+      case INT64:
+        if (wireType == LENGTH_DELIMITED) {
+          int limit = in.pushLimit(in.readRawVarint32());
+          while (!in.isAtEnd()) {
+            count = startValue(index, count);
+            recordConsumer.addLong(in.readRawVarint64());
+          }
+          in.popLimit(limit);
+        } else {
+          count = startValue(index, count);
+          recordConsumer.addLong(in.readRawVarint64());
+        }
+        break;
+      case FLOAT:
+        if (wireType == LENGTH_DELIMITED) {
+          int limit = in.pushLimit(in.readRawVarint32());
+          while (!in.isAtEnd()) {
+            count = startValue(index, count);
+            recordConsumer.addFloat(Float.intBitsToFloat(in.readRawLittleEndian32()));
+          }
+          in.popLimit(limit);
+        } else {
+          count = startValue(index, count);
+          recordConsumer.addFloat(Float.intBitsToFloat(in.readRawLittleEndian32()));
+        }
+        break;
+      case BYTES:
+        int length = in.readRawVarint32();
+        int position = starts[index] + in.getTotalBytesRead();
+        // fails on lengths past the end of the Feature
+        in.skipRawBytes(length);
+        count = startValue(index, count);
+        recordConsumer.addBinary(Binary.fromReusedByteBuffer(buffer, position, length));
+        break;
+    }
+    return count;
+  }
+
+  private int startValue(int index, int count) {
+    if (count == 0) {
+      recordConsumer.startField(names[index], index);
+    } else if (repetitions[index] != Schema.Repetition.REPEATED) {
+      // fail before writing an extra value into a required or optional field
+      repetitions[index].checkSize(count + 1);
+    }
+    return count + 1;
+  }
+
+  private static int makeTag(int fieldNumber, int wireType) {
+    return (fieldNumber << 3) | wireType;
+  }
+
+  private static int kindOf(Schema.Type type) {
+    switch (type) {
+      case INT64: return INT64_LIST;
+      case FLOAT: return FLOAT_LIST;
+      case BYTES: return BYTES_LIST;
+    }
+    throw new IllegalStateException("This should never happen");
+  }
+}
@@ -1,6 +1,8 @@
 package me.lyh.parquet.tensorflow;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
+import org.apache.parquet.column.Dictionary;
 import org.apache.parquet.io.ParquetDecodingException;
 import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.io.api.Converter;
@@ -8,23 +10,28 @@ import org.apache.parquet.io.api.GroupConverter;
 import org.apache.parquet.io.api.PrimitiveConverter;
 import org.tensorflow.example.*;
 
-import java.util.List;
+import java.nio.ByteBuffer;
 
 class ExampleConverter extends GroupConverter {
-  private final String name;
-  private final String[] names;
+  private final SchemaCodec codec;
   private final FeatureConverter[] converters;
   private final Features.Builder builder = Features.newBuilder();
+  // null when disabled
+  private final ExampleMetrics metrics;
+  private long startTime;
 
   public ExampleConverter(Schema schema) {
-    name = schema.getName();
-    List<Schema.Field> fields = schema.getFields();
-    names = new String[fields.size()];
-    converters = new FeatureConverter[fields.size()];
-    for (int i = 0; i < fields.size(); i++) {
-      names[i] = fields.get(i).getName();
-      converters[i] = fields.get(i).newConverter();
-    }
+    this(schema, false);
+  }
+
+  public ExampleConverter(Schema schema, boolean zeroCopyBytes) {
+    this(schema, zeroCopyBytes, null);
+  }
+
+  ExampleConverter(Schema schema, boolean zeroCopyBytes, ExampleMetrics metrics) {
+    codec = SchemaCodec.of(schema);
+    converters = codec.newConverters(zeroCopyBytes);
+    this.metrics = metrics;
   }
 
   @Override
@@ -35,20 +42,53 @@ class ExampleConverter extends GroupConverter {
   @Override
   public void start() {
     builder.clear();
+    if (metrics != null) {
+      startTime = System.nanoTime();
+    }
   }
 
   @Override
   public void end() {
-    for (int i = 0; i < names.length; i++) {
+    for (int i = 0; i < converters.length; i++) {
+      FeatureConverter converter = converters[i];
+      int count = 0;
+      long bytes = 0;
+      if (metrics != null) {
+        count = converter.size();
+        bytes = converter.byteSize();
+      }
       try {
-        Feature feature = converters[i].get();
+        Feature feature = get(i, converter);
         if (feature != null) {
-          builder.putFeature(names[i], feature);
+          builder.putFeature(codec.getName(i), feature);
         }
       } catch (IllegalStateException e) {
-        String msg = String.format("Failed to decode %s#%s: %s", name, names[i], e.getMessage());
+        if (metrics != null) {
+          metrics.onInvalidFeature(codec.getField(i), count);
+        }
+        String msg = String.format(
+            "Failed to decode %s#%s: %s", codec.getName(), codec.getName(i), e.getMessage());
         throw new ParquetDecodingException(msg, e);
       }
+      if (metrics != null) {
+        metrics.onFeature(codec.getField(i), count, bytes);
+      }
+    }
+    if (metrics != null) {
+      metrics.onRecord(System.nanoTime() - startTime);
+    }
+  }
+
+  // calls on the concrete converter classes, which the JIT inlines, instead of one call site
+  // shared by all field types
+  private Feature get(int index, FeatureConverter converter) {
+    switch (codec.getKind(index)) {
+      case SchemaCodec.INT64:
+        return ((Int64Converter) converter).get();
+      case SchemaCodec.FLOAT:
+        return ((FloatConverter) converter).get();
+      default:
+        return ((BytesConverter) converter).get();
     }
   }
 
@@ -60,9 +100,14 @@ class ExampleConverter extends GroupConverter {
 
   abstract static class FeatureConverter extends PrimitiveConverter {
     abstract public Feature get();
+
+    // number and total size of values of the current record, for metrics
+    abstract int size();
+
+    abstract long byteSize();
   }
 
-  static class Int64Converter extends FeatureConverter {
+  static final class Int64Converter extends FeatureConverter {
     private final Schema.Repetition repetition;
     private final Int64List.Builder builder = Int64List.newBuilder();
 
@@ -75,6 +120,16 @@ class ExampleConverter extends GroupConverter {
       builder.addValue(value);
     }
 
+    @Override
+    int size() {
+      return builder.getValueCount();
+    }
+
+    @Override
+    long byteSize() {
+      return (long) Long.BYTES * builder.getValueCount();
+    }
+
     @Override
     public Feature get() {
       int n = builder.getValueCount();
@@ -85,7 +140,7 @@ class ExampleConverter extends GroupConverter {
     }
   }
 
-  static class FloatConverter extends FeatureConverter {
+  static final class FloatConverter extends FeatureConverter {
     private final Schema.Repetition repetition;
     private final FloatList.Builder builder = FloatList.newBuilder();
 
@@ -98,6 +153,16 @@ class ExampleConverter extends GroupConverter {
       builder.addValue(value);
     }
 
+    @Override
+    int size() {
+      return builder.getValueCount();
+    }
+
+    @Override
+    long byteSize() {
+      return (long) Float.BYTES * builder.getValueCount();
+    }
+
     @Override
     public Feature get() {
       int n = builder.getValueCount();
@@ -108,26 +173,111 @@ class ExampleConverter extends GroupConverter {
     }
   }
 
-  static class BytesConverter extends FeatureConverter {
+  static final class BytesConverter extends FeatureConverter {
     private final Schema.Repetition repetition;
+    private final boolean zeroCopy;
     private final BytesList.Builder builder = BytesList.newBuilder();
+    // values and single-value features of the current column chunk, decoded once per entry
+    private Dictionary dictionary;
+    private ByteString[] dictionaryValues;
+    private Feature[] dictionaryFeatures;
+    // dictionary id of the only value so far in the current record, or -1
+    private int dictionaryId = -1;
 
-    BytesConverter(Schema.Repetition repetition) {
+    BytesConverter(Schema.Repetition repetition, boolean zeroCopy) {
       this.repetition = repetition;
+      this.zeroCopy = zeroCopy;
+    }
+
+    @Override
+    public boolean hasDictionarySupport() {
+      return true;
+    }
+
+    @Override
+    public void setDictionary(Dictionary dictionary) {
+      this.dictionary = dictionary;
+      dictionaryValues = new ByteString[dictionary.getMaxId() + 1];
+      dictionaryFeatures = new Feature[dictionary.getMaxId() + 1];
+    }
+
+    @Override
+    public void addValueFromDictionary(int dictionaryId) {
+      if (this.dictionaryId < 0 && builder.getValueCount() == 0) {
+        this.dictionaryId = dictionaryId;
+      } else {
+        flushDictionaryId();
+        builder.addValue(getDictionaryValue(dictionaryId));
+      }
     }
 
     @Override
     public void addBinary(Binary value) {
-      builder.addValue(ByteString.copyFrom(value.getBytes()));
+      flushDictionaryId();
+      ByteBuffer buffer = value.toByteBuffer();
+      // Only wrap heap pages, direct buffers may be released once the row group is done
+      if (zeroCopy && !value.isBackingBytesReused() && buffer.hasArray()) {
+        builder.addValue(UnsafeByteOperations.unsafeWrap(buffer));
+      } else {
+        builder.addValue(ByteString.copyFrom(buffer));
+      }
     }
 
     @Override
     public Feature get() {
+      if (dictionaryId >= 0) {
+        // Features are immutable and shared by all records with the same single value
+        repetition.checkSize(1);
+        Feature feature = dictionaryFeatures[dictionaryId];
+        if (feature == null) {
+          ByteString value = getDictionaryValue(dictionaryId);
+          feature = Feature.newBuilder()
+              .setBytesList(BytesList.newBuilder().addValue(value))
+              .build();
+          dictionaryFeatures[dictionaryId] = feature;
+        }
+        dictionaryId = -1;
+        return feature;
+      }
       int n = builder.getValueCount();
       repetition.checkSize(n);
       Feature feature = n == 0 ? null : Feature.newBuilder().setBytesList(builder).build();
       builder.clear();
       return feature;
     }
+
+    @Override
+    int size() {
+      return dictionaryId >= 0 ? 1 : builder.getValueCount();
+    }
+
+    @Override
+    long byteSize() {
+      if (dictionaryId >= 0) {
+        return getDictionaryValue(dictionaryId).size();
+      }
+      long bytes = 0;
+      for (int i = 0; i < builder.getValueCount(); i++) {
+        bytes += builder.getValue(i).size();
+      }
+      return bytes;
+    }
+
+    private void flushDictionaryId() {
+      if (dictionaryId >= 0) {
+        builder.addValue(getDictionaryValue(dictionaryId));
+        dictionaryId = -1;
+      }
+    }
+
+    private ByteString getDictionaryValue(int id) {
+      ByteString value = dictionaryValues[id];
+      if (value == null) {
+        // Dictionary pages may be released with the row group, copy once per entry
+        value = ByteString.copyFrom(dictionary.decodeToBinary(id).toByteBuffer());
+        dictionaryValues[id] = value;
+      }
+      return value;
+    }
   }
 }
@@ -0,0 +1,396 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.HadoopReadOptions;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.page.PageReader;
+import org.apache.parquet.filter2.columnindex.RowRanges;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.filter2.predicate.UserDefinedPredicate;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+import org.tensorflow.example.Example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PrimitiveIterator;
+import java.util.Set;
+import java.util.stream.LongStream;
+
+/**
+ * Reads Example files with late materialization. For each row group, only the columns of the
+ * filter predicate are decoded first, skipping pages by column index, to find matching rows.
+ * Projected columns are then decoded for matching rows only, skipping pages with no matching
+ * rows and values of non-matching rows.
+ *
+ * <p>Predicate columns are decoded again for matching rows if they are projected. Files without
+ * offset indexes are read in full in the second pass, with non-matching rows dropped.
+ */
+public class ExampleLateReader implements Closeable {
+  // separate readers since column index stores are cached per row group and projection
+  private final ParquetFileReader filterReader;
+  private final ParquetFileReader reader;
+  private final FilterCompat.Filter filter;
+  private final MessageType fileSchema;
+  private final MessageType filterSchema;
+  private final MessageType requestedSchema;
+  private final RecordMaterializer<Example> materializer;
+  private final ColumnIOFactory columnIOFactory;
+
+  private int rowGroup = -1;
+  private SyncPageReadStore pages;
+  private RecordReader<Example> recordReader;
+  // indexes of matching and decoded rows within the row group, for files without offset indexes
+  private PrimitiveIterator.OfLong selected;
+  private PrimitiveIterator.OfLong rowIndexes;
+  private long remaining;
+
+  ExampleLateReader(InputFile file, Configuration conf, ReadSupport<Example> readSupport,
+                    FilterCompat.Filter filter) throws IOException {
+    ParquetReadOptions options = HadoopReadOptions.builder(conf).withRecordFilter(filter).build();
+    this.filterReader = ParquetFileReader.open(file, options);
+    this.reader = ParquetFileReader.open(file, options);
+    this.filter = filter;
+    this.fileSchema = reader.getFileMetaData().getSchema();
+    Map<String, String> metadata = reader.getFileMetaData().getKeyValueMetaData();
+    Map<String, Set<String>> multiMap = new HashMap<>();
+    metadata.forEach((k, v) -> multiMap.put(k, Collections.singleton(v)));
+    ReadSupport.ReadContext context =
+        readSupport.init(new InitContext(conf, multiMap, fileSchema));
+    this.requestedSchema = context.getRequestedSchema();
+    this.materializer = readSupport.prepareForRead(conf, metadata, fileSchema, context);
+    this.filterSchema = filterSchema(fileSchema, filter);
+    filterReader.setRequestedSchema(filterSchema);
+    reader.setRequestedSchema(requestedSchema);
+    this.columnIOFactory = new ColumnIOFactory(reader.getFileMetaData().getCreatedBy());
+  }
+
+  /** Read the next matching record, or {@code null} at the end of input. */
+  public Example read() throws IOException {
+    while (remaining == 0) {
+      if (!nextRowGroup()) {
+        return null;
+      }
+    }
+    if (--remaining == 0 && pages != null) {
+      pages.lastRecord();
+    }
+    if (selected == null) {
+      return recordReader.read();
+    }
+    // no offset index, skip non-matching rows
+    long next = selected.nextLong();
+    while (true) {
+      Example record = recordReader.read();
+      if (rowIndexes.nextLong() == next) {
+        return record;
+      }
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      filterReader.close();
+    } finally {
+      reader.close();
+    }
+  }
+
+  private boolean nextRowGroup() throws IOException {
+    while (++rowGroup < reader.getRowGroups().size()) {
+      RowRanges rows = selectRows(rowGroup);
+      if (rows.rowCount() == 0) {
+        continue;
+      }
+
+      BlockMetaData block = reader.getRowGroups().get(rowGroup);
+      PageReadStore rowGroupPages;
+      if (rows.rowCount() == block.getRowCount() || hasOffsetIndex(block)) {
+        rowGroupPages = reader.readFilteredRowGroup(rowGroup, rows);
+        selected = null;
+      } else {
+        rowGroupPages = reader.readRowGroup(rowGroup);
+        selected = rows.iterator();
+        rowIndexes = LongStream.range(0, block.getRowCount()).iterator();
+      }
+      pages = new SyncPageReadStore(rowGroupPages);
+      recordReader = columnIOFactory
+          .getColumnIO(requestedSchema, fileSchema, true)
+          .getRecordReader(pages, materializer, FilterCompat.NOOP);
+      remaining = rows.rowCount();
+      return true;
+    }
+    return false;
+  }
+
+  // Decode predicate columns of a row group and collect indexes of matching rows
+  private RowRanges selectRows(int index) throws IOException {
+    BlockMetaData block = reader.getRowGroups().get(index);
+    if (filterSchema.getFieldCount() == 0) {
+      // no predicate columns in the file, row group filters already evaluated the predicate
+      return RowRanges.createSingle(block.getRowCount());
+    }
+
+    PageReadStore filterPages = filterReader.readFilteredRowGroup(index);
+    if (filterPages == null) {
+      return RowRanges.EMPTY;
+    }
+    SyncPageReadStore syncPages = new SyncPageReadStore(filterPages);
+    RecordReader<Object> recordReader = columnIOFactory
+        .getColumnIO(filterSchema, fileSchema, true)
+        .getRecordReader(syncPages, new NoOpMaterializer(), filter);
+    PrimitiveIterator.OfLong indexes = filterPages.getRowIndexes()
+        .orElseGet(() -> LongStream.range(0, filterPages.getRowCount()).iterator());
+    RowRanges.Builder builder = RowRanges.builder();
+    for (long i = 0; i < filterPages.getRowCount(); i++) {
+      if (i == filterPages.getRowCount() - 1) {
+        syncPages.lastRecord();
+      }
+      recordReader.read();
+      long rowIndex = indexes.nextLong();
+      if (!recordReader.shouldSkipCurrentRecord()) {
+        builder.addSelectedRow(rowIndex);
+      }
+    }
+    return builder.build();
+  }
+
+  private static boolean hasOffsetIndex(BlockMetaData block) {
+    for (ColumnChunkMetaData column : block.getColumns()) {
+      if (column.getOffsetIndexReference() == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static MessageType filterSchema(MessageType fileSchema, FilterCompat.Filter filter) {
+    Set<String> columns = new HashSet<>();
+    if (filter instanceof FilterCompat.FilterPredicateCompat) {
+      ((FilterCompat.FilterPredicateCompat) filter).getFilterPredicate()
+          .accept(new ColumnCollector(columns));
+    }
+    Types.MessageTypeBuilder builder = Types.buildMessage();
+    for (Type field : fileSchema.getFields()) {
+      if (columns.contains(field.getName())) {
+        builder.addField(field);
+      }
+    }
+    return builder.named(fileSchema.getName());
+  }
+
+  ////////////////////////////////////////
+
+  // Collects top level fields referenced by a predicate
+  private static class ColumnCollector implements FilterPredicate.Visitor<Void> {
+    private final Set<String> columns;
+
+    private ColumnCollector(Set<String> columns) {
+      this.columns = columns;
+    }
+
+    private Void add(Operators.Column<?> column) {
+      columns.add(column.getColumnPath().toArray()[0]);
+      return null;
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Eq<T> eq) {
+      return add(eq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotEq<T> notEq) {
+      return add(notEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Lt<T> lt) {
+      return add(lt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.LtEq<T> ltEq) {
+      return add(ltEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Gt<T> gt) {
+      return add(gt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.GtEq<T> gtEq) {
+      return add(gtEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.In<T> in) {
+      return add(in.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotIn<T> notIn) {
+      return add(notIn.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Contains<T> contains) {
+      return add(contains.getColumn());
+    }
+
+    @Override
+    public Void visit(Operators.And and) {
+      and.getLeft().accept(this);
+      return and.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Or or) {
+      or.getLeft().accept(this);
+      return or.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Not not) {
+      return not.getPredicate().accept(this);
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(
+        Operators.UserDefined<T, U> udp) {
+      return add(udp.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(
+        Operators.LogicalNotUserDefined<T, U> udp) {
+      return udp.getUserDefined().accept(this);
+    }
+  }
+
+  // Column readers that skip rows give up at the end of a page once all row indexes are taken,
+  // instead of moving on to the last selected row on a later page. Row indexes are reported to
+  // continue until the last record is being read.
+  private static class SyncPageReadStore implements PageReadStore {
+    private final PageReadStore pages;
+    private boolean lastRecord;
+
+    private SyncPageReadStore(PageReadStore pages) {
+      this.pages = pages;
+    }
+
+    /** Called before reading the last record. */
+    void lastRecord() {
+      lastRecord = true;
+    }
+
+    @Override
+    public PageReader getPageReader(ColumnDescriptor descriptor) {
+      return pages.getPageReader(descriptor);
+    }
+
+    @Override
+    public long getRowCount() {
+      return pages.getRowCount();
+    }
+
+    @Override
+    public Optional<Long> getRowIndexOffset() {
+      return pages.getRowIndexOffset();
+    }
+
+    @Override
+    public Optional<PrimitiveIterator.OfLong> getRowIndexes() {
+      return pages.getRowIndexes().map(indexes -> new PrimitiveIterator.OfLong() {
+        @Override
+        public boolean hasNext() {
+          return indexes.hasNext() || !lastRecord;
+        }
+
+        @Override
+        public long nextLong() {
+          return indexes.hasNext() ? indexes.nextLong() : Long.MAX_VALUE;
+        }
+      });
+    }
+
+    @Override
+    public void close() {
+      pages.close();
+    }
+  }
+
+  // Discards values, records are only decoded for the record filter
+  private static class NoOpMaterializer extends RecordMaterializer<Object> {
+    private final GroupConverter root;
+
+    private NoOpMaterializer() {
+      PrimitiveConverter value = new PrimitiveConverter() {
+        @Override
+        public void addBinary(Binary value) {}
+
+        @Override
+        public void addBoolean(boolean value) {}
+
+        @Override
+        public void addDouble(double value) {}
+
+        @Override
+        public void addFloat(float value) {}
+
+        @Override
+        public void addInt(int value) {}
+
+        @Override
+        public void addLong(long value) {}
+      };
+      root = new GroupConverter() {
+        @Override
+        public Converter getConverter(int fieldIndex) {
+          return value;
+        }
+
+        @Override
+        public void start() {}
+
+        @Override
+        public void end() {}
+      };
+    }
+
+    @Override
+    public Object getCurrentRecord() {
+      return Boolean.TRUE;
+    }
+
+    @Override
+    public GroupConverter getRootConverter() {
+      return root;
+    }
+  }
+}
@@ -0,0 +1,38 @@
+package me.lyh.parquet.tensorflow;
+
+/**
+ * Listener for read and write metrics, e.g. to find hot features and pathological files. All
+ * methods are no-ops by default, and readers and writers without a listener skip instrumentation
+ * entirely.
+ *
+ * <p>Methods are called inline while reading or writing, and from multiple threads by
+ * {@link ExampleParallelReader}, so they should be cheap and thread-safe, e.g. update counters
+ * that are reported elsewhere.
+ *
+ * @see ExampleParquetReader.Builder#withMetrics(ExampleMetrics)
+ * @see ExampleParquetWriter.Builder#withMetrics(ExampleMetrics)
+ * @see MeteredInputFile
+ * @see MeteredOutputFile
+ */
+public interface ExampleMetrics {
+  /**
+   * A record was converted in {@code nanos}, i.e. assembled from decoded columns when reading,
+   * or shredded into columns when writing.
+   */
+  default void onRecord(long nanos) {}
+
+  /** A record had {@code count} values of {@code field}, of {@code bytes} in total. */
+  default void onFeature(Schema.Field field, int count, long bytes) {}
+
+  /** A record had {@code count} values of {@code field}, which violates its repetition. */
+  default void onInvalidFeature(Schema.Field field, int count) {}
+
+  /** {@code selected} of {@code total} row groups of a file are left after filtering. */
+  default void onRowGroups(int total, int selected) {}
+
+  /** {@code bytes} were read from a file in {@code nanos}. */
+  default void onRead(long bytes, long nanos) {}
+
+  /** {@code bytes} were written to a file in {@code nanos}. */
+  default void onWrite(long bytes, long nanos) {}
+}
@@ -0,0 +1,231 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.ParquetDecodingException;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.tensorflow.example.Example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads Example files by decoding row groups on a pool of worker threads.
+ *
+ * <p>Files are read in order, and the footer of each is read once when the row groups before it
+ * have been submitted. Row groups left after statistics, dictionary and bloom filters are each
+ * decoded by their own {@link ParquetFileReader} with the same projection, column index and record
+ * filters as a sequential reader. Besides the row group being consumed, at most
+ * {@code readAhead} row groups are decoding or decoded at any time.
+ */
+public class ExampleParallelReader implements Closeable {
+  private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+  private final Iterator<InputFile> files;
+  private final ParquetConfiguration conf;
+  private final ReadSupport<Example> readSupport;
+  private final ParquetReadOptions footerOptions;
+  private final ParquetReadOptions rowGroupOptions;
+  private final boolean ordered;
+  private final int readAhead;
+  private final ExecutorService executor;
+
+  // the file whose row groups are being submitted
+  private FileContext fileContext;
+  private Iterator<BlockMetaData> rowGroups = Collections.emptyIterator();
+
+  // submission order for ordered reads, completion order otherwise
+  private final Deque<Future<List<Example>>> pending = new ArrayDeque<>();
+  private final BlockingQueue<Future<List<Example>>> completed = new LinkedBlockingQueue<>();
+  private Iterator<Example> current = Collections.emptyIterator();
+
+  ExampleParallelReader(List<InputFile> files, ParquetConfiguration conf,
+                        ReadSupport<Example> readSupport, ParquetReadOptions.Builder options,
+                        int parallelism, int readAhead, boolean ordered) throws IOException {
+    this.files = files.iterator();
+    this.conf = conf;
+    this.readSupport = readSupport;
+    this.ordered = ordered;
+    this.readAhead = readAhead;
+
+    this.footerOptions = options.build();
+    // row groups are already filtered
+    this.rowGroupOptions =
+        options.useStatsFilter(false).useDictionaryFilter(false).useBloomFilter(false).build();
+
+    String prefix = "parquet-tensorflow-reader-" + POOL_ID.incrementAndGet() + "-";
+    AtomicInteger threadId = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(parallelism, r -> {
+      Thread t = new Thread(r, prefix + threadId.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    fill();
+  }
+
+  /** Read the next record, or {@code null} at the end of input. */
+  public Example read() throws IOException {
+    while (!current.hasNext()) {
+      if (pending.isEmpty()) {
+        return null;
+      }
+      current = next().iterator();
+      fill();
+    }
+    return current.next();
+  }
+
+  @Override
+  public void close() throws IOException {
+    for (Future<List<Example>> f : pending) {
+      f.cancel(true);
+    }
+    pending.clear();
+    executor.shutdownNow();
+  }
+
+  private void fill() throws IOException {
+    while (pending.size() < readAhead && nextFile()) {
+      FileContext f = fileContext;
+      BlockMetaData block = rowGroups.next();
+      FutureTask<List<Example>> task = new FutureTask<List<Example>>(() -> decode(f, block)) {
+        @Override
+        protected void done() {
+          if (!ordered) {
+            completed.add(this);
+          }
+        }
+      };
+      pending.add(task);
+      executor.execute(task);
+    }
+  }
+
+  // advance to the next file with row groups left, if the current one has none
+  private boolean nextFile() throws IOException {
+    while (!rowGroups.hasNext()) {
+      if (!files.hasNext()) {
+        return false;
+      }
+      InputFile inputFile = files.next();
+      try (ParquetFileReader reader = ParquetFileReader.open(inputFile, footerOptions)) {
+        fileContext = new FileContext(inputFile, reader.getFileMetaData());
+        rowGroups = new ArrayList<>(reader.getRowGroups()).iterator();
+      }
+    }
+    return true;
+  }
+
+  private List<Example> decode(FileContext context, BlockMetaData block) throws IOException {
+    InputFile file = context.file;
+    FileMetaData fileMetaData = context.fileMetaData;
+    ReadSupport.ReadContext readContext = context.readContext;
+    ParquetMetadata footer = new ParquetMetadata(fileMetaData, Collections.singletonList(block));
+    try (ParquetFileReader reader =
+             ParquetFileReader.open(file, footer, rowGroupOptions, file.newStream())) {
+      reader.setRequestedSchema(readContext.getRequestedSchema());
+      // a converter per row group, since converters are not thread-safe
+      RecordMaterializer<Example> materializer = readSupport.prepareForRead(
+          conf, fileMetaData.getKeyValueMetaData(), fileMetaData.getSchema(), readContext);
+      MessageColumnIO columnIO = new ColumnIOFactory(fileMetaData.getCreatedBy())
+          .getColumnIO(readContext.getRequestedSchema(), fileMetaData.getSchema());
+      FilterCompat.Filter filter =
+          rowGroupOptions.useRecordFilter() ? rowGroupOptions.getRecordFilter() : FilterCompat.NOOP;
+
+      List<Example> records = new ArrayList<>();
+      PageReadStore pages;
+      while ((pages = reader.readNextFilteredRowGroup()) != null) {
+        RecordReader<Example> recordReader = columnIO.getRecordReader(pages, materializer, filter);
+        for (long i = 0; i < pages.getRowCount(); i++) {
+          Example record;
+          try {
+            record = recordReader.read();
+          } catch (RuntimeException e) {
+            // same as a sequential reader
+            throw new ParquetDecodingException(String.format(
+                "Can not read value at %d in block %d in file %s", i, block.getOrdinal(), file), e);
+          }
+          // null for records dropped by the record filter
+          if (record != null && !recordReader.shouldSkipCurrentRecord()) {
+            records.add(record);
+          }
+        }
+      }
+      return records;
+    }
+  }
+
+  private List<Example> next() throws IOException {
+    try {
+      Future<List<Example>> future;
+      if (ordered) {
+        future = pending.poll();
+      } else {
+        future = completed.take();
+        pending.remove(future);
+      }
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading row group");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new IOException("Failed to read row group", cause);
+      }
+    }
+  }
+
+  ////////////////////////////////////////
+
+  // A file with its footer and projection, shared by its row groups
+  private class FileContext {
+    private final InputFile file;
+    private final FileMetaData fileMetaData;
+    private final ReadSupport.ReadContext readContext;
+
+    private FileContext(InputFile file, FileMetaData fileMetaData) {
+      this.file = file;
+      this.fileMetaData = fileMetaData;
+      Map<String, Set<String>> keyValueMetaData = new HashMap<>();
+      fileMetaData.getKeyValueMetaData()
+          .forEach((k, v) -> keyValueMetaData.put(k, Collections.singleton(v)));
+      this.readContext =
+          readSupport.init(new InitContext(conf, keyValueMetaData, fileMetaData.getSchema()));
+    }
+  }
+}
@@ -10,6 +10,8 @@ import java.util.Collection;
 public class ExampleParquetInputFormat extends ParquetInputFormat<Example> {
   public static final String SCHEMA_KEY = "parquet.tensorflow.example.input.schema";
   public static final String FIELDS_KEY = "parquet.tensorflow.example.input.fields";
+  public static final String ZERO_COPY_BYTES_KEY =
+      "parquet.tensorflow.example.input.zero-copy-bytes";
 
   public static void setSchema(Job job, Schema schema) {
     Preconditions.checkState(
@@ -28,4 +30,18 @@ public class ExampleParquetInputFormat extends ParquetInputFormat<Example> {
     setReadSupportClass(job, ExampleReadSupport.class);
     job.getConfiguration().set(FIELDS_KEY, String.join(",", fields));
   }
+
+  /** Skip row groups, pages and records that do not match {@code predicate}. */
+  public static void setPredicate(Job job, FeaturePredicate predicate) {
+    setFilterPredicate(job.getConfiguration(), predicate.toFilterPredicate());
+  }
+
+  /**
+   * Wrap {@code BYTES} values around decoded page buffers instead of copying them.
+   *
+   * @see ExampleParquetReader.Builder#withZeroCopyBytes(boolean)
+   */
+  public static void setZeroCopyBytes(Job job, boolean zeroCopyBytes) {
+    job.getConfiguration().setBoolean(ZERO_COPY_BYTES_KEY, zeroCopyBytes);
+  }
 }
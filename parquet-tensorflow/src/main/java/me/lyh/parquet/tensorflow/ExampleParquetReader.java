@@ -1,18 +1,38 @@
 package me.lyh.parquet.tensorflow;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
+import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.Preconditions;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.conf.PlainParquetConfiguration;
+import org.apache.parquet.filter2.compat.FilterCompat;
 import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.InitContext;
 import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.util.ConfigurationUtil;
 import org.apache.parquet.hadoop.util.HadoopInputFile;
+import org.apache.parquet.hadoop.util.HiddenFileFilter;
 import org.apache.parquet.io.InputFile;
+import org.apache.parquet.schema.MessageType;
 import org.tensorflow.example.Example;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class ExampleParquetReader {
@@ -26,39 +46,359 @@ public class ExampleParquetReader {
     return new Builder(file);
   }
 
+  /**
+   * Create a builder for a local file, with {@link MappedInputFile}, without a Hadoop
+   * {@code FileSystem} or {@code Configuration}.
+   */
+  public static Builder builder(java.nio.file.Path path) {
+    PlainParquetConfiguration conf = new PlainParquetConfiguration();
+    Builder builder = new Builder(new MappedInputFile(path), conf);
+    return builder.withCodecFactory(new LocalCodecFactory(conf));
+  }
+
+  /**
+   * Create a builder for readers of serialized {@link Example} protos. Records are reused and
+   * only valid until the next read.
+   */
+  public static BytesBuilder bytesBuilder(Path path) {
+    return new BytesBuilder(path);
+  }
+
+  /**
+   * Create a builder for readers of serialized {@link Example} protos. Records are reused and
+   * only valid until the next read.
+   */
+  public static BytesBuilder bytesBuilder(InputFile file) {
+    return new BytesBuilder(file);
+  }
+
+  /**
+   * Create a builder for readers of serialized {@link Example} protos from a local file, without
+   * a Hadoop {@code FileSystem} or {@code Configuration}. Records are reused and only valid until
+   * the next read.
+   */
+  public static BytesBuilder bytesBuilder(java.nio.file.Path path) {
+    PlainParquetConfiguration conf = new PlainParquetConfiguration();
+    BytesBuilder builder = new BytesBuilder(new MappedInputFile(path), conf);
+    builder.withCodecFactory(new LocalCodecFactory(conf));
+    return builder;
+  }
+
   public static class Builder extends ParquetReader.Builder<Example> {
-    private Schema schema;
-    private Set<String> fields;
+    private final Path path;
+    private final InputFile file;
+    private final ExampleProjection projection = new ExampleProjection();
+    private FilterCompat.Filter filter = FilterCompat.NOOP;
+    private CompressionCodecFactory codecFactory;
+    private ExampleMetrics metrics;
+    private int prefetchRowGroups;
+    private long prefetchBudget;
+    // from withFileRange, for footers read outside of ParquetReader
+    private long rangeStart = -1;
+    private long rangeEnd = -1;
 
     protected Builder(Path path) {
       super(path);
+      this.path = path;
+      this.file = null;
     }
 
     protected Builder(InputFile file) {
       super(file);
+      this.path = null;
+      this.file = file;
+    }
+
+    protected Builder(InputFile file, ParquetConfiguration conf) {
+      super(file, conf);
+      this.path = null;
+      this.file = file;
     }
 
     public Builder withSchema(Schema schema) {
-      Preconditions.checkState(fields == null, "Only one of [schema, fields] can be set");
-      this.schema = schema;
+      projection.setSchema(schema);
       return this;
     }
 
     public Builder withFields(Collection<String> fields) {
-      Preconditions.checkState(schema == null, "Only one of [schema, fields] can be set");
-      this.fields = new HashSet<>(fields);
+      projection.setFields(fields);
+      return this;
+    }
+
+    /**
+     * Wrap {@code BYTES} values around decoded page buffers with
+     * {@link com.google.protobuf.UnsafeByteOperations#unsafeWrap(java.nio.ByteBuffer)} instead
+     * of copying them. Values backed by direct or reused buffers are still copied once.
+     *
+     * <p>Wrapped {@link com.google.protobuf.ByteString}s share memory with the decompressed page
+     * they were decoded from. With the default heap allocator pages are never recycled, so they
+     * stay valid after the reader advances or is closed, but each retained value keeps its whole
+     * page reachable. Use {@link com.google.protobuf.ByteString#copyFrom(java.nio.ByteBuffer)}
+     * on values that outlive the records they came from.
+     */
+    public Builder withZeroCopyBytes(boolean zeroCopyBytes) {
+      set(ExampleParquetInputFormat.ZERO_COPY_BYTES_KEY, Boolean.toString(zeroCopyBytes));
       return this;
     }
 
+    /**
+     * Report per record conversion time, per feature values and row groups left after filtering
+     * to {@code metrics}. Row groups in the file range are counted when the reader is built, at
+     * the cost of an extra footer read, plus dictionary pages and bloom filters of filtered
+     * columns, per file.
+     * Wrap the input with {@link MeteredInputFile} for I/O metrics.
+     */
+    public Builder withMetrics(ExampleMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
+    @Override
+    public Builder withConf(Configuration conf) {
+      super.withConf(conf);
+      return this;
+    }
+
+    @Override
+    public Builder withFilter(FilterCompat.Filter filter) {
+      super.withFilter(filter);
+      this.filter = filter;
+      return this;
+    }
+
+    @Override
+    public Builder withCodecFactory(CompressionCodecFactory codecFactory) {
+      super.withCodecFactory(codecFactory);
+      this.codecFactory = codecFactory;
+      return this;
+    }
+
+    /**
+     * Fetch projected column chunks of up to {@code rowGroups} row groups ahead of the one being
+     * decoded, within {@code byteBudget} bytes, with {@link PrefetchingInputFile}. Row groups left
+     * after filtering and projected columns are resolved when the reader is built, at the cost of
+     * an extra footer read, plus dictionary pages and bloom filters of filtered columns. Only for
+     * builders of {@link InputFile}s, e.g. {@link HadoopInputFile}.
+     */
+    public Builder withPrefetch(int rowGroups, long byteBudget) {
+      Preconditions.checkState(file != null, "Prefetching requires an InputFile");
+      Preconditions.checkArgument(rowGroups > 0, "Invalid row groups: %s", rowGroups);
+      Preconditions.checkArgument(byteBudget > 0, "Invalid byte budget: %s", byteBudget);
+      this.prefetchRowGroups = rowGroups;
+      this.prefetchBudget = byteBudget;
+      return this;
+    }
+
+    @Override
+    public Builder withFileRange(long start, long end) {
+      super.withFileRange(start, end);
+      this.rangeStart = start;
+      this.rangeEnd = end;
+      return this;
+    }
+
+    @Override
+    public ParquetReader<Example> build() throws IOException {
+      if (prefetchRowGroups > 0) {
+        withFile(prefetch());
+      } else if (metrics != null) {
+        reportRowGroups();
+      }
+      return super.build();
+    }
+
+    /**
+     * Decode row groups on {@code parallelism} worker threads. Options on this builder must be
+     * set before calling this method.
+     */
+    public ParallelBuilder withParallelism(int parallelism) {
+      return new ParallelBuilder(this, parallelism);
+    }
+
+    /**
+     * Decode filter columns first and projected columns only for matching rows. Options on this
+     * builder must be set before calling this method, and the filter, if any, must be a
+     * {@link org.apache.parquet.filter2.predicate.FilterPredicate}.
+     *
+     * @see ExampleLateReader
+     */
+    public LateBuilder withLateMaterialization() {
+      return new LateBuilder(this);
+    }
+
+    private InputFile getFile() throws IOException {
+      return file != null ? file : HadoopInputFile.fromPath(path, getConf());
+    }
+
+    private ParquetReadOptions.Builder readOptions() {
+      ParquetReadOptions.Builder options =
+          ParquetReadOptions.builder(configuration).withRecordFilter(filter);
+      if (codecFactory != null) {
+        options.withCodecFactory(codecFactory);
+      }
+      if (rangeStart >= 0) {
+        options.withRange(rangeStart, rangeEnd);
+      }
+      return options;
+    }
+
+    private void reportRowGroups() throws IOException {
+      for (InputFile f : getFiles()) {
+        try (ParquetFileReader reader = ParquetFileReader.open(f, readOptions().build())) {
+          int total = reader.getFooter().getBlocks().size();
+          metrics.onRowGroups(total, reader.getRowGroups().size());
+        }
+      }
+    }
+
+    // also reports row groups to metrics, with the same footer read
+    private InputFile prefetch() throws IOException {
+      try (ParquetFileReader reader = ParquetFileReader.open(file, readOptions().build())) {
+        List<BlockMetaData> rowGroups = reader.getRowGroups();
+        if (metrics != null) {
+          metrics.onRowGroups(reader.getFooter().getBlocks().size(), rowGroups.size());
+        }
+        FileMetaData fileMetaData = reader.getFileMetaData();
+        Map<String, Set<String>> keyValueMetaData = new HashMap<>();
+        fileMetaData.getKeyValueMetaData()
+            .forEach((k, v) -> keyValueMetaData.put(k, Collections.singleton(v)));
+        MessageType requested = getReadSupport()
+            .init(new InitContext(configuration, keyValueMetaData, fileMetaData.getSchema()))
+            .getRequestedSchema();
+        List<ColumnPath> columns = new ArrayList<>();
+        for (ColumnDescriptor column : requested.getColumns()) {
+          columns.add(ColumnPath.get(column.getPath()));
+        }
+        return new PrefetchingInputFile(
+            file, rowGroups, columns, prefetchRowGroups, prefetchBudget);
+      }
+    }
+
+    // files read by the parent builder, where a path can be a directory
+    private List<InputFile> getFiles() throws IOException {
+      if (file != null) {
+        return Collections.singletonList(file);
+      }
+      Configuration conf = getConf();
+      FileSystem fs = path.getFileSystem(conf);
+      FileStatus status = fs.getFileStatus(path);
+      if (status.isFile()) {
+        return Collections.singletonList(HadoopInputFile.fromStatus(status, conf));
+      }
+      List<InputFile> files = new ArrayList<>();
+      for (FileStatus s : fs.listStatus(path, HiddenFileFilter.INSTANCE)) {
+        files.add(HadoopInputFile.fromStatus(s, conf));
+      }
+      return files;
+    }
+
+    private ParquetConfiguration getParquetConf() {
+      return configuration;
+    }
+
+    // the Configuration of paths and files with an explicit conf, or a copy of configuration
+    private Configuration getConf() {
+      return ConfigurationUtil.createHadoopConfiguration(configuration);
+    }
+
     @Override
     protected ReadSupport<Example> getReadSupport() {
-      if (schema != null) {
-        return new ExampleReadSupport(schema);
-      } else if (fields != null) {
-        return new ExampleReadSupport(fields);
-      } else {
-        return new ExampleReadSupport();
+      return projection.newReadSupport().withMetrics(metrics);
+    }
+  }
+
+  public static class ParallelBuilder {
+    private final Builder builder;
+    private final int parallelism;
+    private int readAhead;
+    private boolean ordered = true;
+
+    private ParallelBuilder(Builder builder, int parallelism) {
+      Preconditions.checkArgument(parallelism > 0, "Invalid parallelism: %s", parallelism);
+      this.builder = builder;
+      this.parallelism = parallelism;
+      this.readAhead = parallelism;
+    }
+
+    /** Maximum number of row groups decoded ahead of the reader, defaults to parallelism. */
+    public ParallelBuilder withReadAhead(int readAhead) {
+      Preconditions.checkArgument(readAhead > 0, "Invalid read-ahead: %s", readAhead);
+      this.readAhead = readAhead;
+      return this;
+    }
+
+    /**
+     * Return records in file order if {@code true}, the default, or row groups in the order they
+     * finish decoding otherwise. Records within a row group are always in file order.
+     */
+    public ParallelBuilder withOrdered(boolean ordered) {
+      this.ordered = ordered;
+      return this;
+    }
+
+    public ExampleParallelReader build() throws IOException {
+      Preconditions.checkState(
+          builder.prefetchRowGroups == 0, "Prefetching is not supported with parallelism");
+      if (builder.metrics != null) {
+        builder.reportRowGroups();
       }
+      return new ExampleParallelReader(
+          builder.getFiles(), builder.getParquetConf(), builder.getReadSupport(),
+          builder.readOptions(), parallelism, readAhead, ordered);
+    }
+  }
+
+  public static class LateBuilder {
+    private final Builder builder;
+
+    private LateBuilder(Builder builder) {
+      this.builder = builder;
+    }
+
+    public ExampleLateReader build() throws IOException {
+      Preconditions.checkState(
+          builder.prefetchRowGroups == 0,
+          "Prefetching is not supported with late materialization");
+      Preconditions.checkArgument(
+          builder.filter == FilterCompat.NOOP
+              || builder.filter instanceof FilterCompat.FilterPredicateCompat,
+          "Only FilterPredicate filters are supported with late materialization");
+      if (builder.metrics != null) {
+        builder.reportRowGroups();
+      }
+      return new ExampleLateReader(
+          builder.getFile(), builder.getConf(), builder.getReadSupport(), builder.filter);
+    }
+  }
+
+  public static class BytesBuilder extends ParquetReader.Builder<ByteBuffer> {
+    private final ExampleProjection projection = new ExampleProjection();
+
+    protected BytesBuilder(Path path) {
+      super(path);
+    }
+
+    protected BytesBuilder(InputFile file) {
+      super(file);
+    }
+
+    protected BytesBuilder(InputFile file, ParquetConfiguration conf) {
+      super(file, conf);
+    }
+
+    public BytesBuilder withSchema(Schema schema) {
+      projection.setSchema(schema);
+      return this;
+    }
+
+    public BytesBuilder withFields(Collection<String> fields) {
+      projection.setFields(fields);
+      return this;
+    }
+
+    @Override
+    protected ReadSupport<ByteBuffer> getReadSupport() {
+      return new ExampleBytesReadSupport(projection.newReadSupport());
     }
   }
 
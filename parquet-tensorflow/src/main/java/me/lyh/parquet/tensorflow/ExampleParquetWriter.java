@@ -2,6 +2,9 @@ package me.lyh.parquet.tensorflow;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.Path;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.conf.PlainParquetConfiguration;
 import org.apache.parquet.hadoop.ParquetWriter;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.io.OutputFile;
@@ -9,6 +12,8 @@ import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.tensorflow.example.Example;
 
+import java.nio.ByteBuffer;
+
 public class ExampleParquetWriter {
   private ExampleParquetWriter() {}
 
@@ -20,8 +25,35 @@ public class ExampleParquetWriter {
     return new Builder(file);
   }
 
+  /** Create a builder for a local file, without Hadoop. */
+  public static Builder builder(java.nio.file.Path path) {
+    PlainParquetConfiguration conf = new PlainParquetConfiguration();
+    return new Builder(new ChannelOutputFile(path))
+        .withConf(conf)
+        .withCodecFactory(new LocalCodecFactory(conf));
+  }
+
+  /** Create a builder for writers of serialized {@link Example} protos. */
+  public static BytesBuilder bytesBuilder(Path path) {
+    return new BytesBuilder(path);
+  }
+
+  /** Create a builder for writers of serialized {@link Example} protos. */
+  public static BytesBuilder bytesBuilder(OutputFile file) {
+    return new BytesBuilder(file);
+  }
+
+  /** Create a builder for writers of serialized {@link Example} protos to a local file. */
+  public static BytesBuilder bytesBuilder(java.nio.file.Path path) {
+    PlainParquetConfiguration conf = new PlainParquetConfiguration();
+    return new BytesBuilder(new ChannelOutputFile(path))
+        .withConf(conf)
+        .withCodecFactory(new LocalCodecFactory(conf));
+  }
+
   public static class Builder extends ParquetWriter.Builder<Example, Builder> {
     private Schema schema;
+    private ExampleMetrics metrics;
 
     protected Builder(Path path) {
       super(path);
@@ -41,14 +73,60 @@ public class ExampleParquetWriter {
       return this;
     }
 
+    /**
+     * Report per record conversion time and per feature values to {@code metrics}. Wrap the
+     * output with {@link MeteredOutputFile} for I/O metrics.
+     */
+    public Builder withMetrics(ExampleMetrics metrics) {
+      this.metrics = metrics;
+      return this;
+    }
+
     @Override
     protected WriteSupport<Example> getWriteSupport(Configuration conf) {
+      return getWriteSupport(new HadoopParquetConfiguration(conf));
+    }
+
+    @Override
+    protected WriteSupport<Example> getWriteSupport(ParquetConfiguration conf) {
       if (schema == null) {
         String schemaString = conf.get(ExampleParquetOutputFormat.SCHEMA_KEY);
         MessageType parquet = MessageTypeParser.parseMessageType(schemaString);
         schema = Schema.fromParquet(parquet);
       }
-      return new ExampleWriteSupport(schema);
+      return new ExampleWriteSupport(schema, metrics);
+    }
+  }
+
+  public static class BytesBuilder extends ParquetWriter.Builder<ByteBuffer, BytesBuilder> {
+    private Schema schema;
+
+    protected BytesBuilder(Path path) {
+      super(path);
+    }
+
+    protected BytesBuilder(OutputFile file) {
+      super(file);
+    }
+
+    @Override
+    protected BytesBuilder self() {
+      return this;
+    }
+
+    public BytesBuilder withSchema(Schema schema) {
+      this.schema = schema;
+      return this;
+    }
+
+    @Override
+    protected WriteSupport<ByteBuffer> getWriteSupport(Configuration conf) {
+      return new ExampleBytesWriteSupport(schema);
+    }
+
+    @Override
+    protected WriteSupport<ByteBuffer> getWriteSupport(ParquetConfiguration conf) {
+      return new ExampleBytesWriteSupport(schema);
     }
   }
 }
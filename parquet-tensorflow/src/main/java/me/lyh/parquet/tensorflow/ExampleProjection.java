@@ -0,0 +1,33 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/** Schema or fields to read, shared by reader builders. */
+class ExampleProjection {
+  private Schema schema;
+  private Set<String> fields;
+
+  void setSchema(Schema schema) {
+    Preconditions.checkState(fields == null, "Only one of [schema, fields] can be set");
+    this.schema = schema;
+  }
+
+  void setFields(Collection<String> fields) {
+    Preconditions.checkState(schema == null, "Only one of [schema, fields] can be set");
+    this.fields = new HashSet<>(fields);
+  }
+
+  ExampleReadSupport newReadSupport() {
+    if (schema != null) {
+      return new ExampleReadSupport(schema);
+    } else if (fields != null) {
+      return new ExampleReadSupport(fields);
+    } else {
+      return new ExampleReadSupport();
+    }
+  }
+}
@@ -2,6 +2,8 @@ package me.lyh.parquet.tensorflow;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.parquet.Preconditions;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
 import org.apache.parquet.hadoop.api.InitContext;
 import org.apache.parquet.hadoop.api.ReadSupport;
 import org.apache.parquet.io.api.GroupConverter;
@@ -15,9 +17,14 @@ import org.tensorflow.example.Example;
 import java.util.*;
 import java.util.stream.Collectors;
 
+/**
+ * Reads {@link Example}s with an optional projection by {@link Schema} or field names. Other read
+ * supports of this package delegate projection to an instance of this class.
+ */
 public class ExampleReadSupport extends ReadSupport<Example> {
   private Schema schema;
   private Set<String> fields;
+  private ExampleMetrics metrics;
 
   public ExampleReadSupport() {}
 
@@ -29,6 +36,11 @@ public class ExampleReadSupport extends ReadSupport<Example> {
     this.fields = new HashSet<>(fields);
   }
 
+  ExampleReadSupport withMetrics(ExampleMetrics metrics) {
+    this.metrics = metrics;
+    return this;
+  }
+
   @Override
   public ReadContext init(InitContext context) {
     MessageType messageType;
@@ -37,8 +49,10 @@ public class ExampleReadSupport extends ReadSupport<Example> {
     } else if (fields != null) {
       messageType = projectFileSchema(context, fields);
     } else {
-      String schemaString = context.getConfiguration().get(ExampleParquetInputFormat.SCHEMA_KEY);
-      String fieldsString = context.getConfiguration().get(ExampleParquetInputFormat.FIELDS_KEY);
+      // not getConfiguration(), which needs Hadoop
+      ParquetConfiguration conf = context.getParquetConfiguration();
+      String schemaString = conf.get(ExampleParquetInputFormat.SCHEMA_KEY);
+      String fieldsString = conf.get(ExampleParquetInputFormat.FIELDS_KEY);
       if (schemaString != null) {
         messageType = MessageTypeParser.parseMessageType(schemaString);
       } else if (fieldsString != null) {
@@ -57,9 +71,20 @@ public class ExampleReadSupport extends ReadSupport<Example> {
                                                     Map<String, String> keyValueMetaData,
                                                     MessageType fileSchema,
                                                     ReadContext readContext) {
+    return prepareForRead(
+        new HadoopParquetConfiguration(configuration), keyValueMetaData, fileSchema, readContext);
+  }
+
+  @Override
+  public RecordMaterializer<Example> prepareForRead(ParquetConfiguration configuration,
+                                                    Map<String, String> keyValueMetaData,
+                                                    MessageType fileSchema,
+                                                    ReadContext readContext) {
     return new RecordMaterializer<Example>() {
-      private ExampleConverter exampleConverter =
-          new ExampleConverter(Schema.fromParquet(readContext.getRequestedSchema()));
+      private ExampleConverter exampleConverter = new ExampleConverter(
+          Schema.fromParquet(readContext.getRequestedSchema()),
+          configuration.getBoolean(ExampleParquetInputFormat.ZERO_COPY_BYTES_KEY, false),
+          metrics);
 
       @Override
       public Example getCurrentRecord() {
@@ -0,0 +1,143 @@
+package me.lyh.parquet.tensorflow;
+
+import com.google.protobuf.ByteString;
+import org.tensorflow.example.BytesList;
+import org.tensorflow.example.Example;
+import org.tensorflow.example.Feature;
+import org.tensorflow.example.Features;
+import org.tensorflow.example.FloatList;
+import org.tensorflow.example.Int64List;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A mutable record holder, reused by {@link ExampleRecordReader} for every record of a file and
+ * only valid until the next read. Values are stored in the primitive columns of a single row
+ * {@link ExampleBatch}.
+ */
+public class ExampleRecord {
+  private final ExampleBatch batch;
+  private final Map<String, Integer> ids = new HashMap<>();
+  // shared views of BYTES values, re-wrapped when a column grows its buffer
+  private final ByteBuffer[] views;
+
+  ExampleRecord(ExampleBatch batch) {
+    this.batch = batch;
+    views = new ByteBuffer[batch.getColumnCount()];
+    for (int i = 0; i < batch.getColumnCount(); i++) {
+      ids.put(batch.getColumn(i).getField().getName(), i);
+    }
+  }
+
+  ExampleBatch getBatch() {
+    return batch;
+  }
+
+  public Schema getSchema() {
+    return batch.getSchema();
+  }
+
+  /** Id of field {@code name}, or {@code -1} if it is not read. */
+  public int getFieldId(String name) {
+    Integer id = ids.get(name);
+    return id == null ? -1 : id;
+  }
+
+  public int getValueCount(int fieldId) {
+    return batch.getColumn(fieldId).getValueCount();
+  }
+
+  public long getInt64(int fieldId, int index) {
+    return ((ExampleBatch.Int64Column) batch.getColumn(fieldId)).getValues()[index];
+  }
+
+  public float getFloat(int fieldId, int index) {
+    return ((ExampleBatch.FloatColumn) batch.getColumn(fieldId)).getValues()[index];
+  }
+
+  /** Value {@code index} of a {@code BYTES} field, as a shared buffer valid until the next call. */
+  public ByteBuffer getBytes(int fieldId, int index) {
+    ExampleBatch.BytesColumn column = (ExampleBatch.BytesColumn) batch.getColumn(fieldId);
+    ByteBuffer view = views[fieldId];
+    if (view == null || view.array() != column.getData()) {
+      view = ByteBuffer.wrap(column.getData());
+      views[fieldId] = view;
+    }
+    int[] offsets = column.getValueOffsets();
+    view.limit(offsets[index + 1]).position(offsets[index]);
+    return view;
+  }
+
+  /** Pass all values of this record to {@code visitor}. */
+  public void accept(ExampleVisitor visitor) {
+    for (int i = 0; i < batch.getColumnCount(); i++) {
+      ExampleBatch.Column column = batch.getColumn(i);
+      int n = column.getValueCount();
+      switch (column.getField().getType()) {
+        case INT64:
+          long[] longs = ((ExampleBatch.Int64Column) column).getValues();
+          for (int j = 0; j < n; j++) {
+            visitor.onInt64(i, longs[j]);
+          }
+          break;
+        case FLOAT:
+          float[] floats = ((ExampleBatch.FloatColumn) column).getValues();
+          for (int j = 0; j < n; j++) {
+            visitor.onFloat(i, floats[j]);
+          }
+          break;
+        case BYTES:
+          for (int j = 0; j < n; j++) {
+            visitor.onBytes(i, getBytes(i, j));
+          }
+          break;
+      }
+    }
+    visitor.endRecord();
+  }
+
+  /** Copy this record into a new {@link Example}. */
+  public Example toExample() {
+    Features.Builder features = Features.newBuilder();
+    for (int i = 0; i < batch.getColumnCount(); i++) {
+      ExampleBatch.Column column = batch.getColumn(i);
+      int n = column.getValueCount();
+      if (n == 0) {
+        continue;
+      }
+      Feature.Builder feature = Feature.newBuilder();
+      switch (column.getField().getType()) {
+        case INT64:
+          Int64List.Builder longs = Int64List.newBuilder();
+          for (int j = 0; j < n; j++) {
+            longs.addValue(getInt64(i, j));
+          }
+          feature.setInt64List(longs);
+          break;
+        case FLOAT:
+          FloatList.Builder floats = FloatList.newBuilder();
+          for (int j = 0; j < n; j++) {
+            floats.addValue(getFloat(i, j));
+          }
+          feature.setFloatList(floats);
+          break;
+        case BYTES:
+          BytesList.Builder bytes = BytesList.newBuilder();
+          for (int j = 0; j < n; j++) {
+            bytes.addValue(ByteString.copyFrom(getBytes(i, j)));
+          }
+          feature.setBytesList(bytes);
+          break;
+      }
+      features.putFeature(column.getField().getName(), feature.build());
+    }
+    return Example.newBuilder().setFeatures(features).build();
+  }
+
+  @Override
+  public String toString() {
+    return toExample().toString();
+  }
+}
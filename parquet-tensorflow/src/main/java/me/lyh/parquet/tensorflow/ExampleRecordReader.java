@@ -0,0 +1,102 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.io.InputFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Reads Example files one record at a time into a reused {@link ExampleRecord}, or into an
+ * {@link ExampleVisitor}, without allocating per record.
+ *
+ * <p>Values are decoded into the primitive columns of a single row {@link ExampleBatch}, and only
+ * passed on once the record passes the filter, if any.
+ */
+public class ExampleRecordReader implements Closeable {
+  private final ParquetReader<ExampleBatch> reader;
+  // one holder per file, since every file has its own converter and batch
+  private ExampleRecord record;
+
+  private ExampleRecordReader(ParquetReader<ExampleBatch> reader) {
+    this.reader = reader;
+  }
+
+  public static Builder builder(Path path) {
+    return new Builder(new ExampleBatchReader.ReaderBuilder(path));
+  }
+
+  public static Builder builder(InputFile file) {
+    return new Builder(new ExampleBatchReader.ReaderBuilder(file));
+  }
+
+  /**
+   * Read the next record, or {@code null} at the end of input. The returned record is reused
+   * and only valid until the next call.
+   */
+  public ExampleRecord read() throws IOException {
+    if (record != null) {
+      record.getBatch().clear();
+    }
+    ExampleBatch batch = reader.read();
+    if (batch == null) {
+      return null;
+    }
+    if (record == null || record.getBatch() != batch) {
+      record = new ExampleRecord(batch);
+    }
+    return record;
+  }
+
+  /** Pass the next record to {@code visitor}, or return {@code false} at the end of input. */
+  public boolean read(ExampleVisitor visitor) throws IOException {
+    ExampleRecord r = read();
+    if (r == null) {
+      return false;
+    }
+    r.accept(visitor);
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  public static class Builder {
+    private final ExampleBatchReader.ReaderBuilder builder;
+
+    private Builder(ExampleBatchReader.ReaderBuilder builder) {
+      this.builder = builder;
+    }
+
+    /** Read with {@code schema}, so that field ids are the same for all files. */
+    public Builder withSchema(Schema schema) {
+      builder.projection.setSchema(schema);
+      return this;
+    }
+
+    public Builder withFields(Collection<String> fields) {
+      builder.projection.setFields(fields);
+      return this;
+    }
+
+    public Builder withConf(Configuration conf) {
+      builder.withConf(conf);
+      return this;
+    }
+
+    public Builder withFilter(FilterCompat.Filter filter) {
+      builder.withFilter(filter);
+      return this;
+    }
+
+    public ExampleRecordReader build() throws IOException {
+      return new ExampleRecordReader(builder.build());
+    }
+  }
+}
@@ -1,20 +1,40 @@
 package me.lyh.parquet.tensorflow;
 
+import com.google.protobuf.ByteString;
 import org.apache.parquet.Preconditions;
+import org.apache.parquet.io.InputFile;
+import org.tensorflow.example.BytesList;
 import org.tensorflow.example.Example;
+import org.tensorflow.example.Feature;
+import org.tensorflow.example.FloatList;
+import org.tensorflow.example.Int64List;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class ExampleScanner {
   private long total = 0L;
   private final String name;
-  private final Set<String> fields = new LinkedHashSet<>();
-  private final Map<String, Long> nonZeroCounts = new HashMap<>();
-  private final Map<String, Schema.Type> types = new HashMap<>();
-  private final Map<String, Integer> maxCounts = new HashMap<>();
+  // fields are interned to dense ids in first-seen order, which is also the schema field order
+  private final Map<String, Integer> ids = new HashMap<>();
+  private final List<FeatureStats> stats = new ArrayList<>();
+  // ids of keys by position in the last Example, since Examples from the same source usually
+  // have the same keys in the same order
+  private String[] lastKeys = new String[0];
+  private int[] lastIds = new int[0];
+  // ids of fields of the last ExampleRecord schema, resolved on their first value
+  private Schema recordSchema;
+  private int[] recordIds;
 
   public ExampleScanner(String name) {
     this.name = name;
@@ -23,59 +43,131 @@ public class ExampleScanner {
   public ExampleScanner scan(Example example) {
     total++;
 
-    example.getFeatures().getFeatureMap().forEach((name, feature) -> {
-      fields.add(name);
-
-      Schema.Type newType = null;
-      int count = -1;
+    Map<String, Feature> features = example.getFeatures().getFeatureMap();
+    if (lastKeys.length < features.size()) {
+      lastKeys = Arrays.copyOf(lastKeys, features.size());
+      lastIds = Arrays.copyOf(lastIds, features.size());
+    }
+    int position = 0;
+    for (Map.Entry<String, Feature> entry : features.entrySet()) {
+      String key = entry.getKey();
+      if (!key.equals(lastKeys[position])) {
+        lastKeys[position] = key;
+        lastIds[position] = getId(key);
+      }
+      FeatureStats s = stats.get(lastIds[position++]);
+      Feature feature = entry.getValue();
       switch (feature.getKindCase()) {
         case BYTES_LIST:
-          newType = Schema.Type.BYTES;
-          count = feature.getBytesList().getValueCount();
+          s.setType(Schema.Type.BYTES);
+          BytesList bytesList = feature.getBytesList();
+          for (int i = 0; i < bytesList.getValueCount(); i++) {
+            s.addBytes(bytesList.getValue(i));
+          }
+          s.addCount(bytesList.getValueCount());
           break;
         case FLOAT_LIST:
-          newType = Schema.Type.FLOAT;
-          count = feature.getFloatList().getValueCount();
+          s.setType(Schema.Type.FLOAT);
+          FloatList floatList = feature.getFloatList();
+          for (int i = 0; i < floatList.getValueCount(); i++) {
+            s.addFloat(floatList.getValue(i));
+          }
+          s.addCount(floatList.getValueCount());
           break;
         case INT64_LIST:
-          newType = Schema.Type.INT64;
-          count = feature.getInt64List().getValueCount();
+          s.setType(Schema.Type.INT64);
+          Int64List int64List = feature.getInt64List();
+          for (int i = 0; i < int64List.getValueCount(); i++) {
+            s.addLong(int64List.getValue(i));
+          }
+          s.addCount(int64List.getValueCount());
           break;
         case KIND_NOT_SET:
-          count = 0;
+          s.addCount(0);
           break;
       }
-      Schema.Type type = types.get(name);
-      if (type != null && newType != null) {
-        Preconditions.checkArgument(
-            type == newType,
-            "Incompatible types for field %s: %s != %s",
-            name, type, newType);
+    }
+    return this;
+  }
+
+  /**
+   * Scan a record of {@link ExampleRecordReader}, like {@link #scan(Example)} of the same record
+   * as an Example. Fields are resolved once per schema instead of by name per record.
+   */
+  public ExampleScanner scan(ExampleRecord record) {
+    total++;
+
+    Schema schema = record.getSchema();
+    if (schema != recordSchema) {
+      recordSchema = schema;
+      recordIds = new int[schema.getFields().size()];
+      Arrays.fill(recordIds, -1);
+    }
+    for (int i = 0; i < recordIds.length; i++) {
+      int n = record.getValueCount(i);
+      // same as Examples, which have no features without values
+      if (n == 0) {
+        continue;
       }
-      if (newType != null) {
-        types.put(name, newType);
+      Schema.Field field = schema.getFields().get(i);
+      if (recordIds[i] < 0) {
+        recordIds[i] = getId(field.getName());
       }
-      if (count != -1) {
-        final int c = count;
-        if (count >= 1) {
-          nonZeroCounts.compute(name, (k, v) -> v == null ? 1 : v + 1);
-        }
-        maxCounts.compute(name, (k, v) -> v == null ? c : Math.max(v, c));
+      FeatureStats s = stats.get(recordIds[i]);
+      s.setType(field.getType());
+      switch (field.getType()) {
+        case INT64:
+          for (int j = 0; j < n; j++) {
+            s.addLong(record.getInt64(i, j));
+          }
+          break;
+        case FLOAT:
+          for (int j = 0; j < n; j++) {
+            s.addFloat(record.getFloat(i, j));
+          }
+          break;
+        case BYTES:
+          for (int j = 0; j < n; j++) {
+            s.addBytes(record.getBytes(i, j));
+          }
+          break;
       }
-    });
+      s.addCount(n);
+    }
+    return this;
+  }
+
+  /**
+   * Merge statistics of {@code other} into this scanner. Merging is associative, and scanning
+   * shards independently then merging them in input order yields the same schema as scanning
+   * all inputs sequentially.
+   */
+  public ExampleScanner merge(ExampleScanner other) {
+    total += other.total;
+    for (FeatureStats s : other.stats) {
+      stats.get(getId(s.name)).merge(s);
+    }
     return this;
   }
 
+  public long getCount() {
+    return total;
+  }
+
+  /** Statistics of all features seen so far, in first-seen order. */
+  public List<FeatureStats> getStats() {
+    return Collections.unmodifiableList(stats);
+  }
+
   public Schema getSchema() {
     Schema.Builder builder = Schema.newBuilder();
-    for (String name : fields) {
-      long nonZeroCount = nonZeroCounts.getOrDefault(name, 0L);
-
-      Schema.Type type = types.get(name);
+    for (FeatureStats s : stats) {
+      String name = s.name;
+      Schema.Type type = s.type;
       Preconditions.checkNotNull(type, String.format("Field type for %s", name));
 
-      int min = nonZeroCount < total ? 0 : 1;
-      int max = maxCounts.get(name);
+      int min = s.count < total ? 0 : 1;
+      int max = s.maxCount;
 
       if (min == 1 && max == 1) {
         builder = builder.required(name, type);
@@ -87,4 +179,266 @@ public class ExampleScanner {
     }
     return builder.named(name);
   }
+
+  /** Writer settings tuned for the statistics seen so far. */
+  public ExampleWriterSettings getWriterSettings() {
+    return new ExampleWriterSettings(this);
+  }
+
+  private int getId(String name) {
+    Integer id = ids.get(name);
+    if (id == null) {
+      id = stats.size();
+      ids.put(name, id);
+      stats.add(new FeatureStats(name));
+    }
+    return id;
+  }
+
+  /** Scan Parquet files in parallel on {@code pool} and merge the results in input order. */
+  public static ExampleScanner scanParquet(String name, List<? extends InputFile> files,
+                                          ForkJoinPool pool) throws IOException {
+    return scan(name, files, pool, (scanner, file) -> {
+      try (ExampleRecordReader reader = ExampleRecordReader.builder(file).build()) {
+        ExampleRecord record;
+        while ((record = reader.read()) != null) {
+          scanner.scan(record);
+        }
+      }
+    });
+  }
+
+  /** Scan uncompressed TFRecord files in parallel on {@code pool}, like {@link #scanParquet}. */
+  public static ExampleScanner scanTFRecords(String name, List<? extends InputFile> files,
+                                            ForkJoinPool pool) throws IOException {
+    return scan(name, files, pool, (scanner, file) -> {
+      try (InputStream in = file.newStream(); TFRecordReader reader = new TFRecordReader(in)) {
+        byte[] record;
+        while ((record = reader.read()) != null) {
+          scanner.scan(Example.parseFrom(record));
+        }
+      }
+    });
+  }
+
+  interface FileScanner<T> {
+    void scan(ExampleScanner scanner, T file) throws IOException;
+  }
+
+  static <T> ExampleScanner scan(String name, List<? extends T> files, ForkJoinPool pool,
+                                 FileScanner<T> fileScanner) throws IOException {
+    try {
+      return pool.invoke(new ScanTask<>(name, files, fileScanner));
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  private static class ScanTask<T> extends RecursiveTask<ExampleScanner> {
+    private static final long serialVersionUID = 1L;
+
+    private final String name;
+    private final List<? extends T> files;
+    private final FileScanner<T> fileScanner;
+
+    private ScanTask(String name, List<? extends T> files, FileScanner<T> fileScanner) {
+      this.name = name;
+      this.files = files;
+      this.fileScanner = fileScanner;
+    }
+
+    @Override
+    protected ExampleScanner compute() {
+      if (files.size() <= 1) {
+        ExampleScanner scanner = new ExampleScanner(name);
+        for (T file : files) {
+          try {
+            fileScanner.scan(scanner, file);
+          } catch (IOException e) {
+            throw new UncheckedIOException("Failed to scan " + file, e);
+          }
+        }
+        return scanner;
+      }
+      int mid = files.size() / 2;
+      ScanTask<T> left = new ScanTask<>(name, files.subList(0, mid), fileScanner);
+      ScanTask<T> right = new ScanTask<>(name, files.subList(mid, files.size()), fileScanner);
+      right.fork();
+      return left.compute().merge(right.join());
+    }
+  }
+
+  public static class FeatureStats {
+    // value lengths are bucketed by bit length, i.e. bucket i holds [2^(i-1), 2^i)
+    private static final int LENGTH_BUCKETS = 32;
+
+    private final String name;
+    private Schema.Type type;
+    private long count;
+    private long valueCount;
+    private int maxCount;
+    private long minLong = Long.MAX_VALUE;
+    private long maxLong = Long.MIN_VALUE;
+    private float minFloat = Float.POSITIVE_INFINITY;
+    private float maxFloat = Float.NEGATIVE_INFINITY;
+    private int minLength = Integer.MAX_VALUE;
+    private int maxLength = 0;
+    private long totalLength;
+    private long[] lengthHistogram;
+    private HyperLogLog distinct;
+
+    private FeatureStats(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    /** Feature type, or {@code null} if the feature never had a kind set. */
+    public Schema.Type getType() {
+      return type;
+    }
+
+    /** Number of Examples with at least one value. */
+    public long getCount() {
+      return count;
+    }
+
+    /** Total number of values across all Examples. */
+    public long getValueCount() {
+      return valueCount;
+    }
+
+    /** Maximum number of values in a single Example. */
+    public int getMaxCount() {
+      return maxCount;
+    }
+
+    public long getMinInt64() {
+      return minLong;
+    }
+
+    public long getMaxInt64() {
+      return maxLong;
+    }
+
+    /** Minimum {@code FLOAT} value, ignoring NaN. */
+    public float getMinFloat() {
+      return minFloat;
+    }
+
+    /** Maximum {@code FLOAT} value, ignoring NaN. */
+    public float getMaxFloat() {
+      return maxFloat;
+    }
+
+    /** Approximate number of distinct {@code INT64} or {@code BYTES} values, or -1. */
+    public long getDistinctCount() {
+      return distinct == null ? -1 : distinct.estimate();
+    }
+
+    public int getMinLength() {
+      return minLength;
+    }
+
+    public int getMaxLength() {
+      return maxLength;
+    }
+
+    public long getTotalLength() {
+      return totalLength;
+    }
+
+    /**
+     * Number of {@code BYTES} values by length, where index 0 counts empty values and index
+     * {@code i > 0} counts values of length in {@code [2^(i-1), 2^i)}.
+     */
+    public long[] getLengthHistogram() {
+      return lengthHistogram == null ? new long[LENGTH_BUCKETS] : lengthHistogram.clone();
+    }
+
+    private void setType(Schema.Type newType) {
+      if (type != null && newType != null) {
+        Preconditions.checkArgument(
+            type == newType,
+            "Incompatible types for field %s: %s != %s",
+            name, type, newType);
+      }
+      if (newType != null) {
+        type = newType;
+      }
+    }
+
+    private void addCount(int n) {
+      if (n >= 1) {
+        count++;
+      }
+      valueCount += n;
+      maxCount = Math.max(maxCount, n);
+    }
+
+    private void addLong(long value) {
+      minLong = Math.min(minLong, value);
+      maxLong = Math.max(maxLong, value);
+      getDistinct().addLong(value);
+    }
+
+    private void addFloat(float value) {
+      if (value < minFloat) {
+        minFloat = value;
+      }
+      if (value > maxFloat) {
+        maxFloat = value;
+      }
+    }
+
+    private void addBytes(ByteString value) {
+      addBytes(value.asReadOnlyByteBuffer());
+    }
+
+    private void addBytes(ByteBuffer value) {
+      int length = value.remaining();
+      minLength = Math.min(minLength, length);
+      maxLength = Math.max(maxLength, length);
+      totalLength += length;
+      if (lengthHistogram == null) {
+        lengthHistogram = new long[LENGTH_BUCKETS];
+      }
+      lengthHistogram[32 - Integer.numberOfLeadingZeros(length)]++;
+      getDistinct().addBytes(value);
+    }
+
+    private HyperLogLog getDistinct() {
+      if (distinct == null) {
+        distinct = new HyperLogLog();
+      }
+      return distinct;
+    }
+
+    private void merge(FeatureStats other) {
+      setType(other.type);
+      count += other.count;
+      valueCount += other.valueCount;
+      maxCount = Math.max(maxCount, other.maxCount);
+      minLong = Math.min(minLong, other.minLong);
+      maxLong = Math.max(maxLong, other.maxLong);
+      minFloat = Math.min(minFloat, other.minFloat);
+      maxFloat = Math.max(maxFloat, other.maxFloat);
+      minLength = Math.min(minLength, other.minLength);
+      maxLength = Math.max(maxLength, other.maxLength);
+      totalLength += other.totalLength;
+      if (other.lengthHistogram != null) {
+        if (lengthHistogram == null) {
+          lengthHistogram = new long[LENGTH_BUCKETS];
+        }
+        for (int i = 0; i < LENGTH_BUCKETS; i++) {
+          lengthHistogram[i] += other.lengthHistogram[i];
+        }
+      }
+      if (other.distinct != null) {
+        getDistinct().merge(other.distinct);
+      }
+    }
+  }
 }
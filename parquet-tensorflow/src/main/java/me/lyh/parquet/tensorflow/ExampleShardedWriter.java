@@ -0,0 +1,427 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.apache.parquet.hadoop.util.HadoopOutputFile;
+import org.tensorflow.example.Example;
+import org.tensorflow.example.Feature;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
+
+/**
+ * Writes Examples from any number of producer threads to a directory of Parquet files, encoding
+ * on a pool of shard threads.
+ *
+ * <p>{@link #write(Example)} puts records in a bounded queue and blocks while it is full. Each
+ * shard takes records from the queue and writes them with its own {@link ExampleParquetWriter}s
+ * to files named {@code part-<shard>-<sequence>.parquet}. A file is closed and the next one
+ * started once its data size, including buffered data, reaches the maximum file size, or once it
+ * has the maximum number of records.
+ *
+ * <p>With a partition feature, records are also routed to {@code <feature>=<value>} directories
+ * by the single value of an {@code INT64} or {@code BYTES} feature, or to
+ * {@value #DEFAULT_PARTITION} if it has none. Records keep the partition feature, and records with
+ * more than one value are rejected by {@link #write(Example)}. Each shard keeps
+ * at most {@code maxOpenFiles} files open and closes the least recently written one beyond that,
+ * since every open file buffers up to a row group in memory.
+ *
+ * <pre>{@code
+ * try (ExampleShardedWriter writer = ExampleShardedWriter.builder(dir)
+ *     .withSchema(schema)
+ *     .withShards(8)
+ *     .withMaxFileSize(512L * 1024 * 1024)
+ *     .withPartitionFeature("date")
+ *     .withWriterOptions(b -> b.withCompressionCodec(CompressionCodecName.ZSTD))
+ *     .build()) {
+ *   examples.parallelStream().forEach(writer::write);
+ * }
+ * }</pre>
+ */
+public class ExampleShardedWriter implements Closeable {
+  /** Directory name of records without a partition value, same as Hive. */
+  public static final String DEFAULT_PARTITION = "__HIVE_DEFAULT_PARTITION__";
+
+  private static final AtomicInteger POOL_ID = new AtomicInteger();
+  private static final long POLL_MS = 100;
+
+  private final Builder builder;
+  private final BlockingQueue<Record> queue;
+  private final ExecutorService executor;
+  private final List<Future<Void>> shards = new ArrayList<>();
+  private final ConcurrentLinkedQueue<String> files = new ConcurrentLinkedQueue<>();
+  private volatile boolean closed = false;
+  private volatile Throwable failure;
+
+  private ExampleShardedWriter(Builder builder) {
+    this.builder = builder;
+    this.queue = new ArrayBlockingQueue<>(builder.queueSize);
+
+    String prefix = "parquet-tensorflow-writer-" + POOL_ID.incrementAndGet() + "-";
+    AtomicInteger threadId = new AtomicInteger();
+    this.executor = Executors.newFixedThreadPool(builder.shards, r -> {
+      Thread t = new Thread(r, prefix + threadId.incrementAndGet());
+      t.setDaemon(true);
+      return t;
+    });
+    for (int i = 0; i < builder.shards; i++) {
+      int shard = i;
+      shards.add(executor.submit(() -> {
+        try {
+          new Shard(shard).run();
+        } catch (Throwable e) {
+          failure = e;
+          throw e;
+        }
+        return null;
+      }));
+    }
+  }
+
+  public static Builder builder(Path dir) {
+    return new Builder(dir, null);
+  }
+
+  /** Create a builder for a local directory, without Hadoop. */
+  public static Builder builder(java.nio.file.Path dir) {
+    return new Builder(null, dir);
+  }
+
+  /**
+   * Write a record, blocking while the queue is full. Safe to call from multiple threads.
+   *
+   * @throws IllegalArgumentException if the partition feature has more than one value
+   */
+  public void write(Example example) throws IOException {
+    Preconditions.checkState(!closed, "Writer is closed");
+    // on the producer thread, so invalid records fail here instead of failing a shard
+    Record record = new Record(example, getPartition(example));
+    try {
+      do {
+        checkFailure();
+      } while (!queue.offer(record, POLL_MS, TimeUnit.MILLISECONDS));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while writing record");
+    }
+  }
+
+  /** Paths of files written so far, sorted, complete once the writer is closed. */
+  public List<String> getFiles() {
+    List<String> result = new ArrayList<>(files);
+    Collections.sort(result);
+    return result;
+  }
+
+  /** Write all queued records and close all files. Must not be called concurrently with write. */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      Throwable first = null;
+      for (Future<Void> f : shards) {
+        try {
+          f.get();
+        } catch (ExecutionException e) {
+          if (first == null) {
+            first = e.getCause();
+          } else if (first != e.getCause()) {
+            first.addSuppressed(e.getCause());
+          }
+        }
+      }
+      if (first instanceof IOException) {
+        throw (IOException) first;
+      } else if (first instanceof RuntimeException) {
+        throw (RuntimeException) first;
+      } else if (first != null) {
+        throw new IOException("Failed to write records", first);
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while closing writer");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private void checkFailure() throws IOException {
+    if (failure != null) {
+      throw new IOException("Failed to write records", failure);
+    }
+  }
+
+  private String getPartition(Example example) {
+    if (builder.partitionField == null) {
+      return null;
+    }
+    String name = builder.partitionField.getName();
+    Feature feature = example.getFeatures().getFeatureMap().get(name);
+    String value = null;
+    int count = 0;
+    if (feature != null) {
+      if (builder.partitionField.getType() == Schema.Type.INT64) {
+        count = feature.getInt64List().getValueCount();
+        value = count == 1 ? Long.toString(feature.getInt64List().getValue(0)) : null;
+      } else {
+        count = feature.getBytesList().getValueCount();
+        value = count == 1 ? escape(feature.getBytesList().getValue(0).toStringUtf8()) : null;
+      }
+    }
+    Preconditions.checkArgument(count <= 1, "Partition feature %s has %s values", name, count);
+    return name + "=" + (value == null || value.isEmpty() ? DEFAULT_PARTITION : value);
+  }
+
+  // percent-encode UTF-8 bytes other than [A-Za-z0-9._-], to keep values within one directory
+  private static String escape(String value) {
+    StringBuilder sb = new StringBuilder();
+    for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+      char c = (char) (b & 0xff);
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+          || c == '.' || c == '_' || c == '-') {
+        sb.append(c);
+      } else {
+        sb.append(String.format("%%%02X", (int) c));
+      }
+    }
+    return sb.toString();
+  }
+
+  ////////////////////////////////////////
+
+  private static class Record {
+    private final Example example;
+    private final String partition;
+
+    private Record(Example example, String partition) {
+      this.example = example;
+      this.partition = partition;
+    }
+  }
+
+  private class Shard {
+    private final int shard;
+    // in access order, for closing the least recently written file
+    private final Map<String, OpenFile> open = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Integer> sequences = new HashMap<>();
+
+    private Shard(int shard) {
+      this.shard = shard;
+    }
+
+    private void run() throws IOException, InterruptedException {
+      Throwable error = null;
+      try {
+        while (true) {
+          Record record = queue.poll(POLL_MS, TimeUnit.MILLISECONDS);
+          // all writes happen before closed is set, so the queue is drained once poll returns null
+          if (record == null && closed && (record = queue.poll()) == null) {
+            break;
+          }
+          if (record != null) {
+            write(record.example, record.partition);
+          }
+        }
+      } catch (Throwable e) {
+        error = e;
+        throw e;
+      } finally {
+        for (OpenFile f : open.values()) {
+          try {
+            f.close();
+          } catch (IOException | RuntimeException e) {
+            if (error == null) {
+              error = e;
+            } else {
+              error.addSuppressed(e);
+            }
+          }
+        }
+        open.clear();
+        if (error instanceof IOException) {
+          throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+          throw (RuntimeException) error;
+        }
+      }
+    }
+
+    private void write(Example example, String partition) throws IOException {
+      OpenFile f = open.get(partition);
+      if (f == null) {
+        if (open.size() >= builder.maxOpenFiles) {
+          Iterator<OpenFile> it = open.values().iterator();
+          OpenFile eldest = it.next();
+          it.remove();
+          eldest.close();
+        }
+        f = new OpenFile(partition, sequences.merge(partition, 1, Integer::sum) - 1);
+        open.put(partition, f);
+      }
+      f.writer.write(example);
+      f.records++;
+      if (f.records >= builder.maxRecords || f.writer.getDataSize() >= builder.maxFileSize) {
+        open.remove(partition);
+        f.close();
+      }
+    }
+
+    private class OpenFile {
+      private final String path;
+      private final ParquetWriter<Example> writer;
+      private long records = 0;
+
+      private OpenFile(String partition, int sequence) throws IOException {
+        String name = String.format("part-%05d-%05d.parquet", shard, sequence);
+        ExampleParquetWriter.Builder b;
+        if (builder.dir != null) {
+          Path dir = partition == null ? builder.dir : new Path(builder.dir, partition);
+          b = ExampleParquetWriter
+              .builder(HadoopOutputFile.fromPath(new Path(dir, name), builder.conf))
+              .withConf(builder.conf);
+        } else {
+          java.nio.file.Path dir =
+              partition == null ? builder.localDir : builder.localDir.resolve(partition);
+          Files.createDirectories(dir);
+          b = ExampleParquetWriter.builder(dir.resolve(name));
+        }
+        this.writer = builder.writerOptions.apply(b)
+            .withSchema(builder.schema)
+            .withWriteMode(ParquetFileWriter.Mode.CREATE)
+            .build();
+        this.path = partition == null ? name : partition + "/" + name;
+      }
+
+      private void close() throws IOException {
+        writer.close();
+        files.add(path);
+      }
+    }
+  }
+
+  ////////////////////////////////////////
+
+  public static class Builder {
+    private final Path dir;
+    private final java.nio.file.Path localDir;
+    private Configuration conf = new Configuration();
+    private Schema schema;
+    private int shards = Runtime.getRuntime().availableProcessors();
+    private int queueSize = 1024;
+    private long maxFileSize = Long.MAX_VALUE;
+    private long maxRecords = Long.MAX_VALUE;
+    private String partitionFeature;
+    private Schema.Field partitionField;
+    private int maxOpenFiles = 8;
+    private UnaryOperator<ExampleParquetWriter.Builder> writerOptions = UnaryOperator.identity();
+
+    private Builder(Path dir, java.nio.file.Path localDir) {
+      this.dir = dir;
+      this.localDir = localDir;
+    }
+
+    public Builder withConf(Configuration conf) {
+      this.conf = conf;
+      return this;
+    }
+
+    public Builder withSchema(Schema schema) {
+      this.schema = schema;
+      return this;
+    }
+
+    /** Encode on {@code shards} threads, the number of available processors by default. */
+    public Builder withShards(int shards) {
+      Preconditions.checkArgument(shards > 0, "Invalid shards: %s", shards);
+      this.shards = shards;
+      return this;
+    }
+
+    /** Buffer up to {@code queueSize} records before blocking producers, 1024 by default. */
+    public Builder withQueueSize(int queueSize) {
+      Preconditions.checkArgument(queueSize > 0, "Invalid queue size: %s", queueSize);
+      this.queueSize = queueSize;
+      return this;
+    }
+
+    /**
+     * Start a new file once the data size of the current one reaches {@code maxFileSize} bytes.
+     * Data size includes buffered data before compression, so files are usually smaller.
+     */
+    public Builder withMaxFileSize(long maxFileSize) {
+      Preconditions.checkArgument(maxFileSize > 0, "Invalid max file size: %s", maxFileSize);
+      this.maxFileSize = maxFileSize;
+      return this;
+    }
+
+    /** Start a new file once the current one has {@code maxRecords} records. */
+    public Builder withMaxRecords(long maxRecords) {
+      Preconditions.checkArgument(maxRecords > 0, "Invalid max records: %s", maxRecords);
+      this.maxRecords = maxRecords;
+      return this;
+    }
+
+    /** Route records to directories by the value of an {@code INT64} or {@code BYTES} feature. */
+    public Builder withPartitionFeature(String name) {
+      this.partitionFeature = name;
+      return this;
+    }
+
+    /** Keep at most {@code maxOpenFiles} files open per shard, 8 by default. */
+    public Builder withMaxOpenFiles(int maxOpenFiles) {
+      Preconditions.checkArgument(maxOpenFiles > 0, "Invalid max open files: %s", maxOpenFiles);
+      this.maxOpenFiles = maxOpenFiles;
+      return this;
+    }
+
+    /**
+     * Configure each {@link ExampleParquetWriter}, e.g. codec, row group size or
+     * {@link ExampleWriterSettings#apply}. Schema and write mode are set by this writer.
+     */
+    public Builder withWriterOptions(UnaryOperator<ExampleParquetWriter.Builder> writerOptions) {
+      this.writerOptions = writerOptions;
+      return this;
+    }
+
+    public ExampleShardedWriter build() {
+      Preconditions.checkState(schema != null, "Schema is not set");
+      if (partitionFeature != null) {
+        partitionField = schema.getFields().stream()
+            .filter(f -> f.getName().equals(partitionFeature))
+            .findFirst()
+            .orElseThrow(() -> new IllegalArgumentException(
+                "Partition feature not in schema: " + partitionFeature));
+        Preconditions.checkArgument(
+            partitionField.getType() != Schema.Type.FLOAT,
+            "Partition feature must be INT64 or BYTES: %s", partitionFeature);
+      }
+      return new ExampleShardedWriter(this);
+    }
+  }
+}
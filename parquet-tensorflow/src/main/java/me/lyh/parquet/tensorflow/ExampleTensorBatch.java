@@ -0,0 +1,161 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of rows decoded into dense row-major {@code [size, width]} tensors in direct buffers,
+ * one {@link Tensor} per fixed-length {@code INT64} or {@code FLOAT} feature. Buffers come from a
+ * {@link DirectBufferPool} and are returned to it on {@link #close()}.
+ */
+public class ExampleTensorBatch implements AutoCloseable {
+  private final Schema schema;
+  private final Tensor[] tensors;
+  private final Map<String, Integer> indices = new HashMap<>();
+  private final int capacity;
+  private final DirectBufferPool pool;
+  private int size = 0;
+
+  ExampleTensorBatch(Schema schema, Map<String, Integer> widths, int capacity,
+                     DirectBufferPool pool) {
+    this.schema = schema;
+    this.capacity = capacity;
+    this.pool = pool;
+    List<Schema.Field> fields = schema.getFields();
+    tensors = new Tensor[fields.size()];
+    for (int i = 0; i < fields.size(); i++) {
+      Schema.Field field = fields.get(i);
+      indices.put(field.getName(), i);
+      tensors[i] = new Tensor(field, widths.get(field.getName()));
+    }
+  }
+
+  public Schema getSchema() {
+    return schema;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int getTensorCount() {
+    return tensors.length;
+  }
+
+  public Tensor getTensor(int index) {
+    return tensors[index];
+  }
+
+  public Tensor getTensor(String name) {
+    Integer index = indices.get(name);
+    Preconditions.checkArgument(index != null, "Invalid field: %s", name);
+    return tensors[index];
+  }
+
+  /** Return all buffers to the pool. Buffers of this batch must not be used afterwards. */
+  @Override
+  public void close() {
+    for (Tensor tensor : tensors) {
+      tensor.release();
+    }
+  }
+
+  boolean isFull() {
+    return size == capacity;
+  }
+
+  void commit() {
+    size++;
+  }
+
+  ////////////////////////////////////////
+
+  /**
+   * Values of a feature in a direct buffer of {@code size * width} elements in native byte order,
+   * i.e. {@code long}s for {@code INT64} and {@code float}s for {@code FLOAT}. Rows with fewer
+   * than {@code width} values are padded with zeros, and the actual number of values of each row
+   * is kept in {@link #getLengths()} unless the feature is {@code REQUIRED}.
+   */
+  public class Tensor {
+    private final Schema.Field field;
+    private final int width;
+    private final int elementSize;
+    private ByteBuffer values;
+    private ByteBuffer lengths;
+    // number of values in the pending row
+    int count = 0;
+
+    private Tensor(Schema.Field field, int width) {
+      this.field = field;
+      this.width = width;
+      this.elementSize = field.getType() == Schema.Type.INT64 ? Long.BYTES : Float.BYTES;
+      this.values = pool.acquire(capacity * width * elementSize);
+      this.lengths = field.getRepetition() == Schema.Repetition.REQUIRED
+          ? null
+          : pool.acquire(capacity * Integer.BYTES);
+    }
+
+    public Schema.Field getField() {
+      return field;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    /** Values of rows {@code [0, size)}, a view of the underlying direct buffer. */
+    public ByteBuffer getValues() {
+      return view(values, size * width * elementSize);
+    }
+
+    /** Number of values of rows {@code [0, size)} as {@code int}s, or {@code null} if required. */
+    public ByteBuffer getLengths() {
+      return lengths == null ? null : view(lengths, size * Integer.BYTES);
+    }
+
+    void putLong(int row, long value) {
+      values.putLong((row * width + count++) * Long.BYTES, value);
+    }
+
+    void putFloat(int row, float value) {
+      values.putFloat((row * width + count++) * Float.BYTES, value);
+    }
+
+    // Pad the pending row with zeros and record its length
+    void commit(int row) {
+      for (int i = row * width + count; i < (row + 1) * width; i++) {
+        if (elementSize == Long.BYTES) {
+          values.putLong(i * Long.BYTES, 0L);
+        } else {
+          values.putFloat(i * Float.BYTES, 0f);
+        }
+      }
+      if (lengths != null) {
+        lengths.putInt(row * Integer.BYTES, count);
+      }
+    }
+
+    private void release() {
+      if (values != null) {
+        pool.release(values);
+        values = null;
+      }
+      if (lengths != null) {
+        pool.release(lengths);
+        lengths = null;
+      }
+    }
+
+    private ByteBuffer view(ByteBuffer buffer, int length) {
+      Preconditions.checkState(buffer != null, "Batch is closed");
+      ByteBuffer b = buffer.duplicate();
+      b.position(0).limit(length);
+      return b.slice().order(ByteOrder.nativeOrder());
+    }
+  }
+}
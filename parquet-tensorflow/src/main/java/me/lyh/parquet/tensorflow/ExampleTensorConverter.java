@@ -0,0 +1,121 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.io.ParquetDecodingException;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+
+import java.util.Map;
+
+class ExampleTensorConverter extends GroupConverter {
+  private final Schema schema;
+  private final Map<String, Integer> widths;
+  private final int batchSize;
+  private final DirectBufferPool pool;
+  private final Converter[] converters;
+  private ExampleTensorBatch batch;
+
+  ExampleTensorConverter(Schema schema, Map<String, Integer> widths, int batchSize,
+                         DirectBufferPool pool) {
+    this.schema = schema;
+    this.widths = widths;
+    this.batchSize = batchSize;
+    this.pool = pool;
+    converters = new Converter[schema.getFields().size()];
+    for (int i = 0; i < converters.length; i++) {
+      Schema.Field field = schema.getFields().get(i);
+      switch (field.getType()) {
+        case INT64:
+          converters[i] = new Int64Converter(i);
+          break;
+        case FLOAT:
+          converters[i] = new FloatConverter(i);
+          break;
+        case BYTES:
+          throw new IllegalArgumentException("Unsupported tensor feature: " + field.getName());
+      }
+    }
+  }
+
+  @Override
+  public Converter getConverter(int fieldIndex) {
+    return converters[fieldIndex];
+  }
+
+  @Override
+  public void start() {
+    // Buffers are acquired lazily so that a fully filtered input allocates nothing
+    if (batch == null) {
+      batch = new ExampleTensorBatch(schema, widths, batchSize, pool);
+    }
+    // Discard values of a row that was started but never committed, e.g. filtered out
+    for (int i = 0; i < converters.length; i++) {
+      batch.getTensor(i).count = 0;
+    }
+  }
+
+  @Override
+  public void end() {
+    int row = batch.size();
+    for (int i = 0; i < converters.length; i++) {
+      ExampleTensorBatch.Tensor tensor = batch.getTensor(i);
+      try {
+        tensor.getField().getRepetition().checkSize(tensor.count);
+      } catch (IllegalStateException e) {
+        throw decodingException(tensor, e.getMessage(), e);
+      }
+      tensor.commit(row);
+    }
+  }
+
+  /** Commit the current row, and hand the batch over once it is full. */
+  public ExampleTensorBatch get() {
+    ExampleTensorBatch b = batch;
+    b.commit();
+    if (b.isFull()) {
+      batch = null;
+    }
+    return b;
+  }
+
+  private ParquetDecodingException decodingException(ExampleTensorBatch.Tensor tensor,
+                                                     String message, Exception cause) {
+    String msg = String.format(
+        "Failed to decode %s#%s: %s", schema.getName(), tensor.getField().getName(), message);
+    return new ParquetDecodingException(msg, cause);
+  }
+
+  private ExampleTensorBatch.Tensor next(int index) {
+    ExampleTensorBatch.Tensor tensor = batch.getTensor(index);
+    if (tensor.count == tensor.getWidth()) {
+      throw decodingException(tensor, "Values > width: " + tensor.getWidth(), null);
+    }
+    return tensor;
+  }
+
+  private class Int64Converter extends PrimitiveConverter {
+    private final int index;
+
+    Int64Converter(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void addLong(long value) {
+      next(index).putLong(batch.size(), value);
+    }
+  }
+
+  private class FloatConverter extends PrimitiveConverter {
+    private final int index;
+
+    FloatConverter(int index) {
+      this.index = index;
+    }
+
+    @Override
+    public void addFloat(float value) {
+      next(index).putFloat(batch.size(), value);
+    }
+  }
+}
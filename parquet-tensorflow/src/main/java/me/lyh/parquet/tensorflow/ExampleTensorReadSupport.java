@@ -0,0 +1,61 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.api.InitContext;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.Map;
+
+class ExampleTensorReadSupport extends ReadSupport<ExampleTensorBatch> {
+  private final ExampleReadSupport readSupport;
+  private final Map<String, Integer> widths;
+  private final int batchSize;
+  private final DirectBufferPool pool;
+
+  ExampleTensorReadSupport(Map<String, Integer> widths, int batchSize, DirectBufferPool pool) {
+    this.readSupport = new ExampleReadSupport(widths.keySet());
+    this.widths = widths;
+    this.batchSize = batchSize;
+    this.pool = pool;
+  }
+
+  @Override
+  public ReadContext init(InitContext context) {
+    return readSupport.init(context);
+  }
+
+  @Override
+  public RecordMaterializer<ExampleTensorBatch> prepareForRead(Configuration configuration,
+                                                               Map<String, String> keyValueMetaData,
+                                                               MessageType fileSchema,
+                                                               ReadContext readContext) {
+    return prepareForRead(
+        new HadoopParquetConfiguration(configuration), keyValueMetaData, fileSchema, readContext);
+  }
+
+  @Override
+  public RecordMaterializer<ExampleTensorBatch> prepareForRead(ParquetConfiguration configuration,
+                                                               Map<String, String> keyValueMetaData,
+                                                               MessageType fileSchema,
+                                                               ReadContext readContext) {
+    return new RecordMaterializer<ExampleTensorBatch>() {
+      private ExampleTensorConverter tensorConverter = new ExampleTensorConverter(
+          Schema.fromParquet(readContext.getRequestedSchema()), widths, batchSize, pool);
+
+      @Override
+      public ExampleTensorBatch getCurrentRecord() {
+        return tensorConverter.get();
+      }
+
+      @Override
+      public GroupConverter getRootConverter() {
+        return tensorConverter;
+      }
+    };
+  }
+}
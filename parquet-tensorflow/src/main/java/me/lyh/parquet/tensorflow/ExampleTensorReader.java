@@ -0,0 +1,149 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetReader;
+import org.apache.parquet.hadoop.api.ReadSupport;
+import org.apache.parquet.io.InputFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads fixed-length {@code INT64} and {@code FLOAT} features of Example files as
+ * {@link ExampleTensorBatch}es, i.e. dense {@code [batch, width]} tensors in pooled direct
+ * buffers that can be handed to native code without copying.
+ *
+ * <p>Each call to {@link #read()} returns a new batch, which should be closed once consumed so
+ * that its buffers can be reused by later batches.
+ */
+public class ExampleTensorReader implements Closeable {
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final ParquetReader<ExampleTensorBatch> reader;
+  // first row of the next file, read while completing the previous batch
+  private ExampleTensorBatch pending;
+
+  private ExampleTensorReader(ParquetReader<ExampleTensorBatch> reader) {
+    this.reader = reader;
+  }
+
+  public static Builder builder(Path path) {
+    return new Builder(new ReaderBuilder(path));
+  }
+
+  public static Builder builder(InputFile file) {
+    return new Builder(new ReaderBuilder(file));
+  }
+
+  /** Read the next batch of up to {@code batchSize} rows, or {@code null} at the end of input. */
+  public ExampleTensorBatch read() throws IOException {
+    ExampleTensorBatch batch = null;
+    while (batch == null || !batch.isFull()) {
+      ExampleTensorBatch b = pending != null ? pending : reader.read();
+      pending = null;
+      if (b == null) {
+        break;
+      }
+      if (batch != null && b != batch) {
+        // every file has its own converter and therefore its own batch
+        pending = b;
+        break;
+      }
+      batch = b;
+    }
+    return batch;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+  }
+
+  public static class Builder {
+    private final ReaderBuilder builder;
+    private final Map<String, Integer> widths = new LinkedHashMap<>();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private DirectBufferPool pool;
+
+    private Builder(ReaderBuilder builder) {
+      this.builder = builder;
+    }
+
+    /**
+     * Read a feature with up to {@code width} values per row. {@code OPTIONAL} and
+     * {@code REPEATED} rows with fewer values are padded with zeros, while rows with more values
+     * fail to decode.
+     */
+    public Builder withFeature(String name, int width) {
+      Preconditions.checkArgument(width > 0, "Invalid width: %s", width);
+      widths.put(name, width);
+      return this;
+    }
+
+    /**
+     * Read all {@code INT64} and {@code FLOAT} features that have the same number of values in
+     * every Example seen by {@code scanner}.
+     */
+    public Builder withFixedLengthFeatures(ExampleScanner scanner) {
+      for (ExampleScanner.FeatureStats s : scanner.getStats()) {
+        boolean numeric = s.getType() == Schema.Type.INT64 || s.getType() == Schema.Type.FLOAT;
+        if (numeric && s.getCount() == scanner.getCount()
+            && s.getValueCount() == s.getCount() * s.getMaxCount()) {
+          withFeature(s.getName(), s.getMaxCount());
+        }
+      }
+      return this;
+    }
+
+    public Builder withBatchSize(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "Invalid batch size: %s", batchSize);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /** Share buffers with other readers, e.g. of the same input feeding pipeline. */
+    public Builder withBufferPool(DirectBufferPool pool) {
+      this.pool = pool;
+      return this;
+    }
+
+    public Builder withConf(Configuration conf) {
+      builder.withConf(conf);
+      return this;
+    }
+
+    public Builder withFilter(FilterCompat.Filter filter) {
+      builder.withFilter(filter);
+      return this;
+    }
+
+    public ExampleTensorReader build() throws IOException {
+      Preconditions.checkState(!widths.isEmpty(), "No features");
+      builder.readSupport = new ExampleTensorReadSupport(
+          new LinkedHashMap<>(widths), batchSize, pool != null ? pool : new DirectBufferPool());
+      return new ExampleTensorReader(builder.build());
+    }
+  }
+
+  private static class ReaderBuilder extends ParquetReader.Builder<ExampleTensorBatch> {
+    private ExampleTensorReadSupport readSupport;
+
+    private ReaderBuilder(Path path) {
+      super(path);
+    }
+
+    private ReaderBuilder(InputFile file) {
+      super(file);
+    }
+
+    @Override
+    protected ReadSupport<ExampleTensorBatch> getReadSupport() {
+      return readSupport;
+    }
+  }
+}
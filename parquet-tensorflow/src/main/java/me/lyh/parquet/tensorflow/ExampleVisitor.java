@@ -0,0 +1,23 @@
+package me.lyh.parquet.tensorflow;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives values of Example records without materializing
+ * {@link org.tensorflow.example.Example} protos, see
+ * {@link ExampleRecordReader#read(ExampleVisitor)}.
+ *
+ * <p>Field ids are indices of fields in {@link ExampleRecord#getSchema()}. Values of a record are
+ * visited in field order and, for each field, in value order.
+ */
+public interface ExampleVisitor {
+  void onInt64(int fieldId, long value);
+
+  void onFloat(int fieldId, float value);
+
+  /** {@code value} is a shared buffer, only valid until this method returns. */
+  void onBytes(int fieldId, ByteBuffer value);
+
+  /** Called after all values of a record. */
+  default void endRecord() {}
+}
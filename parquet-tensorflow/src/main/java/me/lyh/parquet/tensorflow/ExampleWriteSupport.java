@@ -1,18 +1,24 @@
 package me.lyh.parquet.tensorflow;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.parquet.conf.HadoopParquetConfiguration;
+import org.apache.parquet.conf.ParquetConfiguration;
 import org.apache.parquet.hadoop.api.WriteSupport;
 import org.apache.parquet.io.api.RecordConsumer;
 import org.apache.parquet.schema.MessageType;
 import org.apache.parquet.schema.MessageTypeParser;
 import org.tensorflow.example.Example;
+import org.tensorflow.example.Feature;
 import org.tensorflow.example.Features;
 
 import java.util.Collections;
 
 public class ExampleWriteSupport extends WriteSupport<Example> {
   private Schema schema;
+  private SchemaCodec codec;
   private RecordConsumer recordConsumer;
+  // null when disabled
+  private ExampleMetrics metrics;
 
   public ExampleWriteSupport() {}
 
@@ -20,8 +26,18 @@ public class ExampleWriteSupport extends WriteSupport<Example> {
     this.schema = schema;
   }
 
+  ExampleWriteSupport(Schema schema, ExampleMetrics metrics) {
+    this.schema = schema;
+    this.metrics = metrics;
+  }
+
   @Override
   public WriteContext init(Configuration configuration) {
+    return init(new HadoopParquetConfiguration(configuration));
+  }
+
+  @Override
+  public WriteContext init(ParquetConfiguration configuration) {
     MessageType messageType;
     if (schema == null) {
       String schemaString = configuration.get(ExampleParquetOutputFormat.SCHEMA_KEY);
@@ -30,6 +46,7 @@ public class ExampleWriteSupport extends WriteSupport<Example> {
     } else {
       messageType = schema.toParquet();
     }
+    codec = SchemaCodec.of(schema);
     return new WriteContext(messageType, Collections.emptyMap());
   }
 
@@ -45,13 +62,45 @@ public class ExampleWriteSupport extends WriteSupport<Example> {
 
   @Override
   public void write(Example record) {
+    long start = metrics != null ? System.nanoTime() : 0L;
     recordConsumer.startMessage();
-    int i = 0;
     Features features = record.getFeatures();
-    for (Schema.Field field : schema.getFields()) {
-      field.write(i, recordConsumer, features);
-      i++;
+    for (int i = 0; i < codec.size(); i++) {
+      Feature feature =
+          features.getFeatureOrDefault(codec.getName(i), Feature.getDefaultInstance());
+      if (metrics == null) {
+        codec.writeField(i, recordConsumer, feature);
+        continue;
+      }
+      int count = 0;
+      long bytes = 0;
+      switch (codec.getKind(i)) {
+        case SchemaCodec.INT64:
+          count = feature.getInt64List().getValueCount();
+          bytes = (long) Long.BYTES * count;
+          break;
+        case SchemaCodec.FLOAT:
+          count = feature.getFloatList().getValueCount();
+          bytes = (long) Float.BYTES * count;
+          break;
+        case SchemaCodec.BYTES:
+          count = feature.getBytesList().getValueCount();
+          for (int j = 0; j < count; j++) {
+            bytes += feature.getBytesList().getValue(j).size();
+          }
+          break;
+      }
+      try {
+        codec.writeField(i, recordConsumer, feature);
+      } catch (IllegalStateException e) {
+        metrics.onInvalidFeature(codec.getField(i), count);
+        throw e;
+      }
+      metrics.onFeature(codec.getField(i), count, bytes);
     }
     recordConsumer.endMessage();
+    if (metrics != null) {
+      metrics.onRecord(System.nanoTime() - start);
+    }
   }
 }
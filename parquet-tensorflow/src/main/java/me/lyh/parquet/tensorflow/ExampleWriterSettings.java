@@ -0,0 +1,111 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.hadoop.ParquetWriter;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * {@link ParquetWriter} settings derived from {@link ExampleScanner} statistics.
+ *
+ * <ul>
+ *   <li>Dictionary encoding is enabled for {@code INT64} and {@code BYTES} columns whose distinct
+ *   values are at most half of all values and fit in one dictionary page, and disabled
+ *   otherwise. {@code FLOAT} columns keep the writer default.</li>
+ *   <li>Columns without dictionary encoding get a bloom filter sized for the estimated number of
+ *   distinct values in a row group.</li>
+ *   <li>Pages are sized to hold at least {@value #MIN_VALUES_PER_PAGE} average values of the
+ *   widest column, up to {@value #MAX_PAGE_SIZE} bytes, and row groups to hold at least one page
+ *   per column.</li>
+ * </ul>
+ */
+public class ExampleWriterSettings {
+  public static final int MIN_VALUES_PER_PAGE = 64;
+  public static final int MAX_PAGE_SIZE = 8 * 1024 * 1024;
+  private static final double MAX_DICTIONARY_RATIO = 0.5;
+
+  private final Map<String, Boolean> dictionaryEncoding = new LinkedHashMap<>();
+  private final Map<String, Long> bloomFilterNdvs = new LinkedHashMap<>();
+  private final int pageSize;
+  private final long rowGroupSize;
+
+  ExampleWriterSettings(ExampleScanner scanner) {
+    long total = Math.max(scanner.getCount(), 1L);
+    double recordSize = 0.0;
+    double maxValueSize = 0.0;
+    int columns = 0;
+    for (ExampleScanner.FeatureStats s : scanner.getStats()) {
+      if (s.getType() == null || s.getValueCount() == 0) {
+        continue;
+      }
+      double valueSize = getValueSize(s);
+      recordSize += valueSize * s.getValueCount() / total;
+      maxValueSize = Math.max(maxValueSize, valueSize);
+      columns++;
+    }
+
+    pageSize = (int) Math.min(
+        Math.max(maxValueSize * MIN_VALUES_PER_PAGE, ParquetWriter.DEFAULT_PAGE_SIZE),
+        MAX_PAGE_SIZE);
+    rowGroupSize = Math.max(ParquetWriter.DEFAULT_BLOCK_SIZE, (long) pageSize * columns);
+    double rowsPerRowGroup = recordSize > 0 ? rowGroupSize / recordSize : total;
+
+    for (ExampleScanner.FeatureStats s : scanner.getStats()) {
+      long ndv = s.getDistinctCount();
+      if (s.getValueCount() == 0 || ndv < 0) {
+        continue;
+      }
+      double dictionarySize = ndv * getValueSize(s);
+      boolean dictionary = ndv <= s.getValueCount() * MAX_DICTIONARY_RATIO
+          && dictionarySize <= ParquetProperties.DEFAULT_DICTIONARY_PAGE_SIZE;
+      dictionaryEncoding.put(s.getName(), dictionary);
+      if (!dictionary) {
+        double valuesPerRowGroup = rowsPerRowGroup * s.getValueCount() / total;
+        bloomFilterNdvs.put(s.getName(), Math.max(1L, (long) Math.min(ndv, valuesPerRowGroup)));
+      }
+    }
+  }
+
+  /** Plain encoded size of an average value. */
+  private static double getValueSize(ExampleScanner.FeatureStats s) {
+    switch (s.getType()) {
+      case INT64:
+        return 8.0;
+      case FLOAT:
+        return 4.0;
+      case BYTES:
+        return 4.0 + (double) s.getTotalLength() / Math.max(s.getValueCount(), 1L);
+    }
+    throw new IllegalStateException("This should never happen");
+  }
+
+  public Map<String, Boolean> getDictionaryEncoding() {
+    return Collections.unmodifiableMap(dictionaryEncoding);
+  }
+
+  public Map<String, Long> getBloomFilterNdvs() {
+    return Collections.unmodifiableMap(bloomFilterNdvs);
+  }
+
+  public int getPageSize() {
+    return pageSize;
+  }
+
+  public long getRowGroupSize() {
+    return rowGroupSize;
+  }
+
+  /** Apply settings to a writer builder, e.g. {@link ExampleParquetWriter.Builder}. */
+  public <B extends ParquetWriter.Builder<?, B>> B apply(B builder) {
+    B b = builder.withPageSize(pageSize).withRowGroupSize(rowGroupSize);
+    for (Map.Entry<String, Boolean> e : dictionaryEncoding.entrySet()) {
+      b = b.withDictionaryEncoding(e.getKey(), e.getValue());
+    }
+    for (Map.Entry<String, Long> e : bloomFilterNdvs.entrySet()) {
+      b = b.withBloomFilterNDV(e.getKey(), e.getValue());
+    }
+    return b;
+  }
+}
@@ -0,0 +1,338 @@
+package me.lyh.parquet.tensorflow;
+
+import com.google.protobuf.ByteString;
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.io.api.Binary;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Typed predicates on {@link Schema.Field}s that compile to Parquet {@link FilterPredicate}s,
+ * so that row groups and pages can be skipped with statistics, dictionaries, column indexes and
+ * bloom filters before records are assembled.
+ *
+ * <p>Comparisons on {@code REQUIRED} and {@code OPTIONAL} fields apply to the single value and
+ * never match a missing value. Comparisons on {@code REPEATED} fields match if any value
+ * matches, and never match an empty list. {@code notEq} and {@code notIn} are the negations of
+ * {@code eq} and {@code in}, i.e. they match missing values and, for {@code REPEATED} fields,
+ * lists where no value matches.
+ *
+ * <p>Records are filtered against the requested schema, so fields used in a predicate must not
+ * be projected out, except with {@link ExampleParquetReader.Builder#withLateMaterialization()}.
+ */
+public final class FeaturePredicate {
+  private final FilterPredicate predicate;
+
+  private FeaturePredicate(FilterPredicate predicate) {
+    this.predicate = predicate;
+  }
+
+  public static Int64Feature int64Feature(Schema.Field field) {
+    return new Int64Feature(field);
+  }
+
+  public static FloatFeature floatFeature(Schema.Field field) {
+    return new FloatFeature(field);
+  }
+
+  public static BytesFeature bytesFeature(Schema.Field field) {
+    return new BytesFeature(field);
+  }
+
+  public FeaturePredicate and(FeaturePredicate other) {
+    return new FeaturePredicate(FilterApi.and(predicate, other.predicate));
+  }
+
+  public FeaturePredicate or(FeaturePredicate other) {
+    return new FeaturePredicate(FilterApi.or(predicate, other.predicate));
+  }
+
+  public FeaturePredicate not() {
+    return new FeaturePredicate(FilterApi.not(predicate));
+  }
+
+  public FilterPredicate toFilterPredicate() {
+    return predicate;
+  }
+
+  /** Filter for {@code withFilter} of reader builders. */
+  public FilterCompat.Filter toFilter() {
+    return FilterCompat.get(predicate);
+  }
+
+  @Override
+  public String toString() {
+    return predicate.toString();
+  }
+
+  ////////////////////////////////////////
+
+  public abstract static class FeatureColumn<T extends Comparable<T>,
+      C extends Operators.Column<T> & Operators.SupportsLtGt> {
+    private final C column;
+    private final boolean repeated;
+    // any value, for presence checks on repeated fields
+    private final T any;
+
+    private FeatureColumn(Schema.Field field, Schema.Type type, C column, T any) {
+      Preconditions.checkArgument(
+          field.getType() == type, "Not a %s feature: %s", type, field.getName());
+      Preconditions.checkArgument(
+          !field.getName().contains("."), "Unsupported feature name: %s", field.getName());
+      this.column = column;
+      this.repeated = field.getRepetition() == Schema.Repetition.REPEATED;
+      this.any = any;
+    }
+
+    /** Match records where the feature has at least one value. */
+    public FeaturePredicate isPresent() {
+      // every value either equals `any` or not, including NaN which has no order
+      return repeated
+          ? of(FilterApi.or(
+              FilterApi.contains(FilterApi.eq(column, any)),
+              FilterApi.contains(FilterApi.notEq(column, any))))
+          : of(FilterApi.notEq(column, null));
+    }
+
+    /** Match records where the feature has no value. */
+    public FeaturePredicate isMissing() {
+      return repeated ? isPresent().not() : of(FilterApi.eq(column, null));
+    }
+
+    FeaturePredicate eqValue(T value) {
+      return repeated
+          ? of(FilterApi.contains(FilterApi.eq(column, value)))
+          : of(FilterApi.eq(column, value));
+    }
+
+    FeaturePredicate notEqValue(T value) {
+      return eqValue(value).not();
+    }
+
+    FeaturePredicate ltValue(T value) {
+      return repeated
+          ? of(FilterApi.contains(FilterApi.lt(column, value)))
+          : of(FilterApi.lt(column, value));
+    }
+
+    FeaturePredicate ltEqValue(T value) {
+      return repeated
+          ? of(FilterApi.contains(FilterApi.ltEq(column, value)))
+          : of(FilterApi.ltEq(column, value));
+    }
+
+    FeaturePredicate gtValue(T value) {
+      return repeated
+          ? of(FilterApi.contains(FilterApi.gt(column, value)))
+          : of(FilterApi.gt(column, value));
+    }
+
+    FeaturePredicate gtEqValue(T value) {
+      return repeated
+          ? of(FilterApi.contains(FilterApi.gtEq(column, value)))
+          : of(FilterApi.gtEq(column, value));
+    }
+
+    FeaturePredicate inValues(Set<T> values) {
+      Preconditions.checkArgument(!values.isEmpty(), "Empty values");
+      return repeated
+          ? of(FilterApi.contains(FilterApi.in(column, values)))
+          : of(FilterApi.in(column, values));
+    }
+
+    FeaturePredicate notInValues(Set<T> values) {
+      return inValues(values).not();
+    }
+
+    private static FeaturePredicate of(FilterPredicate predicate) {
+      return new FeaturePredicate(predicate);
+    }
+  }
+
+  public static final class Int64Feature extends FeatureColumn<Long, Operators.LongColumn> {
+    private Int64Feature(Schema.Field field) {
+      super(field, Schema.Type.INT64, FilterApi.longColumn(field.getName()), Long.MIN_VALUE);
+    }
+
+    public FeaturePredicate eq(long value) {
+      return eqValue(value);
+    }
+
+    public FeaturePredicate notEq(long value) {
+      return notEqValue(value);
+    }
+
+    public FeaturePredicate lt(long value) {
+      return ltValue(value);
+    }
+
+    public FeaturePredicate ltEq(long value) {
+      return ltEqValue(value);
+    }
+
+    public FeaturePredicate gt(long value) {
+      return gtValue(value);
+    }
+
+    public FeaturePredicate gtEq(long value) {
+      return gtEqValue(value);
+    }
+
+    public FeaturePredicate in(long... values) {
+      return inValues(toSet(values));
+    }
+
+    public FeaturePredicate in(Collection<Long> values) {
+      return inValues(new HashSet<>(values));
+    }
+
+    public FeaturePredicate notIn(long... values) {
+      return notInValues(toSet(values));
+    }
+
+    public FeaturePredicate notIn(Collection<Long> values) {
+      return notInValues(new HashSet<>(values));
+    }
+
+    private static Set<Long> toSet(long[] values) {
+      Set<Long> set = new HashSet<>();
+      for (long value : values) {
+        set.add(value);
+      }
+      return set;
+    }
+  }
+
+  public static final class FloatFeature extends FeatureColumn<Float, Operators.FloatColumn> {
+    private FloatFeature(Schema.Field field) {
+      super(field, Schema.Type.FLOAT, FilterApi.floatColumn(field.getName()),
+          Float.NEGATIVE_INFINITY);
+    }
+
+    public FeaturePredicate eq(float value) {
+      return eqValue(value);
+    }
+
+    public FeaturePredicate notEq(float value) {
+      return notEqValue(value);
+    }
+
+    public FeaturePredicate lt(float value) {
+      return ltValue(value);
+    }
+
+    public FeaturePredicate ltEq(float value) {
+      return ltEqValue(value);
+    }
+
+    public FeaturePredicate gt(float value) {
+      return gtValue(value);
+    }
+
+    public FeaturePredicate gtEq(float value) {
+      return gtEqValue(value);
+    }
+
+    public FeaturePredicate in(float... values) {
+      return inValues(toSet(values));
+    }
+
+    public FeaturePredicate in(Collection<Float> values) {
+      return inValues(new HashSet<>(values));
+    }
+
+    public FeaturePredicate notIn(float... values) {
+      return notInValues(toSet(values));
+    }
+
+    public FeaturePredicate notIn(Collection<Float> values) {
+      return notInValues(new HashSet<>(values));
+    }
+
+    private static Set<Float> toSet(float[] values) {
+      Set<Float> set = new HashSet<>();
+      for (float value : values) {
+        set.add(value);
+      }
+      return set;
+    }
+  }
+
+  /** Values are compared as unsigned bytes, strings are encoded as UTF-8. */
+  public static final class BytesFeature extends FeatureColumn<Binary, Operators.BinaryColumn> {
+    private BytesFeature(Schema.Field field) {
+      super(field, Schema.Type.BYTES, FilterApi.binaryColumn(field.getName()), Binary.EMPTY);
+    }
+
+    public FeaturePredicate eq(ByteString value) {
+      return eqValue(toBinary(value));
+    }
+
+    public FeaturePredicate eq(String value) {
+      return eqValue(Binary.fromString(value));
+    }
+
+    public FeaturePredicate notEq(ByteString value) {
+      return notEqValue(toBinary(value));
+    }
+
+    public FeaturePredicate notEq(String value) {
+      return notEqValue(Binary.fromString(value));
+    }
+
+    public FeaturePredicate lt(ByteString value) {
+      return ltValue(toBinary(value));
+    }
+
+    public FeaturePredicate ltEq(ByteString value) {
+      return ltEqValue(toBinary(value));
+    }
+
+    public FeaturePredicate gt(ByteString value) {
+      return gtValue(toBinary(value));
+    }
+
+    public FeaturePredicate gtEq(ByteString value) {
+      return gtEqValue(toBinary(value));
+    }
+
+    public FeaturePredicate in(String... values) {
+      return inValues(toSet(values));
+    }
+
+    public FeaturePredicate in(Collection<ByteString> values) {
+      return inValues(toSet(values));
+    }
+
+    public FeaturePredicate notIn(String... values) {
+      return notInValues(toSet(values));
+    }
+
+    public FeaturePredicate notIn(Collection<ByteString> values) {
+      return notInValues(toSet(values));
+    }
+
+    private static Binary toBinary(ByteString value) {
+      return Binary.fromConstantByteArray(value.toByteArray());
+    }
+
+    private static Set<Binary> toSet(String[] values) {
+      Set<Binary> set = new HashSet<>();
+      for (String value : values) {
+        set.add(Binary.fromString(value));
+      }
+      return set;
+    }
+
+    private static Set<Binary> toSet(Collection<ByteString> values) {
+      return values.stream().map(BytesFeature::toBinary).collect(Collectors.toSet());
+    }
+  }
+}
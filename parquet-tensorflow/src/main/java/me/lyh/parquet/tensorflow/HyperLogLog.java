@@ -0,0 +1,75 @@
+package me.lyh.parquet.tensorflow;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Mergeable HyperLogLog distinct count estimator over 64-bit hashes. */
+class HyperLogLog {
+  private static final int PRECISION = 12;
+  private static final int M = 1 << PRECISION;
+  private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+  private static final long C1 = 0x87c37b91114253d5L;
+  private static final long C2 = 0x4cf5ad432745937fL;
+
+  private final byte[] registers = new byte[M];
+
+  void addLong(long value) {
+    addHash(fmix64(value * C1));
+  }
+
+  void addBytes(ByteBuffer value) {
+    ByteBuffer b = value.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    long h = b.remaining() * C2;
+    while (b.remaining() >= 8) {
+      h = Long.rotateLeft(h ^ Long.rotateLeft(b.getLong() * C1, 31) * C2, 27) * 5 + 0x52dce729;
+    }
+    long tail = 0;
+    for (int shift = 0; b.hasRemaining(); shift += 8) {
+      tail |= (b.get() & 0xffL) << shift;
+    }
+    h ^= Long.rotateLeft(tail * C1, 31) * C2;
+    addHash(fmix64(h));
+  }
+
+  void merge(HyperLogLog other) {
+    for (int i = 0; i < M; i++) {
+      registers[i] = (byte) Math.max(registers[i], other.registers[i]);
+    }
+  }
+
+  long estimate() {
+    double sum = 0.0;
+    int zeros = 0;
+    for (byte r : registers) {
+      sum += 1.0 / (1L << r);
+      if (r == 0) {
+        zeros++;
+      }
+    }
+    double e = ALPHA * M * M / sum;
+    if (e <= 2.5 * M && zeros > 0) {
+      // linear counting for small cardinalities
+      e = M * Math.log((double) M / zeros);
+    }
+    return Math.round(e);
+  }
+
+  private void addHash(long hash) {
+    int index = (int) (hash >>> (64 - PRECISION));
+    // guard bit bounds the rank to 64 - PRECISION + 1
+    int rank = Long.numberOfLeadingZeros((hash << PRECISION) | (1L << (PRECISION - 1))) + 1;
+    if (rank > registers[index]) {
+      registers[index] = (byte) rank;
+    }
+  }
+
+  private static long fmix64(long h) {
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+}
@@ -0,0 +1,156 @@
+package me.lyh.parquet.tensorflow;
+
+import com.github.luben.zstd.Zstd;
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.conf.ParquetConfiguration;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.xerial.snappy.Snappy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A {@link CompressionCodecFactory} that does not depend on Hadoop, unlike
+ * {@link org.apache.parquet.hadoop.CodecFactory}, for local files. Supports codecs with
+ * implementations that Parquet already depends on, i.e. {@code UNCOMPRESSED}, {@code SNAPPY},
+ * {@code GZIP} and {@code ZSTD}.
+ */
+class LocalCodecFactory implements CompressionCodecFactory {
+  // same as org.apache.parquet.hadoop.codec.ZstandardCodec
+  private static final String ZSTD_LEVEL = "parquet.compression.codec.zstd.level";
+  private static final int DEFAULT_ZSTD_LEVEL = 3;
+
+  private final int zstdLevel;
+
+  LocalCodecFactory(ParquetConfiguration conf) {
+    this.zstdLevel = conf.getInt(ZSTD_LEVEL, DEFAULT_ZSTD_LEVEL);
+  }
+
+  @Override
+  public BytesInputCompressor getCompressor(CompressionCodecName codecName) {
+    return new Codec(codecName, zstdLevel);
+  }
+
+  @Override
+  public BytesInputDecompressor getDecompressor(CompressionCodecName codecName) {
+    return new Codec(codecName, zstdLevel);
+  }
+
+  @Override
+  public void release() {}
+
+  private static class Codec implements BytesInputCompressor, BytesInputDecompressor {
+    private final CompressionCodecName codecName;
+    private final int zstdLevel;
+
+    private Codec(CompressionCodecName codecName, int zstdLevel) {
+      switch (codecName) {
+        case UNCOMPRESSED:
+        case SNAPPY:
+        case GZIP:
+        case ZSTD:
+          break;
+        default:
+          throw new IllegalArgumentException("Unsupported codec without Hadoop: " + codecName);
+      }
+      this.codecName = codecName;
+      this.zstdLevel = zstdLevel;
+    }
+
+    @Override
+    public CompressionCodecName getCodecName() {
+      return codecName;
+    }
+
+    @Override
+    public BytesInput compress(BytesInput bytes) throws IOException {
+      switch (codecName) {
+        case SNAPPY:
+          return BytesInput.from(Snappy.compress(toByteArray(bytes)));
+        case GZIP:
+          ByteArrayOutputStream out = new ByteArrayOutputStream((int) bytes.size() / 2);
+          try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            bytes.writeAllTo(gzip);
+          }
+          return BytesInput.from(out.toByteArray());
+        case ZSTD:
+          return BytesInput.from(Zstd.compress(toByteArray(bytes), zstdLevel));
+        default:
+          return bytes;
+      }
+    }
+
+    @Override
+    public BytesInput decompress(BytesInput bytes, int decompressedSize) throws IOException {
+      if (codecName == CompressionCodecName.UNCOMPRESSED) {
+        return bytes;
+      }
+      byte[] input = toByteArray(bytes);
+      byte[] output = new byte[decompressedSize];
+      decompress(input, output);
+      return BytesInput.from(output);
+    }
+
+    @Override
+    public void decompress(
+        ByteBuffer input, int compressedSize, ByteBuffer output, int decompressedSize)
+        throws IOException {
+      byte[] in = new byte[compressedSize];
+      input.get(in);
+      if (codecName == CompressionCodecName.UNCOMPRESSED) {
+        output.put(in);
+        return;
+      }
+      byte[] out = new byte[decompressedSize];
+      decompress(in, out);
+      output.put(out);
+    }
+
+    // BytesInput.toByteArray() is deprecated
+    private static byte[] toByteArray(BytesInput bytes) throws IOException {
+      byte[] array = new byte[Math.toIntExact(bytes.size())];
+      try (DataInputStream in = new DataInputStream(bytes.toInputStream())) {
+        in.readFully(array);
+      }
+      return array;
+    }
+
+    private void decompress(byte[] input, byte[] output) throws IOException {
+      int n;
+      switch (codecName) {
+        case SNAPPY:
+          n = Snappy.uncompress(input, 0, input.length, output, 0);
+          break;
+        case GZIP:
+          try (DataInputStream in =
+              new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(input)))) {
+            in.readFully(output);
+          }
+          n = output.length;
+          break;
+        case ZSTD:
+          long r = Zstd.decompress(output, input);
+          if (Zstd.isError(r)) {
+            throw new IOException("Failed to decompress ZSTD: " + Zstd.getErrorName(r));
+          }
+          n = (int) r;
+          break;
+        default:
+          throw new IllegalStateException("Unexpected codec: " + codecName);
+      }
+      if (n != output.length) {
+        throw new IOException(String.format(
+            "Decompressed %d bytes, expected %d: %s", n, output.length, codecName));
+      }
+    }
+
+    @Override
+    public void release() {}
+  }
+}
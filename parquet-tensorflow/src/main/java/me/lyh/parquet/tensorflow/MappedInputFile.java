@@ -0,0 +1,175 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.ParquetFileRange;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * An {@link InputFile} for local files that does not depend on Hadoop. Footers and pages are read
+ * with positional {@link FileChannel} reads, while column chunks of at least
+ * {@code mapThreshold} bytes are memory-mapped and handed to Parquet as is through vectored
+ * reads, without a copy or a read call per chunk.
+ *
+ * <p>Mappings are released once garbage collected, and may fail with {@link InternalError} if
+ * the file is truncated while they are in use.
+ */
+public class MappedInputFile implements InputFile {
+  public static final int DEFAULT_MAP_THRESHOLD = 256 * 1024;
+
+  private final Path path;
+  private final int mapThreshold;
+  private long length = -1;
+
+  public MappedInputFile(Path path) {
+    this(path, DEFAULT_MAP_THRESHOLD);
+  }
+
+  /** Map column chunks of at least {@code mapThreshold} bytes, or none if it is 0. */
+  public MappedInputFile(Path path, int mapThreshold) {
+    Preconditions.checkArgument(mapThreshold >= 0, "Invalid map threshold: %s", mapThreshold);
+    this.path = path;
+    this.mapThreshold = mapThreshold == 0 ? Integer.MAX_VALUE : mapThreshold;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    if (length < 0) {
+      try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+        length = channel.size();
+      }
+    }
+    return length;
+  }
+
+  @Override
+  public SeekableInputStream newStream() throws IOException {
+    return new MappedInputStream(FileChannel.open(path, StandardOpenOption.READ), mapThreshold);
+  }
+
+  @Override
+  public String toString() {
+    return path.toString();
+  }
+
+  private static class MappedInputStream extends SeekableInputStream {
+    private final FileChannel channel;
+    private final long size;
+    private final int mapThreshold;
+    private long position;
+
+    private MappedInputStream(FileChannel channel, int mapThreshold) throws IOException {
+      this.channel = channel;
+      this.size = channel.size();
+      this.mapThreshold = mapThreshold;
+    }
+
+    @Override
+    public long getPos() {
+      return position;
+    }
+
+    @Override
+    public void seek(long newPos) {
+      position = newPos;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public int read(ByteBuffer buf) throws IOException {
+      if (!buf.hasRemaining()) {
+        return 0;
+      }
+      int n = channel.read(buf, position);
+      if (n > 0) {
+        position += n;
+      }
+      return n;
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+      readFully(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int start, int len) throws IOException {
+      readFully(ByteBuffer.wrap(bytes, start, len));
+    }
+
+    @Override
+    public void readFully(ByteBuffer buf) throws IOException {
+      while (buf.hasRemaining()) {
+        if (read(buf) < 0) {
+          throw new EOFException("Reached the end of stream with " + buf.remaining()
+              + " bytes left to read");
+        }
+      }
+    }
+
+    @Override
+    public long skip(long n) {
+      long skipped = Math.max(0, Math.min(n, size - position));
+      position += skipped;
+      return skipped;
+    }
+
+    @Override
+    public int available() {
+      return (int) Math.min(Math.max(size - position, 0), Integer.MAX_VALUE);
+    }
+
+    @Override
+    public boolean readVectoredAvailable(ByteBufferAllocator allocator) {
+      return true;
+    }
+
+    @Override
+    public void readVectored(List<ParquetFileRange> ranges, ByteBufferAllocator allocator)
+        throws IOException {
+      for (ParquetFileRange range : ranges) {
+        ByteBuffer buffer;
+        if (range.getOffset() + range.getLength() > size) {
+          throw new EOFException("Range past the end of file: " + range);
+        } else if (range.getLength() >= mapThreshold) {
+          // stays valid after the channel is closed
+          buffer = channel.map(FileChannel.MapMode.READ_ONLY, range.getOffset(), range.getLength());
+        } else {
+          buffer = allocator.allocate(range.getLength());
+          while (buffer.hasRemaining()) {
+            if (channel.read(buffer, range.getOffset() + buffer.position()) < 0) {
+              throw new EOFException("Reached the end of stream reading " + range);
+            }
+          }
+          buffer.flip();
+        }
+        range.setDataReadFuture(CompletableFuture.completedFuture(buffer));
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+  }
+}
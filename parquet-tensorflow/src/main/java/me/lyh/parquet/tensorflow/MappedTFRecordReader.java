@@ -0,0 +1,100 @@
+package me.lyh.parquet.tensorflow;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads TFRecord files through memory-mapped windows. Records are returned as slices of the
+ * mapping. Length checksums are always verified, data checksums are left to the caller, see
+ * {@link #checkCrc(ByteBuffer, int)} and {@link #getCrc()}.
+ */
+class MappedTFRecordReader implements Closeable {
+  private static final int HEADER_SIZE = 12;
+  private static final int FOOTER_SIZE = 4;
+  private static final long WINDOW_SIZE = 256L * 1024 * 1024;
+
+  private final Path path;
+  private final FileChannel channel;
+  private final long size;
+  private final long windowSize;
+  private MappedByteBuffer window;
+  private long windowStart;
+  private long position;
+  private int crc;
+
+  MappedTFRecordReader(Path path) throws IOException {
+    this(path, WINDOW_SIZE);
+  }
+
+  MappedTFRecordReader(Path path, long windowSize) throws IOException {
+    this.path = path;
+    this.channel = FileChannel.open(path, StandardOpenOption.READ);
+    this.size = channel.size();
+    this.windowSize = windowSize;
+  }
+
+  /** Read the next record, or {@code null} at the end of input. */
+  ByteBuffer read() throws IOException {
+    if (position == size) {
+      return null;
+    }
+    ByteBuffer header = map(position, HEADER_SIZE);
+    long length = header.getLong();
+    int lengthCrc = header.getInt();
+    if (length < 0 || length > Integer.MAX_VALUE - HEADER_SIZE - FOOTER_SIZE) {
+      throw new IOException(String.format("Invalid record length in %s: %d", path, length));
+    }
+    header.flip();
+    header.limit(8);
+    if (!checkCrc(header, lengthCrc)) {
+      throw new IOException("Invalid length checksum in " + path);
+    }
+
+    ByteBuffer record = map(position, HEADER_SIZE + (int) length + FOOTER_SIZE);
+    record.position(HEADER_SIZE + (int) length);
+    crc = record.getInt();
+    record.limit(HEADER_SIZE + (int) length).position(HEADER_SIZE);
+    position += HEADER_SIZE + length + FOOTER_SIZE;
+    return record.slice();
+  }
+
+  /** Masked CRC-32C of the last record returned by {@link #read()}. */
+  int getCrc() {
+    return crc;
+  }
+
+  @Override
+  public void close() throws IOException {
+    window = null;
+    channel.close();
+  }
+
+  static boolean checkCrc(ByteBuffer data, int expected) {
+    Crc32c crc = new Crc32c();
+    crc.update(data);
+    return Crc32c.mask(crc.getValue()) == expected;
+  }
+
+  // Slice [start, start + length) of the file, remapping the window if necessary
+  private ByteBuffer map(long start, int length) throws IOException {
+    if (start + length > size) {
+      throw new EOFException("Truncated record in " + path);
+    }
+    if (window == null || start < windowStart || start + length > windowStart + window.limit()) {
+      long mapSize = Math.min(Math.max(windowSize, length), size - start);
+      window = channel.map(FileChannel.MapMode.READ_ONLY, start, mapSize);
+      windowStart = start;
+    }
+    ByteBuffer b = window.duplicate();
+    int offset = (int) (start - windowStart);
+    b.limit(offset + length).position(offset);
+    return b.slice().order(ByteOrder.LITTLE_ENDIAN);
+  }
+}
@@ -0,0 +1,115 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link InputFile} that reports bytes read and time spent reading to
+ * {@link ExampleMetrics}.
+ */
+public class MeteredInputFile implements InputFile {
+  private final InputFile file;
+  private final ExampleMetrics metrics;
+
+  public MeteredInputFile(InputFile file, ExampleMetrics metrics) {
+    this.file = file;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    return file.getLength();
+  }
+
+  @Override
+  public SeekableInputStream newStream() throws IOException {
+    return new MeteredInputStream(file.newStream(), metrics);
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+
+  private static class MeteredInputStream extends SeekableInputStream {
+    private final SeekableInputStream in;
+    private final ExampleMetrics metrics;
+
+    private MeteredInputStream(SeekableInputStream in, ExampleMetrics metrics) {
+      this.in = in;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public long getPos() throws IOException {
+      return in.getPos();
+    }
+
+    @Override
+    public void seek(long newPos) throws IOException {
+      in.seek(newPos);
+    }
+
+    @Override
+    public int read() throws IOException {
+      long start = System.nanoTime();
+      int b = in.read();
+      metrics.onRead(b < 0 ? 0 : 1, System.nanoTime() - start);
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      int n = in.read(b, off, len);
+      metrics.onRead(Math.max(n, 0), System.nanoTime() - start);
+      return n;
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+      readFully(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int start, int len) throws IOException {
+      long t = System.nanoTime();
+      in.readFully(bytes, start, len);
+      metrics.onRead(len, System.nanoTime() - t);
+    }
+
+    @Override
+    public int read(ByteBuffer buf) throws IOException {
+      long start = System.nanoTime();
+      int n = in.read(buf);
+      metrics.onRead(Math.max(n, 0), System.nanoTime() - start);
+      return n;
+    }
+
+    @Override
+    public void readFully(ByteBuffer buf) throws IOException {
+      int len = buf.remaining();
+      long start = System.nanoTime();
+      in.readFully(buf);
+      metrics.onRead(len, System.nanoTime() - start);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      return in.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return in.available();
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+  }
+}
@@ -0,0 +1,93 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+
+/**
+ * An {@link OutputFile} that reports bytes written and time spent writing to
+ * {@link ExampleMetrics}.
+ */
+public class MeteredOutputFile implements OutputFile {
+  private final OutputFile file;
+  private final ExampleMetrics metrics;
+
+  public MeteredOutputFile(OutputFile file, ExampleMetrics metrics) {
+    this.file = file;
+    this.metrics = metrics;
+  }
+
+  @Override
+  public PositionOutputStream create(long blockSizeHint) throws IOException {
+    return new MeteredOutputStream(file.create(blockSizeHint), metrics);
+  }
+
+  @Override
+  public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+    return new MeteredOutputStream(file.createOrOverwrite(blockSizeHint), metrics);
+  }
+
+  @Override
+  public boolean supportsBlockSize() {
+    return file.supportsBlockSize();
+  }
+
+  @Override
+  public long defaultBlockSize() {
+    return file.defaultBlockSize();
+  }
+
+  @Override
+  public String getPath() {
+    return file.getPath();
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+
+  private static class MeteredOutputStream extends PositionOutputStream {
+    private final PositionOutputStream out;
+    private final ExampleMetrics metrics;
+
+    private MeteredOutputStream(PositionOutputStream out, ExampleMetrics metrics) {
+      this.out = out;
+      this.metrics = metrics;
+    }
+
+    @Override
+    public long getPos() throws IOException {
+      return out.getPos();
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      long start = System.nanoTime();
+      out.write(b);
+      metrics.onWrite(1, System.nanoTime() - start);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      long start = System.nanoTime();
+      out.write(b, off, len);
+      metrics.onWrite(len, System.nanoTime() - start);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      long start = System.nanoTime();
+      out.flush();
+      metrics.onWrite(0, System.nanoTime() - start);
+    }
+
+    @Override
+    public void close() throws IOException {
+      long start = System.nanoTime();
+      out.close();
+      metrics.onWrite(0, System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,503 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.ParquetFileRange;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * An {@link InputFile} that fetches column chunks of the next row groups in the background, to
+ * hide the latency of slow storage behind decoding.
+ *
+ * <p>Chunks of {@code columns} in each of {@code rowGroups} are coalesced into ranges, merging
+ * chunks less than 64 KiB apart up to 16 MiB per range, and fetched in parallel on
+ * {@code threads} daemon threads per stream. Once a stream reads a row group, ranges of the next
+ * {@code rowGroupsAhead} row groups are fetched, as long as bytes fetched but not yet read stay
+ * within {@code byteBudget}. Row groups larger than the budget are never fetched ahead.
+ *
+ * <p>Reads of fetched bytes, vectored or not, are served from memory, and wait for fetches in
+ * progress. All other reads, e.g. footers and column indexes, go to {@code file}. Row groups
+ * and columns should match those of the reader, see
+ * {@link ExampleParquetReader.Builder#withPrefetch(int, long)}.
+ */
+public class PrefetchingInputFile implements InputFile {
+  public static final int DEFAULT_THREADS = 4;
+
+  private static final long MAX_GAP = 64 * 1024;
+  private static final long MAX_RANGE = 16 * 1024 * 1024;
+  private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+  private final InputFile file;
+  private final List<RowGroup> rowGroups;
+  private final int rowGroupsAhead;
+  private final long byteBudget;
+  private final int threads;
+
+  public PrefetchingInputFile(InputFile file, List<BlockMetaData> rowGroups,
+                              Collection<ColumnPath> columns, int rowGroupsAhead,
+                              long byteBudget) {
+    this(file, rowGroups, columns, rowGroupsAhead, byteBudget, DEFAULT_THREADS);
+  }
+
+  /** Fetch chunks of {@code columns}, or all columns if {@code null}, in {@code rowGroups}. */
+  public PrefetchingInputFile(InputFile file, List<BlockMetaData> rowGroups,
+                              Collection<ColumnPath> columns, int rowGroupsAhead,
+                              long byteBudget, int threads) {
+    Preconditions.checkArgument(rowGroupsAhead > 0, "Invalid row groups: %s", rowGroupsAhead);
+    Preconditions.checkArgument(byteBudget > 0, "Invalid byte budget: %s", byteBudget);
+    Preconditions.checkArgument(threads > 0, "Invalid threads: %s", threads);
+    this.file = file;
+    this.rowGroupsAhead = rowGroupsAhead;
+    this.byteBudget = byteBudget;
+    this.threads = threads;
+
+    Set<ColumnPath> paths = columns == null ? null : new HashSet<>(columns);
+    List<RowGroup> groups = new ArrayList<>(rowGroups.size());
+    for (BlockMetaData block : rowGroups) {
+      groups.add(new RowGroup(block, paths));
+    }
+    groups.sort(Comparator.comparingLong(g -> g.start));
+    this.rowGroups = Collections.unmodifiableList(groups);
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    return file.getLength();
+  }
+
+  @Override
+  public SeekableInputStream newStream() throws IOException {
+    return new PrefetchingInputStream(file.newStream());
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+
+  ////////////////////////////////////////
+  // Row groups
+  ////////////////////////////////////////
+
+  // coalesced ranges of a row group as offset, length and chunk bytes, and the byte span of all
+  // its chunks
+  private static class RowGroup {
+    private final long start;
+    private final long end;
+    private final List<long[]> ranges = new ArrayList<>();
+    private long bytes;
+
+    private RowGroup(BlockMetaData block, Set<ColumnPath> columns) {
+      List<long[]> chunks = new ArrayList<>();
+      long start = Long.MAX_VALUE;
+      long end = Long.MIN_VALUE;
+      for (ColumnChunkMetaData column : block.getColumns()) {
+        long offset = column.getStartingPos();
+        long length = column.getTotalSize();
+        start = Math.min(start, offset);
+        end = Math.max(end, offset + length);
+        if (length > 0 && (columns == null || columns.contains(column.getPath()))) {
+          chunks.add(new long[] {offset, length});
+        }
+      }
+      this.start = start;
+      this.end = end;
+
+      chunks.sort(Comparator.comparingLong(c -> c[0]));
+      long[] range = null;
+      for (long[] c : chunks) {
+        if (range != null
+            && c[0] - (range[0] + range[1]) <= MAX_GAP
+            && c[0] + c[1] - range[0] <= MAX_RANGE) {
+          range[1] = Math.max(range[1], c[0] + c[1] - range[0]);
+          range[2] += c[1];
+        } else {
+          range = new long[] {c[0], c[1], c[1]};
+          ranges.add(range);
+        }
+      }
+      for (long[] r : ranges) {
+        bytes += r[1];
+      }
+    }
+  }
+
+  // a range fetched in the background, removed once all its chunk bytes are read
+  private static class Fetch {
+    private final int rowGroup;
+    private final long offset;
+    private final int length;
+    private final CompletableFuture<ByteBuffer> data = new CompletableFuture<>();
+    private long unread;
+
+    private Fetch(int rowGroup, long[] range) {
+      this.rowGroup = rowGroup;
+      this.offset = range[0];
+      this.length = (int) range[1];
+      this.unread = range[2];
+    }
+
+    private long end() {
+      return offset + length;
+    }
+  }
+
+  ////////////////////////////////////////
+  // Stream
+  ////////////////////////////////////////
+
+  private class PrefetchingInputStream extends SeekableInputStream {
+    private final SeekableInputStream in;
+    private final ExecutorService executor;
+    // streams of worker threads, one per concurrent fetch
+    private final ConcurrentLinkedQueue<SeekableInputStream> streams =
+        new ConcurrentLinkedQueue<>();
+    // fetches by offset, only accessed by the reading thread
+    private final TreeMap<Long, Fetch> fetches = new TreeMap<>();
+    private long fetchedBytes;
+    private int current = -1;
+    private int next;
+    private long position;
+    private volatile boolean closed;
+
+    private PrefetchingInputStream(SeekableInputStream in) {
+      this.in = in;
+      String prefix = "parquet-tensorflow-prefetch-" + POOL_ID.incrementAndGet() + "-";
+      AtomicInteger threadId = new AtomicInteger();
+      this.executor = Executors.newFixedThreadPool(threads, r -> {
+        Thread t = new Thread(r, prefix + threadId.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+      });
+      // start with the first row groups while the footer is read
+      fill();
+    }
+
+    @Override
+    public long getPos() {
+      return position;
+    }
+
+    @Override
+    public void seek(long newPos) {
+      position = newPos;
+    }
+
+    @Override
+    public long skip(long n) {
+      position += n;
+      return n;
+    }
+
+    @Override
+    public int available() {
+      return 0;
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      return read(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public int read(ByteBuffer buf) throws IOException {
+      int len = buf.remaining();
+      if (len > 0 && copy(buf)) {
+        return len;
+      }
+      in.seek(position);
+      int n = in.read(buf);
+      if (n > 0) {
+        position += n;
+      }
+      return n;
+    }
+
+    @Override
+    public void readFully(byte[] bytes) throws IOException {
+      readFully(ByteBuffer.wrap(bytes));
+    }
+
+    @Override
+    public void readFully(byte[] bytes, int start, int len) throws IOException {
+      readFully(ByteBuffer.wrap(bytes, start, len));
+    }
+
+    @Override
+    public void readFully(ByteBuffer buf) throws IOException {
+      int len = buf.remaining();
+      if (len > 0 && copy(buf)) {
+        return;
+      }
+      in.seek(position);
+      in.readFully(buf);
+      position += len;
+    }
+
+    @Override
+    public boolean readVectoredAvailable(ByteBufferAllocator allocator) {
+      return true;
+    }
+
+    @Override
+    public void readVectored(List<ParquetFileRange> ranges, ByteBufferAllocator allocator)
+        throws IOException {
+      List<ParquetFileRange> misses = new ArrayList<>();
+      for (ParquetFileRange range : ranges) {
+        CompletableFuture<ByteBuffer> data =
+            lookup(range.getOffset(), range.getLength(), allocator);
+        if (data != null) {
+          range.setDataReadFuture(data);
+        } else {
+          misses.add(range);
+        }
+      }
+      if (misses.isEmpty()) {
+        return;
+      }
+      if (in.readVectoredAvailable(allocator)) {
+        in.readVectored(misses, allocator);
+      } else {
+        for (ParquetFileRange range : misses) {
+          ByteBuffer buffer = allocator.allocate(range.getLength());
+          in.seek(range.getOffset());
+          in.readFully(buffer);
+          buffer.flip();
+          range.setDataReadFuture(CompletableFuture.completedFuture(buffer));
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      for (Fetch f : fetches.values()) {
+        f.data.cancel(true);
+      }
+      fetches.clear();
+      executor.shutdownNow();
+      try {
+        in.close();
+      } finally {
+        closeStreams();
+      }
+    }
+
+    private void closeStreams() throws IOException {
+      SeekableInputStream s;
+      while ((s = streams.poll()) != null) {
+        s.close();
+      }
+    }
+
+    // copy from fetched bytes at the current position, if any
+    private boolean copy(ByteBuffer buf) throws IOException {
+      CompletableFuture<ByteBuffer> data = lookup(position, buf.remaining(), null);
+      if (data == null) {
+        return false;
+      }
+      try {
+        int len = buf.remaining();
+        buf.put(data.get());
+        position += len;
+        return true;
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while prefetching " + file);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        throw new IOException("Failed to prefetch " + file, cause);
+      }
+    }
+
+    // fetched bytes of [offset, offset + length), or null if any of them are not fetched
+    private CompletableFuture<ByteBuffer> lookup(long offset, int length,
+                                                 ByteBufferAllocator allocator) {
+      advance(offset);
+      long end = offset + length;
+      List<Fetch> covering = new ArrayList<>();
+      Map.Entry<Long, Fetch> e = fetches.floorEntry(offset);
+      long pos = offset;
+      while (e != null && e.getValue().offset <= pos && e.getValue().end() > pos) {
+        covering.add(e.getValue());
+        pos = e.getValue().end();
+        if (pos >= end) {
+          break;
+        }
+        e = fetches.higherEntry(e.getKey());
+      }
+      if (pos < end) {
+        return null;
+      }
+
+      CompletableFuture<ByteBuffer> data;
+      if (covering.size() == 1) {
+        Fetch f = covering.get(0);
+        data = f.data.thenApply(b -> slice(b, (int) (offset - f.offset), length));
+      } else {
+        // ranges are adjacent, only if coalescing was capped
+        CompletableFuture<?>[] parts = new CompletableFuture<?>[covering.size()];
+        for (int i = 0; i < parts.length; i++) {
+          parts[i] = covering.get(i).data;
+        }
+        data = CompletableFuture.allOf(parts).thenApply(v -> {
+          ByteBuffer buffer = allocator != null
+              ? allocator.allocate(length)
+              : ByteBuffer.allocate(length);
+          for (Fetch f : covering) {
+            long from = Math.max(offset, f.offset);
+            long to = Math.min(end, f.end());
+            buffer.put(slice(f.data.join(), (int) (from - f.offset), (int) (to - from)));
+          }
+          buffer.flip();
+          return buffer;
+        });
+      }
+      for (Fetch f : covering) {
+        f.unread -= Math.min(end, f.end()) - Math.max(offset, f.offset);
+        if (f.unread <= 0) {
+          remove(f);
+        }
+      }
+      fill();
+      return data;
+    }
+
+    // a read at offset starts the row group that contains it
+    private void advance(long offset) {
+      int i = find(offset);
+      if (i <= current) {
+        return;
+      }
+      current = i;
+      next = Math.max(next, i + 1);
+      Iterator<Fetch> it = fetches.values().iterator();
+      while (it.hasNext()) {
+        Fetch f = it.next();
+        if (f.rowGroup < current) {
+          it.remove();
+          f.data.cancel(true);
+          fetchedBytes -= f.length;
+        }
+      }
+      fill();
+    }
+
+    private int find(long offset) {
+      int lo = 0;
+      int hi = rowGroups.size() - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        RowGroup g = rowGroups.get(mid);
+        if (offset < g.start) {
+          hi = mid - 1;
+        } else if (offset >= g.end) {
+          lo = mid + 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    private void remove(Fetch f) {
+      fetches.remove(f.offset);
+      fetchedBytes -= f.length;
+    }
+
+    // fetch the next row groups within the budget, in order
+    private void fill() {
+      while (!closed && next < rowGroups.size() && next <= current + rowGroupsAhead) {
+        RowGroup g = rowGroups.get(next);
+        if (g.bytes > byteBudget) {
+          next++;
+          continue;
+        }
+        if (fetchedBytes + g.bytes > byteBudget) {
+          return;
+        }
+        for (long[] r : g.ranges) {
+          Fetch f = new Fetch(next, r);
+          fetches.put(f.offset, f);
+          fetchedBytes += f.length;
+          executor.execute(() -> fetch(f));
+        }
+        next++;
+      }
+    }
+
+    private void fetch(Fetch f) {
+      if (f.data.isDone()) {
+        return;
+      }
+      SeekableInputStream s = streams.poll();
+      try {
+        if (s == null) {
+          s = file.newStream();
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(f.length);
+        s.seek(f.offset);
+        s.readFully(buffer);
+        buffer.flip();
+        f.data.complete(buffer);
+      } catch (Throwable e) {
+        f.data.completeExceptionally(e);
+      } finally {
+        if (s != null) {
+          streams.add(s);
+          // the stream may have been closed while fetching
+          if (closed) {
+            try {
+              closeStreams();
+            } catch (IOException e) {
+              // ignore, nothing is read from a closed stream
+            }
+          }
+        }
+      }
+    }
+  }
+
+  private static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+    ByteBuffer b = buffer.duplicate();
+    b.position(offset);
+    b.limit(offset + length);
+    return b.slice();
+  }
+}
@@ -0,0 +1,457 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.page.DictionaryPageReadStore;
+import org.apache.parquet.filter2.bloomfilterlevel.BloomFilterImpl;
+import org.apache.parquet.filter2.columnindex.RowRanges;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.dictionarylevel.DictionaryFilter;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.filter2.predicate.SchemaCompatibilityValidator;
+import org.apache.parquet.filter2.predicate.UserDefinedPredicate;
+import org.apache.parquet.filter2.statisticslevel.StatisticsFilter;
+import org.apache.parquet.hadoop.BloomFilterReader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.internal.filter2.columnindex.ColumnIndexFilter;
+import org.apache.parquet.io.InputFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/**
+ * Explains which row groups and pages a {@link FilterPredicate} prunes, and why, without reading
+ * data pages. Works with any predicate, e.g. from {@link FeaturePredicate} or parquet-avro's
+ * {@code Predicate} macro.
+ *
+ * <p>Row groups are checked in the order Parquet readers do, by column statistics, dictionaries
+ * and bloom filters, and pages of the remaining row groups by column indexes. Estimated bytes are
+ * the compressed sizes of the column chunks, or of pages overlapping selected rows when offset
+ * indexes are available, of the columns that would be read.
+ */
+public class PushdownReport {
+
+  /** Filtering levels, in the order they are applied. */
+  public enum Level {
+    STATISTICS, DICTIONARY, BLOOM_FILTER, COLUMN_INDEX
+  }
+
+  private final List<RowGroup> rowGroups;
+
+  private PushdownReport(List<RowGroup> rowGroups) {
+    this.rowGroups = Collections.unmodifiableList(rowGroups);
+  }
+
+  /** Explain {@code predicate} on all columns of {@code file}. */
+  public static PushdownReport explain(InputFile file, FilterPredicate predicate)
+      throws IOException {
+    return explain(Collections.singletonList(file), predicate, null);
+  }
+
+  /**
+   * Explain {@code predicate} on {@code files}, reading top level {@code fields} and the predicate
+   * columns, or all columns if {@code fields} is {@code null}.
+   */
+  public static PushdownReport explain(Collection<InputFile> files, FilterPredicate predicate,
+                                       Collection<String> fields) throws IOException {
+    List<RowGroup> rowGroups = new ArrayList<>();
+    for (InputFile file : files) {
+      // no record filter, so that the reader keeps all row groups
+      try (ParquetFileReader reader =
+               ParquetFileReader.open(file, ParquetReadOptions.builder().build())) {
+        Explainer explainer =
+            new Explainer(file.toString(), reader.getFooter(), predicate, fields);
+        for (int i = 0; i < reader.getRowGroups().size(); i++) {
+          rowGroups.add(explainer.explain(reader, i));
+        }
+      }
+    }
+    return new PushdownReport(rowGroups);
+  }
+
+  /**
+   * Explain {@code predicate} on {@code footers} by column statistics only, since dictionaries,
+   * bloom filters and column indexes are not in the footer.
+   */
+  public static PushdownReport explainFooters(List<ParquetMetadata> footers,
+                                              FilterPredicate predicate,
+                                              Collection<String> fields) {
+    List<RowGroup> rowGroups = new ArrayList<>();
+    for (int f = 0; f < footers.size(); f++) {
+      ParquetMetadata footer = footers.get(f);
+      Explainer explainer = new Explainer("footer " + f, footer, predicate, fields);
+      for (int i = 0; i < footer.getBlocks().size(); i++) {
+        rowGroups.add(explainer.explain(null, i));
+      }
+    }
+    return new PushdownReport(rowGroups);
+  }
+
+  public List<RowGroup> getRowGroups() {
+    return rowGroups;
+  }
+
+  public long getTotalRows() {
+    return rowGroups.stream().mapToLong(RowGroup::getRowCount).sum();
+  }
+
+  /** Upper bound of rows read, i.e. rows of row groups and pages that are not pruned. */
+  public long getSelectedRows() {
+    return rowGroups.stream().mapToLong(RowGroup::getSelectedRows).sum();
+  }
+
+  /** Compressed bytes of the columns that would be read, without pruning. */
+  public long getTotalBytes() {
+    return rowGroups.stream().mapToLong(RowGroup::getTotalBytes).sum();
+  }
+
+  public long getEstimatedBytes() {
+    return rowGroups.stream().mapToLong(RowGroup::getEstimatedBytes).sum();
+  }
+
+  @Override
+  public String toString() {
+    long dropped = rowGroups.stream().filter(RowGroup::isDropped).count();
+    StringBuilder sb = new StringBuilder();
+    sb.append(String.format("row groups: %d of %d dropped%n", dropped, rowGroups.size()));
+    sb.append(String.format("rows: %d of %d selected%n", getSelectedRows(), getTotalRows()));
+    sb.append(String.format("bytes: %d of %d estimated%n", getEstimatedBytes(), getTotalBytes()));
+    for (RowGroup rowGroup : rowGroups) {
+      sb.append(rowGroup).append(System.lineSeparator());
+    }
+    return sb.toString();
+  }
+
+  ////////////////////////////////////////
+
+  /** Pruning of a row group. */
+  public static class RowGroup {
+    private final String file;
+    private final int index;
+    private final long rowCount;
+    private final long totalBytes;
+    private final Level droppedBy;
+    private final List<String> reasons;
+    private final long selectedRows;
+    private final int pages;
+    private final int selectedPages;
+    private final long estimatedBytes;
+
+    private RowGroup(String file, int index, long rowCount, long totalBytes, Level droppedBy,
+                     List<String> reasons, long selectedRows, int pages, int selectedPages,
+                     long estimatedBytes) {
+      this.file = file;
+      this.index = index;
+      this.rowCount = rowCount;
+      this.totalBytes = totalBytes;
+      this.droppedBy = droppedBy;
+      this.reasons = Collections.unmodifiableList(reasons);
+      this.selectedRows = selectedRows;
+      this.pages = pages;
+      this.selectedPages = selectedPages;
+      this.estimatedBytes = estimatedBytes;
+    }
+
+    public String getFile() {
+      return file;
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    public long getTotalBytes() {
+      return totalBytes;
+    }
+
+    public boolean isDropped() {
+      return droppedBy != null;
+    }
+
+    /** Level that drops the row group, or {@code null} if it is read. */
+    public Level getDroppedBy() {
+      return droppedBy;
+    }
+
+    /**
+     * Predicates on single columns that prune the row group or some of its pages on their own,
+     * prefixed by the level, e.g. {@code "STATISTICS: gt(id, 10)"}.
+     */
+    public List<String> getReasons() {
+      return reasons;
+    }
+
+    public long getSelectedRows() {
+      return selectedRows;
+    }
+
+    /** Number of pages of the columns that would be read, or -1 without offset indexes. */
+    public int getPages() {
+      return pages;
+    }
+
+    /** Number of pages overlapping selected rows, or -1 without offset indexes. */
+    public int getSelectedPages() {
+      return selectedPages;
+    }
+
+    public long getEstimatedBytes() {
+      return estimatedBytes;
+    }
+
+    @Override
+    public String toString() {
+      String pruning = droppedBy != null
+          ? "dropped by " + droppedBy
+          : pages >= 0
+          ? String.format("%d of %d pages, %d of %d rows", selectedPages, pages, selectedRows,
+              rowCount)
+          : "read";
+      return String.format("%s row group %d: %s, %d of %d bytes%s", file, index, pruning,
+          estimatedBytes, totalBytes, reasons.isEmpty() ? "" : " " + reasons);
+    }
+  }
+
+  ////////////////////////////////////////
+
+  private static class Explainer {
+    private final String file;
+    private final ParquetMetadata footer;
+    private final FilterCompat.Filter filter;
+    private final FilterPredicate predicate;
+    private final List<FilterPredicate> leaves = new ArrayList<>();
+    private final Set<ColumnPath> predicateColumns = new HashSet<>();
+    private final Predicate<ColumnPath> projected;
+
+    private Explainer(String file, ParquetMetadata footer, FilterPredicate predicate,
+                      Collection<String> fields) {
+      this.file = file;
+      this.footer = footer;
+      this.filter = FilterCompat.get(predicate);
+      // with inverses of Not applied, as readers do
+      this.predicate = ((FilterCompat.FilterPredicateCompat) filter).getFilterPredicate();
+      SchemaCompatibilityValidator.validate(this.predicate, footer.getFileMetaData().getSchema());
+      this.predicate.accept(new LeafCollector(leaves, predicateColumns));
+      Set<String> fieldSet = fields == null ? null : new HashSet<>(fields);
+      this.projected = path -> fieldSet == null || fieldSet.contains(path.toArray()[0])
+          || predicateColumns.contains(path);
+    }
+
+    // reader is null for footers only
+    RowGroup explain(ParquetFileReader reader, int index) {
+      BlockMetaData block = footer.getBlocks().get(index);
+      List<ColumnChunkMetaData> columns = block.getColumns();
+      long totalBytes = 0;
+      for (ColumnChunkMetaData column : columns) {
+        if (projected.test(column.getPath())) {
+          totalBytes += column.getTotalSize();
+        }
+      }
+
+      List<String> reasons = new ArrayList<>();
+      Level droppedBy = null;
+      if (StatisticsFilter.canDrop(predicate, columns)) {
+        droppedBy = Level.STATISTICS;
+        addReasons(reasons, Level.STATISTICS, leaf -> StatisticsFilter.canDrop(leaf, columns));
+      } else if (reader != null) {
+        DictionaryPageReadStore dictionaries = reader.getDictionaryReader(block);
+        BloomFilterReader bloomFilters = reader.getBloomFilterDataReader(block);
+        if (DictionaryFilter.canDrop(predicate, columns, dictionaries)) {
+          droppedBy = Level.DICTIONARY;
+          addReasons(reasons, Level.DICTIONARY,
+              leaf -> DictionaryFilter.canDrop(leaf, columns, dictionaries));
+        } else if (BloomFilterImpl.canDrop(predicate, columns, bloomFilters)) {
+          droppedBy = Level.BLOOM_FILTER;
+          addReasons(reasons, Level.BLOOM_FILTER,
+              leaf -> BloomFilterImpl.canDrop(leaf, columns, bloomFilters));
+        }
+      }
+      if (droppedBy != null) {
+        return new RowGroup(file, index, block.getRowCount(), totalBytes, droppedBy, reasons, 0,
+            0, 0, 0);
+      }
+      if (reader == null) {
+        return new RowGroup(file, index, block.getRowCount(), totalBytes, null, reasons,
+            block.getRowCount(), -1, -1, totalBytes);
+      }
+
+      Set<ColumnPath> paths = new HashSet<>();
+      for (ColumnChunkMetaData column : columns) {
+        paths.add(column.getPath());
+      }
+      RowRanges rows = ColumnIndexFilter.calculateRowRanges(
+          filter, reader.getColumnIndexStore(index), paths, block.getRowCount());
+      if (rows.rowCount() < block.getRowCount()) {
+        for (FilterPredicate leaf : leaves) {
+          RowRanges leafRows = ColumnIndexFilter.calculateRowRanges(
+              FilterCompat.get(leaf), reader.getColumnIndexStore(index), paths,
+              block.getRowCount());
+          if (leafRows.rowCount() < block.getRowCount()) {
+            reasons.add(Level.COLUMN_INDEX + ": " + leaf);
+          }
+        }
+      }
+      if (rows.rowCount() == 0) {
+        return new RowGroup(file, index, block.getRowCount(), totalBytes, Level.COLUMN_INDEX,
+            reasons, 0, 0, 0, 0);
+      }
+
+      int pages = 0;
+      int selectedPages = 0;
+      long estimatedBytes = 0;
+      for (ColumnChunkMetaData column : columns) {
+        if (!projected.test(column.getPath())) {
+          continue;
+        }
+        OffsetIndex offsetIndex = readOffsetIndex(reader, column);
+        if (offsetIndex == null) {
+          pages = -1;
+          estimatedBytes += column.getTotalSize();
+          continue;
+        }
+        // dictionary page, if any, before the first data page
+        estimatedBytes += offsetIndex.getOffset(0) - column.getStartingPos();
+        for (int p = 0; p < offsetIndex.getPageCount(); p++) {
+          long first = offsetIndex.getFirstRowIndex(p);
+          long last = offsetIndex.getLastRowIndex(p, block.getRowCount());
+          if (rows.isOverlapping(first, last)) {
+            selectedPages++;
+            estimatedBytes += offsetIndex.getCompressedPageSize(p);
+          }
+        }
+        if (pages >= 0) {
+          pages += offsetIndex.getPageCount();
+        }
+      }
+      if (pages < 0) {
+        selectedPages = -1;
+      }
+      return new RowGroup(file, index, block.getRowCount(), totalBytes, null, reasons,
+          rows.rowCount(), pages, selectedPages, estimatedBytes);
+    }
+
+    private void addReasons(List<String> reasons, Level level, Predicate<FilterPredicate> canDrop) {
+      for (FilterPredicate leaf : leaves) {
+        if (canDrop.test(leaf)) {
+          reasons.add(level + ": " + leaf);
+        }
+      }
+    }
+
+    private static OffsetIndex readOffsetIndex(ParquetFileReader reader,
+                                               ColumnChunkMetaData column) {
+      try {
+        return reader.readOffsetIndex(column);
+      } catch (IOException e) {
+        // same as a missing offset index, the reader reads the whole column chunk
+        return null;
+      }
+    }
+  }
+
+  // Collects predicates on single columns and their columns
+  private static class LeafCollector implements FilterPredicate.Visitor<Void> {
+    private final List<FilterPredicate> leaves;
+    private final Set<ColumnPath> columns;
+
+    private LeafCollector(List<FilterPredicate> leaves, Set<ColumnPath> columns) {
+      this.leaves = leaves;
+      this.columns = columns;
+    }
+
+    private Void add(FilterPredicate leaf, Operators.Column<?> column) {
+      leaves.add(leaf);
+      columns.add(column.getColumnPath());
+      return null;
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Eq<T> eq) {
+      return add(eq, eq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotEq<T> notEq) {
+      return add(notEq, notEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Lt<T> lt) {
+      return add(lt, lt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.LtEq<T> ltEq) {
+      return add(ltEq, ltEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Gt<T> gt) {
+      return add(gt, gt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.GtEq<T> gtEq) {
+      return add(gtEq, gtEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.In<T> in) {
+      return add(in, in.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotIn<T> notIn) {
+      return add(notIn, notIn.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Contains<T> contains) {
+      return add(contains, contains.getColumn());
+    }
+
+    @Override
+    public Void visit(Operators.And and) {
+      and.getLeft().accept(this);
+      return and.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Or or) {
+      or.getLeft().accept(this);
+      return or.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Not not) {
+      return not.getPredicate().accept(this);
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(
+        Operators.UserDefined<T, U> udp) {
+      return add(udp, udp.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(
+        Operators.LogicalNotUserDefined<T, U> udp) {
+      return add(udp, udp.getUserDefined().getColumn());
+    }
+  }
+}
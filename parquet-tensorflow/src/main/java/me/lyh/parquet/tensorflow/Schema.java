@@ -1,9 +1,7 @@
 package me.lyh.parquet.tensorflow;
 
-import com.google.protobuf.ByteString;
 import me.lyh.parquet.tensorflow.ExampleConverter.FeatureConverter;
 import org.apache.parquet.Preconditions;
-import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.io.api.RecordConsumer;
 import org.apache.parquet.schema.*;
 import org.tensorflow.example.Feature;
@@ -20,17 +18,12 @@ public class Schema {
       @Override
       void write(String name, int index, Repetition repetition, RecordConsumer recordConsumer,
                         Feature feature) {
-        List<Long> xs = feature.getInt64List().getValueList();
-        repetition.checkSize(xs.size());
-        if (xs.size() > 0) {
-          recordConsumer.startField(name, index);
-          xs.forEach(recordConsumer::addLong);
-          recordConsumer.endField(name, index);
-        }
+        repetition.checkSize(feature.getInt64List().getValueCount());
+        SchemaCodec.writeInt64s(name, index, recordConsumer, feature.getInt64List());
       }
 
       @Override
-      FeatureConverter newConverter(Repetition repetition) {
+      FeatureConverter newConverter(Repetition repetition, boolean zeroCopyBytes) {
         return new ExampleConverter.Int64Converter(repetition);
       }
     },
@@ -38,17 +31,12 @@ public class Schema {
       @Override
       void write(String name, int index, Repetition repetition, RecordConsumer recordConsumer,
                  Feature feature) {
-        List<Float> xs = feature.getFloatList().getValueList();
-        repetition.checkSize(xs.size());
-        if (xs.size() > 0) {
-          recordConsumer.startField(name, index);
-          xs.forEach(recordConsumer::addFloat);
-          recordConsumer.endField(name, index);
-        }
+        repetition.checkSize(feature.getFloatList().getValueCount());
+        SchemaCodec.writeFloats(name, index, recordConsumer, feature.getFloatList());
       }
 
       @Override
-      FeatureConverter newConverter(Repetition repetition) {
+      FeatureConverter newConverter(Repetition repetition, boolean zeroCopyBytes) {
         return new ExampleConverter.FloatConverter(repetition);
       }
     },
@@ -56,20 +44,13 @@ public class Schema {
       @Override
       void write(String name, int index, Repetition repetition, RecordConsumer recordConsumer,
                  Feature feature) {
-        List<ByteString> xs = feature.getBytesList().getValueList();
-        repetition.checkSize(xs.size());
-        if (xs.size() > 0) {
-          recordConsumer.startField(name, index);
-          xs.stream()
-              .map(b -> Binary.fromConstantByteArray(b.toByteArray()))
-              .forEach(recordConsumer::addBinary);
-          recordConsumer.endField(name, index);
-        }
+        repetition.checkSize(feature.getBytesList().getValueCount());
+        SchemaCodec.writeBytes(name, index, recordConsumer, feature.getBytesList());
       }
 
       @Override
-      FeatureConverter newConverter(Repetition repetition) {
-        return new ExampleConverter.BytesConverter(repetition);
+      FeatureConverter newConverter(Repetition repetition, boolean zeroCopyBytes) {
+        return new ExampleConverter.BytesConverter(repetition, zeroCopyBytes);
       }
     };
 
@@ -89,7 +70,7 @@ public class Schema {
 
     abstract void write(String name, int index, Repetition repetition,
                         RecordConsumer recordConsumer, Feature feature);
-    abstract FeatureConverter newConverter(Repetition repetition);
+    abstract FeatureConverter newConverter(Repetition repetition, boolean zeroCopyBytes);
   }
 
   public enum Repetition {
@@ -174,7 +155,11 @@ public class Schema {
     }
 
     public FeatureConverter newConverter() {
-      return type.newConverter(repetition);
+      return newConverter(false);
+    }
+
+    FeatureConverter newConverter(boolean zeroCopyBytes) {
+      return type.newConverter(repetition, zeroCopyBytes);
     }
   }
 
@@ -0,0 +1,178 @@
+package me.lyh.parquet.tensorflow;
+
+import com.google.protobuf.ByteString;
+import me.lyh.parquet.tensorflow.ExampleConverter.FeatureConverter;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.tensorflow.example.BytesList;
+import org.tensorflow.example.Feature;
+import org.tensorflow.example.FloatList;
+import org.tensorflow.example.Int64List;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Fields of a {@link Schema} flattened into arrays, built once per schema and shared by all
+ * writers and readers of it.
+ *
+ * <p>Records are written by switching on the field type in one loop, with size bounds checked
+ * inline and values passed to the {@link RecordConsumer} without boxing, instead of calling
+ * through {@link Schema.Field}, {@link Schema.Type} and {@link Schema.Repetition} per field.
+ */
+final class SchemaCodec {
+  // distinct schemas in a JVM are few, clear instead of evicting in the rare case there are more
+  private static final int MAX_CACHED = 256;
+  private static final ConcurrentMap<Schema, SchemaCodec> cache = new ConcurrentHashMap<>();
+
+  static final int INT64 = 0;
+  static final int FLOAT = 1;
+  static final int BYTES = 2;
+
+  private final String name;
+  private final Schema.Field[] fields;
+  private final String[] names;
+  private final int[] kinds;
+  private final int[] minSizes;
+  private final int[] maxSizes;
+
+  private SchemaCodec(Schema schema) {
+    List<Schema.Field> fieldList = schema.getFields();
+    int n = fieldList.size();
+    name = schema.getName();
+    fields = fieldList.toArray(new Schema.Field[0]);
+    names = new String[n];
+    kinds = new int[n];
+    minSizes = new int[n];
+    maxSizes = new int[n];
+    for (int i = 0; i < n; i++) {
+      names[i] = fields[i].getName();
+      kinds[i] = kindOf(fields[i].getType());
+      switch (fields[i].getRepetition()) {
+        case REQUIRED:
+          minSizes[i] = 1;
+          maxSizes[i] = 1;
+          break;
+        case OPTIONAL:
+          maxSizes[i] = 1;
+          break;
+        default:
+          maxSizes[i] = Integer.MAX_VALUE;
+      }
+    }
+  }
+
+  /** Codec of {@code schema}, shared with equal schemas. */
+  static SchemaCodec of(Schema schema) {
+    SchemaCodec codec = cache.get(schema);
+    if (codec == null) {
+      if (cache.size() >= MAX_CACHED) {
+        cache.clear();
+      }
+      codec = cache.computeIfAbsent(schema, SchemaCodec::new);
+    }
+    return codec;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  int size() {
+    return fields.length;
+  }
+
+  Schema.Field getField(int index) {
+    return fields[index];
+  }
+
+  String getName(int index) {
+    return names[index];
+  }
+
+  int getKind(int index) {
+    return kinds[index];
+  }
+
+  ////////////////////////////////////////
+
+  void writeField(int index, RecordConsumer recordConsumer, Feature feature) {
+    switch (kinds[index]) {
+      case INT64:
+        Int64List int64s = feature.getInt64List();
+        checkSize(index, int64s.getValueCount());
+        writeInt64s(names[index], index, recordConsumer, int64s);
+        break;
+      case FLOAT:
+        FloatList floats = feature.getFloatList();
+        checkSize(index, floats.getValueCount());
+        writeFloats(names[index], index, recordConsumer, floats);
+        break;
+      default:
+        BytesList bytes = feature.getBytesList();
+        checkSize(index, bytes.getValueCount());
+        writeBytes(names[index], index, recordConsumer, bytes);
+    }
+  }
+
+  void checkSize(int index, int count) {
+    if (count < minSizes[index] || count > maxSizes[index]) {
+      // throws with the message for the repetition
+      fields[index].getRepetition().checkSize(count);
+    }
+  }
+
+  static void writeInt64s(String name, int index, RecordConsumer recordConsumer, Int64List xs) {
+    int n = xs.getValueCount();
+    if (n > 0) {
+      recordConsumer.startField(name, index);
+      for (int i = 0; i < n; i++) {
+        recordConsumer.addLong(xs.getValue(i));
+      }
+      recordConsumer.endField(name, index);
+    }
+  }
+
+  static void writeFloats(String name, int index, RecordConsumer recordConsumer, FloatList xs) {
+    int n = xs.getValueCount();
+    if (n > 0) {
+      recordConsumer.startField(name, index);
+      for (int i = 0; i < n; i++) {
+        recordConsumer.addFloat(xs.getValue(i));
+      }
+      recordConsumer.endField(name, index);
+    }
+  }
+
+  static void writeBytes(String name, int index, RecordConsumer recordConsumer, BytesList xs) {
+    int n = xs.getValueCount();
+    if (n > 0) {
+      recordConsumer.startField(name, index);
+      for (int i = 0; i < n; i++) {
+        ByteString b = xs.getValue(i);
+        recordConsumer.addBinary(Binary.fromConstantByteArray(b.toByteArray()));
+      }
+      recordConsumer.endField(name, index);
+    }
+  }
+
+  ////////////////////////////////////////
+
+  FeatureConverter[] newConverters(boolean zeroCopyBytes) {
+    FeatureConverter[] converters = new FeatureConverter[fields.length];
+    for (int i = 0; i < fields.length; i++) {
+      converters[i] = fields[i].newConverter(zeroCopyBytes);
+    }
+    return converters;
+  }
+
+  private static int kindOf(Schema.Type type) {
+    switch (type) {
+      case INT64: return INT64;
+      case FLOAT: return FLOAT;
+      case BYTES: return BYTES;
+    }
+    throw new IllegalStateException("This should never happen");
+  }
+}
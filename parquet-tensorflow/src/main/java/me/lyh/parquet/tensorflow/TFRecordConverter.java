@@ -0,0 +1,236 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.Preconditions;
+import org.apache.parquet.hadoop.ParquetWriter;
+import org.tensorflow.example.Example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Converts uncompressed TFRecord files of serialized {@link Example}s to a Parquet file.
+ *
+ * <p>Input files are memory-mapped and framed on a reader thread. Batches of records are
+ * checksummed in parallel and handed to the calling thread, which encodes them with an
+ * {@link ExampleBytesWriteSupport} writer, through a queue of at most {@code queueSize}
+ * batches. Record lengths are always checksummed, record data only if enabled.
+ */
+public class TFRecordConverter {
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  private final List<Path> inputs;
+  private final Schema schema;
+  private final boolean checkCrc;
+  private final int parallelism;
+  private final int batchSize;
+  private final int queueSize;
+
+  private TFRecordConverter(Builder builder, Schema schema) {
+    this.inputs = builder.inputs;
+    this.schema = schema;
+    this.checkCrc = builder.checkCrc;
+    this.parallelism = builder.parallelism;
+    this.batchSize = builder.batchSize;
+    this.queueSize = builder.queueSize;
+  }
+
+  public static Builder builder(List<Path> inputs) {
+    return new Builder(inputs);
+  }
+
+  /** Schema of the output, either provided or inferred from the inputs. */
+  public Schema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Convert all inputs with a writer from {@code builder}, whose schema is set to
+   * {@link #getSchema()}. Returns the number of records written.
+   */
+  public long convert(ExampleParquetWriter.BytesBuilder builder) throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    BlockingQueue<CompletableFuture<List<ByteBuffer>>> queue = new ArrayBlockingQueue<>(queueSize);
+    Thread reader = new Thread(() -> readAll(queue, pool), "parquet-tensorflow-tfrecord-reader");
+    reader.setDaemon(true);
+
+    long count = 0;
+    try (ParquetWriter<ByteBuffer> writer = builder.withSchema(schema).build()) {
+      reader.start();
+      while (true) {
+        List<ByteBuffer> batch = queue.take().get();
+        if (batch.isEmpty()) {
+          break;
+        }
+        for (ByteBuffer record : batch) {
+          writer.write(record);
+        }
+        count += batch.size();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while converting");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof UncheckedIOException) {
+        throw ((UncheckedIOException) cause).getCause();
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else {
+        throw new IOException("Failed to convert", cause);
+      }
+    } finally {
+      reader.interrupt();
+      pool.shutdownNow();
+    }
+    return count;
+  }
+
+  // Frame records on this thread and checksum batches on the pool, an empty batch marks the end
+  private void readAll(BlockingQueue<CompletableFuture<List<ByteBuffer>>> queue,
+                       ForkJoinPool pool) {
+    try {
+      for (Path input : inputs) {
+        try (MappedTFRecordReader reader = new MappedTFRecordReader(input)) {
+          List<ByteBuffer> batch = new ArrayList<>(batchSize);
+          int[] crcs = new int[batchSize];
+          ByteBuffer record;
+          while ((record = reader.read()) != null) {
+            crcs[batch.size()] = reader.getCrc();
+            batch.add(record);
+            if (batch.size() == batchSize) {
+              queue.put(submit(batch, crcs, input, pool));
+              batch = new ArrayList<>(batchSize);
+              crcs = new int[batchSize];
+            }
+          }
+          if (!batch.isEmpty()) {
+            queue.put(submit(batch, crcs, input, pool));
+          }
+        }
+      }
+      queue.put(CompletableFuture.completedFuture(Collections.emptyList()));
+    } catch (InterruptedException e) {
+      // the consumer has stopped
+    } catch (Throwable e) {
+      CompletableFuture<List<ByteBuffer>> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      try {
+        queue.put(failed);
+      } catch (InterruptedException ignored) {
+        // the consumer has stopped
+      }
+    }
+  }
+
+  private CompletableFuture<List<ByteBuffer>> submit(List<ByteBuffer> batch, int[] crcs,
+                                                     Path input, ForkJoinPool pool) {
+    if (!checkCrc) {
+      return CompletableFuture.completedFuture(batch);
+    }
+    return CompletableFuture.supplyAsync(() -> {
+      for (int i = 0; i < batch.size(); i++) {
+        if (!MappedTFRecordReader.checkCrc(batch.get(i), crcs[i])) {
+          throw new UncheckedIOException(new IOException("Corrupted record in " + input));
+        }
+      }
+      return batch;
+    }, pool);
+  }
+
+  private static Schema infer(List<Path> inputs, String name, ForkJoinPool pool)
+      throws IOException {
+    return ExampleScanner.scan(name, inputs, pool, (scanner, input) -> {
+      try (MappedTFRecordReader reader = new MappedTFRecordReader(input)) {
+        ByteBuffer record;
+        while ((record = reader.read()) != null) {
+          // parse from a heap copy, protobuf's direct buffer decoder is not safe on all JVMs
+          byte[] bytes = new byte[record.remaining()];
+          record.get(bytes);
+          scanner.scan(Example.parseFrom(bytes));
+        }
+      }
+    }).getSchema();
+  }
+
+  public static class Builder {
+    private final List<Path> inputs;
+    private Schema schema;
+    private String schemaName = "Example";
+    private boolean checkCrc = true;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int queueSize = -1;
+
+    private Builder(List<Path> inputs) {
+      Preconditions.checkArgument(!inputs.isEmpty(), "No inputs");
+      this.inputs = new ArrayList<>(inputs);
+    }
+
+    /** Output schema, inferred with {@link ExampleScanner} in a separate pass if not set. */
+    public Builder withSchema(Schema schema) {
+      this.schema = schema;
+      return this;
+    }
+
+    /** Name of the inferred schema. */
+    public Builder withSchemaName(String schemaName) {
+      this.schemaName = schemaName;
+      return this;
+    }
+
+    /** Verify checksums of record data, enabled by default. */
+    public Builder withCrcCheck(boolean checkCrc) {
+      this.checkCrc = checkCrc;
+      return this;
+    }
+
+    /** Number of threads for checksums and schema inference, defaults to available cores. */
+    public Builder withParallelism(int parallelism) {
+      Preconditions.checkArgument(parallelism > 0, "Invalid parallelism: %s", parallelism);
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    public Builder withBatchSize(int batchSize) {
+      Preconditions.checkArgument(batchSize > 0, "Invalid batch size: %s", batchSize);
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /** Maximum number of batches between reading and encoding, defaults to 2 * parallelism. */
+    public Builder withQueueSize(int queueSize) {
+      Preconditions.checkArgument(queueSize > 0, "Invalid queue size: %s", queueSize);
+      this.queueSize = queueSize;
+      return this;
+    }
+
+    public TFRecordConverter build() throws IOException {
+      if (queueSize < 0) {
+        queueSize = 2 * parallelism;
+      }
+      Schema s = schema;
+      if (s == null) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+          s = infer(inputs, schemaName, pool);
+        } finally {
+          pool.shutdown();
+        }
+      }
+      return new TFRecordConverter(this, s);
+    }
+  }
+}
@@ -0,0 +1,36 @@
+package me.lyh.parquet.tensorflow;
+
+import org.apache.parquet.hadoop.ParquetReader;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Exports Parquet files to TFRecord. Rows are serialized from the decoded columns into a reused
+ * buffer, without building {@link org.tensorflow.example.Example} protos.
+ *
+ * <pre>{@code
+ * ParquetReader<ByteBuffer> reader = ExampleParquetReader.bytesBuilder(path)
+ *     .withFields(fields)
+ *     .build();
+ * TFRecordExporter.export(reader, new BufferedOutputStream(out));
+ * }</pre>
+ */
+public class TFRecordExporter {
+  private TFRecordExporter() {}
+
+  /** Write all records of {@code reader} to {@code out} and close both. */
+  public static long export(ParquetReader<ByteBuffer> reader, OutputStream out)
+      throws IOException {
+    long count = 0;
+    try (ParquetReader<ByteBuffer> r = reader; TFRecordWriter writer = new TFRecordWriter(out)) {
+      ByteBuffer record;
+      while ((record = r.read()) != null) {
+        writer.write(record);
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,76 @@
+package me.lyh.parquet.tensorflow;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads uncompressed TFRecord files, where each record is framed as
+ * {@code uint64 length, uint32 masked_crc32c(length), byte[length] data,
+ * uint32 masked_crc32c(data)} in little-endian.
+ */
+public class TFRecordReader implements Closeable {
+  private final InputStream in;
+  private final Crc32c crc = new Crc32c();
+  private final byte[] header = new byte[12];
+  private final byte[] footer = new byte[4];
+
+  public TFRecordReader(InputStream in) {
+    this.in = in;
+  }
+
+  /** Read the next record, or {@code null} at the end of input. */
+  public byte[] read() throws IOException {
+    int n = readFully(header, 0, header.length);
+    if (n == 0) {
+      return null;
+    } else if (n < header.length) {
+      throw new EOFException("Truncated record header");
+    }
+
+    ByteBuffer buffer = ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN);
+    long length = buffer.getLong(0);
+    checkCrc(header, 0, 8, buffer.getInt(8), "length");
+    if (length < 0 || length > Integer.MAX_VALUE - 8) {
+      throw new IOException("Invalid record length: " + length);
+    }
+
+    byte[] data = new byte[(int) length];
+    if (readFully(data, 0, data.length) < data.length
+        || readFully(footer, 0, footer.length) < footer.length) {
+      throw new EOFException("Truncated record");
+    }
+    int expected = ByteBuffer.wrap(footer).order(ByteOrder.LITTLE_ENDIAN).getInt(0);
+    checkCrc(data, 0, data.length, expected, "data");
+    return data;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private void checkCrc(byte[] b, int off, int len, int expected, String what)
+      throws IOException {
+    crc.reset();
+    crc.update(b, off, len);
+    if (Crc32c.mask(crc.getValue()) != expected) {
+      throw new IOException("Invalid " + what + " checksum");
+    }
+  }
+
+  private int readFully(byte[] b, int off, int len) throws IOException {
+    int total = 0;
+    while (total < len) {
+      int n = in.read(b, off + total, len - total);
+      if (n < 0) {
+        break;
+      }
+      total += n;
+    }
+    return total;
+  }
+}
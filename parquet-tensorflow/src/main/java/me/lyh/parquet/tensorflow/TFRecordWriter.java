@@ -0,0 +1,61 @@
+package me.lyh.parquet.tensorflow;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/** Writes uncompressed TFRecord files, see {@link TFRecordReader} for the framing. */
+public class TFRecordWriter implements Closeable, Flushable {
+  private final OutputStream out;
+  private final Crc32c crc = new Crc32c();
+  private final ByteBuffer header = ByteBuffer.allocate(12).order(ByteOrder.LITTLE_ENDIAN);
+  private final ByteBuffer footer = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+  private byte[] scratch;
+
+  /** Records are written to {@code out} in three parts, so it should be buffered. */
+  public TFRecordWriter(OutputStream out) {
+    this.out = out;
+  }
+
+  public void write(byte[] record) throws IOException {
+    write(ByteBuffer.wrap(record));
+  }
+
+  /** Write the remaining bytes of {@code record} without changing its position. */
+  public void write(ByteBuffer record) throws IOException {
+    int length = record.remaining();
+    header.putLong(0, length);
+    crc.reset();
+    crc.update(header.array(), 0, 8);
+    header.putInt(8, Crc32c.mask(crc.getValue()));
+    out.write(header.array());
+
+    crc.reset();
+    crc.update(record);
+    if (record.hasArray()) {
+      out.write(record.array(), record.arrayOffset() + record.position(), length);
+    } else {
+      if (scratch == null || scratch.length < length) {
+        scratch = new byte[length];
+      }
+      record.duplicate().get(scratch, 0, length);
+      out.write(scratch, 0, length);
+    }
+
+    footer.putInt(0, Crc32c.mask(crc.getValue()));
+    out.write(footer.array());
+  }
+
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+}
@@ -0,0 +1,134 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.filter2.predicate.FilterApi
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
+
+import scala.collection.JavaConverters._
+
+class ExampleBatchReaderTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private def toExamples(batch: ExampleBatch): Seq[Example] = (0 until batch.size()).map { row =>
+    val b = Features.newBuilder()
+    (0 until batch.getColumnCount).foreach { c =>
+      val column = batch.getColumn(c)
+      val (from, to) = (column.getOffsets()(row), column.getOffsets()(row + 1))
+      if (to > from) {
+        val feature = column match {
+          case col: ExampleBatch.Int64Column =>
+            val values = (from until to).map(i => Long.box(col.getValues()(i)))
+            Feature.newBuilder().setInt64List(Int64List.newBuilder().addAllValue(values.asJava))
+          case col: ExampleBatch.FloatColumn =>
+            val values = (from until to).map(i => Float.box(col.getValues()(i)))
+            Feature.newBuilder().setFloatList(FloatList.newBuilder().addAllValue(values.asJava))
+          case col: ExampleBatch.BytesColumn =>
+            val values = (from until to).map(i => ByteString.copyFrom(col.getValue(i)))
+            Feature.newBuilder().setBytesList(BytesList.newBuilder().addAllValue(values.asJava))
+        }
+        b.putFeature(column.getField.getName, feature.build())
+      }
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  // batches are reused, so convert each one before the next read
+  private def read(reader: ExampleBatchReader): Seq[Seq[Example]] =
+    readAll(reader)(r => Option(r.read()).map(toExamples).orNull)
+
+  private def getFeatures(keys: String*): Example => Example = {
+    val keySet = keys.toSet
+    (e: Example) => {
+      val features = e.getFeatures.getFeatureMap.asScala.filter { case (k, _) =>
+        keySet.contains(k)
+      }
+      Example.newBuilder().setFeatures(Features.newBuilder().putAllFeature(features.asJava)).build()
+    }
+  }
+
+  private val schema = Schema
+    .newBuilder()
+    .required("r", Schema.Type.INT64)
+    .optional("o", Schema.Type.FLOAT)
+    .repeated("l", Schema.Type.BYTES)
+    .named("Schema")
+
+  private val examples = (0 until 10).map { i =>
+    val b = Features.newBuilder().putFeature("r", longs(i))
+    if (i % 2 == 0) b.putFeature("o", floats(i.toFloat))
+    if (i > 0) b.putFeature("l", bytes((0 until i).map("x" * _): _*))
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  "ExampleBatchReader" should "read batches" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+
+    val batches = read(ExampleBatchReader.builder(temp).withBatchSize(3).build())
+    batches.map(_.size) shouldBe Seq(3, 3, 3, 1)
+    batches.flatten shouldEqual examples
+
+    read(ExampleBatchReader.builder(temp).build()).flatten shouldEqual examples
+  }
+
+  it should "read batches across files" in {
+    val dir = makeTemp
+    val sizes = Seq(7, 5, 4)
+    val xs = (0 until sizes.sum).map { i =>
+      Example.newBuilder().setFeatures(Features.newBuilder().putFeature("r", longs(i))).build()
+    }
+    sizes.scanLeft(0)(_ + _).zip(sizes).zipWithIndex.foreach { case ((from, n), i) =>
+      write(new Path(dir, s"part-$i.parquet"), schema, xs.slice(from, from + n))
+    }
+
+    val batches = read(ExampleBatchReader.builder(dir).withBatchSize(3).build())
+    batches.map(_.size).sorted shouldBe Seq(1, 1, 2, 3, 3, 3, 3)
+    def id(e: Example): Long = e.getFeatures.getFeatureOrThrow("r").getInt64List.getValue(0)
+    batches.flatten.sortBy(id) shouldEqual xs
+  }
+
+  it should "support projection" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+
+    val projected = Schema.newBuilder().repeated("l", Schema.Type.BYTES).named("Projected")
+    read(ExampleBatchReader.builder(temp).withSchema(projected).build()).flatten shouldEqual
+      examples.map(getFeatures("l"))
+    read(ExampleBatchReader.builder(temp).withFields(Seq("o", "r").asJava).build()).flatten
+      .shouldEqual(examples.map(getFeatures("r", "o")))
+  }
+
+  it should "count values of filtered batches" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+
+    // the last row is dropped after its values are decoded
+    val filter = FilterCompat.get(FilterApi.lt(FilterApi.longColumn("r"), Long.box(9L)))
+    val counts = readAll(ExampleBatchReader.builder(temp).withFilter(filter).build()) { r =>
+      Option(r.read()).map { batch =>
+        val column = batch.getColumn("l")
+        (column.getValueCount, (0 until batch.size()).map(column.getValueCount).sum)
+      }.orNull
+    }
+    counts shouldBe Seq((36, 36))
+  }
+
+  it should "fail invalid repetition" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+
+    val invalid = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .required("x", Schema.Type.INT64)
+      .named("Invalid")
+    val reader = ExampleBatchReader.builder(temp).withSchema(invalid).build()
+    val e = the[ParquetDecodingException] thrownBy reader.read()
+    e.getCause.getMessage should include("Failed to decode Invalid#x: Required field size != 1: 0")
+  }
+}
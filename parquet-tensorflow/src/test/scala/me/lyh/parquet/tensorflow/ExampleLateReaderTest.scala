@@ -0,0 +1,125 @@
+package me.lyh.parquet.tensorflow
+
+import org.apache.parquet.filter.{ColumnPredicates, ColumnRecordFilter}
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.hadoop.ParquetReader
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example._
+
+import scala.collection.JavaConverters._
+
+class ExampleLateReaderTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .required("label", Schema.Type.INT64)
+    .optional("score", Schema.Type.FLOAT)
+    .repeated("tags", Schema.Type.BYTES)
+    .required("image", Schema.Type.BYTES)
+    .named("Schema")
+
+  private def field(name: String): Schema.Field =
+    schema.getFields.asScala.find(_.getName == name).get
+
+  private val id = FeaturePredicate.int64Feature(field("id"))
+  private val label = FeaturePredicate.int64Feature(field("label"))
+  private val score = FeaturePredicate.floatFeature(field("score"))
+  private val tag = FeaturePredicate.bytesFeature(field("tags"))
+
+  private val examples = (0 until 5000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature("id", longs(i.toLong))
+      .putFeature("label", longs(if (i % 97 == 0) 1L else 0L))
+      .putFeature("image", bytes(i.toString * 20))
+    if (i % 3 != 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("score", Feature.newBuilder().setFloatList(floats).build())
+    }
+    if (i % 4 != 0) {
+      b.putFeature("tags", bytes((0 until i % 4).map(j => s"t$j"): _*))
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  // small pages and row groups so that column indexes and row group filters apply
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter
+      .builder(p)
+      .withSchema(schema)
+      .withPageSize(4096)
+      .withRowGroupSize(64L * 1024)
+      .build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def read(reader: ParquetReader[Example]): Seq[Example] = TestUtil.read(reader)
+
+  private def read(reader: ExampleLateReader): Seq[Example] = readAll(reader)(_.read())
+
+  private def late(predicate: FeaturePredicate): Seq[Example] =
+    read(
+      ExampleParquetReader
+        .builder(temp)
+        .withFilter(predicate.toFilter)
+        .withLateMaterialization()
+        .build()
+    )
+
+  private def eager(predicate: FeaturePredicate): Seq[Example] =
+    read(ExampleParquetReader.builder(temp).withFilter(predicate.toFilter).build())
+
+  "ExampleLateReader" should "match eager filtering" in {
+    val predicates = Seq(
+      label.eq(1),
+      id.in(1, 2, 3, 4000, 4999),
+      id.gtEq(4900).and(label.eq(0)),
+      id.lt(10).or(id.gt(4990)),
+      score.isMissing().and(id.lt(100)),
+      tag.eq("t2").and(label.eq(1)),
+      tag.notEq("t1"),
+      id.gt(10000)
+    )
+    predicates.foreach { p =>
+      late(p) shouldEqual eager(p)
+    }
+    late(label.eq(1)).size shouldBe examples.indices.count(_ % 97 == 0)
+  }
+
+  it should "read all records without filter" in {
+    read(ExampleParquetReader.builder(temp).withLateMaterialization().build()) shouldEqual examples
+  }
+
+  it should "support predicate columns outside of the projection" in {
+    val actual = read(
+      ExampleParquetReader
+        .builder(temp)
+        .withFields(Seq("image").asJava)
+        .withFilter(label.eq(1).and(id.gt(1000)).toFilter)
+        .withLateMaterialization()
+        .build()
+    )
+    val expected = examples.zipWithIndex.collect {
+      case (e, i) if i % 97 == 0 && i > 1000 =>
+        val image = e.getFeatures.getFeatureMap.get("image")
+        Example
+          .newBuilder()
+          .setFeatures(Features.newBuilder().putFeature("image", image))
+          .build()
+    }
+    actual shouldEqual expected
+  }
+
+  it should "reject record filters" in {
+    val filter = FilterCompat.get(ColumnRecordFilter.column("label", ColumnPredicates.equalTo(1L)))
+    val builder = ExampleParquetReader.builder(temp).withFilter(filter).withLateMaterialization()
+    the[IllegalArgumentException] thrownBy builder.build() should have message
+      "Only FilterPredicate filters are supported with late materialization"
+  }
+}
@@ -0,0 +1,198 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.conf.Configuration
+import org.apache.parquet.hadoop.util.{HadoopInputFile, HadoopOutputFile}
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example._
+
+import scala.collection.mutable
+
+class ExampleMetricsTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val conf = new Configuration()
+  private class Recorder extends ExampleMetrics {
+    var records = 0
+    var nanos = 0L
+    val counts: mutable.Map[String, Long] = mutable.Map.empty.withDefaultValue(0L)
+    val bytes: mutable.Map[String, Long] = mutable.Map.empty.withDefaultValue(0L)
+    val invalid: mutable.Buffer[(String, Int)] = mutable.Buffer.empty
+    val rowGroups: mutable.Buffer[(Int, Int)] = mutable.Buffer.empty
+    var bytesRead = 0L
+    var bytesWritten = 0L
+
+    override def onRecord(nanos: Long): Unit = {
+      records += 1
+      this.nanos += nanos
+    }
+    override def onFeature(field: Schema.Field, count: Int, bytes: Long): Unit = {
+      counts(field.getName) += count
+      this.bytes(field.getName) += bytes
+    }
+    override def onInvalidFeature(field: Schema.Field, count: Int): Unit =
+      invalid += field.getName -> count
+    override def onRowGroups(total: Int, selected: Int): Unit = rowGroups += total -> selected
+    override def onRead(bytes: Long, nanos: Long): Unit = bytesRead += bytes
+    override def onWrite(bytes: Long, nanos: Long): Unit = bytesWritten += bytes
+  }
+
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .optional("score", Schema.Type.FLOAT)
+    .repeated("tags", Schema.Type.BYTES)
+    .named("Schema")
+
+  private val examples = (0 until 1000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "id",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i.toLong)).build()
+      )
+    if (i % 2 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("score", Feature.newBuilder().setFloatList(floats).build())
+    }
+    if (i % 3 > 0) {
+      val tags = BytesList.newBuilder()
+      (0 until i % 3).foreach(j => tags.addValue(ByteString.copyFromUtf8("tag" * (j + 1))))
+      b.putFeature("tags", Feature.newBuilder().setBytesList(tags).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private val expectedCounts = Map(
+    "id" -> 1000L,
+    "score" -> 500L,
+    "tags" -> examples.indices.map(_ % 3).sum.toLong
+  )
+  private val expectedBytes = Map(
+    "id" -> 8000L,
+    "score" -> 2000L,
+    "tags" -> examples.indices.map(i => (0 until i % 3).map(j => 3 * (j + 1)).sum).sum.toLong
+  )
+
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).withRowGroupSize(1024L).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  "ExampleMetrics" should "report writes" in {
+    val p = makeTemp
+    val metrics = new Recorder
+    val writer = ExampleParquetWriter
+      .builder(new MeteredOutputFile(HadoopOutputFile.fromPath(p, conf), metrics))
+      .withSchema(schema)
+      .withMetrics(metrics)
+      .build()
+    examples.foreach(writer.write)
+    writer.close()
+    metrics.records shouldBe 1000
+    metrics.nanos should be > 0L
+    metrics.counts shouldBe expectedCounts
+    metrics.bytes shouldBe expectedBytes
+    metrics.bytesWritten shouldBe fs.getFileStatus(p).getLen
+  }
+
+  it should "report reads" in {
+    val metrics = new Recorder
+    val file = new MeteredInputFile(HadoopInputFile.fromPath(temp, conf), metrics)
+    read(ExampleParquetReader.builder(file).withMetrics(metrics).build()) shouldBe examples
+    metrics.records shouldBe 1000
+    metrics.counts shouldBe expectedCounts
+    metrics.bytes shouldBe expectedBytes
+    metrics.rowGroups.size shouldBe 1
+    val (total, selected) = metrics.rowGroups.head
+    total should be > 1
+    selected shouldBe total
+    metrics.bytesRead should be >= fs.getFileStatus(temp).getLen
+  }
+
+  it should "report row groups of parallel reads once" in {
+    val metrics = new Recorder
+    val builder = ExampleParquetReader.builder(temp).withMetrics(metrics)
+    val reader = builder.withParallelism(2).build()
+    var n = 0
+    while (reader.read() != null) n += 1
+    reader.close()
+    n shouldBe 1000
+    metrics.records shouldBe 1000
+    metrics.rowGroups.size shouldBe 1
+
+    // the builder still reports row groups of later readers
+    read(builder.build()) shouldBe examples
+    metrics.rowGroups.size shouldBe 2
+  }
+
+  it should "report row groups in the file range" in {
+    val metrics = new Recorder
+    read(ExampleParquetReader.builder(temp).withMetrics(metrics).build())
+    val ranged = new Recorder
+    val length = fs.getFileStatus(temp).getLen
+    val n = read(
+      ExampleParquetReader.builder(temp).withFileRange(0, length / 2).withMetrics(ranged).build()
+    ).size
+    n should (be > 0 and be < 1000)
+    ranged.records shouldBe n
+    val (total, selected) = ranged.rowGroups.head
+    selected shouldBe total
+    total should (be > 0 and be < metrics.rowGroups.head._1)
+  }
+
+  it should "report row groups left after filtering" in {
+    val metrics = new Recorder
+    val id = FeaturePredicate.int64Feature(schema.getFields.get(0))
+    val reader = ExampleParquetReader
+      .builder(temp)
+      .withFilter(id.gtEq(990).toFilter)
+      .withMetrics(metrics)
+      .build()
+    read(reader).size shouldBe 10
+    val (total, selected) = metrics.rowGroups.head
+    selected should be < total
+    metrics.counts("id") should be < 1000L
+
+    // late materialization reports row groups the same way
+    val late = new Recorder
+    val lateReader = ExampleParquetReader
+      .builder(new MeteredInputFile(HadoopInputFile.fromPath(temp, conf), late))
+      .withFilter(id.gtEq(990).toFilter)
+      .withMetrics(late)
+      .withLateMaterialization()
+      .build()
+    var n = 0
+    while (lateReader.read() != null) n += 1
+    lateReader.close()
+    n shouldBe 10
+    late.rowGroups shouldBe metrics.rowGroups
+    late.counts("id") shouldBe 10L
+  }
+
+  it should "report invalid features" in {
+    val metrics = new Recorder
+    val invalid = Schema
+      .newBuilder()
+      .required("id", Schema.Type.INT64)
+      .required("x", Schema.Type.FLOAT)
+      .named("Schema")
+    val reader = ExampleParquetReader
+      .builder(temp)
+      .withSchema(invalid)
+      .withMetrics(metrics)
+      .build()
+    a[ParquetDecodingException] should be thrownBy reader.read()
+    metrics.invalid shouldBe Seq("x" -> 0)
+
+    val writer =
+      ExampleParquetWriter.builder(makeTemp).withSchema(invalid).withMetrics(metrics).build()
+    an[IllegalStateException] should be thrownBy writer.write(examples(1))
+    metrics.invalid shouldBe Seq("x" -> 0, "x" -> 0)
+  }
+}
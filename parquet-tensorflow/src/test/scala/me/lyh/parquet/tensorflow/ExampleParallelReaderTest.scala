@@ -0,0 +1,120 @@
+package me.lyh.parquet.tensorflow
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.filter2.predicate.FilterApi
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.hadoop.util.HadoopInputFile
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{Example, Feature, Features, FloatList, Int64List}
+
+import scala.collection.JavaConverters._
+
+class ExampleParallelReaderTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("r", Schema.Type.INT64)
+    .optional("o", Schema.Type.FLOAT)
+    .named("Schema")
+
+  private val examples = (0 until 2000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "r",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i)).build()
+      )
+    if (i % 2 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("o", Feature.newBuilder().setFloatList(floats).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  // small row groups so that the file has many of them
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).withRowGroupSize(1024L).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def read(reader: ExampleParallelReader): Seq[Example] = readAll(reader)(_.read())
+
+  private def r(e: Example): Long = e.getFeatures.getFeatureMap.get("r").getInt64List.getValue(0)
+
+  "ExampleParallelReader" should "read row groups in order" in {
+    val reader = ParquetFileReader.open(HadoopInputFile.fromPath(temp, new Configuration()))
+    reader.getRowGroups.size() should be > 4
+    reader.close()
+
+    read(ExampleParquetReader.builder(temp).withParallelism(4).build()) shouldEqual examples
+    read(ExampleParquetReader.builder(temp).withParallelism(1).build()) shouldEqual examples
+    read(ExampleParquetReader.builder(temp).withParallelism(3).withReadAhead(1).build())
+      .shouldEqual(examples)
+  }
+
+  it should "read the footer once" in {
+    val inputFile = HadoopInputFile.fromPath(temp, new Configuration())
+    val file = new PrefetchingInputFileTest.ThrottledInputFile(inputFile, 0)
+    read(ExampleParquetReader.builder(file).withParallelism(4).build()) shouldEqual examples
+    // the footer length and magic
+    file.reads.asScala.count(_.offset == inputFile.getLength - 8) shouldBe 1
+  }
+
+  it should "read directories and file ranges like a sequential reader" in {
+    val dir = makeTemp("dir")
+    Seq(0, 1).foreach { i =>
+      val p = new Path(dir, s"part-$i.parquet")
+      val writer =
+        ExampleParquetWriter.builder(p).withSchema(schema).withRowGroupSize(1024L).build()
+      examples.filter(r(_) % 2 == i).foreach(writer.write)
+      writer.close()
+    }
+    val files = TestUtil.read(ExampleParquetReader.builder(dir).build())
+    files should have size examples.size
+    read(ExampleParquetReader.builder(dir).withParallelism(4).build()) shouldEqual files
+
+    val length = fs.getFileStatus(temp).getLen
+    val range =
+      TestUtil.read(ExampleParquetReader.builder(temp).withFileRange(0, length / 2).build())
+    range.size should (be > 0 and be < examples.size)
+    read(ExampleParquetReader.builder(temp).withFileRange(0, length / 2).withParallelism(4).build())
+      .shouldEqual(range)
+  }
+
+  it should "read row groups in completion order" in {
+    val actual =
+      read(ExampleParquetReader.builder(temp).withParallelism(4).withOrdered(false).build())
+    actual.sortBy(r) shouldEqual examples
+  }
+
+  it should "support projection and filter" in {
+    val filter = FilterCompat.get(FilterApi.lt(FilterApi.longColumn("r"), Long.box(100L)))
+    val reader = ExampleParquetReader
+      .builder(temp)
+      .withFields(Seq("r").asJava)
+      .withFilter(filter)
+      .withParallelism(4)
+      .build()
+    read(reader).map(r) shouldEqual (0L until 100L)
+  }
+
+  it should "propagate failures" in {
+    val invalid = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .required("x", Schema.Type.INT64)
+      .named("Invalid")
+    val reader = ExampleParquetReader.builder(temp).withSchema(invalid).withParallelism(2).build()
+    val e = the[ParquetDecodingException] thrownBy reader.read()
+    reader.close()
+    e.getCause.getMessage should include("Failed to decode Invalid#x: Required field size != 1: 0")
+  }
+}
@@ -0,0 +1,103 @@
+package me.lyh.parquet.tensorflow
+
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{Example, Features}
+
+import java.nio.ByteBuffer
+import java.nio.charset.StandardCharsets
+import scala.collection.JavaConverters._
+import scala.collection.mutable
+
+class ExampleRecordReaderTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private def read(reader: ExampleRecordReader): Seq[Example] =
+    readAll(reader)(r => Option(r.read()).map(_.toExample).orNull)
+
+  private val schema = Schema
+    .newBuilder()
+    .required("r", Schema.Type.INT64)
+    .optional("o", Schema.Type.FLOAT)
+    .repeated("l", Schema.Type.BYTES)
+    .named("Schema")
+
+  private val examples = (0 until 10).map { i =>
+    val b = Features.newBuilder().putFeature("r", longs(i))
+    if (i % 2 == 0) b.putFeature("o", floats(i.toFloat))
+    if (i > 0) b.putFeature("l", bytes((0 until i).map("x" * _): _*))
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private class Recorder extends ExampleVisitor {
+    val values: mutable.Buffer[(Int, Any)] = mutable.Buffer.empty
+    var records = 0
+    override def onInt64(fieldId: Int, value: Long): Unit = values += fieldId -> value
+    override def onFloat(fieldId: Int, value: Float): Unit = values += fieldId -> value
+    override def onBytes(fieldId: Int, value: ByteBuffer): Unit =
+      values += fieldId -> StandardCharsets.UTF_8.decode(value).toString
+    override def endRecord(): Unit = records += 1
+  }
+
+  "ExampleRecordReader" should "read records into a reused holder" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+    read(ExampleRecordReader.builder(temp).build()) shouldEqual examples
+
+    val reader = ExampleRecordReader.builder(temp).build()
+    val first = reader.read()
+    first.getSchema shouldBe schema
+    first.getFieldId("o") shouldBe 1
+    first.getFieldId("x") shouldBe -1
+    val second = reader.read()
+    second should be theSameInstanceAs first
+    second.getInt64(0, 0) shouldBe 1L
+    second.getValueCount(1) shouldBe 0
+    second.getValueCount(2) shouldBe 1
+    StandardCharsets.UTF_8.decode(second.getBytes(2, 0)).toString shouldBe ""
+    reader.close()
+  }
+
+  it should "read records into visitors" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+    val recorder = new Recorder
+    val reader = ExampleRecordReader.builder(temp).build()
+    while (reader.read(recorder)) {}
+    reader.close()
+
+    recorder.records shouldBe 10
+    val expected = examples.indices.flatMap { i =>
+      Seq(0 -> i.toLong) ++
+        (if (i % 2 == 0) Seq(1 -> i.toFloat) else Nil) ++
+        (0 until i).map(j => 2 -> "x" * j)
+    }
+    recorder.values shouldBe expected
+  }
+
+  it should "read projections and filtered records" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+    val projected = read(ExampleRecordReader.builder(temp).withFields(Seq("r").asJava).build())
+    projected.map(_.getFeatures.getFeatureMap.keySet().asScala) shouldBe Seq.fill(10)(Set("r"))
+
+    val r = FeaturePredicate.int64Feature(schema.getFields.get(0))
+    val filtered = ExampleRecordReader.builder(temp).withFilter(r.gtEq(7).toFilter).build()
+    read(filtered) shouldEqual examples.drop(7)
+  }
+
+  it should "fail on invalid records" in {
+    val temp = makeTemp
+    write(temp, schema, examples)
+    val invalid = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .required("x", Schema.Type.INT64)
+      .named("Invalid")
+    val reader = ExampleRecordReader.builder(temp).withSchema(invalid).build()
+    val e = the[ParquetDecodingException] thrownBy reader.read()
+    e.getCause.getMessage should include("Failed to decode Invalid#x: Required field size != 1: 0")
+    reader.close()
+  }
+}
@@ -1,13 +1,20 @@
 package me.lyh.parquet.tensorflow
 
 import com.google.protobuf.ByteString
+import org.apache.hadoop.conf.Configuration
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.hadoop.util.HadoopInputFile
 import org.scalatest.flatspec.AnyFlatSpec
 import org.scalatest.matchers.should.Matchers
 import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
 
+import java.io.FileOutputStream
+import java.util.concurrent.ForkJoinPool
 import scala.collection.JavaConverters._
 
 class ExampleScannerTest extends AnyFlatSpec with Matchers {
+  import TestUtil.{makeTemp, read}
+
   private def longs(xs: Long*): Feature =
     Feature
       .newBuilder()
@@ -106,4 +113,165 @@ class ExampleScannerTest extends AnyFlatSpec with Matchers {
     getSchema(examples ++ Seq(example("c" -> bytes("ZZZ")))) shouldBe schema
     getSchema(examples ++ Seq(example("c" -> Feature.getDefaultInstance))) shouldBe schema
   }
+
+  private val shards = Seq(
+    Seq(example("a" -> longs(1L)), example("b" -> floats(1.0f))),
+    Seq(example("a" -> longs(2L), "c" -> bytes("x", "y"))),
+    Seq(example("a" -> longs(3L), "d" -> Feature.getDefaultInstance)),
+    Seq(example("d" -> longs(4L), "b" -> floats()))
+  )
+
+  it should "support merge" in {
+    val expected = getSchema(shards.flatten)
+    def scanner(i: Int) = shards(i).foldLeft(new ExampleScanner("Schema"))(_.scan(_))
+
+    scanner(0).merge(scanner(1)).merge(scanner(2)).merge(scanner(3)).getSchema() shouldBe expected
+    scanner(0).merge(scanner(1).merge(scanner(2).merge(scanner(3)))).getSchema() shouldBe expected
+    scanner(0).merge(scanner(1)).merge(scanner(2).merge(scanner(3))).getSchema() shouldBe expected
+    scanner(0).merge(new ExampleScanner("Schema")).getSchema() shouldBe getSchema(shards(0))
+
+    val conflict = new ExampleScanner("Schema").scan(example("a" -> floats(1.0f)))
+    the[IllegalArgumentException] thrownBy {
+      scanner(0).merge(conflict)
+    } should have message "Incompatible types for field a: INT64 != FLOAT"
+  }
+
+  it should "scan Parquet files in parallel" in {
+    val expected = getSchema(shards.flatten)
+    val files = shards.map { xs =>
+      val path = makeTemp("parquet")
+      val writer = ExampleParquetWriter.builder(path).withSchema(expected).build()
+      xs.foreach(writer.write)
+      writer.close()
+      HadoopInputFile.fromPath(path, new Configuration())
+    }
+    val pool = new ForkJoinPool(2)
+    // Parquet files always contain all fields, so only the repetition is inferred
+    val scanner = ExampleScanner.scanParquet("Schema", files.asJava, pool)
+    val sequential =
+      files.flatMap(f => readParquet(f)).foldLeft(new ExampleScanner("Schema"))(_.scan(_))
+    scanner.getSchema() shouldBe sequential.getSchema()
+    scanner.getStats.asScala.map(summary) shouldBe sequential.getStats.asScala.map(summary)
+    pool.shutdown()
+  }
+
+  private def summary(s: ExampleScanner.FeatureStats) = (
+    s.getName,
+    s.getType,
+    (s.getCount, s.getValueCount, s.getMaxCount),
+    (s.getMinInt64, s.getMaxInt64, s.getMinFloat, s.getMaxFloat),
+    (s.getMinLength, s.getMaxLength, s.getTotalLength, s.getLengthHistogram.toSeq),
+    s.getDistinctCount
+  )
+
+  it should "merge float bounds of parts without float values" in {
+    val parts = Seq(
+      Seq(example("f" -> floats(1.0f, 2.0f))),
+      Seq(example("f" -> floats())),
+      Seq(example("f" -> floats(-1.0f)), example("f" -> floats()))
+    )
+    def scanner(xs: Seq[Example]) = xs.foldLeft(new ExampleScanner("Schema"))(_.scan(_))
+    val sequential = scanner(parts.flatten)
+    val merged = parts.map(scanner).reduce(_.merge(_))
+    merged.getStats.asScala.map(summary) shouldBe sequential.getStats.asScala.map(summary)
+    val f = merged.getStats.get(0)
+    (f.getMinFloat, f.getMaxFloat) shouldBe ((-1.0f, 2.0f))
+
+    val empty = scanner(parts(1)).merge(scanner(parts(1))).getStats.get(0)
+    (empty.getMinFloat, empty.getMaxFloat) shouldBe ((
+      Float.PositiveInfinity,
+      Float.NegativeInfinity
+    ))
+  }
+
+  private def readParquet(file: HadoopInputFile): Seq[Example] =
+    read(ExampleParquetReader.builder(file).build())
+
+  it should "scan TFRecord files in parallel" in {
+    val expected = getSchema(shards.flatten)
+    val files = shards.map { xs =>
+      val path = makeTemp("tfrecord")
+      val out = new FileOutputStream(path.toUri.getPath)
+      xs.foreach(x => out.write(TFRecordReaderTest.frame(x.toByteArray)))
+      out.close()
+      HadoopInputFile.fromPath(path, new Configuration())
+    }
+    val pool = new ForkJoinPool(3)
+    ExampleScanner.scanTFRecords("Schema", files.asJava, pool).getSchema() shouldBe expected
+    pool.shutdown()
+  }
+
+  it should "collect feature stats" in {
+    val examples = (0 until 10000).map { i =>
+      example(
+        "i" -> longs(i.toLong, -i.toLong),
+        "f" -> floats(i.toFloat / 10, Float.NaN),
+        "b" -> bytes("x" * (i % 10), "y" * (i % 100))
+      )
+    }
+    val (left, right) = examples.splitAt(3000)
+    val scanner = left
+      .foldLeft(new ExampleScanner("Schema"))(_.scan(_))
+      .merge(right.foldLeft(new ExampleScanner("Schema"))(_.scan(_)))
+    scanner.getCount shouldBe 10000L
+    val stats = scanner.getStats.asScala.map(s => s.getName -> s).toMap
+
+    val i = stats("i")
+    i.getType shouldBe Schema.Type.INT64
+    (i.getCount, i.getValueCount, i.getMaxCount) shouldBe ((10000L, 20000L, 2))
+    (i.getMinInt64, i.getMaxInt64) shouldBe ((-9999L, 9999L))
+    i.getDistinctCount.toDouble shouldBe 19999.0 +- 19999 * 0.05
+
+    val f = stats("f")
+    (f.getMinFloat, f.getMaxFloat) shouldBe ((0.0f, 999.9f))
+    f.getDistinctCount shouldBe -1L
+
+    val b = stats("b")
+    (b.getMinLength, b.getMaxLength) shouldBe ((0, 99))
+    b.getTotalLength shouldBe 45L * 1000 + 4950L * 100
+    b.getLengthHistogram.take(9) shouldBe
+      Array(1100L, 1100L, 2200L, 4400L, 2800L, 1600L, 3200L, 3600L, 0L)
+    b.getDistinctCount.toDouble shouldBe 109.0 +- 109 * 0.05
+  }
+
+  it should "suggest writer settings" in {
+    val examples = (0 until 1000).map { i =>
+      example(
+        "id" -> longs(i.toLong),
+        "label" -> longs(i.toLong % 3),
+        "image" -> bytes(i.toString * 6000),
+        "score" -> floats(i.toFloat)
+      )
+    }
+    val settings = examples.foldLeft(new ExampleScanner("Schema"))(_.scan(_)).getWriterSettings
+    settings.getDictionaryEncoding.asScala shouldBe Map(
+      "id" -> false,
+      "label" -> true,
+      "image" -> false
+    )
+    settings.getBloomFilterNdvs.keySet.asScala shouldBe Set("id", "image")
+    settings.getPageSize should be > 1024 * 1024
+    settings.getRowGroupSize shouldBe 128L * 1024 * 1024
+
+    val temp = makeTemp("parquet")
+    val schema = getSchema(examples)
+    val writer = settings.apply(ExampleParquetWriter.builder(temp).withSchema(schema)).build()
+    examples.foreach(writer.write)
+    writer.close()
+
+    val reader = ParquetFileReader.open(HadoopInputFile.fromPath(temp, new Configuration()))
+    val columns = reader.getRowGroups.get(0).getColumns.asScala.map(c => c.getPath.toDotString -> c)
+    columns.map { case (k, c) => k -> c.hasDictionaryPage }.toMap - "score" shouldBe Map(
+      "id" -> false,
+      "label" -> true,
+      "image" -> false
+    )
+    columns.map { case (k, c) => k -> (c.getBloomFilterOffset >= 0) }.toMap shouldBe Map(
+      "id" -> true,
+      "label" -> false,
+      "image" -> true,
+      "score" -> false
+    )
+    reader.close()
+  }
 }
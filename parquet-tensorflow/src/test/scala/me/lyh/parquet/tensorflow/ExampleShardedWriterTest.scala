@@ -0,0 +1,147 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.hadoop.metadata.CompressionCodecName
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{BytesList, Example, Feature, Features, Int64List}
+
+import java.nio.file.{Files, Paths}
+import java.util.concurrent.{Callable, Executors}
+import scala.collection.JavaConverters._
+
+class ExampleShardedWriterTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .optional("p", Schema.Type.BYTES)
+    .named("Schema")
+
+  private def example(i: Int, p: Seq[String]): Example = {
+    val bytes = BytesList.newBuilder().addAllValue(p.map(ByteString.copyFromUtf8).asJava)
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "id",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i)).build()
+      )
+    if (p.nonEmpty) {
+      b.putFeature("p", Feature.newBuilder().setBytesList(bytes).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private val partitions = Seq(Seq("a"), Seq("b/c"), Nil)
+  private val examples = (0 until 5000).map(i => example(i, partitions(i % 3)))
+
+  private def id(e: Example): Long = e.getFeatures.getFeatureOrThrow("id").getInt64List.getValue(0)
+
+  private def read(file: Path): Seq[Example] =
+    TestUtil.read(ExampleParquetReader.builder(file).withSchema(schema).build())
+
+  // write from multiple producer threads, and return records by file
+  private def write(builder: ExampleShardedWriter.Builder, dir: Path): Map[String, Seq[Example]] = {
+    val writer = builder.withSchema(schema).build()
+    val producers = Executors.newFixedThreadPool(4)
+    val futures = examples.grouped(500).toList.map { xs =>
+      producers.submit(new Callable[Unit] {
+        override def call(): Unit = xs.foreach(writer.write)
+      })
+    }
+    futures.foreach(_.get())
+    producers.shutdown()
+    writer.close()
+    writer.getFiles.asScala.map(f => f -> read(new Path(dir, f))).toMap
+  }
+
+  "ExampleShardedWriter" should "write records from multiple threads" in {
+    val dir = makeTemp
+    val files = write(ExampleShardedWriter.builder(dir).withShards(4).withQueueSize(16), dir)
+    files.keys.map(_.split("-")(1)).size should be <= 4
+    all(files.keys) should fullyMatch regex "part-\\d{5}-00000\\.parquet"
+    files.values.flatten.toSeq.sortBy(id) shouldEqual examples
+  }
+
+  it should "roll files by records" in {
+    val dir = makeTemp
+    val builder = ExampleShardedWriter
+      .builder(dir)
+      .withShards(3)
+      .withMaxRecords(300)
+      .withWriterOptions(_.withCompressionCodec(CompressionCodecName.SNAPPY))
+    val files = write(builder, dir)
+    all(files.values.map(_.size)) should be <= 300
+    files.values.map(_.size).sum shouldBe examples.size
+    files.size should be >= examples.size / 300
+    files.values.flatten.toSeq.sortBy(id) shouldEqual examples
+  }
+
+  it should "roll files by size" in {
+    val dir = makeTemp
+    val builder = ExampleShardedWriter
+      .builder(dir)
+      .withShards(2)
+      .withMaxFileSize(8 * 1024)
+      .withWriterOptions(_.withPageSize(1024).withRowGroupSize(4 * 1024L))
+    val files = write(builder, dir)
+    files.size should be > 2
+    all(files.keys.map(f => fs.getFileStatus(new Path(dir, f)).getLen)) should be < 16L * 1024
+    files.values.flatten.toSeq.sortBy(id) shouldEqual examples
+  }
+
+  it should "partition records by feature value" in {
+    val dir = Files.createTempDirectory("parquet-tensorflow-")
+    val hadoopDir = new Path(dir.toString)
+    fs.deleteOnExit(hadoopDir)
+    val builder = ExampleShardedWriter
+      .builder(dir)
+      .withShards(2)
+      .withPartitionFeature("p")
+      .withMaxOpenFiles(1)
+    val files = write(builder, hadoopDir)
+    val byPartition = files.groupBy(_._1.split("/").head).mapValues(_.values.flatten.toSeq)
+    byPartition.keySet shouldBe Set("p=a", "p=b%2Fc", "p=" + ExampleShardedWriter.DEFAULT_PARTITION)
+    byPartition("p=a").sortBy(id) shouldEqual examples.filter(id(_) % 3 == 0)
+    byPartition("p=b%2Fc").sortBy(id) shouldEqual examples.filter(id(_) % 3 == 1)
+    byPartition("p=" + ExampleShardedWriter.DEFAULT_PARTITION).sortBy(id) shouldEqual
+      examples.filter(id(_) % 3 == 2)
+    // one open file per shard, so partitions are split across files
+    files.size should be > 6
+    Files.isDirectory(Paths.get(dir.toString, "p=a")) shouldBe true
+  }
+
+  it should "fail on invalid records" in {
+    val dir = makeTemp
+    val writer = ExampleShardedWriter
+      .builder(dir)
+      .withSchema(schema)
+      .withShards(2)
+      .withPartitionFeature("p")
+      .build()
+    writer.write(example(0, Seq("a")))
+    // fails on the producer thread, without failing the writer
+    the[IllegalArgumentException] thrownBy writer.write(example(1, Seq("a", "b"))) should
+      have message "Partition feature p has 2 values"
+    writer.write(example(2, Seq("b")))
+    writer.close()
+    val files = writer.getFiles.asScala.map(f => f -> read(new Path(dir, f))).toMap
+    files.keySet.map(_.split("/").head) shouldBe Set("p=a", "p=b")
+    files.values.flatten.toSeq.sortBy(id) shouldEqual Seq(
+      example(0, Seq("a")),
+      example(2, Seq("b"))
+    )
+  }
+
+  it should "fail on invalid settings" in {
+    val builder = ExampleShardedWriter.builder(makeTemp)
+    the[IllegalStateException] thrownBy builder.build() should have message "Schema is not set"
+    the[IllegalArgumentException] thrownBy builder
+      .withSchema(schema)
+      .withPartitionFeature("x")
+      .build() should have message "Partition feature not in schema: x"
+    an[IllegalArgumentException] should be thrownBy builder.withShards(0)
+  }
+}
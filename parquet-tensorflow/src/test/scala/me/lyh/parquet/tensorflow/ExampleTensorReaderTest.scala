@@ -0,0 +1,169 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example._
+
+class ExampleTensorReaderTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .optional("score", Schema.Type.FLOAT)
+    .repeated("embedding", Schema.Type.FLOAT)
+    .repeated("ids", Schema.Type.INT64)
+    .required("name", Schema.Type.BYTES)
+    .named("Schema")
+
+  private val n = 1000
+
+  private val examples = (0 until n).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature("id", longs(i.toLong))
+      .putFeature("embedding", floats((0 until 8).map(j => i * 10f + j): _*))
+      .putFeature(
+        "name",
+        Feature
+          .newBuilder()
+          .setBytesList(BytesList.newBuilder().addValue(ByteString.copyFromUtf8(s"name$i")))
+          .build()
+      )
+    if (i % 3 != 0) {
+      b.putFeature("score", floats(i.toFloat))
+    }
+    if (i % 4 != 0) {
+      b.putFeature("ids", longs((0 until i % 4).map(j => i * 10L + j): _*))
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def readBatches(reader: ExampleTensorReader): Seq[ExampleTensorBatch] =
+    readAll(reader)(_.read())
+
+  private def longValues(batch: ExampleTensorBatch, name: String): Seq[Long] = {
+    val buf = batch.getTensor(name).getValues.asLongBuffer()
+    (0 until buf.remaining()).map(buf.get)
+  }
+
+  private def floatValues(batch: ExampleTensorBatch, name: String): Seq[Float] = {
+    val buf = batch.getTensor(name).getValues.asFloatBuffer()
+    (0 until buf.remaining()).map(buf.get)
+  }
+
+  private def lengths(batch: ExampleTensorBatch, name: String): Seq[Int] = {
+    val buf = batch.getTensor(name).getLengths.asIntBuffer()
+    (0 until buf.remaining()).map(buf.get)
+  }
+
+  "ExampleTensorReader" should "read dense tensors" in {
+    val batches = readBatches(
+      ExampleTensorReader
+        .builder(temp)
+        .withFeature("id", 1)
+        .withFeature("embedding", 8)
+        .withBatchSize(300)
+        .build()
+    )
+    batches.map(_.size()) shouldBe Seq(300, 300, 300, 100)
+    batches.forall(_.getTensor("id").getValues.isDirect) shouldBe true
+    batches.flatMap(longValues(_, "id")) shouldBe (0L until n.toLong)
+    batches.flatMap(floatValues(_, "embedding")) shouldBe
+      (0 until n).flatMap(i => (0 until 8).map(j => i * 10f + j))
+    batches.head.getTensor("id").getLengths shouldBe null
+    lengths(batches.head, "embedding") shouldBe Seq.fill(300)(8)
+    batches.foreach(_.close())
+  }
+
+  it should "pad and mask short rows" in {
+    val batches = readBatches(
+      ExampleTensorReader
+        .builder(temp)
+        .withFeature("score", 1)
+        .withFeature("ids", 3)
+        .build()
+    )
+    batches.map(_.size()) shouldBe Seq(n)
+    val batch = batches.head
+    floatValues(batch, "score") shouldBe (0 until n).map(i => if (i % 3 != 0) i.toFloat else 0f)
+    lengths(batch, "score") shouldBe (0 until n).map(i => if (i % 3 != 0) 1 else 0)
+    longValues(batch, "ids") shouldBe (0 until n).flatMap { i =>
+      (0 until 3).map(j => if (j < i % 4) i * 10L + j else 0L)
+    }
+    lengths(batch, "ids") shouldBe (0 until n).map(_ % 4)
+    batch.close()
+  }
+
+  it should "filter rows" in {
+    val id = FeaturePredicate.int64Feature(schema.getFields.get(0))
+    val batches = readBatches(
+      ExampleTensorReader
+        .builder(temp)
+        .withFeature("id", 1)
+        .withFilter(id.lt(10).or(id.gtEq(995)).toFilter)
+        .withBatchSize(8)
+        .build()
+    )
+    batches.map(_.size()) shouldBe Seq(8, 7)
+    batches.flatMap(longValues(_, "id")) shouldBe ((0L until 10L) ++ (995L until 1000L))
+  }
+
+  it should "select fixed-length features" in {
+    val scanner = examples.foldLeft(new ExampleScanner("Schema"))(_.scan(_))
+    val batch = ExampleTensorReader.builder(temp).withFixedLengthFeatures(scanner).build().read()
+    (0 until batch.getTensorCount).map { i =>
+      val t = batch.getTensor(i)
+      (t.getField.getName, t.getWidth)
+    } shouldBe Seq("id" -> 1, "embedding" -> 8)
+  }
+
+  it should "reuse pooled buffers" in {
+    val acquired = scala.collection.mutable.Buffer.empty[java.nio.ByteBuffer]
+    val pool = new DirectBufferPool {
+      override def acquire(capacity: Int): java.nio.ByteBuffer = {
+        val buffer = super.acquire(capacity)
+        acquired += buffer
+        buffer
+      }
+    }
+    val reader = ExampleTensorReader
+      .builder(temp)
+      .withFeature("embedding", 8)
+      .withBatchSize(100)
+      .withBufferPool(pool)
+      .build()
+    var batch = reader.read()
+    var i = 0
+    while (batch != null) {
+      floatValues(batch, "embedding").head shouldBe i * 1000f
+      batch.close()
+      batch = reader.read()
+      i += 1
+    }
+    reader.close()
+    i shouldBe 10
+    acquired.size shouldBe 20
+    acquired.map(System.identityHashCode).distinct.size shouldBe 2
+  }
+
+  it should "fail rows with too many values" in {
+    val reader = ExampleTensorReader.builder(temp).withFeature("ids", 2).build()
+    val e = the[ParquetDecodingException] thrownBy reader.read()
+    e.getCause.getMessage shouldBe "Failed to decode Schema#ids: Values > width: 2"
+    reader.close()
+    the[IllegalArgumentException] thrownBy {
+      ExampleTensorReader.builder(temp).withFeature("name", 1).build().read()
+    } should have message "Unsupported tensor feature: name"
+  }
+}
@@ -0,0 +1,189 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.mapreduce.Job
+import org.apache.parquet.ParquetReadOptions
+import org.apache.parquet.filter2.compat.FilterCompat
+import org.apache.parquet.hadoop.{ParquetFileReader, ParquetInputFormat}
+import org.apache.parquet.hadoop.util.HadoopInputFile
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example._
+
+import scala.collection.JavaConverters._
+
+class FeaturePredicateTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .optional("score", Schema.Type.FLOAT)
+    .optional("country", Schema.Type.BYTES)
+    .repeated("tags", Schema.Type.BYTES)
+    .repeated("ids", Schema.Type.INT64)
+    .named("Schema")
+
+  private def field(name: String): Schema.Field =
+    schema.getFields.asScala.find(_.getName == name).get
+
+  private val id = FeaturePredicate.int64Feature(field("id"))
+  private val score = FeaturePredicate.floatFeature(field("score"))
+  private val country = FeaturePredicate.bytesFeature(field("country"))
+  private val tag = FeaturePredicate.bytesFeature(field("tags"))
+  private val ids = FeaturePredicate.int64Feature(field("ids"))
+
+  private val countries = Seq("us", "ca", "mx")
+
+  private val examples = (0 until 2000).map { i =>
+    val b = Features.newBuilder().putFeature("id", longs(i.toLong))
+    if (i % 3 != 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("score", Feature.newBuilder().setFloatList(floats).build())
+    }
+    if (i % 5 != 0) {
+      b.putFeature("country", bytes(countries(i % 3)))
+    }
+    if (i % 4 != 0) {
+      b.putFeature("tags", bytes((0 until i % 4).map(j => s"t$j"): _*))
+      b.putFeature("ids", longs((0 until i % 4).map(j => (i + j).toLong): _*))
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  // small row groups sorted by id so that statistics can skip them
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).withRowGroupSize(1024L).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def read(predicate: FeaturePredicate): Seq[Long] =
+    TestUtil
+      .read(ExampleParquetReader.builder(temp).withFilter(predicate.toFilter).build())
+      .map(idOf)
+
+  private def values(e: Example, name: String): Feature =
+    e.getFeatures.getFeatureOrDefault(name, Feature.getDefaultInstance)
+
+  private def expected(p: Example => Boolean): Seq[Long] =
+    examples.filter(p).map(idOf)
+
+  private def idOf(e: Example): Long = values(e, "id").getInt64List.getValue(0)
+
+  private def scoreOf(e: Example): Option[Float] =
+    values(e, "score").getFloatList.getValueList.asScala.headOption.map(_.floatValue())
+
+  private def countryOf(e: Example): Option[String] =
+    values(e, "country").getBytesList.getValueList.asScala.headOption.map(_.toStringUtf8)
+
+  private def tagsOf(e: Example): Seq[String] =
+    values(e, "tags").getBytesList.getValueList.asScala.map(_.toStringUtf8).toSeq
+
+  private def idsOf(e: Example): Seq[Long] =
+    values(e, "ids").getInt64List.getValueList.asScala.map(_.longValue()).toSeq
+
+  "FeaturePredicate" should "filter required features" in {
+    read(id.eq(42)) shouldBe Seq(42L)
+    read(id.notEq(42)) shouldBe (0L until 2000L).filter(_ != 42L)
+    read(id.lt(10)) shouldBe (0L until 10L)
+    read(id.ltEq(10)) shouldBe (0L to 10L)
+    read(id.gt(1990)) shouldBe (1991L until 2000L)
+    read(id.gtEq(1990)) shouldBe (1990L until 2000L)
+    read(id.in(1, 3, 5)) shouldBe Seq(1L, 3L, 5L)
+    read(id.notIn(Seq(1L, 3L, 5L).map(Long.box).asJava)).size shouldBe 1997
+    read(id.isMissing()) shouldBe empty
+    read(id.isPresent()).size shouldBe 2000
+  }
+
+  it should "filter optional features" in {
+    read(score.gt(1990f)) shouldBe expected(scoreOf(_).exists(_ > 1990f))
+    read(score.ltEq(10f)) shouldBe expected(scoreOf(_).exists(_ <= 10f))
+    read(score.notEq(1f)) shouldBe expected(scoreOf(_) != Some(1f))
+    read(score.isMissing()) shouldBe expected(scoreOf(_).isEmpty)
+    read(score.isPresent()) shouldBe expected(scoreOf(_).isDefined)
+    read(country.eq("us")) shouldBe expected(countryOf(_) == Some("us"))
+    read(country.in("us", "ca")) shouldBe expected(countryOf(_).exists(Set("us", "ca")))
+    read(country.notIn("us", "ca")) shouldBe expected(!countryOf(_).exists(Set("us", "ca")))
+    read(country.eq(ByteString.copyFromUtf8("mx"))) shouldBe expected(countryOf(_) == Some("mx"))
+  }
+
+  it should "filter repeated features" in {
+    read(tag.eq("t2")) shouldBe expected(tagsOf(_).contains("t2"))
+    read(tag.notEq("t2")) shouldBe expected(!tagsOf(_).contains("t2"))
+    read(tag.in("t1", "t2")) shouldBe expected(tagsOf(_).exists(Set("t1", "t2")))
+    read(tag.isMissing()) shouldBe expected(tagsOf(_).isEmpty)
+    read(tag.isPresent()) shouldBe expected(tagsOf(_).nonEmpty)
+    read(ids.gt(1995)) shouldBe expected(idsOf(_).exists(_ > 1995))
+    read(ids.lt(3)) shouldBe expected(idsOf(_).exists(_ < 3))
+    read(ids.notIn(5, 6)) shouldBe expected(!idsOf(_).exists(Set(5L, 6L)))
+  }
+
+  it should "check presence of NaN values" in {
+    val nanSchema = Schema.newBuilder().repeated("xs", Schema.Type.FLOAT).named("Schema")
+    val xs = FeaturePredicate.floatFeature(nanSchema.getFields.get(0))
+    val lists = Seq(Seq(Float.NaN), Seq.empty, Seq(1f), Seq(Float.NaN, 2f))
+    val p = makeTemp
+    write(
+      p,
+      nanSchema,
+      lists.map { l =>
+        Example
+          .newBuilder()
+          .setFeatures(Features.newBuilder().putFeature("xs", floats(l: _*)))
+          .build()
+      }
+    )
+    def sizes(predicate: FeaturePredicate): Seq[Int] =
+      TestUtil
+        .read(ExampleParquetReader.builder(p).withFilter(predicate.toFilter).build())
+        .map(values(_, "xs").getFloatList.getValueCount)
+    sizes(xs.isPresent()) shouldBe Seq(1, 1, 2)
+    sizes(xs.isMissing()) shouldBe Seq(0)
+  }
+
+  it should "combine predicates" in {
+    read(id.lt(100).and(country.eq("us"))) shouldBe
+      expected(e => idOf(e) < 100 && countryOf(e) == Some("us"))
+    read(id.lt(10).or(id.gt(1990))) shouldBe ((0L until 10L) ++ (1991L until 2000L))
+    read(id.lt(10).not()) shouldBe (10L until 2000L)
+    read(tag.eq("t2").not().and(score.isPresent())) shouldBe
+      expected(e => !tagsOf(e).contains("t2") && scoreOf(e).isDefined)
+  }
+
+  it should "skip row groups" in {
+    val file = HadoopInputFile.fromPath(temp, new Configuration())
+    def rowGroups(options: ParquetReadOptions): Int = {
+      val reader = ParquetFileReader.open(file, options)
+      try reader.getRowGroups.size()
+      finally reader.close()
+    }
+    val all = rowGroups(ParquetReadOptions.builder().build())
+    all should be > 4
+    val filter = id.gtEq(1990).toFilter
+    rowGroups(ParquetReadOptions.builder().withRecordFilter(filter).build()) should be <= 2
+    val none = id.gt(5000).or(country.eq("xx")).toFilter
+    rowGroups(ParquetReadOptions.builder().withRecordFilter(none).build()) shouldBe 0
+  }
+
+  it should "set predicates on jobs" in {
+    val job = Job.getInstance(new Configuration())
+    ExampleParquetInputFormat.setPredicate(job, id.eq(42))
+    ParquetInputFormat
+      .getFilter(job.getConfiguration)
+      .asInstanceOf[FilterCompat.FilterPredicateCompat]
+      .getFilterPredicate shouldBe id.eq(42).toFilterPredicate
+  }
+
+  it should "reject mismatched types" in {
+    the[IllegalArgumentException] thrownBy {
+      FeaturePredicate.floatFeature(field("id"))
+    } should have message "Not a FLOAT feature: id"
+    the[IllegalArgumentException] thrownBy {
+      country.in(Seq.empty[ByteString].asJava)
+    } should have message "Empty values"
+  }
+}
@@ -0,0 +1,291 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path => HadoopPath}
+import org.apache.parquet.bytes.HeapByteBufferAllocator
+import org.apache.parquet.hadoop.ParquetFileWriter
+import org.apache.parquet.hadoop.metadata.CompressionCodecName
+import org.apache.parquet.io.ParquetFileRange
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
+
+import java.io.{ByteArrayOutputStream, EOFException}
+import java.nio.ByteBuffer
+import java.nio.file.{FileAlreadyExistsException, Files, Path, Paths}
+import java.util.function.ToLongFunction
+import scala.collection.JavaConverters._
+
+object LocalFileTest {
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .repeated("f", Schema.Type.FLOAT)
+    .repeated("s", Schema.Type.BYTES)
+    .named("Schema")
+
+  private def example(i: Int): Example = {
+    val features = Features
+      .newBuilder()
+      .putFeature(
+        "id",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i)).build()
+      )
+      .putFeature(
+        "f",
+        Feature.newBuilder().setFloatList(FloatList.newBuilder().addValue(i.toFloat)).build()
+      )
+      .putFeature(
+        "s",
+        Feature
+          .newBuilder()
+          .setBytesList(BytesList.newBuilder().addValue(ByteString.copyFromUtf8("s" * (i % 10))))
+          .build()
+      )
+    Example.newBuilder().setFeatures(features).build()
+  }
+
+  // loaded in a HadoopFreeClassLoader, returns the number of records written
+  class LocalWriter extends ToLongFunction[String] {
+    override def applyAsLong(path: String): Long = {
+      val writer = ExampleParquetWriter
+        .builder(Paths.get(path))
+        .withSchema(schema)
+        .withCompressionCodec(CompressionCodecName.SNAPPY)
+        .build()
+      (0 until 1000).foreach(i => writer.write(example(i)))
+      writer.close()
+      1000
+    }
+  }
+
+  // loaded in a HadoopFreeClassLoader, returns the sum of ids read
+  class LocalReader extends ToLongFunction[String] {
+    override def applyAsLong(path: String): Long = {
+      val reader = ExampleParquetReader.builder(Paths.get(path)).withSchema(schema).build()
+      var sum = 0L
+      var r = reader.read()
+      while (r != null) {
+        sum += r.getFeatures.getFeatureOrThrow("id").getInt64List.getValue(0)
+        r = reader.read()
+      }
+      reader.close()
+      sum
+    }
+  }
+
+  // defines classes from the parent class path, except for those of the JDK, Scala and native
+  // codecs, and hides Hadoop classes that are not allowed
+  private class HadoopFreeClassLoader(parent: ClassLoader, allowed: Set[String])
+      extends ClassLoader(parent) {
+    private val shared =
+      Seq(
+        "java.",
+        "javax.",
+        "jdk.",
+        "sun.",
+        "scala.",
+        "org.scalatest.",
+        "org.xerial.",
+        "com.github."
+      )
+
+    override def loadClass(name: String, resolve: Boolean): Class[_] =
+      getClassLoadingLock(name).synchronized {
+        if (name.startsWith("org.apache.hadoop.") && !allowed(name)) {
+          throw new ClassNotFoundException(name)
+        }
+        if (shared.exists(name.startsWith)) {
+          super.loadClass(name, resolve)
+        } else {
+          var c = findLoadedClass(name)
+          if (c == null) {
+            val in = getParent.getResourceAsStream(name.replace('.', '/') + ".class")
+            if (in == null) throw new ClassNotFoundException(name)
+            val out = new ByteArrayOutputStream()
+            val buf = new Array[Byte](8192)
+            var n = in.read(buf)
+            while (n >= 0) {
+              out.write(buf, 0, n)
+              n = in.read(buf)
+            }
+            in.close()
+            c = defineClass(name, out.toByteArray, 0, out.size())
+          }
+          if (resolve) resolveClass(c)
+          c
+        }
+      }
+  }
+}
+
+class LocalFileTest extends AnyFlatSpec with Matchers {
+  import LocalFileTest._
+
+  private def makeTemp: Path = Paths.get(TestUtil.makeTemp.toUri.getPath)
+
+  private def read(builder: ExampleParquetReader.Builder): Seq[Example] =
+    TestUtil.read(builder.withSchema(schema).build())
+
+  private val examples = (0 until 1000).map(example)
+
+  "ExampleParquetWriter" should "write local files" in {
+    val temp = makeTemp
+    val writer = ExampleParquetWriter.builder(temp).withSchema(schema).withPageSize(1024).build()
+    examples.foreach(writer.write)
+    writer.close()
+
+    read(ExampleParquetReader.builder(temp)) shouldEqual examples
+    read(ExampleParquetReader.builder(new HadoopPath(temp.toUri))) shouldEqual examples
+    // without mapping, and with all column chunks mapped
+    read(ExampleParquetReader.builder(new MappedInputFile(temp, 0))) shouldEqual examples
+    read(ExampleParquetReader.builder(new MappedInputFile(temp, 1))) shouldEqual examples
+
+    val filter = FeaturePredicate.int64Feature(schema.getFields.get(0)).gtEq(990).toFilter
+    read(ExampleParquetReader.builder(temp).withFilter(filter)) shouldEqual examples.drop(990)
+  }
+
+  it should "create or overwrite local files" in {
+    val temp = makeTemp
+    def write(mode: ParquetFileWriter.Mode, xs: Seq[Example]): Unit = {
+      val writer = ExampleParquetWriter.builder(temp).withSchema(schema).withWriteMode(mode).build()
+      xs.foreach(writer.write)
+      writer.close()
+    }
+    write(ParquetFileWriter.Mode.CREATE, examples)
+    a[FileAlreadyExistsException] should be thrownBy write(ParquetFileWriter.Mode.CREATE, Nil)
+    write(ParquetFileWriter.Mode.OVERWRITE, examples.take(10))
+    read(ExampleParquetReader.builder(temp)) shouldEqual examples.take(10)
+  }
+
+  it should "compress local files without Hadoop codecs" in {
+    Seq(
+      CompressionCodecName.UNCOMPRESSED,
+      CompressionCodecName.SNAPPY,
+      CompressionCodecName.GZIP,
+      CompressionCodecName.ZSTD
+    ).foreach { codec =>
+      // local codecs must be compatible with Hadoop ones both ways
+      val local = makeTemp
+      val localWriter =
+        ExampleParquetWriter.builder(local).withSchema(schema).withCompressionCodec(codec).build()
+      examples.foreach(localWriter.write)
+      localWriter.close()
+      read(ExampleParquetReader.builder(new HadoopPath(local.toUri))) shouldEqual examples
+
+      val hadoop = makeTemp
+      val hadoopWriter = ExampleParquetWriter
+        .builder(new HadoopPath(hadoop.toUri))
+        .withSchema(schema)
+        .withCompressionCodec(codec)
+        .build()
+      examples.foreach(hadoopWriter.write)
+      hadoopWriter.close()
+      read(ExampleParquetReader.builder(hadoop)) shouldEqual examples
+      read(ExampleParquetReader.builder(hadoop).withZeroCopyBytes(true)) shouldEqual examples
+    }
+
+    val builder = ExampleParquetWriter
+      .builder(makeTemp)
+      .withSchema(schema)
+      .withCompressionCodec(CompressionCodecName.LZO)
+    the[IllegalArgumentException] thrownBy builder.build() should have message
+      "Unsupported codec without Hadoop: LZO"
+  }
+
+  it should "write serialized Examples to local files" in {
+    val temp = makeTemp
+    val writer = ExampleParquetWriter.bytesBuilder(temp).withSchema(schema).build()
+    examples.foreach(x => writer.write(ByteBuffer.wrap(x.toByteArray)))
+    writer.close()
+
+    val reader = ExampleParquetReader.bytesBuilder(temp).withSchema(schema).build()
+    TestUtil.readAll(reader)(r => Option(r.read()).map(Example.parseFrom).orNull) shouldEqual
+      examples
+  }
+
+  "MappedInputFile" should "read and map ranges" in {
+    val temp = makeTemp
+    val data = Array.tabulate[Byte](10000)(_.toByte)
+    Files.write(temp, data)
+    val file = new MappedInputFile(temp, 1000)
+    file.getLength shouldBe 10000
+
+    val in = file.newStream()
+    in.seek(100)
+    val bytes = new Array[Byte](10)
+    in.readFully(bytes)
+    bytes shouldBe data.slice(100, 110)
+    in.getPos shouldBe 110
+    in.skip(20000) shouldBe 9890
+    in.read() shouldBe -1
+    an[EOFException] should be thrownBy in.readFully(bytes)
+
+    val ranges = Seq(new ParquetFileRange(0, 999), new ParquetFileRange(5000, 5000))
+    in.readVectoredAvailable(HeapByteBufferAllocator.getInstance()) shouldBe true
+    in.readVectored(ranges.asJava, HeapByteBufferAllocator.getInstance())
+    val small = ranges.head.getDataReadFuture.get()
+    val large = ranges(1).getDataReadFuture.get()
+    small.isDirect shouldBe false
+    large.isDirect shouldBe true
+    def toArray(b: ByteBuffer): Array[Byte] = {
+      val a = new Array[Byte](b.remaining())
+      b.duplicate().get(a)
+      a
+    }
+    toArray(small) shouldBe data.slice(0, 999)
+    toArray(large) shouldBe data.slice(5000, 10000)
+    an[EOFException] should be thrownBy in.readVectored(
+      Seq(new ParquetFileRange(9000, 2000)).asJava,
+      HeapByteBufferAllocator.getInstance()
+    )
+    in.close()
+  }
+
+  "ChannelOutputFile" should "track positions" in {
+    val temp = makeTemp
+    val out = new ChannelOutputFile(temp).create(0)
+    val expected = new ByteArrayOutputStream()
+    Seq(1, 100, 65536, 10, 100000, 65535).zipWithIndex.foreach { case (n, i) =>
+      val bytes = Array.fill[Byte](n)(i.toByte)
+      out.write(bytes)
+      expected.write(bytes)
+      out.getPos shouldBe expected.size()
+    }
+    out.write(42)
+    expected.write(42)
+    out.getPos shouldBe expected.size()
+    out.close()
+    Files.readAllBytes(temp) shouldBe expected.toByteArray
+  }
+
+  "Local files" should "be read and written without Hadoop" in {
+    val temp = makeTemp
+    val parent = getClass.getClassLoader
+    def run(job: String, allowed: Set[String]): Long = {
+      val loader = new HadoopFreeClassLoader(parent, allowed)
+      val f = loader.loadClass(s"me.lyh.parquet.tensorflow.LocalFileTest$$$job").newInstance()
+      f.asInstanceOf[ToLongFunction[String]].applyAsLong(temp.toString)
+    }
+
+    run("LocalWriter", Set.empty) shouldBe 1000
+    // parquet-hadoop links to these in ParquetReadOptions, without a Configuration or FileSystem
+    val linked = Set(
+      "org.apache.hadoop.fs.FileStatus",
+      "org.apache.hadoop.fs.LocatedFileStatus",
+      "org.apache.hadoop.fs.PathFilter",
+      "org.apache.hadoop.io.Writable",
+      "org.apache.hadoop.io.compress.zlib.ZlibCompressor$CompressionLevel",
+      "org.apache.hadoop.mapreduce.InputFormat",
+      "org.apache.hadoop.mapreduce.JobContext",
+      "org.apache.hadoop.mapreduce.MRJobConfig",
+      "org.apache.hadoop.mapreduce.RecordReader",
+      "org.apache.hadoop.mapreduce.lib.input.FileInputFormat",
+      "org.apache.hadoop.mapreduce.lib.input.FileInputFormat$1",
+      "org.apache.hadoop.mapreduce.lib.input.InvalidInputException"
+    )
+    run("LocalReader", linked) shouldBe (0 until 1000).sum
+    TestUtil.fs.exists(new HadoopPath(temp.toUri)) shouldBe true
+  }
+}
@@ -1,6 +1,6 @@
 package me.lyh.parquet.tensorflow
 
-import com.google.protobuf.ByteString
+import com.google.protobuf.{ByteString, CodedOutputStream}
 import org.apache.hadoop.conf.Configuration
 import org.apache.hadoop.fs.{FileSystem, Path}
 import org.apache.hadoop.mapreduce.lib.input.FileInputFormat
@@ -8,11 +8,13 @@ import org.apache.hadoop.mapreduce.task.TaskAttemptContextImpl
 import org.apache.hadoop.mapreduce.{Job, TaskAttemptID}
 import org.apache.parquet.hadoop.{ParquetInputFormat, ParquetReader}
 import org.apache.parquet.hadoop.metadata.CompressionCodecName
-import org.apache.parquet.io.ParquetDecodingException
+import org.apache.parquet.io.{ParquetDecodingException, ParquetEncodingException}
 import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
 import org.scalatest.flatspec.AnyFlatSpec
 import org.scalatest.matchers.should.Matchers
 
+import java.io.ByteArrayOutputStream
+import java.nio.ByteBuffer
 import scala.collection.JavaConverters._
 
 class ParquetExampleTest extends AnyFlatSpec with Matchers {
@@ -32,6 +34,12 @@ class ParquetExampleTest extends AnyFlatSpec with Matchers {
     writer.close()
   }
 
+  private def writeBytes(path: Path, schema: Schema, xs: Seq[ByteBuffer]): Unit = {
+    val writer = ExampleParquetWriter.bytesBuilder(path).withSchema(schema).build()
+    xs.foreach(writer.write)
+    writer.close()
+  }
+
   private def read(path: Path, schema: Schema): Seq[Example] =
     read(ExampleParquetReader.builder(path).withSchema(schema).build())
 
@@ -325,6 +333,171 @@ class ParquetExampleTest extends AnyFlatSpec with Matchers {
     )
   }
 
+  it should "support zero-copy bytes" in {
+    val schema = Schema
+      .newBuilder()
+      .required("b", Schema.Type.BYTES)
+      .repeated("l", Schema.Type.BYTES)
+      .named("Schema")
+    val xs = (0 until 100).map { i =>
+      val b = Features.newBuilder().putFeature("b", bytes(s"bytes$i"))
+      if (i % 10 > 0) b.putFeature("l", bytes((0 until i % 10).map(j => ("x" * j) + i): _*))
+      Example.newBuilder().setFeatures(b).build()
+    }
+    val temp = makeTemp
+    write(temp, schema, xs)
+
+    val reader = ExampleParquetReader.builder(temp).withZeroCopyBytes(true).build()
+    // values stay valid after the reader is closed
+    read(reader) shouldEqual xs
+  }
+
+  it should "decode dictionary values once" in {
+    val schema = Schema
+      .newBuilder()
+      .required("c", Schema.Type.BYTES)
+      .optional("o", Schema.Type.BYTES)
+      .repeated("l", Schema.Type.BYTES)
+      .named("Schema")
+    val xs = (0 until 1000).map { i =>
+      val b = Features.newBuilder().putFeature("c", bytes(s"c${i % 3}"))
+      if (i % 2 == 0) b.putFeature("o", bytes(s"o${i % 5}"))
+      // high cardinality values overflow the dictionary and fall back to plain encoding
+      if (i % 4 > 0) b.putFeature("l", bytes((0 until i % 4).map(j => s"l${i * j}"): _*))
+      Example.newBuilder().setFeatures(b).build()
+    }
+    val temp = makeTemp
+    val writer = ExampleParquetWriter
+      .builder(temp)
+      .withSchema(schema)
+      .withDictionaryPageSize(1024)
+      .build()
+    xs.foreach(writer.write)
+    writer.close()
+
+    val actual = read(ExampleParquetReader.builder(temp).build())
+    actual shouldEqual xs
+    val features = actual.map(_.getFeatures.getFeatureMap.get("c"))
+    features(0) should be theSameInstanceAs features(3)
+    features(0) should not be theSameInstanceAs(features(1))
+  }
+
+  it should "write serialized Examples" in {
+    val schema = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .optional("o", Schema.Type.FLOAT)
+      .repeated("l", Schema.Type.BYTES)
+      .repeated("x", Schema.Type.INT64)
+      .named("Schema")
+    val xs = (0 until 10).map { i =>
+      val b = Features.newBuilder().putFeature("r", longs(i.toLong << 40))
+      if (i % 2 == 0) b.putFeature("o", floats(i.toFloat))
+      if (i > 0) b.putFeature("l", bytes((0 until i).map(_.toString): _*))
+      if (i > 1) b.putFeature("x", longs((0 until i).map(_ - 5L): _*))
+      b.putFeature("unknown", floats(1.0f))
+      Example.newBuilder().setFeatures(b).build()
+    }
+
+    val heap = makeTemp
+    writeBytes(heap, schema, xs.map(x => ByteBuffer.wrap(x.toByteArray)))
+    read(heap, schema) shouldEqual xs.map(getFeatures("r", "o", "l", "x"))
+
+    val direct = makeTemp
+    writeBytes(
+      direct,
+      schema,
+      xs.map { x =>
+        val bytes = x.toByteArray
+        val buf = ByteBuffer.allocateDirect(bytes.length + 10)
+        buf.position(5)
+        buf.put(bytes)
+        buf.position(5)
+        buf.limit(5 + bytes.length)
+        buf
+      }
+    )
+    read(direct, schema) shouldEqual xs.map(getFeatures("r", "o", "l", "x"))
+  }
+
+  it should "write unpacked serialized Examples" in {
+    def entry(key: String)(f: CodedOutputStream => Unit): Array[Byte] = {
+      val feature = new ByteArrayOutputStream()
+      val out = CodedOutputStream.newInstance(feature)
+      f(out)
+      out.flush()
+      val e = new ByteArrayOutputStream()
+      val eOut = CodedOutputStream.newInstance(e)
+      eOut.writeString(1, key)
+      eOut.writeByteArray(2, feature.toByteArray)
+      eOut.flush()
+      e.toByteArray
+    }
+    def list(out: CodedOutputStream, kind: Int)(f: CodedOutputStream => Unit): Unit = {
+      val values = new ByteArrayOutputStream()
+      val vOut = CodedOutputStream.newInstance(values)
+      f(vOut)
+      vOut.flush()
+      out.writeByteArray(kind, values.toByteArray)
+    }
+
+    val features = new ByteArrayOutputStream()
+    val fOut = CodedOutputStream.newInstance(features)
+    // unpacked int64 and float values, and a duplicate key where the last one wins
+    fOut.writeByteArray(1, entry("i")(list(_, 3)(o => Seq(1L, 2L, 3L).foreach(o.writeInt64(1, _)))))
+    fOut.writeByteArray(1, entry("f")(list(_, 2)(o => Seq(1.0f, 2.0f).foreach(o.writeFloat(1, _)))))
+    fOut.writeByteArray(1, entry("f")(list(_, 2)(o => Seq(3.0f, 4.0f).foreach(o.writeFloat(1, _)))))
+    fOut.flush()
+    val example = new ByteArrayOutputStream()
+    val out = CodedOutputStream.newInstance(example)
+    out.writeByteArray(1, features.toByteArray)
+    out.flush()
+
+    val schema = Schema
+      .newBuilder()
+      .repeated("i", Schema.Type.INT64)
+      .repeated("f", Schema.Type.FLOAT)
+      .named("Schema")
+    val temp = makeTemp
+    writeBytes(temp, schema, Seq(ByteBuffer.wrap(example.toByteArray)))
+    val expected = Example
+      .newBuilder()
+      .setFeatures(
+        Features.newBuilder().putFeature("i", longs(1, 2, 3)).putFeature("f", floats(3, 4))
+      )
+      .build()
+    read(temp, schema) shouldEqual Seq(expected)
+    Example.parseFrom(example.toByteArray) shouldEqual expected
+  }
+
+  it should "fail invalid serialized Examples" in {
+    val schema = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .optional("o", Schema.Type.INT64)
+      .named("Schema")
+
+    def test(x: Example, msg: String): Unit = {
+      val writer = ExampleParquetWriter.bytesBuilder(makeTemp).withSchema(schema).build()
+      the[IllegalStateException] thrownBy writer.write(ByteBuffer.wrap(x.toByteArray)) should
+        have message msg
+    }
+    test(Example.getDefaultInstance, "Required field size != 1: 0")
+    val features = Features.newBuilder().putFeature("r", longs(1)).putFeature("o", longs(1, 2))
+    test(Example.newBuilder().setFeatures(features).build(), "Required field size > 1: 2")
+
+    val writer = ExampleParquetWriter.bytesBuilder(makeTemp).withSchema(schema).build()
+    an[ParquetEncodingException] should be thrownBy writer.write(ByteBuffer.wrap(Array(10, 5, 1)))
+
+    val bytesSchema = Schema.newBuilder().repeated("b", Schema.Type.BYTES).named("Schema")
+    val bytesWriter = ExampleParquetWriter.bytesBuilder(makeTemp).withSchema(bytesSchema).build()
+    val bytesFeatures = Features.newBuilder().putFeature("b", bytes("x"))
+    val truncated = Example.newBuilder().setFeatures(bytesFeatures).build().toByteArray
+    // value length past the end of the Feature
+    truncated(truncated.length - 2) = 5
+    an[ParquetEncodingException] should be thrownBy bytesWriter.write(ByteBuffer.wrap(truncated))
+  }
+
   it should "fail unmatched fields" in {
     val temp = makeTemp
     write(temp, primitiveSchema, primitiveExamples)
@@ -0,0 +1,208 @@
+package me.lyh.parquet.tensorflow
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.hadoop.metadata.{BlockMetaData, ColumnPath}
+import org.apache.parquet.hadoop.util.HadoopInputFile
+import org.apache.parquet.io.{InputFile, SeekableInputStream}
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{Example, Feature, Features, FloatList, Int64List}
+
+import java.nio.ByteBuffer
+import java.nio.file.Paths
+import java.util.concurrent.ConcurrentLinkedQueue
+import scala.collection.JavaConverters._
+
+object PrefetchingInputFileTest {
+  case class Read(thread: String, offset: Long, length: Int) {
+    def prefetched: Boolean = thread.startsWith("parquet-tensorflow-prefetch-")
+  }
+
+  // a stand-in for slow storage, which sleeps on every read and records it
+  class ThrottledInputFile(file: InputFile, latencyMs: Long) extends InputFile {
+    val reads = new ConcurrentLinkedQueue[Read]()
+
+    override def getLength: Long = file.getLength
+    override def newStream(): SeekableInputStream = new SeekableInputStream {
+      private val in = file.newStream()
+
+      private def throttle(length: Int): Unit = {
+        reads.add(Read(Thread.currentThread().getName, in.getPos, length))
+        Thread.sleep(latencyMs)
+      }
+
+      override def getPos: Long = in.getPos
+      override def seek(newPos: Long): Unit = in.seek(newPos)
+      override def read(): Int = {
+        throttle(1)
+        in.read()
+      }
+      override def read(b: Array[Byte], off: Int, len: Int): Int = {
+        throttle(len)
+        in.read(b, off, len)
+      }
+      override def read(buf: ByteBuffer): Int = {
+        throttle(buf.remaining())
+        in.read(buf)
+      }
+      override def readFully(bytes: Array[Byte]): Unit = readFully(bytes, 0, bytes.length)
+      override def readFully(bytes: Array[Byte], start: Int, len: Int): Unit = {
+        throttle(len)
+        in.readFully(bytes, start, len)
+      }
+      override def readFully(buf: ByteBuffer): Unit = {
+        throttle(buf.remaining())
+        in.readFully(buf)
+      }
+      override def close(): Unit = in.close()
+    }
+  }
+}
+
+class PrefetchingInputFileTest extends AnyFlatSpec with Matchers {
+  import PrefetchingInputFileTest._
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("r", Schema.Type.INT64)
+    .optional("o", Schema.Type.FLOAT)
+    .named("Schema")
+
+  private val examples = (0 until 2000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "r",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i)).build()
+      )
+    if (i % 2 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("o", Feature.newBuilder().setFloatList(floats).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  // small row groups so that the file has many of them
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).withRowGroupSize(1024L).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def inputFile: InputFile = HadoopInputFile.fromPath(temp, new Configuration())
+
+  private lazy val rowGroups: Seq[BlockMetaData] = {
+    val reader = ParquetFileReader.open(inputFile)
+    val blocks = reader.getRowGroups.asScala.toList
+    reader.close()
+    blocks
+  }
+
+  private def read(builder: ExampleParquetReader.Builder): Seq[Example] =
+    TestUtil.read(builder.build())
+
+  private def chunkBytes(column: String): Long =
+    rowGroups
+      .flatMap(_.getColumns.asScala)
+      .filter(_.getPath.toDotString == column)
+      .map(_.getTotalSize)
+      .sum
+
+  "PrefetchingInputFile" should "read the same records" in {
+    rowGroups.size should be > 4
+    val r = FeaturePredicate.int64Feature(schema.getFields.get(0))
+    Seq(
+      inputFile,
+      new MappedInputFile(Paths.get(temp.toString)),
+      new MappedInputFile(Paths.get(temp.toString), 1)
+    ).foreach { file =>
+      Seq(1, 3).foreach { k =>
+        def builder = ExampleParquetReader.builder(file).withPrefetch(k, 1L << 30)
+        read(builder) shouldEqual examples
+        read(builder.withFields(Seq("r").asJava)) shouldEqual
+          read(ExampleParquetReader.builder(file).withFields(Seq("r").asJava))
+        read(builder.withFilter(r.gtEq(1500).toFilter)) shouldEqual examples.drop(1500)
+        read(builder.withZeroCopyBytes(true)) shouldEqual examples
+      }
+    }
+  }
+
+  it should "fetch row groups ahead of decoding" in {
+    val file = new ThrottledInputFile(inputFile, 2)
+    read(ExampleParquetReader.builder(file).withPrefetch(2, 1L << 30)) shouldEqual examples
+
+    // coalesced into one range per row group, all fetched in the background
+    val fetched = file.reads.asScala.filter(_.prefetched).toList
+    fetched.map(_.offset).sorted shouldBe rowGroups.map(_.getStartingPos)
+    fetched.map(_.length.toLong).sum shouldBe chunkBytes("r") + chunkBytes("o")
+    val direct = file.reads.asScala.filterNot(_.prefetched)
+    all(direct.map(_.offset)) should be >= rowGroups.last.getStartingPos
+  }
+
+  it should "fetch projected columns only" in {
+    val file = new ThrottledInputFile(inputFile, 0)
+    val builder = ExampleParquetReader.builder(file).withFields(Seq("o").asJava)
+    read(builder.withPrefetch(4, 1L << 30)).size shouldBe examples.size
+
+    val fetched = file.reads.asScala.filter(_.prefetched).toList
+    fetched.size shouldBe rowGroups.size
+    fetched.map(_.length.toLong).sum shouldBe chunkBytes("o")
+  }
+
+  it should "respect the byte budget" in {
+    val file = new ThrottledInputFile(inputFile, 0)
+    val budget = rowGroups.map(_.getTotalByteSize).min / 2
+    read(ExampleParquetReader.builder(file).withPrefetch(2, budget)) shouldEqual examples
+    file.reads.asScala.filter(_.prefetched) shouldBe empty
+  }
+
+  it should "serve non-vectored reads" in {
+    val columns = Seq(ColumnPath.get("r"), ColumnPath.get("o"))
+    val file = new ThrottledInputFile(inputFile, 0)
+    val prefetching = new PrefetchingInputFile(file, rowGroups.asJava, columns.asJava, 2, 1L << 30)
+    val in = prefetching.newStream()
+    val raw = inputFile.newStream()
+    def check(offset: Long, length: Int): Unit = {
+      val expected = new Array[Byte](length)
+      raw.seek(offset)
+      raw.readFully(expected)
+      val actual = new Array[Byte](length)
+      in.seek(offset)
+      in.readFully(actual)
+      actual shouldBe expected
+      in.getPos shouldBe offset + length
+    }
+    rowGroups.foreach { g =>
+      g.getColumns.asScala.foreach { c =>
+        val start = c.getStartingPos
+        val size = c.getTotalSize.toInt
+        // in parts, e.g. pages filtered by column indexes
+        check(start, size / 2)
+        check(start + size / 2, size - size / 2)
+      }
+    }
+    // footer
+    check(inputFile.getLength - 8, 8)
+    in.close()
+    raw.close()
+    file.reads.asScala.filterNot(_.prefetched).map(_.offset) shouldBe Seq(inputFile.getLength - 8)
+  }
+
+  it should "fail on unsupported builders" in {
+    the[IllegalStateException] thrownBy ExampleParquetReader
+      .builder(temp)
+      .withPrefetch(1, 1024) should have message "Prefetching requires an InputFile"
+    the[IllegalStateException] thrownBy ExampleParquetReader
+      .builder(inputFile)
+      .withPrefetch(1, 1024)
+      .withParallelism(2)
+      .build() should have message "Prefetching is not supported with parallelism"
+    an[IllegalArgumentException] should be thrownBy ExampleParquetReader
+      .builder(inputFile)
+      .withPrefetch(0, 1024)
+  }
+}
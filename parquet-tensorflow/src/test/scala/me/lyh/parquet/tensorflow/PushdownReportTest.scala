@@ -0,0 +1,139 @@
+package me.lyh.parquet.tensorflow
+
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.Path
+import org.apache.parquet.hadoop.ParquetFileReader
+import org.apache.parquet.hadoop.util.HadoopInputFile
+import org.apache.parquet.io.InputFile
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example._
+
+import scala.collection.JavaConverters._
+
+class PushdownReportTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val conf = new Configuration()
+  private val schema = Schema
+    .newBuilder()
+    .required("id", Schema.Type.INT64)
+    .required("tag", Schema.Type.BYTES)
+    .required("name", Schema.Type.BYTES)
+    .optional("score", Schema.Type.FLOAT)
+    .named("Schema")
+
+  // sorted by id, "tag" has "a" and "c" only, "name" is unique
+  private val examples = (0 until 1000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "id",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i.toLong)).build()
+      )
+      .putFeature("tag", bytes(if (i % 2 == 0) "a" else "c"))
+      .putFeature("name", bytes(f"name$i%04d"))
+    if (i % 2 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat)
+      b.putFeature("score", Feature.newBuilder().setFloatList(floats).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private def field(name: String): Schema.Field =
+    schema.getFields.asScala.find(_.getName == name).get
+
+  private def write(f: ExampleParquetWriter.Builder => ExampleParquetWriter.Builder): Path = {
+    val p = makeTemp
+    val writer = f(ExampleParquetWriter.builder(p).withSchema(schema)).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private lazy val smallRowGroups = write(_.withRowGroupSize(1024L))
+
+  private def explain(p: Path, predicate: FeaturePredicate, fields: String*): PushdownReport =
+    PushdownReport.explain(
+      Seq(HadoopInputFile.fromPath(p, conf): InputFile).asJava,
+      predicate.toFilterPredicate,
+      if (fields.isEmpty) null else fields.asJava
+    )
+
+  "PushdownReport" should "explain row groups dropped by statistics" in {
+    val id = FeaturePredicate.int64Feature(field("id"))
+    val report = explain(smallRowGroups, id.gtEq(990))
+    val rowGroups = report.getRowGroups.asScala
+    rowGroups.size should be > 1
+    report.getTotalRows shouldBe 1000
+    report.getSelectedRows should (be >= 10L and be < 1000L)
+    report.getEstimatedBytes should be < report.getTotalBytes
+
+    val (dropped, read) = rowGroups.partition(_.isDropped)
+    dropped should not be empty
+    dropped.foreach { rg =>
+      rg.getDroppedBy shouldBe PushdownReport.Level.STATISTICS
+      rg.getReasons.asScala shouldBe Seq(s"STATISTICS: ${id.gtEq(990).toFilterPredicate}")
+      rg.getSelectedRows shouldBe 0
+      rg.getEstimatedBytes shouldBe 0
+    }
+    read.last.getSelectedRows shouldBe read.last.getRowCount
+    report.toString should include(s"row groups: ${dropped.size} of ${rowGroups.size} dropped")
+
+    // only statistics are in the footer
+    val reader = ParquetFileReader.open(HadoopInputFile.fromPath(smallRowGroups, conf))
+    val footer = reader.getFooter
+    reader.close()
+    val fromFooter =
+      PushdownReport.explainFooters(Seq(footer).asJava, id.gtEq(990).toFilterPredicate, null)
+    fromFooter.getRowGroups.asScala.map(_.getDroppedBy) shouldBe rowGroups.map(_.getDroppedBy)
+    fromFooter.getSelectedRows shouldBe rowGroups.filterNot(_.isDropped).map(_.getRowCount).sum
+  }
+
+  it should "count bytes of projected and predicate columns" in {
+    val id = FeaturePredicate.int64Feature(field("id"))
+    val all = explain(smallRowGroups, id.gtEq(990))
+    val projected = explain(smallRowGroups, id.gtEq(990), "score")
+    projected.getTotalBytes should be < all.getTotalBytes
+    projected.getEstimatedBytes should be < all.getEstimatedBytes
+    projected.getSelectedRows shouldBe all.getSelectedRows
+  }
+
+  it should "explain row groups dropped by dictionaries and bloom filters" in {
+    val p = write(_.withDictionaryEncoding("name", false).withBloomFilterNDV("name", 1000L))
+    val tag = FeaturePredicate.bytesFeature(field("tag"))
+    val byDictionary = explain(p, tag.eq("b"))
+    byDictionary.getRowGroups.asScala.map(_.getDroppedBy) shouldBe
+      Seq(PushdownReport.Level.DICTIONARY)
+    byDictionary.getRowGroups.get(0).getReasons.asScala shouldBe
+      Seq(s"DICTIONARY: ${tag.eq("b").toFilterPredicate}")
+    byDictionary.getSelectedRows shouldBe 0
+
+    val name = FeaturePredicate.bytesFeature(field("name"))
+    val byBloomFilter = explain(p, name.eq("name0500x"))
+    byBloomFilter.getRowGroups.asScala.map(_.getDroppedBy) shouldBe
+      Seq(PushdownReport.Level.BLOOM_FILTER)
+
+    val kept = explain(p, name.eq("name0500"))
+    kept.getRowGroups.asScala.map(_.getDroppedBy) shouldBe Seq(null)
+    kept.getSelectedRows shouldBe 1000
+  }
+
+  it should "explain pages pruned by column indexes" in {
+    val p = write(_.withPageSize(1024))
+    val id = FeaturePredicate.int64Feature(field("id"))
+    val report = explain(p, id.gtEq(990))
+    val rowGroups = report.getRowGroups.asScala
+    rowGroups.size shouldBe 1
+    val rg = rowGroups.head
+    rg.isDropped shouldBe false
+    rg.getReasons.asScala shouldBe Seq(s"COLUMN_INDEX: ${id.gtEq(990).toFilterPredicate}")
+    rg.getSelectedRows should (be >= 10L and be < 1000L)
+    rg.getPages should be > 4
+    rg.getSelectedPages should (be > 0 and be < rg.getPages)
+    rg.getEstimatedBytes should be < rg.getTotalBytes
+
+    explain(p, id.gt(2000)).getRowGroups.get(0).getDroppedBy shouldBe
+      PushdownReport.Level.STATISTICS
+  }
+}
@@ -57,4 +57,14 @@ class SchemaTest extends AnyFlatSpec with Matchers {
   it should "round-trip JSON" in {
     Schema.fromJson(schema.toJson) shouldBe schema
   }
+
+  it should "share codecs with equal schemas" in {
+    val codec = SchemaCodec.of(schema)
+    SchemaCodec.of(Schema.fromParquet(schema.toParquet)) should be theSameInstanceAs codec
+    SchemaCodec.of(Schema.fromJson(schema.toJson)) should be theSameInstanceAs codec
+    SchemaCodec.of(Schema.newBuilder().required("i", Schema.Type.INT64).named("Schema")) should
+      not be theSameInstanceAs(codec)
+    (0 until codec.size())
+      .map(codec.getName) shouldBe Seq("i", "f", "b", "oi", "of", "ob", "ri", "rf", "rb")
+  }
 }
@@ -0,0 +1,105 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.fs.Path
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
+
+import java.io.IOException
+import java.nio.file.{Files, Paths}
+import scala.collection.JavaConverters._
+
+class TFRecordConverterTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private def writeTFRecords(xs: Seq[Example]): java.nio.file.Path = {
+    val path = makeTemp("tfrecord")
+    val file = Paths.get(path.toUri.getPath)
+    Files.write(file, xs.map(x => TFRecordReaderTest.frame(x.toByteArray)).reduce(_ ++ _))
+    file
+  }
+
+  private def read(path: Path): Seq[Example] =
+    TestUtil.read(ExampleParquetReader.builder(path).build())
+
+  private val examples = (0 until 5000).map { i =>
+    val b = Features
+      .newBuilder()
+      .putFeature(
+        "i",
+        Feature.newBuilder().setInt64List(Int64List.newBuilder().addValue(i)).build()
+      )
+    if (i % 3 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat).addValue(-i.toFloat)
+      b.putFeature("f", Feature.newBuilder().setFloatList(floats).build())
+    }
+    val bytes = BytesList.newBuilder().addValue(ByteString.copyFromUtf8("x" * (i % 50)))
+    b.putFeature("b", Feature.newBuilder().setBytesList(bytes).build())
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  "TFRecordConverter" should "convert with inferred schema" in {
+    val inputs = examples.grouped(1500).map(writeTFRecords).toList
+    val converter = TFRecordConverter
+      .builder(inputs.asJava)
+      .withSchemaName("Inferred")
+      .withParallelism(3)
+      .withBatchSize(100)
+      .withQueueSize(2)
+      .build()
+    converter.getSchema shouldBe examples
+      .foldLeft(new ExampleScanner("Inferred"))(_.scan(_))
+      .getSchema
+
+    val output = makeTemp("parquet")
+    converter.convert(ExampleParquetWriter.bytesBuilder(output)) shouldBe examples.size
+    read(output) shouldEqual examples
+  }
+
+  it should "convert with schema" in {
+    val schema = Schema
+      .newBuilder()
+      .required("i", Schema.Type.INT64)
+      .repeated("f", Schema.Type.FLOAT)
+      .named("Schema")
+    val converter = TFRecordConverter
+      .builder(Seq(writeTFRecords(examples)).asJava)
+      .withSchema(schema)
+      .withCrcCheck(false)
+      .build()
+    converter.getSchema shouldBe schema
+
+    val output = makeTemp("parquet")
+    converter.convert(ExampleParquetWriter.bytesBuilder(output)) shouldBe examples.size
+    val expected = examples.map { e =>
+      val features = e.getFeatures.getFeatureMap.asScala.filter(_._1 != "b")
+      Example.newBuilder().setFeatures(Features.newBuilder().putAllFeature(features.asJava)).build()
+    }
+    read(output) shouldEqual expected
+  }
+
+  it should "fail corrupted records" in {
+    val input = writeTFRecords(examples)
+    val bytes = Files.readAllBytes(input)
+    // corrupt a BYTES value, which still parses
+    bytes(bytes.indexOf('x'.toByte)) = 'y'
+    Files.write(input, bytes)
+
+    val schema = examples.foldLeft(new ExampleScanner("Schema"))(_.scan(_)).getSchema
+    val builder = TFRecordConverter.builder(Seq(input).asJava).withSchema(schema)
+    val e = the[IOException] thrownBy {
+      builder.build().convert(ExampleParquetWriter.bytesBuilder(makeTemp("parquet")))
+    }
+    e.getMessage should startWith("Corrupted record in")
+
+    val output = makeTemp("parquet")
+    builder.withCrcCheck(false).build().convert(ExampleParquetWriter.bytesBuilder(output))
+    read(output).size shouldBe examples.size
+
+    Files.write(input, bytes.dropRight(1))
+    the[IOException] thrownBy {
+      builder.build().convert(ExampleParquetWriter.bytesBuilder(makeTemp("parquet")))
+    } should have message s"Truncated record in $input"
+  }
+}
@@ -0,0 +1,99 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.parquet.hadoop.ParquetReader
+import org.apache.parquet.io.ParquetDecodingException
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+import org.tensorflow.example.{BytesList, Example, Feature, Features, FloatList, Int64List}
+
+import java.io.{ByteArrayInputStream, ByteArrayOutputStream}
+import java.nio.ByteBuffer
+import scala.collection.JavaConverters._
+
+class TFRecordExporterTest extends AnyFlatSpec with Matchers {
+  import TestUtil._
+
+  private val schema = Schema
+    .newBuilder()
+    .required("r", Schema.Type.INT64)
+    .optional("o", Schema.Type.FLOAT)
+    .repeated("l", Schema.Type.BYTES)
+    .repeated("i", Schema.Type.INT64)
+    .named("Schema")
+
+  private val examples = (0 until 1000).map { i =>
+    val longs = Int64List.newBuilder().addValue(i.toLong * 1000000007L)
+    val b = Features.newBuilder().putFeature("r", Feature.newBuilder().setInt64List(longs).build())
+    if (i % 2 == 0) {
+      val floats = FloatList.newBuilder().addValue(i.toFloat / 3)
+      b.putFeature("o", Feature.newBuilder().setFloatList(floats).build())
+    }
+    if (i % 5 > 0) {
+      val bytes = (0 until i % 5).map(j => ByteString.copyFromUtf8("x" * (j * i)))
+      val list = BytesList.newBuilder().addAllValue(bytes.asJava)
+      b.putFeature("l", Feature.newBuilder().setBytesList(list).build())
+    }
+    if (i % 7 > 0) {
+      val list = (0 until i % 7).foldLeft(Int64List.newBuilder())((l, j) => l.addValue(-j.toLong))
+      b.putFeature("i", Feature.newBuilder().setInt64List(list).build())
+    }
+    Example.newBuilder().setFeatures(b).build()
+  }
+
+  private lazy val temp = {
+    val p = makeTemp
+    val writer = ExampleParquetWriter.builder(p).withSchema(schema).build()
+    examples.foreach(writer.write)
+    writer.close()
+    p
+  }
+
+  private def readBytes(reader: ParquetReader[ByteBuffer]): Seq[Array[Byte]] =
+    readAll(reader) { r =>
+      val buf = r.read()
+      if (buf == null) null
+      else {
+        val bytes = new Array[Byte](buf.remaining())
+        buf.get(bytes)
+        bytes
+      }
+    }
+
+  "ExampleParquetReader" should "read serialized Examples" in {
+    val expected = read(ExampleParquetReader.builder(temp).build()).map(_.toByteArray.toSeq)
+    readBytes(ExampleParquetReader.bytesBuilder(temp).build()).map(_.toSeq) shouldBe expected
+    expected.map(b => Example.parseFrom(b.toArray)) shouldBe examples
+
+    val fields = Seq("l", "r").asJava
+    readBytes(ExampleParquetReader.bytesBuilder(temp).withFields(fields).build())
+      .map(_.toSeq) shouldBe
+      read(ExampleParquetReader.builder(temp).withFields(fields).build()).map(_.toByteArray.toSeq)
+  }
+
+  it should "fail invalid repetition" in {
+    val invalid = Schema.newBuilder().required("x", Schema.Type.FLOAT).named("Invalid")
+    val reader = ExampleParquetReader.bytesBuilder(temp).withSchema(invalid).build()
+    val e = the[ParquetDecodingException] thrownBy reader.read()
+    e.getCause.getMessage should include("Failed to decode Invalid#x: Required field size != 1: 0")
+  }
+
+  "TFRecordExporter" should "export TFRecords" in {
+    val projected = Schema
+      .newBuilder()
+      .required("r", Schema.Type.INT64)
+      .repeated("l", Schema.Type.BYTES)
+      .named("Projected")
+    val out = new ByteArrayOutputStream()
+    val reader = ExampleParquetReader.bytesBuilder(temp).withSchema(projected).build()
+    TFRecordExporter.export(reader, out) shouldBe examples.size
+
+    val tfRecords = new TFRecordReader(new ByteArrayInputStream(out.toByteArray))
+    val actual =
+      Iterator.continually(tfRecords.read()).takeWhile(_ != null).map(b => Example.parseFrom(b))
+    actual.toList shouldBe examples.map { e =>
+      val features = e.getFeatures.getFeatureMap.asScala.filter(kv => kv._1 == "r" || kv._1 == "l")
+      Example.newBuilder().setFeatures(Features.newBuilder().putAllFeature(features.asJava)).build()
+    }
+  }
+}
@@ -0,0 +1,116 @@
+package me.lyh.parquet.tensorflow
+
+import org.scalatest.flatspec.AnyFlatSpec
+import org.scalatest.matchers.should.Matchers
+
+import java.io.{ByteArrayInputStream, EOFException, IOException}
+import java.nio.charset.StandardCharsets
+import java.nio.{ByteBuffer, ByteOrder}
+
+object TFRecordReaderTest {
+  private def maskedCrc(bytes: Array[Byte]): Int = {
+    val crc = new Crc32c
+    crc.update(bytes, 0, bytes.length)
+    Crc32c.mask(crc.getValue)
+  }
+
+  def frame(data: Array[Byte]): Array[Byte] = {
+    val length = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(data.length.toLong)
+    ByteBuffer
+      .allocate(data.length + 16)
+      .order(ByteOrder.LITTLE_ENDIAN)
+      .put(length.array())
+      .putInt(maskedCrc(length.array()))
+      .put(data)
+      .putInt(maskedCrc(data))
+      .array()
+  }
+}
+
+class TFRecordReaderTest extends AnyFlatSpec with Matchers {
+  import TFRecordReaderTest._
+
+  private def read(bytes: Array[Byte]): Seq[String] = {
+    val reader = new TFRecordReader(new ByteArrayInputStream(bytes))
+    val b = Seq.newBuilder[String]
+    var r = reader.read()
+    while (r != null) {
+      b += new String(r, StandardCharsets.UTF_8)
+      r = reader.read()
+    }
+    reader.close()
+    b.result()
+  }
+
+  "Crc32c" should "match reference values" in {
+    val crc = new Crc32c
+    val bytes = "123456789".getBytes(StandardCharsets.UTF_8)
+    crc.update(bytes, 0, bytes.length)
+    crc.getValue shouldBe 0xe3069283L
+    crc.reset()
+    crc.getValue shouldBe 0L
+
+    // slicing-by-8 must match the byte-wise update for all alignments and lengths
+    val random = new scala.util.Random(0)
+    val data = Array.fill(1000)(random.nextInt().toByte)
+    (0 until 16).foreach { off =>
+      Seq(0, 1, 7, 8, 9, 100, 983).foreach { len =>
+        val bulk = new Crc32c
+        bulk.update(data, off, len)
+        val direct = ByteBuffer.allocateDirect(len)
+        direct.put(data, off, len).flip()
+        val buffer = new Crc32c
+        buffer.update(direct)
+        direct.position() shouldBe 0
+        val bytewise = new Crc32c
+        (off until off + len).foreach(i => bytewise.update(data(i).toInt))
+        bulk.getValue shouldBe bytewise.getValue
+        buffer.getValue shouldBe bytewise.getValue
+      }
+    }
+  }
+
+  "TFRecordReader" should "read records" in {
+    val xs = Seq("", "a", "hello world", "x" * 1000)
+    read(xs.map(x => frame(x.getBytes(StandardCharsets.UTF_8))).reduce(_ ++ _)) shouldBe xs
+    read(Array.emptyByteArray) shouldBe empty
+  }
+
+  it should "fail corrupted records" in {
+    val bytes = frame("hello".getBytes(StandardCharsets.UTF_8))
+
+    val length = bytes.clone()
+    length(0) = 6
+    the[IOException] thrownBy read(length) should have message "Invalid length checksum"
+
+    val data = bytes.clone()
+    data(12) = 'j'
+    the[IOException] thrownBy read(data) should have message "Invalid data checksum"
+
+    an[EOFException] should be thrownBy read(bytes.take(8))
+    an[EOFException] should be thrownBy read(bytes.dropRight(1))
+  }
+
+  "MappedTFRecordReader" should "read records across windows" in {
+    val xs = (0 until 100).map(i => "x" * (i * 7))
+    val file = java.nio.file.Files.createTempFile("parquet-tensorflow-", ".tfrecord")
+    file.toFile.deleteOnExit()
+    java.nio.file.Files
+      .write(file, xs.map(x => frame(x.getBytes(StandardCharsets.UTF_8))).reduce(_ ++ _))
+
+    Seq(64L, 1000L, 1L << 20).foreach { window =>
+      val reader = new MappedTFRecordReader(file, window)
+      val b = Seq.newBuilder[String]
+      var r = reader.read()
+      while (r != null) {
+        MappedTFRecordReader.checkCrc(r, reader.getCrc) shouldBe true
+        val bytes = new Array[Byte](r.remaining())
+        r.get(bytes)
+        b += new String(bytes, StandardCharsets.UTF_8)
+        r = reader.read()
+      }
+      reader.close()
+      b.result() shouldBe xs
+    }
+  }
+}
@@ -0,0 +1,60 @@
+package me.lyh.parquet.tensorflow
+
+import com.google.protobuf.ByteString
+import org.apache.hadoop.conf.Configuration
+import org.apache.hadoop.fs.{FileSystem, Path}
+import org.apache.parquet.hadoop.ParquetReader
+import org.tensorflow.example.{BytesList, Example, Feature, FloatList, Int64List}
+
+import java.io.Closeable
+
+/** Temporary files, features, and writing and reading Examples, shared by tests. */
+object TestUtil {
+  val fs: FileSystem = FileSystem.getLocal(new Configuration())
+
+  /** A new temporary Parquet path, deleted on exit. */
+  def makeTemp: Path = makeTemp("parquet")
+
+  /** A new temporary path with extension `ext`, deleted on exit. */
+  def makeTemp(ext: String): Path = {
+    val tmp = sys.props("java.io.tmpdir")
+    val p = new Path(s"$tmp/parquet-tensorflow-${java.util.UUID.randomUUID()}.$ext")
+    fs.deleteOnExit(p)
+    p
+  }
+
+  def longs(xs: Long*): Feature =
+    Feature.newBuilder().setInt64List(xs.foldLeft(Int64List.newBuilder())(_.addValue(_))).build()
+
+  def floats(xs: Float*): Feature =
+    Feature.newBuilder().setFloatList(xs.foldLeft(FloatList.newBuilder())(_.addValue(_))).build()
+
+  def bytes(xs: String*): Feature =
+    Feature
+      .newBuilder()
+      .setBytesList(
+        xs.map(ByteString.copyFromUtf8).foldLeft(BytesList.newBuilder())(_.addValue(_))
+      )
+      .build()
+
+  def write(path: Path, schema: Schema, xs: Seq[Example]): Unit = {
+    val writer = ExampleParquetWriter.builder(path).withSchema(schema).build()
+    xs.foreach(writer.write)
+    writer.close()
+  }
+
+  /** Read all records and close the reader. */
+  def read(reader: ParquetReader[Example]): Seq[Example] = readAll(reader)(_.read())
+
+  /** Read with `next` until it returns null and close the reader. */
+  def readAll[R <: Closeable, T](reader: R)(next: R => T): Seq[T] = {
+    val b = Seq.newBuilder[T]
+    var r = next(reader)
+    while (r != null) {
+      b += r
+      r = next(reader)
+    }
+    reader.close()
+    b.result()
+  }
+}